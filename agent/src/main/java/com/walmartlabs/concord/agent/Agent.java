@@ -25,12 +25,15 @@ import com.walmartlabs.concord.agent.Worker.CompletionCallback;
 import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.agent.cfg.DockerConfiguration;
 import com.walmartlabs.concord.agent.docker.OrphanSweeper;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool;
 import com.walmartlabs.concord.agent.guice.WorkerModule;
 import com.walmartlabs.concord.agent.mmode.MaintenanceModeListener;
 import com.walmartlabs.concord.agent.mmode.MaintenanceModeNotifier;
 import com.walmartlabs.concord.client2.ProcessEntry.StatusEnum;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.server.queueclient.QueueClient;
+import com.walmartlabs.concord.server.queueclient.message.Message;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import org.slf4j.Logger;
@@ -39,10 +42,10 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Agent {
 
@@ -53,9 +56,13 @@ public class Agent {
     private final DockerConfiguration dockerCfg;
 
     private final QueueClient queueClient;
+    private final JobPreparationExecutor preparationExecutor;
+    private final RepositorySnapshotCache snapshotCache;
+    private final ProcessPool processPool;
     private final ExecutorService executor;
 
     private final Map<UUID, Worker> activeWorkers = new ConcurrentHashMap<>();
+    private final AcquisitionStats acquisitionStats = new AcquisitionStats();
     private final AtomicBoolean maintenanceMode = new AtomicBoolean(false);
 
     // make the reference volatile as we check if for != null in different threads
@@ -65,13 +72,19 @@ public class Agent {
     public Agent(Injector injector,
                  AgentConfiguration agentCfg,
                  DockerConfiguration dockerCfg,
-                 QueueClient queueClient) {
+                 QueueClient queueClient,
+                 JobPreparationExecutor preparationExecutor,
+                 RepositorySnapshotCache snapshotCache,
+                 ProcessPool processPool) {
 
         this.injector = injector;
 
         this.agentCfg = agentCfg;
         this.dockerCfg = dockerCfg;
         this.queueClient = queueClient;
+        this.preparationExecutor = preparationExecutor;
+        this.snapshotCache = snapshotCache;
+        this.processPool = processPool;
 
         this.executor = Executors.newCachedThreadPool();
     }
@@ -110,22 +123,25 @@ public class Agent {
             // check if the maintenance mode is enabled. If so, hang there indefinitely
             validateMaintenanceMode();
 
-            // TODO parallel acquire?
-            // wait for a free "slot"
+            // wait for a free "slot" and take all other free slots
             workersAvailable.acquire();
-            log.info("run -> acquired a slot, {}/{} remains", workersAvailable.availablePermits(), workersCount);
+            int slots = 1;
+            while (slots < agentCfg.getMaxSlotsPerRequest() && workersAvailable.tryAcquire()) {
+                slots++;
+            }
+            log.info("run -> acquired {} slot(s), {}/{} remains", slots, workersAvailable.availablePermits(), workersCount);
 
-            // fetch the next job
-            JobRequest jobRequest;
+            // fetch the next jobs
+            List<JobRequest> jobRequests;
             try {
-                jobRequest = take(queueClient);
+                jobRequests = take(queueClient, slots);
             } catch (InterruptedException e) {
                 log.info("run -> interrupted, exiting...");
                 return;
             } catch (Exception e) {
                 log.error("run -> error while fetching a job: {}", e.getMessage(), e);
 
-                workersAvailable.release();
+                workersAvailable.release(slots);
 
                 // wait before retrying
                 // the server is not reachable or unhealthy, no point retrying immediately
@@ -133,29 +149,35 @@ public class Agent {
                 continue;
             }
 
-            if (jobRequest == null) {
-                // can happen on switching to maintenance mode or reconnecting, etc
-                workersAvailable.release();
-                continue;
+            // no jobs can happen on switching to maintenance mode or reconnecting, etc
+            // return the unused slots
+            if (jobRequests.size() < slots) {
+                workersAvailable.release(slots - jobRequests.size());
             }
 
-            UUID instanceId = jobRequest.getInstanceId();
-
-            // worker will handle the process' lifecycle
-            try {
-                Worker w = injector.createChildInjector(new WorkerModule(agentCfg.getAgentId(), instanceId, jobRequest.getSessionToken()))
-                        .getInstance(WorkerFactory.class)
-                        .create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+            for (JobRequest jobRequest : jobRequests) {
+                startWorker(jobRequest);
+            }
+        }
+    }
 
-                // register the worker so we can cancel it later
-                activeWorkers.put(instanceId, w);
+    private void startWorker(JobRequest jobRequest) {
+        UUID instanceId = jobRequest.getInstanceId();
 
-                // start a new thread to process the job
-                executor.submit(w);
-            } catch (Exception e) {
-                log.error("run -> error while submitting worker: {}", e.getMessage());
-                workersAvailable.release();
-            }
+        // worker will handle the process' lifecycle
+        try {
+            Worker w = injector.createChildInjector(new WorkerModule(agentCfg.getAgentId(), instanceId, jobRequest.getSessionToken()))
+                    .getInstance(WorkerFactory.class)
+                    .create(jobRequest, createStatusCallback(instanceId, workersAvailable));
+
+            // register the worker so we can cancel it later
+            activeWorkers.put(instanceId, w);
+
+            // start a new thread to process the job
+            executor.submit(w);
+        } catch (Exception e) {
+            log.error("run -> error while submitting worker: {}", e.getMessage());
+            workersAvailable.release();
         }
     }
 
@@ -178,6 +200,10 @@ public class Agent {
                     return new Status(maintenanceMode.get(), cnt);
                 }
             });
+            n.addMetrics(() -> Map.of("jobPreparation", preparationExecutor.getMetrics(),
+                    "repositorySnapshots", snapshotCache.getMetrics(),
+                    "processPool", processPool.getMetrics(),
+                    "acquisition", acquisitionStats.toMap()));
             n.start();
         } catch (IOException e) {
             log.warn("start -> can't start the maintenance mode notifier: {}", e.getMessage());
@@ -218,17 +244,30 @@ public class Agent {
         };
     }
 
-    private JobRequest take(QueueClient queueClient) throws Exception {
-        Future<ProcessResponse> req = queueClient.request(new ProcessRequest(agentCfg.getCapabilities()));
+    private List<JobRequest> take(QueueClient queueClient, int slots) throws Exception {
+        long t1 = System.currentTimeMillis();
 
-        ProcessResponse resp = req.get();
-        if (resp == null) {
-            return null;
+        Future<Message> req = queueClient.request(new ProcessRequest(agentCfg.getCapabilities(), slots));
+
+        // older servers always answer with a single process
+        Message resp = req.get();
+        List<ProcessResponse> processes;
+        if (resp instanceof ProcessBatchResponse) {
+            processes = ((ProcessBatchResponse) resp).getProcesses();
+        } else if (resp instanceof ProcessResponse) {
+            processes = List.of((ProcessResponse) resp);
+        } else {
+            return List.of();
         }
 
-        Path workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+        acquisitionStats.record(processes.size(), System.currentTimeMillis() - t1);
 
-        return JobRequest.from(resp, workDir);
+        List<JobRequest> result = new ArrayList<>(processes.size());
+        for (ProcessResponse p : processes) {
+            Path workDir = IOUtils.createTempDir(agentCfg.getPayloadDir(), "workDir");
+            result.add(JobRequest.from(p, workDir));
+        }
+        return result;
     }
 
     private void cancel(UUID instanceId) {
@@ -239,4 +278,36 @@ public class Agent {
 
         w.cancel();
     }
+
+    /**
+     * Number of processes received per request and the time between
+     * sending a request and receiving the processes.
+     */
+    private static final class AcquisitionStats {
+
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong processes = new AtomicLong();
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong maxWait = new AtomicLong();
+
+        private void record(int count, long waitMs) {
+            responses.incrementAndGet();
+            processes.addAndGet(count);
+            totalWait.addAndGet(waitMs);
+            maxWait.accumulateAndGet(waitMs, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long n = responses.get();
+            long p = processes.get();
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("responses", n);
+            m.put("processes", p);
+            m.put("avgBatchSize", n > 0 ? (double) p / n : 0.0);
+            m.put("avgTimeToAssignmentMs", n > 0 ? totalWait.get() / n : 0);
+            m.put("maxTimeToAssignmentMs", maxWait.get());
+            return m;
+        }
+    }
 }
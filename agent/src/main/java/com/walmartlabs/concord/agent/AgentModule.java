@@ -70,6 +70,9 @@ public class AgentModule implements Module {
         binder.bind(DefaultDependencies.class).in(SINGLETON);
         binder.bind(ProcessPool.class).in(SINGLETON);
         binder.bind(ApiClientFactory.class).in(SINGLETON);
+        binder.bind(JobPreparationExecutor.class).in(SINGLETON);
+        binder.bind(StateCache.class).in(SINGLETON);
+        binder.bind(RepositorySnapshotCache.class).in(SINGLETON);
         binder.bind(QueueClient.class).toProvider(QueueClientProvider.class).in(SINGLETON);
 
         binder.bind(Agent.class).in(SINGLETON);
@@ -20,28 +20,243 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import com.walmartlabs.concord.agent.remote.ResumableInputStream;
+import com.walmartlabs.concord.agent.remote.StateSnapshotClient;
+import com.walmartlabs.concord.client2.ApiClient;
+import com.walmartlabs.concord.client2.ApiException;
 import com.walmartlabs.concord.client2.ClientUtils;
 import com.walmartlabs.concord.client2.ProcessApi;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Downloads the process state.
+ * <p>
+ * If supported by the server, the state archive is unpacked while it is being
+ * downloaded and the download is resumed if the connection breaks. Large files
+ * that are already in the local {@link StateCache} are not downloaded at all.
+ */
 public class DefaultStateFetcher implements StateFetcher {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultStateFetcher.class);
+
+    /**
+     * Entries up to this size are read into memory and written to the disk
+     * asynchronously. Larger entries are written directly from the stream.
+     */
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+    /**
+     * How many times the download is restarted if the state changes
+     * while it is being downloaded.
+     */
+    private static final int MAX_RESTART_ATTEMPTS = 3;
+
     private final ProcessApi processApi;
+    private final StateSnapshotClient snapshotClient;
+    private final AgentConfiguration cfg;
+    private final StateCache stateCache;
 
     @Inject
-    public DefaultStateFetcher(ProcessApi processApi) {
+    public DefaultStateFetcher(ApiClient apiClient,
+                               ProcessApi processApi,
+                               AgentConfiguration cfg,
+                               StateCache stateCache,
+                               ObjectMapper objectMapper) {
+
         this.processApi = processApi;
+        this.snapshotClient = new StateSnapshotClient(apiClient, objectMapper);
+        this.cfg = cfg;
+        this.stateCache = stateCache;
     }
 
     @Override
-    public void downloadState(JobRequest job) throws Exception {
-        try (InputStream is = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.downloadState(job.getInstanceId()))){
-            IOUtils.unzip(is, job.getPayloadDir(), StandardCopyOption.REPLACE_EXISTING);
+    public void downloadState(JobRequest job, Path dst) throws Exception {
+        StateSnapshotClient.Manifest manifest = null;
+        if (cfg.isStateStreaming()) {
+            manifest = getManifest(job.getInstanceId());
+        }
+
+        if (manifest == null) {
+            try (InputStream is = ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> processApi.downloadState(job.getInstanceId()))) {
+                IOUtils.unzip(is, dst, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return;
+        }
+
+        Set<Path> written = new HashSet<>();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                downloadSnapshot(job.getInstanceId(), manifest, dst, written);
+                return;
+            } catch (StateSnapshotClient.StateChangedException e) {
+                if (attempt >= MAX_RESTART_ATTEMPTS) {
+                    throw e;
+                }
+
+                log.warn("downloadState ['{}'] -> the state has changed, restarting the download (attempt {}/{})",
+                        job.getInstanceId(), attempt, MAX_RESTART_ATTEMPTS);
+
+                // the received files may belong to the previous version of the state
+                for (Path p : written) {
+                    Files.deleteIfExists(p);
+                }
+                written.clear();
+
+                manifest = getManifest(job.getInstanceId());
+                if (manifest == null) {
+                    throw e;
+                }
+            }
         }
     }
-}
 
+    private StateSnapshotClient.Manifest getManifest(UUID instanceId) throws Exception {
+        return ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> snapshotClient.getManifest(instanceId));
+    }
+
+    private void downloadSnapshot(UUID instanceId, StateSnapshotClient.Manifest manifest, Path dst, Set<Path> written) throws Exception {
+        Path targetDir = dst.normalize().toAbsolutePath();
+
+        Map<String, StateSnapshotClient.Item> items = new HashMap<>();
+        Set<String> excludeHashes = new HashSet<>();
+        for (StateSnapshotClient.Item i : manifest.items()) {
+            if (i.hash() == null) {
+                items.put(i.name(), i);
+                continue;
+            }
+
+            Path cached = stateCache.get(i.hash());
+            Path p = resolve(targetDir, i.name());
+            if (cached != null && p != null) {
+                Files.createDirectories(p.getParent());
+                written.add(p);
+                Files.copy(cached, p, StandardCopyOption.REPLACE_EXISTING);
+                Files.setPosixFilePermissions(p, Posix.posix(i.unixMode() > 0 ? i.unixMode() : Posix.DEFAULT_UNIX_MODE));
+                excludeHashes.add(i.hash());
+            } else {
+                items.put(i.name(), i);
+            }
+        }
+
+        ResumableInputStream.Opener opener = offset -> {
+            try {
+                return snapshotClient.openSnapshot(instanceId, manifest.etag(), offset, excludeHashes);
+            } catch (ApiException e) {
+                throw new IOException("Error while downloading the process state: " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading the process state", e);
+            }
+        };
+
+        long t1 = System.currentTimeMillis();
+        try (ResumableInputStream in = new ResumableInputStream(opener, cfg.getStateMaxResumeAttempts(), AgentConstants.API_CALL_RETRY_DELAY)) {
+            unzip(in, targetDir, items, written);
+            log.info("downloadSnapshot ['{}'] -> done, {} byte(s) downloaded, {} file(s) taken from the cache, took {}ms",
+                    instanceId, in.getPosition(), excludeHashes.size(), System.currentTimeMillis() - t1);
+        }
+    }
+
+    /**
+     * The entries of a streamed archive have no file modes and, if written
+     * with data descriptors, no sizes in their local headers. Both are taken
+     * from the manifest items.
+     */
+    private void unzip(InputStream in, Path targetDir, Map<String, StateSnapshotClient.Item> items, Set<Path> written) throws Exception {
+        int threads = Math.max(1, cfg.getStateWriterThreads());
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        Semaphore pending = new Semaphore(threads * 2);
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new BufferedInputStream(in))) {
+            ZipArchiveEntry e;
+            while ((e = zip.getNextZipEntry()) != null) {
+                throwIfFailed(error);
+
+                Path p = resolve(targetDir, e.getName());
+                if (p == null) {
+                    // skip paths outside of targetDir
+                    continue;
+                }
+
+                if (e.isDirectory()) {
+                    Files.createDirectories(p);
+                    continue;
+                }
+
+                Files.createDirectories(p.getParent());
+                written.add(p);
+
+                StateSnapshotClient.Item item = items.get(e.getName());
+                int unixMode = item != null && item.unixMode() > 0 ? item.unixMode() : Posix.DEFAULT_UNIX_MODE;
+                String hash = item != null ? item.hash() : null;
+
+                long size = item != null ? item.size() : e.getSize();
+                if (size >= 0 && size <= MAX_BUFFERED_ENTRY_SIZE) {
+                    byte[] data = zip.readAllBytes();
+                    pending.acquire();
+                    writers.execute(() -> {
+                        try {
+                            Files.write(p, data);
+                            complete(p, unixMode, hash);
+                        } catch (Exception ex) {
+                            error.compareAndSet(null, ex);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                } else {
+                    Files.copy(zip, p, StandardCopyOption.REPLACE_EXISTING);
+                    complete(p, unixMode, hash);
+                }
+            }
+        } finally {
+            writers.shutdown();
+            if (!writers.awaitTermination(1, TimeUnit.MINUTES)) {
+                writers.shutdownNow();
+            }
+        }
+
+        throwIfFailed(error);
+    }
+
+    private void complete(Path p, int unixMode, String hash) throws IOException {
+        Files.setPosixFilePermissions(p, Posix.posix(unixMode));
+        if (hash != null) {
+            stateCache.put(hash, p);
+        }
+    }
+
+    private static Path resolve(Path targetDir, String name) {
+        Path p = targetDir.resolve(name).normalize().toAbsolutePath();
+        if (!p.startsWith(targetDir)) {
+            return null;
+        }
+        return p;
+    }
+
+    private static void throwIfFailed(AtomicReference<Exception> error) throws Exception {
+        Exception e = error.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the job preparation stages (repository export, state download, etc)
+ * in parallel and keeps the per-stage timings.
+ */
+public class JobPreparationExecutor {
+
+    private final ExecutorService executor;
+
+    private final Map<String, StageStats> stats = new ConcurrentHashMap<>();
+
+    @Inject
+    public JobPreparationExecutor(AgentConfiguration cfg) {
+        // each job runs up to two stages at the same time
+        this(Math.max(1, cfg.getWorkersCount()) * 2);
+    }
+
+    public JobPreparationExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "job-preparation-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs the stage asynchronously.
+     *
+     * @return the stage's duration in ms
+     */
+    public CompletableFuture<Long> submit(String stage, Stage s) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        executor.submit(() -> {
+            try {
+                result.complete(run(stage, s));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the stage in the current thread.
+     *
+     * @return the stage's duration in ms
+     */
+    public long run(String stage, Stage s) throws Exception {
+        long t1 = System.currentTimeMillis();
+        s.run();
+        long dt = System.currentTimeMillis() - t1;
+        record(stage, dt);
+        return dt;
+    }
+
+    public void record(String stage, long dt) {
+        stats.computeIfAbsent(stage, k -> new StageStats()).record(dt);
+    }
+
+    /**
+     * @return the number of runs, the total, the last and the max durations (ms) of each stage.
+     */
+    public Map<String, Map<String, Long>> getMetrics() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        stats.forEach((k, v) -> result.put(k, v.toMap()));
+        return result;
+    }
+
+    public interface Stage {
+
+        void run() throws Exception;
+    }
+
+    private static final class StageStats {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong last = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long dt) {
+            count.incrementAndGet();
+            total.addAndGet(dt);
+            last.set(dt);
+            max.accumulateAndGet(dt, Math::max);
+        }
+
+        private Map<String, Long> toMap() {
+            Map<String, Long> m = new LinkedHashMap<>();
+            m.put("count", count.get());
+            m.put("totalMs", total.get());
+            m.put("lastMs", last.get());
+            m.put("maxMs", max.get());
+            return m;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.walmartlabs.concord.agent.cfg.GitConfiguration;
 import com.walmartlabs.concord.agent.cfg.RepositoryCacheConfiguration;
 import com.walmartlabs.concord.client2.SecretClient;
+import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.imports.Import.SecretDefinition;
 import com.walmartlabs.concord.repository.*;
 import com.walmartlabs.concord.sdk.Secret;
@@ -31,6 +32,7 @@ import com.walmartlabs.concord.sdk.Secret;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.List;
 
@@ -39,15 +41,18 @@ public class RepositoryManager {
     private final SecretClient secretClient;
     private final RepositoryProviders providers;
     private final RepositoryCache repositoryCache;
+    private final RepositorySnapshotCache snapshotCache;
     private final GitConfiguration gitCfg;
 
     @Inject
     public RepositoryManager(SecretClient secretClient,
                              GitConfiguration gitCfg,
                              RepositoryCacheConfiguration cacheCfg,
+                             RepositorySnapshotCache snapshotCache,
                              ObjectMapper objectMapper) throws IOException {
 
         this.secretClient = secretClient;
+        this.snapshotCache = snapshotCache;
         this.gitCfg = gitCfg;
 
         GitClientConfiguration clientCfg = GitClientConfiguration.builder()
@@ -72,27 +77,64 @@ public class RepositoryManager {
     }
 
     public void export(String repoUrl, String branch, String commitId, String repoPath, Path dest, SecretDefinition secretDefinition, List<String> ignorePatterns) throws ExecutionException {
+        if (snapshotCache.isCacheable(commitId)) {
+            exportSnapshot(repoUrl, branch, commitId, repoPath, dest, secretDefinition, ignorePatterns);
+            return;
+        }
+
         Secret secret = getSecret(secretDefinition);
 
         Path cacheDir = repositoryCache.getPath(repoUrl);
 
         repositoryCache.withLock(repoUrl, () -> {
-            Repository repo = providers.fetch(
-                    FetchRequest.builder()
-                            .url(repoUrl)
-                            .version(FetchRequest.Version.commitWithBranch(commitId, branch))
-                            .secret(secret)
-                            .destination(cacheDir)
-                            .shallow(gitCfg.isShallowClone())
-                            .checkAlreadyFetched(gitCfg.isCheckAlreadyFetched())
-                            .build(),
-                    repoPath);
+            Repository repo = fetch(repoUrl, branch, commitId, repoPath, secret, cacheDir);
             repo.export(dest, ignorePatterns);
             return null;
         });
         repositoryCache.cleanup();
     }
 
+    /**
+     * Exports the repository using a per-commit snapshot. The repository lock
+     * is held only to fetch the repository and to create the snapshot,
+     * the files are copied into {@code dest} without the lock.
+     */
+    private void exportSnapshot(String repoUrl, String branch, String commitId, String repoPath, Path dest, SecretDefinition secretDefinition, List<String> ignorePatterns) throws ExecutionException {
+        RepositorySnapshotCache.Lease lease = snapshotCache.acquire(repoUrl, commitId, repoPath);
+        if (lease == null) {
+            Secret secret = getSecret(secretDefinition);
+
+            Path cacheDir = repositoryCache.getPath(repoUrl);
+
+            lease = repositoryCache.withLock(repoUrl, () -> snapshotCache.create(repoUrl, commitId, repoPath, dst -> {
+                Repository repo = fetch(repoUrl, branch, commitId, repoPath, secret, cacheDir);
+                repo.export(dst);
+            }));
+        }
+
+        try (RepositorySnapshotCache.Lease l = lease) {
+            IOUtils.copy(l.path(), dest, ignorePatterns, null, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new ExecutionException("Error while exporting the repository snapshot: " + e.getMessage(), e);
+        }
+
+        repositoryCache.cleanup();
+        snapshotCache.cleanup();
+    }
+
+    private Repository fetch(String repoUrl, String branch, String commitId, String repoPath, Secret secret, Path cacheDir) {
+        return providers.fetch(
+                FetchRequest.builder()
+                        .url(repoUrl)
+                        .version(FetchRequest.Version.commitWithBranch(commitId, branch))
+                        .secret(secret)
+                        .destination(cacheDir)
+                        .shallow(gitCfg.isShallowClone())
+                        .checkAlreadyFetched(gitCfg.isCheckAlreadyFetched())
+                        .build(),
+                repoPath);
+    }
+
     private Secret getSecret(SecretDefinition secret) throws ExecutionException {
         if (secret == null) {
             return null;
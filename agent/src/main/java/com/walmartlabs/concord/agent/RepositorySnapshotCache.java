@@ -0,0 +1,369 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.agent.cfg.RepositoryCacheConfiguration;
+import com.walmartlabs.concord.common.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps immutable copies of repository trees, one per repository URL,
+ * commit ID and repository path. Jobs export from a snapshot without holding
+ * the repository lock and without fetching the repository again.
+ * <p>
+ * Snapshots are removed when they are not used for longer than
+ * {@code repositoryCache.maxAge} or, least recently used first, when the total
+ * size exceeds {@code repositoryCache.snapshots.maxSize}. Snapshots that are
+ * currently exported are never removed.
+ */
+public class RepositorySnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositorySnapshotCache.class);
+
+    private static final Pattern COMMIT_ID_PATTERN = Pattern.compile("[0-9a-f]{40}|[0-9a-f]{64}");
+
+    private final Path snapshotDir;
+    private final long maxSize;
+    private final long maxAge;
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Inject
+    public RepositorySnapshotCache(RepositoryCacheConfiguration cfg) {
+        this.snapshotDir = cfg.getSnapshotDir();
+        this.maxSize = cfg.getSnapshotMaxSize();
+        this.maxAge = cfg.getMaxAge().toMillis();
+
+        if (isEnabled()) {
+            load();
+            log.info("init -> using {}, {} snapshot(s), {} byte(s)", snapshotDir, entries.size(), totalSize.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns {@code true} if the commit can be cached, i.e. the cache
+     * is enabled and the commit ID is a full commit hash.
+     */
+    public boolean isCacheable(String commitId) {
+        return isEnabled() && commitId != null && COMMIT_ID_PATTERN.matcher(commitId).matches();
+    }
+
+    /**
+     * @return the snapshot lease or {@code null} if there's no snapshot
+     * for the specified commit. The lease must be closed after use.
+     */
+    public Lease acquire(String repoUrl, String commitId, String repoPath) {
+        Lease l = tryAcquire(path(repoUrl, commitId, repoPath));
+        if (l != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return l;
+    }
+
+    /**
+     * Creates a new snapshot using the specified {@code exporter}.
+     * If the snapshot was created concurrently, the existing one is used.
+     *
+     * @return the snapshot lease. The lease must be closed after use.
+     */
+    public Lease create(String repoUrl, String commitId, String repoPath, Exporter exporter) throws IOException {
+        Path dst = path(repoUrl, commitId, repoPath);
+
+        for (int attempt = 0; ; attempt++) {
+            Lease l = tryAcquire(dst);
+            if (l != null) {
+                return l;
+            }
+
+            Files.createDirectories(dst.getParent());
+            Path tmp = Files.createTempDirectory(dst.getParent(), dst.getFileName() + ".tmp");
+            try {
+                exporter.export(tmp);
+                long size = sizeOf(tmp);
+
+                try {
+                    Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+                    tmp = null;
+                } catch (FileSystemException e) {
+                    // created by another worker, same content
+                    // (the error can be a plain FileSystemException, e.g. "Directory not empty" on Linux)
+                    if (!Files.isDirectory(dst)) {
+                        throw e;
+                    }
+                }
+
+                l = register(dst, size);
+                if (l != null) {
+                    return l;
+                }
+            } finally {
+                if (tmp != null) {
+                    IOUtils.deleteRecursively(tmp);
+                }
+            }
+
+            // the other worker's snapshot was removed before it could be leased, export again
+            if (attempt > 0) {
+                throw new IOException("Snapshot was removed concurrently: " + dst);
+            }
+        }
+    }
+
+    /**
+     * Removes the expired snapshots and, if the cache is too big, the least
+     * recently used ones.
+     */
+    public void cleanup() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        List<Map.Entry<Path, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+        int removed = 0;
+        for (Map.Entry<Path, Entry> c : candidates) {
+            boolean expired = maxAge > 0 && now - c.getValue().lastAccess > maxAge;
+            if (!expired && totalSize.get() <= maxSize) {
+                break;
+            }
+
+            if (remove(c.getKey(), c.getValue())) {
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            log.info("cleanup -> {} snapshot(s) removed, {} byte(s) cached", removed, totalSize.get());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("hits", hits.get());
+        m.put("misses", misses.get());
+        m.put("evictions", evictions.get());
+        m.put("count", entries.size());
+        m.put("size", totalSize.get());
+        return m;
+    }
+
+    private synchronized Lease tryAcquire(Path p) {
+        Entry e = entries.get(p);
+        if (e == null) {
+            return null;
+        }
+
+        e.refs++;
+        e.lastAccess = System.currentTimeMillis();
+        touch(p, e.lastAccess);
+
+        return new Lease(p, e);
+    }
+
+    /**
+     * Adds the snapshot, if it's not added yet, and leases it. Both happen
+     * under the same lock as the removal, so a new snapshot can't be removed
+     * before it is leased, even if it is larger than {@code maxSize}.
+     *
+     * @return {@code null} if the snapshot was removed already
+     */
+    private synchronized Lease register(Path p, long size) {
+        Entry e = entries.get(p);
+        if (e == null) {
+            if (!Files.isDirectory(p)) {
+                return null;
+            }
+
+            e = new Entry(size, System.currentTimeMillis());
+            entries.put(p, e);
+            totalSize.addAndGet(size);
+        }
+
+        e.refs++;
+        e.lastAccess = System.currentTimeMillis();
+        touch(p, e.lastAccess);
+
+        return new Lease(p, e);
+    }
+
+    private synchronized void release(Entry e) {
+        e.refs--;
+    }
+
+    private boolean remove(Path p, Entry e) {
+        Path tmp;
+        synchronized (this) {
+            if (e.refs > 0 || !entries.remove(p, e)) {
+                return false;
+            }
+
+            tmp = p.resolveSibling(p.getFileName() + ".tmp" + System.nanoTime());
+            try {
+                Files.move(p, tmp, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                log.warn("cleanup ['{}'] -> move error: {}", p, ex.getMessage());
+                tmp = null;
+            }
+
+            totalSize.addAndGet(-e.size);
+            evictions.incrementAndGet();
+        }
+
+        if (tmp != null) {
+            try {
+                IOUtils.deleteRecursively(tmp);
+            } catch (IOException ex) {
+                log.warn("cleanup ['{}'] -> delete error: {}", p, ex.getMessage());
+            }
+        }
+
+        return true;
+    }
+
+    private Path path(String repoUrl, String commitId, String repoPath) {
+        if (!isCacheable(commitId)) {
+            throw new IllegalArgumentException("Invalid commit ID: " + commitId);
+        }
+
+        String name = commitId;
+        if (repoPath != null && !repoPath.isEmpty()) {
+            name = name + "-" + Hashing.sha256().hashString(repoPath, StandardCharsets.UTF_8).toString().substring(0, 16);
+        }
+
+        return snapshotDir.resolve(URLEncoder.encode(repoUrl, StandardCharsets.UTF_8)).resolve(name);
+    }
+
+    private void load() {
+        try (Stream<Path> repos = Files.list(snapshotDir)) {
+            for (Path repo : (Iterable<Path>) repos::iterator) {
+                if (!Files.isDirectory(repo)) {
+                    continue;
+                }
+
+                try (Stream<Path> snapshots = Files.list(repo)) {
+                    for (Path s : (Iterable<Path>) snapshots::iterator) {
+                        if (s.getFileName().toString().contains(".tmp")) {
+                            // leftovers of an interrupted export or removal
+                            IOUtils.deleteRecursively(s);
+                            continue;
+                        }
+
+                        long size = sizeOf(s);
+                        entries.put(s, new Entry(size, Files.getLastModifiedTime(s).toMillis()));
+                        totalSize.addAndGet(size);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("load -> error while reading {}: {}", snapshotDir, e.getMessage());
+        }
+    }
+
+    private static void touch(Path p, long t) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(t));
+        } catch (IOException e) {
+            log.warn("touch ['{}'] -> error: {}", p, e.getMessage());
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        AtomicLong result = new AtomicLong();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                result.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result.get();
+    }
+
+    public interface Exporter {
+
+        void export(Path dst) throws IOException;
+    }
+
+    public final class Lease implements AutoCloseable {
+
+        private final Path path;
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Path path, Entry entry) {
+            this.path = path;
+            this.entry = entry;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(entry);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private volatile long lastAccess;
+        private int refs;
+
+        private Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the process state files (typically large ones, e.g. attachments)
+ * by their SHA-256 hash, so the same files are not downloaded again.
+ * The least recently used files are removed when the cache exceeds
+ * its maximum size.
+ */
+public class StateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(StateCache.class);
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path cacheDir;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    @Inject
+    public StateCache(AgentConfiguration cfg) {
+        this.cacheDir = cfg.getStateCacheDir();
+        this.maxSize = cfg.getStateCacheMaxSize();
+
+        if (isEnabled()) {
+            size.set(listFiles().stream().mapToLong(StateCache::sizeOf).sum());
+            log.info("init -> using {}, {} byte(s) cached", cacheDir, size.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return the cached file or {@code null}
+     */
+    public Path get(String hash) {
+        if (!isEnabled() || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+
+        Path p = cacheDir.resolve(hash);
+        try {
+            // mark as recently used
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            return p;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("get ['{}'] -> error: {}", hash, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds a copy of the file to the cache. The file is ignored if its content
+     * doesn't match the hash.
+     */
+    public void put(String hash, Path src) {
+        if (!isEnabled() || !HASH_PATTERN.matcher(hash).matches()) {
+            return;
+        }
+
+        Path dst = cacheDir.resolve(hash);
+        if (Files.exists(dst)) {
+            return;
+        }
+
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(cacheDir, hash, ".tmp");
+
+            String actualHash;
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 HashingOutputStream hashing = new HashingOutputStream(Hashing.sha256(), out)) {
+                Files.copy(src, hashing);
+                actualHash = hashing.hash().toString();
+            }
+
+            if (!actualHash.equals(hash)) {
+                log.warn("put ['{}'] -> hash mismatch ({}), skipping", hash, actualHash);
+                return;
+            }
+
+            long n = Files.size(tmp);
+            Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+
+            if (size.addAndGet(n) > maxSize) {
+                evict();
+            }
+        } catch (FileAlreadyExistsException e) {
+            // added concurrently
+        } catch (IOException e) {
+            log.warn("put ['{}'] -> error: {}", hash, e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.warn("put ['{}'] -> can't remove {}: {}", hash, tmp, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized void evict() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+
+        List<Path> files = listFiles();
+        files.sort(Comparator.comparingLong(StateCache::lastModified));
+
+        // free some extra space to avoid running this too often
+        long target = maxSize * 9 / 10;
+        for (Path p : files) {
+            if (size.get() <= target) {
+                break;
+            }
+
+            long n = sizeOf(p);
+            try {
+                if (Files.deleteIfExists(p)) {
+                    size.addAndGet(-n);
+                }
+            } catch (IOException e) {
+                log.warn("evict -> can't remove {}: {}", p, e.getMessage());
+            }
+        }
+
+        log.info("evict -> done, {} byte(s) cached", size.get());
+    }
+
+    private List<Path> listFiles() {
+        try (Stream<Path> s = Files.list(cacheDir)) {
+            List<Path> result = new ArrayList<>();
+            s.filter(p -> HASH_PATTERN.matcher(p.getFileName().toString()).matches())
+                    .forEach(result::add);
+            return result;
+        } catch (IOException e) {
+            log.warn("listFiles -> error: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -20,7 +20,12 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import java.nio.file.Path;
+
 public interface StateFetcher {
 
-    void downloadState(JobRequest jobRequest) throws Exception;
+    /**
+     * Downloads the process state and unpacks it into the specified directory.
+     */
+    void downloadState(JobRequest jobRequest, Path dst) throws Exception;
 }
@@ -32,9 +32,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.io.IOException;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Worker implements Runnable {
 
@@ -48,6 +51,8 @@ public class Worker implements Runnable {
     private final ProcessStatusUpdater processStatusUpdater;
     private final ProcessLog processLog;
     private final JobRequest jobRequest;
+    private final JobPreparationExecutor preparationExecutor;
+    private final boolean parallelPreparation;
 
     private JobInstance jobInstance;
 
@@ -59,7 +64,9 @@ public class Worker implements Runnable {
                   StateFetcher stateFetcher,
                   ProcessStatusUpdater processStatusUpdater,
                   ProcessLog processLog,
-                  JobRequest jobRequest) {
+                  JobRequest jobRequest,
+                  JobPreparationExecutor preparationExecutor,
+                  boolean parallelPreparation) {
 
         this.repositoryManager = repositoryManager;
         this.importManager = importManager;
@@ -69,6 +76,8 @@ public class Worker implements Runnable {
         this.processStatusUpdater = processStatusUpdater;
         this.processLog = processLog;
         this.jobRequest = jobRequest;
+        this.preparationExecutor = preparationExecutor;
+        this.parallelPreparation = parallelPreparation;
     }
 
     @Override
@@ -77,12 +86,17 @@ public class Worker implements Runnable {
         UUID instanceId = jobRequest.getInstanceId();
 
         try {
-            // fetch the git repo's data...
-            fetchRepo(jobRequest);
-            // ...and process imports
-            processImports(jobRequest);
-            // ...and download the saved process state from the server
-            downloadState(jobRequest);
+            long t1 = System.currentTimeMillis();
+
+            if (parallelPreparation) {
+                prepareParallel(jobRequest);
+            } else {
+                prepareSequential(jobRequest);
+            }
+
+            long dt = System.currentTimeMillis() - t1;
+            preparationExecutor.record("total", dt);
+            processLog.info("Process preparation took {}ms", dt);
 
             // load the process' configuration
             ConfiguredJobRequest configuredJobRequest = ConfiguredJobRequest.from(jobRequest);
@@ -141,6 +155,93 @@ public class Worker implements Runnable {
         }
     }
 
+    private void prepareSequential(JobRequest r) throws Exception {
+        // fetch the git repo's data...
+        preparationExecutor.run("repository", () -> fetchRepo(r));
+        // ...and process imports
+        preparationExecutor.run("imports", () -> processImports(r));
+        // ...and download the saved process state from the server
+        preparationExecutor.run("state", () -> downloadState(r, r.getPayloadDir()));
+    }
+
+    /**
+     * Exports the repository (followed by the imports) while the process
+     * state is downloaded into a separate directory. The job's dependencies
+     * are prepared as soon as the state is available. The state is moved
+     * into the payload directory last, so it overwrites the repository files
+     * the same way as in {@link #prepareSequential(JobRequest)}.
+     */
+    private void prepareParallel(JobRequest r) throws Exception {
+        Path stateDir = IOUtils.createTempDir(r.getPayloadDir().getParent(), "state");
+        try {
+            CompletableFuture<Long> repo = preparationExecutor.submit("repository", () -> fetchRepo(r));
+            CompletableFuture<Long> imports = repo.thenCompose(dt -> preparationExecutor.submit("imports", () -> processImports(r)));
+            CompletableFuture<Long> state = preparationExecutor.submit("state", () -> downloadState(r, stateDir));
+            CompletableFuture<Long> deps = state.thenCompose(dt -> preparationExecutor.submit("dependencies", () -> executor.prepare(r, stateDir)));
+
+            // wait for all stages to finish, even if some of them failed
+            CompletableFuture.allOf(imports, state, deps)
+                    .exceptionally(t -> null)
+                    .join();
+
+            await(imports);
+            await(state);
+
+            try {
+                deps.join();
+            } catch (CompletionException e) {
+                // not critical, the dependencies are resolved again before the start
+                // (a dependency policy violation is reported again by the executor)
+                log.warn("prepareParallel ['{}'] -> error while preparing the dependencies: {}", r.getInstanceId(), e.getCause().getMessage());
+            }
+
+            moveState(stateDir, r.getPayloadDir());
+        } finally {
+            try {
+                IOUtils.deleteRecursively(stateDir);
+            } catch (IOException e) {
+                log.warn("prepareParallel ['{}'] -> can't remove the state directory: {}", r.getInstanceId(), e.getMessage());
+            }
+        }
+    }
+
+    private static void await(CompletableFuture<?> f) throws Exception {
+        try {
+            f.join();
+        } catch (CompletionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw e;
+        }
+    }
+
+    private static void moveState(Path src, Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path p = dst.resolve(src.relativize(dir));
+                if (!Files.isDirectory(p)) {
+                    Files.deleteIfExists(p);
+                    Files.createDirectories(p);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path p = dst.resolve(src.relativize(file));
+                if (Files.isDirectory(p)) {
+                    IOUtils.deleteRecursively(p);
+                }
+                Files.move(file, p, StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
     private void fetchRepo(JobRequest r) throws Exception {
         if (r.getRepoUrl() == null || r.getCommitId() == null) {
             return;
@@ -179,12 +280,12 @@ public class Worker implements Runnable {
                 .build();
     }
 
-    private void downloadState(JobRequest r) throws Exception {
+    private void downloadState(JobRequest r, Path dst) throws Exception {
         processLog.info("Downloading the process state...");
 
         long dt;
         try {
-            dt = withTimer(() -> stateFetcher.downloadState(r));
+            dt = withTimer(() -> stateFetcher.downloadState(r, dst));
         } catch (Exception e) {
             processLog.error("State download error: {}", e.getMessage());
             throw e;
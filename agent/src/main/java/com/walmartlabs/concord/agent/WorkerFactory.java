@@ -20,6 +20,7 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.agent.executors.JobExecutor;
 import com.walmartlabs.concord.agent.executors.JobExecutorFactory;
 import com.walmartlabs.concord.agent.guice.AgentImportManager;
@@ -36,6 +37,8 @@ public class WorkerFactory {
     private final StateFetcher stateFetcher;
     private final ProcessStatusUpdater statusUpdater;
     private final ProcessLog processLog;
+    private final JobPreparationExecutor preparationExecutor;
+    private final boolean parallelPreparation;
 
     @Inject
     public WorkerFactory(RepositoryManager repositoryManager,
@@ -43,7 +46,9 @@ public class WorkerFactory {
                          JobExecutorFactory jobExecutorFactory,
                          StateFetcher stateFetcher,
                          ProcessStatusUpdater statusUpdater,
-                         ProcessLog processLog) {
+                         ProcessLog processLog,
+                         JobPreparationExecutor preparationExecutor,
+                         AgentConfiguration agentCfg) {
 
         this.repositoryManager = repositoryManager;
         this.importManager = importManager;
@@ -51,11 +56,13 @@ public class WorkerFactory {
         this.stateFetcher = stateFetcher;
         this.statusUpdater = statusUpdater;
         this.processLog = processLog;
+        this.preparationExecutor = preparationExecutor;
+        this.parallelPreparation = agentCfg.isParallelJobPreparation();
     }
 
     public Worker create(JobRequest jobRequest, Worker.CompletionCallback completionCallback) {
         JobExecutor executor = jobExecutorFactory.create(jobRequest.getType());
 
-        return new Worker(repositoryManager, importManager, executor, completionCallback, stateFetcher, statusUpdater, processLog, jobRequest);
+        return new Worker(repositoryManager, importManager, executor, completionCallback, stateFetcher, statusUpdater, processLog, jobRequest, preparationExecutor, parallelPreparation);
     }
 }
@@ -53,12 +53,26 @@ public class AgentConfiguration {
 
     private final Path logDir;
     private final long logMaxDelay;
+    private final int logShippingBatchSize;
+    private final long logShippingFlushInterval;
+    private final long logShippingMaxQueueSize;
+    private final long logShippingMaxSpoolSize;
+    private final boolean logShippingCompress;
 
     private final int workersCount;
+    private final int maxSlotsPerRequest;
     private final long pollInterval;
     private final String maintenanceModeListenerHost;
     private final int maintenanceModeListenerPort;
 
+    private final boolean parallelJobPreparation;
+
+    private final boolean stateStreaming;
+    private final Path stateCacheDir;
+    private final long stateCacheMaxSize;
+    private final int stateWriterThreads;
+    private final int stateMaxResumeAttempts;
+
     private final boolean explicitlyResolveV1Client;
     private final boolean mavenOfflineMode;
 
@@ -81,13 +95,27 @@ public class AgentConfiguration {
 
         this.logDir = getOrCreatePath(cfg, "logDir");
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
+        this.logShippingBatchSize = cfg.getInt("logShipping.batchSize");
+        this.logShippingFlushInterval = cfg.getDuration("logShipping.flushInterval", TimeUnit.MILLISECONDS);
+        this.logShippingMaxQueueSize = cfg.getLong("logShipping.maxQueueSize");
+        this.logShippingMaxSpoolSize = cfg.getLong("logShipping.maxSpoolSize");
+        this.logShippingCompress = cfg.getBoolean("logShipping.compress");
 
         this.workersCount = cfg.getInt("workersCount");
+        this.maxSlotsPerRequest = cfg.getInt("maxSlotsPerRequest");
         this.maintenanceModeListenerHost = cfg.getString("maintenanceModeListenerHost");
         this.maintenanceModeListenerPort = cfg.getInt("maintenanceModeListenerPort");
 
         this.pollInterval = cfg.getDuration("pollInterval", TimeUnit.MILLISECONDS);
 
+        this.parallelJobPreparation = cfg.getBoolean("parallelJobPreparation");
+
+        this.stateStreaming = cfg.getBoolean("stateDownload.streaming");
+        this.stateCacheDir = getOrCreatePath(cfg, "stateDownload.cacheDir");
+        this.stateCacheMaxSize = cfg.getBytes("stateDownload.cacheMaxSize");
+        this.stateWriterThreads = cfg.getInt("stateDownload.writerThreads");
+        this.stateMaxResumeAttempts = cfg.getInt("stateDownload.maxResumeAttempts");
+
         this.explicitlyResolveV1Client = cfg.getBoolean("explicitlyResolveV1Client");
         this.mavenOfflineMode = cfg.getBoolean("mavenOfflineMode");
     }
@@ -136,10 +164,34 @@ public class AgentConfiguration {
         return logMaxDelay;
     }
 
+    public int getLogShippingBatchSize() {
+        return logShippingBatchSize;
+    }
+
+    public long getLogShippingFlushInterval() {
+        return logShippingFlushInterval;
+    }
+
+    public long getLogShippingMaxQueueSize() {
+        return logShippingMaxQueueSize;
+    }
+
+    public long getLogShippingMaxSpoolSize() {
+        return logShippingMaxSpoolSize;
+    }
+
+    public boolean isLogShippingCompress() {
+        return logShippingCompress;
+    }
+
     public int getWorkersCount() {
         return workersCount;
     }
 
+    public int getMaxSlotsPerRequest() {
+        return maxSlotsPerRequest;
+    }
+
     public long getPollInterval() {
         return pollInterval;
     }
@@ -152,6 +204,30 @@ public class AgentConfiguration {
         return maintenanceModeListenerPort;
     }
 
+    public boolean isParallelJobPreparation() {
+        return parallelJobPreparation;
+    }
+
+    public boolean isStateStreaming() {
+        return stateStreaming;
+    }
+
+    public Path getStateCacheDir() {
+        return stateCacheDir;
+    }
+
+    public long getStateCacheMaxSize() {
+        return stateCacheMaxSize;
+    }
+
+    public int getStateWriterThreads() {
+        return stateWriterThreads;
+    }
+
+    public int getStateMaxResumeAttempts() {
+        return stateMaxResumeAttempts;
+    }
+
     public boolean isExplicitlyResolveV1Client() {
         return explicitlyResolveV1Client;
     }
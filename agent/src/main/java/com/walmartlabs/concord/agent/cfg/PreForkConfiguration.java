@@ -30,12 +30,18 @@ public class PreForkConfiguration {
     private final boolean enabled;
     private final long maxAge;
     private final int maxCount;
+    private final int maxPerSignature;
+    private final long leadTime;
+    private final long demandWindow;
 
     @Inject
     public PreForkConfiguration(Config cfg) {
         this.enabled = cfg.getBoolean("prefork.enabled");
         this.maxAge = cfg.getDuration("prefork.maxAge", TimeUnit.MILLISECONDS);
         this.maxCount = cfg.getInt("prefork.maxCount");
+        this.maxPerSignature = cfg.getInt("prefork.maxPerSignature");
+        this.leadTime = cfg.getDuration("prefork.leadTime", TimeUnit.MILLISECONDS);
+        this.demandWindow = cfg.getDuration("prefork.demandWindow", TimeUnit.MILLISECONDS);
     }
 
     public boolean isEnabled() {
@@ -49,4 +55,16 @@ public class PreForkConfiguration {
     public int getMaxCount() {
         return maxCount;
     }
+
+    public int getMaxPerSignature() {
+        return maxPerSignature;
+    }
+
+    public long getLeadTime() {
+        return leadTime;
+    }
+
+    public long getDemandWindow() {
+        return demandWindow;
+    }
 }
@@ -35,6 +35,8 @@ public class RepositoryCacheConfiguration {
     private final int lockCount;
     private final Duration maxAge;
     private final Path infoDir;
+    private final Path snapshotDir;
+    private final long snapshotMaxSize;
 
     @Inject
     public RepositoryCacheConfiguration(Config cfg) {
@@ -43,6 +45,8 @@ public class RepositoryCacheConfiguration {
         this.lockCount = cfg.getInt("repositoryCache.lockCount");
         this.maxAge = cfg.getDuration("repositoryCache.maxAge");
         this.infoDir = getOrCreatePath(cfg, "repositoryCache.cacheInfoDir");
+        this.snapshotDir = getOrCreatePath(cfg, "repositoryCache.snapshots.dir");
+        this.snapshotMaxSize = cfg.getBytes("repositoryCache.snapshots.maxSize");
     }
 
     public Path getCacheDir() {
@@ -64,4 +68,12 @@ public class RepositoryCacheConfiguration {
     public Path getInfoDir() {
         return infoDir;
     }
+
+    public Path getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public long getSnapshotMaxSize() {
+        return snapshotMaxSize;
+    }
 }
@@ -21,14 +21,28 @@ package com.walmartlabs.concord.agent.cfg;
  */
 
 import com.typesafe.config.Config;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecorderConfiguration;
 
 import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
 
 public class RunnerV2Configuration extends AbstractRunnerConfiguration {
 
+    private final EventRecorderConfiguration eventRecorder;
+
     @Inject
     public RunnerV2Configuration(Config cfg) {
         super("runnerV2", cfg);
+
+        this.eventRecorder = EventRecorderConfiguration.builder()
+                .batchSize(cfg.getInt("runnerV2.eventRecorder.batchSize"))
+                .batchFlushInterval(cfg.getDuration("runnerV2.eventRecorder.batchFlushInterval", TimeUnit.MILLISECONDS))
+                .maxBufferSize(cfg.getInt("runnerV2.eventRecorder.maxBufferSize"))
+                .build();
+    }
+
+    public EventRecorderConfiguration getEventRecorder() {
+        return eventRecorder;
     }
 
     @Override
@@ -22,8 +22,21 @@ package com.walmartlabs.concord.agent.executors;
 
 import com.walmartlabs.concord.agent.ConfiguredJobRequest;
 import com.walmartlabs.concord.agent.JobInstance;
+import com.walmartlabs.concord.agent.JobRequest;
+
+import java.nio.file.Path;
 
 public interface JobExecutor {
 
     JobInstance exec(ConfiguredJobRequest jobRequest) throws Exception;
+
+    /**
+     * Prepares the job (e.g. downloads its dependencies) while the rest
+     * of the payload is still being fetched. Optional, {@link #exec(ConfiguredJobRequest)}
+     * must work without it.
+     *
+     * @param stateDir the directory with the process state
+     */
+    default void prepare(JobRequest jobRequest, Path stateDir) throws Exception {
+    }
 }
@@ -21,20 +21,24 @@ package com.walmartlabs.concord.agent.executors;
  */
 
 import com.walmartlabs.concord.agent.ConfiguredJobRequest;
+import com.walmartlabs.concord.agent.JobInstance;
 import com.walmartlabs.concord.agent.JobRequest;
 import com.walmartlabs.concord.agent.cfg.*;
 import com.walmartlabs.concord.agent.executors.runner.DefaultDependencies;
+import com.walmartlabs.concord.agent.executors.runner.JobDependencyResolver;
 import com.walmartlabs.concord.agent.executors.runner.ProcessPool;
 import com.walmartlabs.concord.agent.executors.runner.RunnerJobExecutor;
 import com.walmartlabs.concord.agent.logging.ProcessLog;
 import com.walmartlabs.concord.agent.logging.ProcessLogFactory;
 import com.walmartlabs.concord.agent.remote.AttachmentsUploader;
 import com.walmartlabs.concord.dependencymanager.DependencyManager;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecorderConfiguration;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.sdk.MapUtils;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -96,44 +100,61 @@ public class JobExecutorFactory {
             throw new RuntimeException("Unsupported job type: " + jobType);
         }
 
-        return jobRequest -> {
-            AbstractRunnerConfiguration runnerCfg = runnerV1Cfg;
+        // one instance per job, so the dependencies resolved by prepare() can be used by exec()
+        JobDependencyResolver dependencyResolver = new JobDependencyResolver(dependencyManager, defaultDependencies, agentCfg.getDependencyResolveTimeout(), executor);
 
-            boolean segmentedLogs = false;
-            if (isV2(jobRequest)) {
-                runnerCfg = runnerV2Cfg;
-                segmentedLogs = true;
+        return new JobExecutor() {
+
+            @Override
+            public JobInstance exec(ConfiguredJobRequest jobRequest) throws Exception {
+                return createRunnerExecutor(jobRequest, dependencyResolver).exec(jobRequest);
             }
 
-            processLog.info("Runtime: {}", runnerCfg.getRuntimeName());
-
-            RunnerJobExecutor.RunnerJobExecutorConfiguration runnerExecutorCfg = RunnerJobExecutor.RunnerJobExecutorConfiguration.builder()
-                    .agentId(agentCfg.getAgentId())
-                    .serverApiBaseUrl(serverCfg.getApiBaseUrl())
-                    .javaCmd(runnerCfg.getJavaCmd())
-                    .jvmParams(runnerCfg.getJvmParams())
-                    .dependencyListDir(agentCfg.getDependencyListsDir())
-                    .dependencyCacheDir(agentCfg.getDependencyCacheDir())
-                    .dependencyResolveTimeout(agentCfg.getDependencyResolveTimeout())
-                    .workDirBase(agentCfg.getWorkDirBase())
-                    .runnerPath(runnerCfg.getPath())
-                    .runnerCfgDir(runnerCfg.getCfgDir())
-                    .runnerSecurityManagerEnabled(runnerCfg.isSecurityManagerEnabled())
-                    .runnerMainClass(runnerCfg.getMainClass())
-                    .extraDockerVolumes(dockerCfg.getExtraVolumes())
-                    .exposeDockerDaemon(dockerCfg.exposeDockerDaemon())
-                    .maxHeartbeatInterval(serverCfg.getMaxNoHeartbeatInterval())
-                    .segmentedLogs(segmentedLogs)
-                    .persistentWorkDir(runnerCfg.getPersistentWorkDir())
-                    .preforkEnabled(preForkCfg.isEnabled())
-                    .cleanRunnerDescendants(runnerCfg.getCleanRunnerDescendants())
-                    .build();
-
-            JobExecutor delegate = new RunnerJobExecutor(runnerExecutorCfg, dependencyManager, defaultDependencies, attachmentsUploader, processPool, processLogFactory, executor);
-            return delegate.exec(jobRequest);
+            @Override
+            public void prepare(JobRequest jobRequest, Path stateDir) throws Exception {
+                dependencyResolver.prepare(stateDir, processLog);
+            }
         };
     }
 
+    private RunnerJobExecutor createRunnerExecutor(ConfiguredJobRequest jobRequest, JobDependencyResolver dependencyResolver) {
+        AbstractRunnerConfiguration runnerCfg = runnerV1Cfg;
+
+        boolean segmentedLogs = false;
+        EventRecorderConfiguration eventRecorderCfg = null;
+        if (isV2(jobRequest)) {
+            runnerCfg = runnerV2Cfg;
+            segmentedLogs = true;
+            eventRecorderCfg = runnerV2Cfg.getEventRecorder();
+        }
+
+        processLog.info("Runtime: {}", runnerCfg.getRuntimeName());
+
+        RunnerJobExecutor.RunnerJobExecutorConfiguration runnerExecutorCfg = RunnerJobExecutor.RunnerJobExecutorConfiguration.builder()
+                .agentId(agentCfg.getAgentId())
+                .serverApiBaseUrl(serverCfg.getApiBaseUrl())
+                .javaCmd(runnerCfg.getJavaCmd())
+                .jvmParams(runnerCfg.getJvmParams())
+                .dependencyListDir(agentCfg.getDependencyListsDir())
+                .dependencyCacheDir(agentCfg.getDependencyCacheDir())
+                .workDirBase(agentCfg.getWorkDirBase())
+                .runnerPath(runnerCfg.getPath())
+                .runnerCfgDir(runnerCfg.getCfgDir())
+                .runnerSecurityManagerEnabled(runnerCfg.isSecurityManagerEnabled())
+                .runnerMainClass(runnerCfg.getMainClass())
+                .extraDockerVolumes(dockerCfg.getExtraVolumes())
+                .exposeDockerDaemon(dockerCfg.exposeDockerDaemon())
+                .maxHeartbeatInterval(serverCfg.getMaxNoHeartbeatInterval())
+                .segmentedLogs(segmentedLogs)
+                .persistentWorkDir(runnerCfg.getPersistentWorkDir())
+                .preforkEnabled(preForkCfg.isEnabled())
+                .cleanRunnerDescendants(runnerCfg.getCleanRunnerDescendants())
+                .eventRecorder(eventRecorderCfg)
+                .build();
+
+        return new RunnerJobExecutor(runnerExecutorCfg, dependencyResolver, attachmentsUploader, processPool, processLogFactory, executor);
+    }
+
     private static boolean isV2(ConfiguredJobRequest req) {
         Map<String, Object> m = req.getProcessCfg();
         String s = MapUtils.getString(m, Constants.Request.RUNTIME_KEY, "concord-v1"); // TODO constants
@@ -21,6 +21,7 @@ package com.walmartlabs.concord.agent.executors.runner;
  */
 
 import com.walmartlabs.concord.agent.ExecutionException;
+import com.walmartlabs.concord.agent.logging.ProcessLog;
 import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.sdk.Constants;
 import org.slf4j.Logger;
@@ -42,20 +43,28 @@ public final class JobDependencies {
     private static final Logger log = LoggerFactory.getLogger(JobDependencies.class);
 
     public static Collection<URI> get(RunnerJob job) throws ExecutionException {
-        Collection<URI> uris = getDependencyUris(job);
+        return get(job.getProcessCfg(), job.getPayloadDir(), job.getPolicyEngine(), job.getLog());
+    }
+
+    /**
+     * @param payloadDir directory with the process' system files (e.g. the default dependency versions)
+     * @param processLog used to report warnings, can be {@code null}
+     */
+    public static Collection<URI> get(Map<String, Object> processCfg, Path payloadDir, PolicyEngine policyEngine, ProcessLog processLog) throws ExecutionException {
+        Collection<URI> uris = getDependencyUris(processCfg);
         if (uris.isEmpty()) {
             return Collections.emptyList();
         }
 
-        Map<String, String> versions = getDependencyVersions(job);
+        Map<String, String> versions = getDependencyVersions(payloadDir, policyEngine);
         if (versions.isEmpty()) {
             return uris;
         }
 
-        return updateVersions(job, uris, versions);
+        return updateVersions(processLog, uris, versions);
     }
 
-    private static Collection<URI> updateVersions(RunnerJob job, Collection<URI> uris, Map<String, String> versions) {
+    private static Collection<URI> updateVersions(ProcessLog processLog, Collection<URI> uris, Map<String, String> versions) {
         List<URI> result = new ArrayList<>();
         for (URI item : uris) {
             String scheme = item.getScheme();
@@ -65,8 +74,8 @@ public final class JobDependencies {
                     String version = versions.get(idv.id);
                     if (version != null) {
                         item = URI.create(MAVEN_SCHEME + "://" + idv.id + ":" + assertVersion(idv.id, versions));
-                    } else {
-                        job.getLog().warn("Can't determine the version of {}, using as-is...", item);
+                    } else if (processLog != null) {
+                        processLog.warn("Can't determine the version of {}, using as-is...", item);
                     }
                 }
             }
@@ -78,10 +87,9 @@ public final class JobDependencies {
     }
 
     @SuppressWarnings("unchecked")
-    private static Collection<URI> getDependencyUris(RunnerJob job) throws ExecutionException {
+    private static Collection<URI> getDependencyUris(Map<String, Object> processCfg) throws ExecutionException {
         try {
-            Map<String, Object> m = job.getProcessCfg();
-            Collection<String> deps = (Collection<String>) m.get(Constants.Request.DEPENDENCIES_KEY);
+            Collection<String> deps = (Collection<String>) processCfg.get(Constants.Request.DEPENDENCIES_KEY);
             return normalizeUrls(deps);
         } catch (URISyntaxException | IOException e) {
             throw new ExecutionException("Error while reading the list of dependencies: " + e.getMessage(), e);
@@ -149,10 +157,9 @@ public final class JobDependencies {
         return result;
     }
 
-    private static Map<String, String> getDependencyVersions(RunnerJob job) throws ExecutionException {
-        Map<String, String> result = getDependencyVersionsFromFile(job);
+    private static Map<String, String> getDependencyVersions(Path payloadDir, PolicyEngine pe) throws ExecutionException {
+        Map<String, String> result = getDependencyVersionsFromFile(payloadDir);
 
-        PolicyEngine pe = job.getPolicyEngine();
         if (pe != null) {
             result = new HashMap<>(result); // make mutable
             result.putAll(pe.getDefaultDependencyVersionsPolicy().get().stream()
@@ -163,9 +170,8 @@ public final class JobDependencies {
         return result;
     }
 
-    private static Map<String, String> getDependencyVersionsFromFile(RunnerJob job) throws ExecutionException {
-        Path workDir = job.getPayloadDir();
-        Path pluginsFile = workDir.resolve(Constants.Files.CONCORD_SYSTEM_DIR_NAME)
+    private static Map<String, String> getDependencyVersionsFromFile(Path payloadDir) throws ExecutionException {
+        Path pluginsFile = payloadDir.resolve(Constants.Files.CONCORD_SYSTEM_DIR_NAME)
                 .resolve(Constants.Files.DEPENDENCY_VERSIONS_FILE_NAME);
 
         if (!Files.exists(pluginsFile)) {
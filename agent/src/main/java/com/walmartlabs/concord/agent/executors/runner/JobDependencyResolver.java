@@ -0,0 +1,219 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.ExecutionException;
+import com.walmartlabs.concord.agent.logging.ProcessLog;
+import com.walmartlabs.concord.dependencymanager.DependencyEntity;
+import com.walmartlabs.concord.dependencymanager.DependencyManager;
+import com.walmartlabs.concord.dependencymanager.ProgressListener;
+import com.walmartlabs.concord.policyengine.CheckResult;
+import com.walmartlabs.concord.policyengine.DependencyRule;
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the job's dependencies: applies the dependency rewrite policy,
+ * downloads the dependencies and checks them against the dependency policy.
+ * <p>
+ * The dependencies can be resolved in advance using the process state,
+ * see {@link #prepare(Path, ProcessLog)}. An instance is used for a single job.
+ */
+public class JobDependencyResolver {
+
+    private final DependencyManager dependencyManager;
+    private final DefaultDependencies defaultDependencies;
+    private final Duration resolveTimeout;
+    private final ExecutorService executor;
+
+    private volatile Prepared prepared;
+
+    public JobDependencyResolver(DependencyManager dependencyManager,
+                                 DefaultDependencies defaultDependencies,
+                                 Duration resolveTimeout,
+                                 ExecutorService executor) {
+
+        this.dependencyManager = dependencyManager;
+        this.defaultDependencies = defaultDependencies;
+        this.resolveTimeout = resolveTimeout;
+        this.executor = executor;
+    }
+
+    /**
+     * Resolves the dependencies using the process configuration and the policy
+     * from the process state. The resolved dependencies are reused by
+     * {@link #resolve(RunnerJob)} if the job's dependencies are the same.
+     *
+     * @param stateDir the directory with the process state
+     * @throws ExecutionException if the dependencies are forbidden by the dependency policy
+     */
+    public void prepare(Path stateDir, ProcessLog processLog) throws Exception {
+        Map<String, Object> processCfg = RunnerJob.readProcessCfg(stateDir);
+        PolicyEngine policyEngine = RunnerJob.readPolicyEngine(stateDir);
+        boolean debugMode = RunnerJob.debugMode(processCfg);
+
+        Collection<URI> uris = withDefaults(JobDependencies.get(processCfg, stateDir, policyEngine, null));
+
+        Result result = withResolveTimeout(() -> resolveDependencies(uris, policyEngine, processLog, debugMode));
+        prepared = new Prepared(uris, result);
+
+        // fail early, the policy is checked again by resolve()
+        validateDependencies(policyEngine, processLog, result.dependencies());
+    }
+
+    /**
+     * Resolves the job's dependencies or reuses the dependencies resolved by
+     * {@link #prepare(Path, ProcessLog)}. In both cases the dependencies are
+     * checked against the job's dependency policy.
+     *
+     * @throws ExecutionException if the dependencies are forbidden by the dependency policy
+     */
+    public Result resolve(RunnerJob job) throws Exception {
+        Collection<URI> uris = withDefaults(JobDependencies.get(job));
+
+        Prepared p = prepared;
+        prepared = null;
+
+        Result result;
+        if (p != null && p.uris().equals(uris)) {
+            result = p.result();
+        } else {
+            result = withResolveTimeout(() -> resolveDependencies(uris, job.getPolicyEngine(), job.getLog(), job.isDebugMode()));
+        }
+
+        // check the resolved dependencies against the current policy
+        validateDependencies(job.getPolicyEngine(), job.getLog(), result.dependencies());
+
+        return result;
+    }
+
+    private Collection<URI> withDefaults(Collection<URI> uris) {
+        // combine the default dependencies and the process' dependencies
+        return Stream.concat(defaultDependencies.getDependencies().stream(), uris.stream())
+                .collect(Collectors.toList());
+    }
+
+    private Result resolveDependencies(Collection<URI> uris, PolicyEngine policyEngine, ProcessLog processLog, boolean debugMode) throws Exception {
+        processLog.info("Resolving process dependencies...");
+
+        uris = rewriteDependencies(policyEngine, processLog, uris);
+
+        Collection<DependencyEntity> deps = dependencyManager.resolve(uris, new ProgressListener() {
+
+            private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+            @Override
+            public void onRetry(int retryCount, int maxRetry, long interval, String cause) {
+                synchronized (errors) {
+                    for (String error : errors) {
+                        processLog.warn(error);
+                    }
+                }
+
+                processLog.warn("Error while downloading dependencies: {}", cause);
+                processLog.info("Retrying in {}ms", interval);
+            }
+
+            @Override
+            public void onTransferFailed(String error) {
+                if (debugMode) {
+                    processLog.warn(error);
+                } else {
+                    errors.add(error);
+                }
+            }
+        });
+
+        return new Result(uris, deps);
+    }
+
+    private static Collection<URI> rewriteDependencies(PolicyEngine policyEngine, ProcessLog processLog, Collection<URI> uris) {
+        if (policyEngine == null) {
+            return uris;
+        }
+
+        return policyEngine.getDependencyRewritePolicy()
+                .rewrite(uris, (msg, from, to) -> {
+                    processLog.info("Updating dependency from '{}' to '{}'", from, to);
+                    if (msg != null) {
+                        processLog.warn(msg);
+                    }
+                });
+    }
+
+    private static void validateDependencies(PolicyEngine policyEngine, ProcessLog processLog, Collection<DependencyEntity> resolvedDepEntities) throws ExecutionException {
+        if (policyEngine == null) {
+            return;
+        }
+
+        processLog.info("Checking the dependency policy...");
+
+        CheckResult<DependencyRule, DependencyEntity> result = policyEngine.getDependencyPolicy().check(resolvedDepEntities);
+        result.getWarn().forEach(d ->
+                processLog.warn("Potentially restricted artifact '{}' (dependency policy: {})", d.getEntity(), d.getRule().msg()));
+        result.getDeny().forEach(d ->
+                processLog.warn("Artifact '{}' is forbidden by the dependency policy {}", d.getEntity(), d.getRule().msg()));
+
+        if (!result.getDeny().isEmpty()) {
+            throw new ExecutionException("Found restricted dependencies");
+        }
+    }
+
+    private <T> T withResolveTimeout(Callable<T> c) throws Exception {
+        if (resolveTimeout == null) {
+            return c.call();
+        }
+
+        Future<T> future = executor.submit(c);
+        try {
+            return future.get(resolveTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | TimeoutException e) {
+            future.cancel(true);
+            throw new RuntimeException("Timeout resolving dependencies");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param uris the dependencies after the rewrite policy was applied
+     */
+    public record Result(Collection<URI> uris, Collection<DependencyEntity> dependencies) {
+    }
+
+    private record Prepared(Collection<URI> uris, Result result) {
+    }
+}
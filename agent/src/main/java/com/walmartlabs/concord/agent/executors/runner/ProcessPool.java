@@ -32,33 +32,71 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps "pre-forked" JVMs, grouped by the process' signature (the hash of the
+ * command line, i.e. JVM parameters and the classpath).
+ * <p>
+ * The pool tracks the arrival rate of each signature and keeps enough spare
+ * JVMs to cover the arrivals expected during {@code prefork.leadTime}, up to
+ * {@code prefork.maxPerSignature}. Signatures without arrivals in the last
+ * {@code prefork.demandWindow} are not pre-warmed. When the pool is full,
+ * a spare JVM of the signature with the lowest demand per spare is replaced.
+ * <p>
+ * New JVMs are started outside of any pool-wide lock.
+ */
 public class ProcessPool {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessPool.class);
 
     private static final long CLEANUP_PERIOD = 30000;
 
+    /**
+     * Weight of the latest inter-arrival time in the moving average.
+     */
+    private static final double RATE_ALPHA = 0.3;
+
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final int maxPerSignature;
+    private final long leadTime;
+    private final long demandWindow;
+
+    private final Map<HashCode, Signature> pool = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong launches = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong warmTakeTime = new AtomicLong();
+    private final AtomicLong coldTakeTime = new AtomicLong();
+
     @Inject
     public ProcessPool(PreForkConfiguration cfg) {
         this.maxEntryAge = cfg.getMaxAge();
         this.maxEntryCount = cfg.getMaxCount();
+        this.maxPerSignature = cfg.getMaxPerSignature();
+        this.leadTime = cfg.getLeadTime();
+        this.demandWindow = cfg.getDemandWindow();
         init();
     }
 
     public void init() {
         Thread t = new Thread(() -> {
-            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}", maxEntryAge, maxEntryCount);
+            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}, max per signature {}",
+                    maxEntryAge, maxEntryCount, maxPerSignature);
 
+            long period = Math.max(1000, Math.min(CLEANUP_PERIOD, maxEntryAge / 2));
             while (!Thread.currentThread().isInterrupted()) {
-                Utils.sleep(CLEANUP_PERIOD);
+                Utils.sleep(period);
 
                 try {
                     maintenance();
@@ -72,96 +110,196 @@ public class ProcessPool {
     }
 
     public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
-        synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+        long t1 = System.currentTimeMillis();
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        Signature sig;
+        while (!(sig = pool.computeIfAbsent(hc, k -> new Signature())).arrival(t1, launcher)) {
+            // removed by the maintenance thread, use a new one
+            pool.remove(hc, sig);
+        }
 
-                log.info("take -> started a new process: {}", entry.workDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.workDir);
+        ProcessEntry entry = poll(sig);
+        if (entry == null) {
+            try {
+                entry = launcher.start();
+            } catch (IOException e) {
+                throw new ExecutionException("Error while starting a new process", e);
             }
 
-            executor.submit(() -> populate(hc, launcher));
-
-            return entry;
+            misses.incrementAndGet();
+            coldTakeTime.addAndGet(System.currentTimeMillis() - t1);
+            log.info("take -> started a new process: {}", entry.workDir);
+        } else {
+            hits.incrementAndGet();
+            warmTakeTime.addAndGet(System.currentTimeMillis() - t1);
+            log.info("take -> using a pre-forked instance: {}", entry.workDir);
         }
+
+        Signature s = sig;
+        executor.submit(() -> populate(hc, s));
+
+        return entry;
     }
 
-    private void populate(HashCode hc, ProcessLauncher launcher) {
-        synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
-            }
-
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
-                }
+    /**
+     * @return the pool's counters: hits, misses, hit rate, average take
+     * times (ms) for pre-forked ("warm") and new ("cold") JVMs, etc.
+     */
+    public Map<String, Object> getMetrics() {
+        long h = hits.get();
+        long m = misses.get();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", h);
+        result.put("misses", m);
+        result.put("hitRate", h + m > 0 ? (double) h / (h + m) : 0.0);
+        result.put("avgWarmTakeMs", h > 0 ? warmTakeTime.get() / h : 0);
+        result.put("avgColdTakeMs", m > 0 ? coldTakeTime.get() / m : 0);
+        result.put("launches", launches.get());
+        result.put("evictions", evictions.get());
+        result.put("expirations", expirations.get());
+        result.put("signatures", pool.size());
+        result.put("size", total.get());
+        return result;
+    }
+
+    private ProcessEntry poll(Signature sig) {
+        while (true) {
+            ProcessEntry e = sig.poll();
+            if (e == null) {
+                return null;
+            }
+
+            total.decrementAndGet();
+
+            if (e.process.isAlive()) {
+                return e;
+            }
+
+            log.warn("poll -> pre-forked process is not alive, skipping: {}", e.workDir);
+            cleanup(e);
+        }
+    }
 
-                // it's never null
-                assert oldest != null;
+    /**
+     * Starts new JVMs until the signature has enough spares for the expected demand.
+     */
+    private void populate(HashCode hc, Signature sig) {
+        long now = System.currentTimeMillis();
 
-                oldest.remove = true;
+        while (sig.tryLaunch(now)) {
+            if (!reserve(hc, sig, now)) {
+                sig.launching(-1);
+                return;
             }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
             try {
-                q.add(launcher.start());
+                ProcessEntry e = sig.launcher.start();
+                launches.incrementAndGet();
+                if (!sig.add(e)) {
+                    // the signature was removed while the JVM was starting
+                    total.decrementAndGet();
+                    kill(e);
+                    return;
+                }
             } catch (IOException e) {
+                total.decrementAndGet();
                 log.error("populate -> error while starting a new process", e);
+                return;
+            } finally {
+                sig.launching(-1);
             }
         }
     }
 
-    private void maintenance() {
-        List<HashCode> queuesToRemove = new ArrayList<>();
-        List<ProcessEntry> processesToKill = new ArrayList<>();
+    /**
+     * Reserves a slot in the pool, replacing a spare JVM of a less demanded
+     * signature if the pool is full.
+     */
+    private boolean reserve(HashCode hc, Signature sig, long now) {
+        while (true) {
+            int n = total.get();
+            if (n < maxEntryCount) {
+                if (total.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+                continue;
+            }
 
-        long t = System.currentTimeMillis();
+            // the pool is full, look for a spare that is less likely to be used
+            double score = sig.score(now, 1);
 
-        synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
-                        processesToKill.add(e);
-                        return true;
-                    }
-                    return false;
-                });
-
-                if (q.isEmpty()) {
-                    queuesToRemove.add(hc);
+            Signature victim = null;
+            double victimScore = score;
+            for (Map.Entry<HashCode, Signature> e : pool.entrySet()) {
+                Signature s = e.getValue();
+                if (e.getKey().equals(hc) || s.size() == 0) {
+                    continue;
                 }
-            });
 
-            for (HashCode hc : queuesToRemove) {
-                pool.remove(hc);
+                double vs = s.score(now, 0);
+                if (vs < victimScore) {
+                    victim = s;
+                    victimScore = vs;
+                }
+            }
+
+            if (victim == null) {
+                return false;
+            }
+
+            ProcessEntry e = victim.pollOldest();
+            if (e == null) {
+                // taken concurrently, try again
+                continue;
             }
+
+            evictions.incrementAndGet();
+            executor.submit(() -> kill(e));
+
+            // the victim's slot is reused
+            return true;
         }
+    }
+
+    void maintenance() {
+        List<ProcessEntry> processesToKill = new ArrayList<>();
+        List<HashCode> queuesToRemove = new ArrayList<>();
+
+        long t = System.currentTimeMillis();
+
+        pool.forEach((hc, sig) -> {
+            List<ProcessEntry> expired = sig.removeExpired(t - maxEntryAge);
+            total.addAndGet(-expired.size());
+            processesToKill.addAll(expired);
+
+            // a removed signature accepts no new arrivals or JVMs
+            if (sig.markRemoved(t)) {
+                pool.remove(hc, sig);
+                queuesToRemove.add(hc);
+            }
+        });
+
+        expirations.addAndGet(processesToKill.size());
 
         log.info("maintenance -> removed {} queues", queuesToRemove.size());
 
         for (ProcessEntry p : processesToKill) {
-            Utils.kill(p.process);
-            cleanup(p);
+            kill(p);
         }
         log.info("maintenance -> killed {} processes", processesToKill.size());
+
+        // replace the expired spares of the signatures that are still in demand
+        pool.forEach((hc, sig) -> {
+            if (sig.deficit(t) > 0) {
+                executor.submit(() -> populate(hc, sig));
+            }
+        });
+    }
+
+    private static void kill(ProcessEntry p) {
+        Utils.kill(p.process);
+        cleanup(p);
     }
 
     private static void cleanup(ProcessEntry process) {
@@ -184,8 +322,6 @@ public class ProcessPool {
         private final Process process;
         private final Path workDir;
 
-        private boolean remove = false;
-
         public ProcessEntry(Process process, Path workDir) {
             this.timestamp = System.currentTimeMillis();
             this.process = process;
@@ -200,4 +336,137 @@ public class ProcessPool {
             return workDir;
         }
     }
+
+    /**
+     * Spare JVMs and the demand statistics of a single signature.
+     */
+    private final class Signature {
+
+        private final Deque<ProcessEntry> entries = new ArrayDeque<>();
+
+        private volatile ProcessLauncher launcher;
+        private long lastArrival;
+        private double avgInterval;
+        private int launching;
+        private boolean removed;
+
+        /**
+         * @return {@code false} if the signature was removed from the pool
+         */
+        synchronized boolean arrival(long now, ProcessLauncher launcher) {
+            if (removed) {
+                return false;
+            }
+
+            this.launcher = launcher;
+
+            if (lastArrival > 0) {
+                long dt = Math.max(1, now - lastArrival);
+                avgInterval = avgInterval > 0 ? avgInterval * (1 - RATE_ALPHA) + dt * RATE_ALPHA : dt;
+            }
+            lastArrival = now;
+            return true;
+        }
+
+        /**
+         * @return the number of JVMs to start to meet the expected demand
+         */
+        synchronized int deficit(long now) {
+            return target(now) - entries.size() - launching;
+        }
+
+        /**
+         * Expected number of arrivals per spare JVM. Lower values mean the
+         * spares are less likely to be used.
+         */
+        synchronized double score(long now, int extra) {
+            return rate(now) / Math.max(1, entries.size() + launching + extra);
+        }
+
+        /**
+         * Marks a new JVM as launching if the signature needs more spares.
+         */
+        synchronized boolean tryLaunch(long now) {
+            if (removed || deficit(now) <= 0) {
+                return false;
+            }
+            launching++;
+            return true;
+        }
+
+        /**
+         * Marks the signature as removed if it has no spares, no JVMs
+         * launching and no recent arrivals.
+         */
+        synchronized boolean markRemoved(long now) {
+            if (entries.isEmpty() && launching == 0 && now - lastArrival > demandWindow) {
+                removed = true;
+            }
+            return removed;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void launching(int delta) {
+            launching += delta;
+        }
+
+        /**
+         * @return {@code false} if the signature was removed from the pool
+         */
+        synchronized boolean add(ProcessEntry e) {
+            if (removed) {
+                return false;
+            }
+            entries.addLast(e);
+            return true;
+        }
+
+        synchronized ProcessEntry poll() {
+            // use the most recently started JVM, the older ones expire first
+            return entries.pollLast();
+        }
+
+        synchronized ProcessEntry pollOldest() {
+            return entries.pollFirst();
+        }
+
+        synchronized List<ProcessEntry> removeExpired(long minTimestamp) {
+            List<ProcessEntry> result = new ArrayList<>();
+            entries.removeIf(e -> {
+                if (e.timestamp < minTimestamp) {
+                    result.add(e);
+                    return true;
+                }
+                return false;
+            });
+            return result;
+        }
+
+        /**
+         * @return arrivals per ms
+         */
+        private double rate(long now) {
+            if (lastArrival == 0 || now - lastArrival > demandWindow) {
+                return 0;
+            }
+
+            // without recent arrivals the effective rate decays
+            // a single arrival means a single spare
+            double interval = avgInterval > 0 ? Math.max(avgInterval, now - lastArrival) : Math.max(leadTime, now - lastArrival);
+            return 1.0 / Math.max(1, interval);
+        }
+
+        private int target(long now) {
+            double rate = rate(now);
+            if (rate <= 0) {
+                return 0;
+            }
+
+            int n = (int) Math.ceil(rate * leadTime);
+            return Math.max(1, Math.min(maxPerSignature, n));
+        }
+    }
 }
@@ -43,20 +43,10 @@ import java.util.UUID;
 
 public class RunnerJob {
 
-    @SuppressWarnings("unchecked")
     public static RunnerJob from(RunnerJobExecutorConfiguration runnerExecutorCfg, JobRequest jobRequest, ProcessLogFactory processLogFactory) throws ExecutionException, IOException {
-        Map<String, Object> cfg = Collections.emptyMap();
-
         Path payloadDir = jobRequest.getPayloadDir();
 
-        Path p = payloadDir.resolve(Constants.Files.CONFIGURATION_FILE_NAME);
-        if (Files.exists(p)) {
-            try (InputStream in = Files.newInputStream(p)) {
-                cfg = new ObjectMapper().readValue(in, Map.class);
-            } catch (IOException e) {
-                throw new ExecutionException("Error while reading process configuration", e);
-            }
-        }
+        Map<String, Object> cfg = readProcessCfg(payloadDir);
 
         RunnerConfiguration runnerCfg = createRunnerConfiguration(runnerExecutorCfg, cfg);
         RunnerLog log;
@@ -68,18 +58,35 @@ public class RunnerJob {
             throw new ExecutionException("Error while creating the runner's log: " + e.getMessage(), e);
         }
 
+        PolicyEngine policyEngine = readPolicyEngine(payloadDir);
+
+        return new RunnerJob(jobRequest.getInstanceId(), payloadDir, cfg, runnerCfg, log, policyEngine);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> readProcessCfg(Path payloadDir) throws ExecutionException {
+        Path p = payloadDir.resolve(Constants.Files.CONFIGURATION_FILE_NAME);
+        if (!Files.exists(p)) {
+            return Collections.emptyMap();
+        }
+
+        try (InputStream in = Files.newInputStream(p)) {
+            return new ObjectMapper().readValue(in, Map.class);
+        } catch (IOException e) {
+            throw new ExecutionException("Error while reading process configuration", e);
+        }
+    }
+
+    static PolicyEngine readPolicyEngine(Path payloadDir) throws IOException {
         Path policyFile = payloadDir.resolve(Constants.Files.CONCORD_SYSTEM_DIR_NAME)
                 .resolve(Constants.Files.POLICY_FILE_NAME);
 
-        PolicyEngine policyEngine = null;
-        if (Files.exists(policyFile)) {
-            PolicyEngineRules rules = createObjectMapper().readValue(policyFile.toFile(), PolicyEngineRules.class);
-            if (rules != null) {
-                policyEngine = new PolicyEngine(rules);
-            }
+        if (!Files.exists(policyFile)) {
+            return null;
         }
 
-        return new RunnerJob(jobRequest.getInstanceId(), payloadDir, cfg, runnerCfg, log, policyEngine);
+        PolicyEngineRules rules = createObjectMapper().readValue(policyFile.toFile(), PolicyEngineRules.class);
+        return rules != null ? new PolicyEngine(rules) : null;
     }
 
     private final UUID instanceId;
@@ -128,7 +135,7 @@ public class RunnerJob {
         return policyEngine;
     }
 
-    private static boolean debugMode(Map<String, Object> processCfg) {
+    static boolean debugMode(Map<String, Object> processCfg) {
         Object v = processCfg.get(Constants.Request.DEBUG_KEY);
         if (v instanceof String) {
             // allows `curl ... -F debug=true`
@@ -168,6 +175,10 @@ public class RunnerJob {
             b = b.from(src);
         }
 
+        if (execCfg.eventRecorder() != null) {
+            b.eventRecorder(execCfg.eventRecorder());
+        }
+
         return b.agentId(execCfg.agentId())
                 .debug(debugMode(processCfg))
                 .api(ApiConfiguration.builder()
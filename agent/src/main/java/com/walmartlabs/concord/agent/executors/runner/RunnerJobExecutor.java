@@ -39,11 +39,7 @@ import com.walmartlabs.concord.agent.remote.AttachmentsUploader;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.dependencymanager.DependencyEntity;
-import com.walmartlabs.concord.dependencymanager.DependencyManager;
-import com.walmartlabs.concord.dependencymanager.ProgressListener;
-import com.walmartlabs.concord.policyengine.CheckResult;
-import com.walmartlabs.concord.policyengine.DependencyRule;
-import com.walmartlabs.concord.policyengine.PolicyEngine;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecorderConfiguration;
 import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.sdk.MapUtils;
@@ -56,17 +52,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -79,10 +72,8 @@ public class RunnerJobExecutor implements JobExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(RunnerJobExecutor.class);
 
-    protected final DependencyManager dependencyManager;
-
     private final RunnerJobExecutorConfiguration cfg;
-    private final DefaultDependencies defaultDependencies;
+    private final JobDependencyResolver dependencyResolver;
     private final AttachmentsUploader attachmentsUploader;
     private final ProcessPool processPool;
     private final ProcessLogFactory logFactory;
@@ -93,16 +84,14 @@ public class RunnerJobExecutor implements JobExecutor {
     private final int majorJavaVersion;
 
     public RunnerJobExecutor(RunnerJobExecutorConfiguration cfg,
-                             DependencyManager dependencyManager,
-                             DefaultDependencies defaultDependencies,
+                             JobDependencyResolver dependencyResolver,
                              AttachmentsUploader attachmentsUploader,
                              ProcessPool processPool,
                              ProcessLogFactory processLogFactory,
                              ExecutorService executor) {
 
         this.cfg = cfg;
-        this.dependencyManager = dependencyManager;
-        this.defaultDependencies = defaultDependencies;
+        this.dependencyResolver = dependencyResolver;
         this.attachmentsUploader = attachmentsUploader;
         this.processPool = processPool;
         this.logFactory = processLogFactory;
@@ -160,20 +149,7 @@ public class RunnerJobExecutor implements JobExecutor {
         ProcessEntry pe;
         try {
             // resolve and download the dependencies
-            Collection<String> resolvedDeps;
-            if (cfg.dependencyResolveTimeout() != null) {
-                Duration timeout = Objects.requireNonNull(cfg.dependencyResolveTimeout());
-                RunnerJob finalJob = job;
-                Future<Collection<String>> future = executor.submit(() -> resolveDeps(finalJob));
-                try {
-                    resolvedDeps = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
-                } catch (InterruptedException | TimeoutException e) {
-                    future.cancel(true);
-                    throw new RuntimeException("Timeout resolving dependencies");
-                }
-            } else {
-                resolvedDeps = resolveDeps(job);
-            }
+            Collection<String> resolvedDeps = resolveDeps(job);
 
             job = job.withDependencies(resolvedDeps);
 
@@ -345,47 +321,12 @@ public class RunnerJobExecutor implements JobExecutor {
     }
 
     private Collection<String> resolveDeps(RunnerJob job) throws Exception {
-        job.getLog().info("Resolving process dependencies...");
-
         long t1 = System.currentTimeMillis();
 
-        // combine the default dependencies and the process' dependencies
-        Collection<URI> uris = Stream.concat(defaultDependencies.getDependencies().stream(), JobDependencies.get(job).stream())
-                .collect(Collectors.toList());
-
-        uris = rewriteDependencies(job, uris);
-
-        Collection<DependencyEntity> deps = dependencyManager.resolve(uris, new ProgressListener() {
-
-            private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
-
-            @Override
-            public void onRetry(int retryCount, int maxRetry, long interval, String cause) {
-                synchronized (errors) {
-                    for (String error : errors) {
-                        job.getLog().warn(error);
-                    }
-                }
-
-                job.getLog().warn("Error while downloading dependencies: {}", cause);
-                job.getLog().info("Retrying in {}ms", interval);
-            }
-
-            @Override
-            public void onTransferFailed(String error) {
-                if (job.isDebugMode()) {
-                    job.getLog().warn(error);
-                } else {
-                    errors.add(error);
-                }
-            }
-        });
-
-        // check the resolved dependencies against the current policy
-        validateDependencies(job, deps);
+        JobDependencyResolver.Result result = dependencyResolver.resolve(job);
 
         // sort dependencies to maintain consistency in runner configurations
-        Collection<String> paths = deps.stream()
+        Collection<String> paths = result.dependencies().stream()
                 .map(DependencyEntity::getPath)
                 .map(p -> p.toAbsolutePath().toString())
                 .sorted()
@@ -397,48 +338,12 @@ public class RunnerJobExecutor implements JobExecutor {
             job.getLog().info("Dependency resolution took {}ms", (t2 - t1));
             logDependencies(job, paths);
         } else {
-            logDependencies(job, uris);
+            logDependencies(job, result.uris());
         }
 
         return paths;
     }
 
-    private Collection<URI> rewriteDependencies(RunnerJob job, Collection<URI> uris) {
-        PolicyEngine policyEngine = job.getPolicyEngine();
-        if (policyEngine == null) {
-            return uris;
-        }
-
-        return policyEngine.getDependencyRewritePolicy()
-                .rewrite(uris, (msg, from, to) -> {
-                    job.getLog().info("Updating dependency from '{}' to '{}'", from, to);
-                    if (msg != null) {
-                        job.getLog().warn(msg);
-                    }
-                });
-    }
-
-    private void validateDependencies(RunnerJob job, Collection<DependencyEntity> resolvedDepEntities) throws ExecutionException {
-        PolicyEngine policyEngine = job.getPolicyEngine();
-        if (policyEngine == null) {
-            return;
-        }
-
-        ProcessLog processLog = job.getLog();
-
-        processLog.info("Checking the dependency policy...");
-
-        CheckResult<DependencyRule, DependencyEntity> result = policyEngine.getDependencyPolicy().check(resolvedDepEntities);
-        result.getWarn().forEach(d ->
-                processLog.warn("Potentially restricted artifact '{}' (dependency policy: {})", d.getEntity(), d.getRule().msg()));
-        result.getDeny().forEach(d ->
-                processLog.warn("Artifact '{}' is forbidden by the dependency policy {}", d.getEntity(), d.getRule().msg()));
-
-        if (!result.getDeny().isEmpty()) {
-            throw new ExecutionException("Found restricted dependencies");
-        }
-    }
-
     private void logDependencies(RunnerJob job, Collection<?> deps) {
         if (deps == null || deps.isEmpty()) {
             job.getLog().info("No external dependencies.");
@@ -744,9 +649,6 @@ public class RunnerJobExecutor implements JobExecutor {
 
         Path dependencyCacheDir();
 
-        @Nullable
-        Duration dependencyResolveTimeout();
-
         Path workDirBase();
 
         Path runnerPath();
@@ -778,6 +680,12 @@ public class RunnerJobExecutor implements JobExecutor {
 
         boolean cleanRunnerDescendants();
 
+        /**
+         * Process event batching parameters, runtime v2 only.
+         */
+        @Nullable
+        EventRecorderConfiguration eventRecorder();
+
         static ImmutableRunnerJobExecutorConfiguration.Builder builder() {
             return ImmutableRunnerJobExecutorConfiguration.builder();
         }
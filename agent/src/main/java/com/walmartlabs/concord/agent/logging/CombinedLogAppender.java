@@ -48,6 +48,16 @@ public class CombinedLogAppender implements LogAppender {
         return result;
     }
 
+    @Override
+    public boolean appendLog(UUID instanceId, long segmentId, byte[] ab, int off, int len) {
+        boolean result = true;
+        for (LogAppender a : appenders) {
+            boolean done = a.appendLog(instanceId, segmentId, ab, off, len);
+            result = result && done;
+        }
+        return result;
+    }
+
     @Override
     public boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats) {
         boolean result = true;
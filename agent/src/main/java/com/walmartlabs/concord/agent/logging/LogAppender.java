@@ -20,6 +20,7 @@ package com.walmartlabs.concord.agent.logging;
  * =====
  */
 
+import java.util.Arrays;
 import java.util.UUID;
 
 public interface LogAppender {
@@ -28,5 +29,13 @@ public interface LogAppender {
 
     boolean appendLog(UUID instanceId, long segmentId, byte[] ab);
 
+    /**
+     * Appends {@code len} bytes of {@code ab} starting from {@code off}.
+     * The array can be reused by the caller after the method returns.
+     */
+    default boolean appendLog(UUID instanceId, long segmentId, byte[] ab, int off, int len) {
+        return appendLog(instanceId, segmentId, Arrays.copyOfRange(ab, off, off + len));
+    }
+
     boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats);
 }
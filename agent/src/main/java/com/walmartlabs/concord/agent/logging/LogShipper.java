@@ -0,0 +1,667 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.AgentConstants;
+import com.walmartlabs.concord.runtime.common.logger.LogSegmentStatus;
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ships the process log data to the specified {@link LogAppender} asynchronously.
+ * <p>
+ * The data is accumulated per segment in pooled buffers and sent when a buffer
+ * is full or after {@code flushInterval}. Buffers and segment updates are sent
+ * in the order they were received. If the delivery is slow or fails, the pending
+ * data spills into a bounded on-disk spool and is retried from there, so
+ * the callers are never blocked by the server. The spool is written and read
+ * outside the main lock, so the callers are not blocked by the disk either.
+ * Each op is attempted up to {@code maxAttempts} times, after that it is dropped
+ * so a permanently rejected op doesn't block the rest of the log.
+ */
+public class LogShipper implements LogAppender, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LogShipper.class);
+
+    private static final long NO_SEGMENT = -1;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final long CLOSE_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final UUID instanceId;
+    private final LogAppender delegate;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long maxQueueSize;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final Spool spool;
+
+    // guarded by "this"
+    private final Map<Long, Batch> openBatches = new LinkedHashMap<>();
+    private final Deque<Op> queue = new ArrayDeque<>();
+    private final Deque<Op> spill = new ArrayDeque<>();
+    private final Deque<byte[]> pool = new ArrayDeque<>();
+    private long queueSize;
+    private long droppedBytes;
+    private boolean closed;
+
+    /**
+     * Serializes the spool writes. Held without holding "this".
+     */
+    private final ReentrantLock spoolWriteLock = new ReentrantLock();
+
+    private final Thread sender;
+
+    public LogShipper(UUID instanceId, LogAppender delegate, LogShipperConfiguration cfg, Path spoolFile) {
+        this.instanceId = instanceId;
+        this.delegate = delegate;
+        this.batchSize = cfg.batchSize();
+        this.flushInterval = cfg.flushInterval();
+        this.maxQueueSize = cfg.maxQueueSize();
+        this.maxAttempts = cfg.maxAttempts();
+        this.retryDelay = cfg.retryDelay();
+        this.spool = new Spool(spoolFile, cfg.maxSpoolSize());
+
+        this.sender = new Thread(this::run, "log-shipper-" + instanceId);
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    @Override
+    public void appendLog(UUID instanceId, byte[] ab) {
+        append(NO_SEGMENT, ab, 0, ab.length);
+    }
+
+    @Override
+    public boolean appendLog(UUID instanceId, long segmentId, byte[] ab) {
+        return appendLog(instanceId, segmentId, ab, 0, ab.length);
+    }
+
+    @Override
+    public boolean appendLog(UUID instanceId, long segmentId, byte[] ab, int off, int len) {
+        append(segmentId, ab, off, len);
+        return true;
+    }
+
+    @Override
+    public boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats) {
+        synchronized (this) {
+            if (!closed) {
+                // the update must be sent after the segment's data
+                Batch b = openBatches.remove(segmentId);
+                if (b != null) {
+                    enqueue(Op.data(segmentId, b.data, b.len));
+                }
+
+                enqueue(Op.update(segmentId, stats));
+                stats = null;
+            }
+        }
+
+        if (stats != null) {
+            // closed, send directly
+            return delegate.updateSegment(instanceId, segmentId, stats);
+        }
+
+        writeSpill();
+        return true;
+    }
+
+    /**
+     * Sends the remaining data and stops the shipper. Waits up to
+     * {@link #CLOSE_TIMEOUT} for the data to be delivered.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            flushBatches(Long.MAX_VALUE);
+            notifyAll();
+        }
+
+        writeSpill();
+
+        try {
+            sender.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (sender.isAlive()) {
+            sender.interrupt();
+            log.warn("close ['{}'] -> timeout while waiting for the log data to be delivered", instanceId);
+        }
+
+        synchronized (this) {
+            if (droppedBytes > 0) {
+                log.warn("close ['{}'] -> {} byte(s) of log data were dropped", instanceId, droppedBytes);
+            }
+        }
+
+        spoolWriteLock.lock();
+        try {
+            spool.close();
+        } finally {
+            spoolWriteLock.unlock();
+        }
+    }
+
+    private void append(long segmentId, byte[] ab, int off, int len) {
+        synchronized (this) {
+            if (!closed) {
+                while (len > 0) {
+                    Batch b = openBatches.computeIfAbsent(segmentId, id -> new Batch(acquire(), System.currentTimeMillis()));
+
+                    int n = Math.min(len, b.data.length - b.len);
+                    System.arraycopy(ab, off, b.data, b.len, n);
+                    b.len += n;
+                    off += n;
+                    len -= n;
+
+                    if (b.len == b.data.length) {
+                        openBatches.remove(segmentId);
+                        enqueue(Op.data(segmentId, b.data, b.len));
+                    }
+                }
+            }
+        }
+
+        if (len > 0) {
+            // closed, send directly
+            send(Op.data(segmentId, Arrays.copyOfRange(ab, off, off + len), len));
+            return;
+        }
+
+        writeSpill();
+    }
+
+    private void run() {
+        int attempts = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Op op;
+            synchronized (this) {
+                flushBatches(System.currentTimeMillis() - flushInterval);
+
+                op = queue.peek();
+                if (op == null && !isSpilling()) {
+                    if (closed) {
+                        return;
+                    }
+
+                    if (!await(flushInterval)) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            writeSpill();
+
+            if (op == null) {
+                op = spool.peek(acquireSync());
+                if (op == null) {
+                    // the spilled ops are still being written to the spool
+                    synchronized (this) {
+                        if (spool.isEmpty() && !spill.isEmpty() && !await(flushInterval)) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+            }
+
+            boolean done = send(op);
+            if (!done && ++attempts >= maxAttempts) {
+                if (op.stats != null) {
+                    log.warn("run ['{}'] -> giving up on the segment update: {}", instanceId, op.segmentId);
+                } else {
+                    log.warn("run ['{}'] -> giving up on {} byte(s) of log data, segment: {}", instanceId, op.len, op.segmentId);
+                    synchronized (this) {
+                        droppedBytes += op.len;
+                    }
+                }
+                done = true;
+            }
+
+            if (done) {
+                remove(op);
+                attempts = 0;
+                continue;
+            }
+
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean send(Op op) {
+        try {
+            if (op.stats != null) {
+                return delegate.updateSegment(instanceId, op.segmentId, op.stats);
+            }
+
+            if (op.segmentId == NO_SEGMENT) {
+                delegate.appendLog(instanceId, Arrays.copyOf(op.data, op.len));
+                return true;
+            }
+
+            return delegate.appendLog(instanceId, op.segmentId, op.data, 0, op.len);
+        } catch (Exception e) {
+            log.warn("send ['{}'] -> error: {}", instanceId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void flushBatches(long createdBefore) {
+        Iterator<Map.Entry<Long, Batch>> it = openBatches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Batch> e = it.next();
+            Batch b = e.getValue();
+            if (b.createdAt <= createdBefore) {
+                it.remove();
+                enqueue(Op.data(e.getKey(), b.data, b.len));
+            }
+        }
+    }
+
+    private void enqueue(Op op) {
+        // keep the order: once something is spilled, everything else is spilled too
+        if (!isSpilling() && queueSize + op.size() <= maxQueueSize) {
+            queue.add(op);
+            queueSize += op.size();
+        } else {
+            // written to the spool by writeSpill() after the lock is released
+            spill.add(op);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Writes the spilled ops to the spool. Must be called without holding "this".
+     * If another thread is already writing, it picks up the new ops as well.
+     */
+    private void writeSpill() {
+        while (hasSpill() && spoolWriteLock.tryLock()) {
+            try {
+                while (true) {
+                    Op op;
+                    synchronized (this) {
+                        op = spill.peek();
+                    }
+
+                    if (op == null) {
+                        break;
+                    }
+
+                    boolean written = spool.write(op);
+
+                    // the op is removed only after it is in the spool, so it is always visible to the sender
+                    synchronized (this) {
+                        spill.poll();
+                        if (!written) {
+                            droppedBytes += op.len;
+                        }
+                        release(op.data);
+                        notifyAll();
+                    }
+                }
+            } finally {
+                spoolWriteLock.unlock();
+            }
+        }
+    }
+
+    private synchronized boolean hasSpill() {
+        return !spill.isEmpty();
+    }
+
+    // guarded by "this"
+    private boolean isSpilling() {
+        return !spill.isEmpty() || !spool.isEmpty();
+    }
+
+    // guarded by "this"
+    private boolean await(long timeout) {
+        try {
+            wait(timeout);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void remove(Op op) {
+        if (op.spoolRecordSize > 0) {
+            spool.advance(op);
+        }
+
+        synchronized (this) {
+            if (op.spoolRecordSize == 0) {
+                queue.poll();
+                queueSize -= op.size();
+            }
+
+            release(op.data);
+        }
+    }
+
+    private synchronized byte[] acquireSync() {
+        return acquire();
+    }
+
+    private byte[] acquire() {
+        byte[] ab = pool.poll();
+        return ab != null ? ab : new byte[batchSize];
+    }
+
+    private void release(byte[] ab) {
+        if (ab != null && ab.length == batchSize && pool.size() < MAX_POOLED_BUFFERS) {
+            pool.push(ab);
+        }
+    }
+
+    @Value.Immutable
+    @Value.Style(jdkOnly = true)
+    public interface LogShipperConfiguration {
+
+        /**
+         * Max size of a single request, bytes.
+         */
+        int batchSize();
+
+        /**
+         * Max time the data can stay in the buffer before it is sent, ms.
+         */
+        long flushInterval();
+
+        /**
+         * Max size of the data waiting to be sent in memory, bytes.
+         */
+        long maxQueueSize();
+
+        /**
+         * Max size of the on-disk spool, bytes.
+         */
+        long maxSpoolSize();
+
+        /**
+         * Max number of attempts to send a single chunk or segment update.
+         */
+        @Value.Default
+        default int maxAttempts() {
+            return 10;
+        }
+
+        /**
+         * Delay between the attempts, ms.
+         */
+        @Value.Default
+        default long retryDelay() {
+            return AgentConstants.API_CALL_RETRY_DELAY;
+        }
+
+        static ImmutableLogShipperConfiguration.Builder builder() {
+            return ImmutableLogShipperConfiguration.builder();
+        }
+    }
+
+    private static final class Batch {
+
+        private final byte[] data;
+        private final long createdAt;
+        private int len;
+
+        private Batch(byte[] data, long createdAt) {
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class Op {
+
+        private final long segmentId;
+        private final byte[] data;
+        private final int len;
+        private final LogSegmentStats stats;
+
+        // the size of the op's record in the spool, if the op was read from the spool
+        private long spoolRecordSize;
+
+        static Op data(long segmentId, byte[] data, int len) {
+            return new Op(segmentId, data, len, null);
+        }
+
+        static Op update(long segmentId, LogSegmentStats stats) {
+            return new Op(segmentId, null, 0, stats);
+        }
+
+        private Op(long segmentId, byte[] data, int len, LogSegmentStats stats) {
+            this.segmentId = segmentId;
+            this.data = data;
+            this.len = len;
+            this.stats = stats;
+        }
+
+        long size() {
+            return len;
+        }
+    }
+
+    /**
+     * Append-only file with the ops that couldn't be kept in memory.
+     * Reset to zero size each time it is fully drained.
+     * Thread-safe, {@link #isEmpty()} doesn't block.
+     */
+    private static final class Spool implements Closeable {
+
+        private static final byte DATA = 1;
+        private static final byte UPDATE = 2;
+        private static final int HEADER_SIZE = 1 + 8 + 4;
+        private static final int UPDATE_SIZE = 4 + 4 + 4;
+
+        private final Path file;
+        private final long maxSize;
+
+        private FileChannel channel;
+        private long readPos;
+        private long writePos;
+        private volatile long records;
+
+        private Spool(Path file, long maxSize) {
+            this.file = file;
+            this.maxSize = maxSize;
+        }
+
+        boolean isEmpty() {
+            return records == 0;
+        }
+
+        /**
+         * @return {@code false} if the op was dropped.
+         */
+        synchronized boolean write(Op op) {
+            boolean update = op.stats != null;
+            int len = update ? UPDATE_SIZE : op.len;
+
+            // segment updates are small and always accepted
+            if (!update && writePos - readPos + HEADER_SIZE + len > maxSize) {
+                return false;
+            }
+
+            ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + len);
+            bb.put(update ? UPDATE : DATA);
+            bb.putLong(op.segmentId);
+            bb.putInt(len);
+            if (update) {
+                LogSegmentStats s = op.stats;
+                bb.putInt(s.status() != null ? s.status().ordinal() : -1);
+                bb.putInt(s.errors() != null ? s.errors() : -1);
+                bb.putInt(s.warnings() != null ? s.warnings() : -1);
+            } else {
+                bb.put(op.data, 0, op.len);
+            }
+            bb.flip();
+
+            try {
+                FileChannel ch = channel();
+                while (bb.hasRemaining()) {
+                    writePos += ch.write(bb, writePos);
+                }
+                records++;
+                return true;
+            } catch (IOException e) {
+                log.warn("write -> error while writing to the spool {}: {}", file, e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * @param buffer a buffer for the op's data, a new one is allocated if it is too small.
+         */
+        synchronized Op peek(byte[] buffer) {
+            if (isEmpty()) {
+                return null;
+            }
+
+            try {
+                FileChannel ch = channel();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(ch, header, readPos);
+                header.flip();
+
+                byte type = header.get();
+                long segmentId = header.getLong();
+                int len = header.getInt();
+
+                Op op;
+                if (type == UPDATE) {
+                    ByteBuffer bb = ByteBuffer.allocate(len);
+                    readFully(ch, bb, readPos + HEADER_SIZE);
+                    bb.flip();
+
+                    int status = bb.getInt();
+                    int errors = bb.getInt();
+                    int warnings = bb.getInt();
+
+                    op = Op.update(segmentId, LogSegmentStats.builder()
+                            .status(status >= 0 ? LogSegmentStatus.values()[status] : null)
+                            .errors(errors >= 0 ? errors : null)
+                            .warnings(warnings >= 0 ? warnings : null)
+                            .build());
+                } else {
+                    byte[] ab = buffer;
+                    if (ab.length < len) {
+                        ab = new byte[len];
+                    }
+                    readFully(ch, ByteBuffer.wrap(ab, 0, len), readPos + HEADER_SIZE);
+                    op = Op.data(segmentId, ab, len);
+                }
+
+                op.spoolRecordSize = HEADER_SIZE + len;
+                return op;
+            } catch (IOException e) {
+                // the spool is not readable, nothing else we can do
+                log.warn("peek -> error while reading the spool {}, dropping {} byte(s): {}", file, writePos - readPos, e.getMessage());
+                reset();
+                return null;
+            }
+        }
+
+        synchronized void advance(Op op) {
+            readPos += op.spoolRecordSize;
+            records--;
+            if (records == 0) {
+                reset();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("close -> error while removing the spool {}: {}", file, e.getMessage());
+            }
+            channel = null;
+        }
+
+        private void reset() {
+            readPos = 0;
+            writePos = 0;
+            records = 0;
+
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.truncate(0);
+            } catch (IOException e) {
+                log.warn("reset -> error while truncating the spool {}: {}", file, e.getMessage());
+            }
+        }
+
+        private FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        private static void readFully(FileChannel ch, ByteBuffer bb, long pos) throws IOException {
+            while (bb.hasRemaining()) {
+                int n = ch.read(bb, pos);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                pos += n;
+            }
+        }
+    }
+}
@@ -31,15 +31,24 @@ import java.util.function.Consumer;
 
 public class ProcessLogFactory {
 
+    private static final String SPOOL_FILE_NAME = "log.spool";
+
     private final Path logDir;
     private final long logStreamMaxDelay;
     private final LogAppender logAppender;
+    private final LogShipper.LogShipperConfiguration shipperCfg;
 
     @Inject
     public ProcessLogFactory(AgentConfiguration cfg, LogAppender logAppender) {
         this.logDir = cfg.getLogDir();
         this.logStreamMaxDelay = cfg.getLogMaxDelay();
         this.logAppender = logAppender;
+        this.shipperCfg = LogShipper.LogShipperConfiguration.builder()
+                .batchSize(cfg.getLogShippingBatchSize())
+                .flushInterval(cfg.getLogShippingFlushInterval())
+                .maxQueueSize(cfg.getLogShippingMaxQueueSize())
+                .maxSpoolSize(cfg.getLogShippingMaxSpoolSize())
+                .build();
     }
 
     public RedirectedProcessLog createRedirectedLog(UUID instanceId, boolean segmented) throws IOException {
@@ -48,17 +57,20 @@ public class ProcessLogFactory {
             Files.createDirectories(dst);
         }
 
+        // the data is sent asynchronously, slow responses don't block the log streaming
+        LogShipper shipper = new LogShipper(instanceId, logAppender, shipperCfg, dst.resolve(SPOOL_FILE_NAME));
+
         Consumer<RedirectedProcessLog.Chunk> logConsumer;
         if (segmented) {
-            logConsumer = new SegmentedLogsConsumer(instanceId, logAppender);
+            logConsumer = new SegmentedLogsConsumer(instanceId, shipper);
         } else {
             logConsumer = chunk -> {
                 byte[] ab = new byte[chunk.len()];
                 System.arraycopy(chunk.bytes(), 0, ab, 0, chunk.len());
-                logAppender.appendLog(instanceId, ab);
+                shipper.appendLog(instanceId, ab);
             };
         }
-        return new RedirectedProcessLog(dst, logStreamMaxDelay, logConsumer);
+        return new RedirectedProcessLog(dst, logStreamMaxDelay, logConsumer, shipper);
     }
 
     public RemoteProcessLog createRemoteLog(UUID instanceId) {
@@ -37,15 +37,30 @@ public class RedirectedProcessLog implements ProcessLog {
     protected final long logSteamMaxDelay;
     private final LocalProcessLog localLog;
     private final Consumer<Chunk> consumer;
+    private final LogShipper shipper;
 
     public RedirectedProcessLog(Path baseDir, long logSteamMaxDelay, Consumer<Chunk> consumer) throws IOException {
+        this(baseDir, logSteamMaxDelay, consumer, null);
+    }
+
+    /**
+     * @param shipper if specified, the shipper is closed after the log is fully streamed
+     */
+    public RedirectedProcessLog(Path baseDir, long logSteamMaxDelay, Consumer<Chunk> consumer, LogShipper shipper) throws IOException {
         this.localLog = new LocalProcessLog(baseDir);
         this.logSteamMaxDelay = logSteamMaxDelay;
         this.consumer = consumer;
+        this.shipper = shipper;
     }
 
     public void run(Supplier<Boolean> stopCondition) throws Exception {
-        streamLog(localLog.logFile(), stopCondition, logSteamMaxDelay, consumer);
+        try {
+            streamLog(localLog.logFile(), stopCondition, logSteamMaxDelay, consumer);
+        } finally {
+            if (shipper != null) {
+                shipper.close();
+            }
+        }
     }
 
     @Override
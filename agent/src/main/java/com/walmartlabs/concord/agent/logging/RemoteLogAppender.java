@@ -20,7 +20,9 @@ package com.walmartlabs.concord.agent.logging;
  * =====
  */
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.walmartlabs.concord.agent.AgentConstants;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
 import com.walmartlabs.concord.client2.*;
 import com.walmartlabs.concord.runtime.common.logger.LogSegmentStatus;
 import org.slf4j.Logger;
@@ -28,19 +30,44 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 public class RemoteLogAppender implements LogAppender {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteLogAppender.class);
 
+    /**
+     * Smaller chunks are sent uncompressed.
+     */
+    private static final int MIN_COMPRESS_SIZE = 1024;
+
     private final ProcessApi processApi;
     private final ProcessLogV2Api processLogV2Api;
+    private final ProcessLogV2Api compressedProcessLogV2Api;
+    private final boolean compress;
 
-    @Inject
     public RemoteLogAppender(ApiClient apiClient) {
+        this(apiClient, false);
+    }
+
+    @Inject
+    public RemoteLogAppender(ApiClient apiClient, AgentConfiguration cfg) {
+        this(apiClient, cfg.isLogShippingCompress());
+    }
+
+    private RemoteLogAppender(ApiClient apiClient, boolean compress) {
         this.processApi = new ProcessApi(apiClient);
         this.processLogV2Api = new ProcessLogV2Api(apiClient);
+        this.compressedProcessLogV2Api = new ProcessLogV2Api(new GzipApiClient(apiClient));
+        this.compress = compress;
     }
 
     @Override
@@ -58,9 +85,20 @@ public class RemoteLogAppender implements LogAppender {
 
     @Override
     public boolean appendLog(UUID instanceId, long segmentId, byte[] ab) {
+        return appendLog(instanceId, segmentId, ab, 0, ab.length);
+    }
+
+    @Override
+    public boolean appendLog(UUID instanceId, long segmentId, byte[] ab, int off, int len) {
         try {
+            byte[] compressed = compress && len >= MIN_COMPRESS_SIZE ? gzip(ab, off, len) : null;
+
             ClientUtils.withRetry(AgentConstants.API_CALL_MAX_RETRIES, AgentConstants.API_CALL_RETRY_DELAY, () -> {
-                processLogV2Api.appendProcessLogSegment(instanceId, segmentId, new ByteArrayInputStream(ab));
+                if (compressed != null) {
+                    compressedProcessLogV2Api.appendProcessLogSegment(instanceId, segmentId, new ByteArrayInputStream(compressed));
+                } else {
+                    processLogV2Api.appendProcessLogSegment(instanceId, segmentId, new ByteArrayInputStream(ab, off, len));
+                }
                 return null;
             });
             return true;
@@ -88,6 +126,18 @@ public class RemoteLogAppender implements LogAppender {
         return false;
     }
 
+    private static byte[] gzip(byte[] ab, int off, int len) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len / 4);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(ab, off, len);
+        } catch (IOException e) {
+            // shouldn't happen, send the data uncompressed
+            log.warn("gzip -> error: {}", e.getMessage());
+            return null;
+        }
+        return out.toByteArray();
+    }
+
     private static LogSegmentUpdateRequest.StatusEnum convertStatus(LogSegmentStatus status) {
         if (status == null) {
             return null;
@@ -99,4 +149,60 @@ public class RemoteLogAppender implements LogAppender {
             case SUSPENDED -> LogSegmentUpdateRequest.StatusEnum.SUSPENDED;
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * Marks all requests as gzip-encoded, everything else is delegated to
+     * the original client, so the requests get the same authentication,
+     * interceptors and error handling.
+     */
+    private static final class GzipApiClient extends ApiClient {
+
+        private final ApiClient delegate;
+
+        private GzipApiClient(ApiClient delegate) {
+            super(delegate.getHttpClient());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpRequest.Builder requestBuilder() {
+            return delegate.requestBuilder();
+        }
+
+        @Override
+        public ObjectMapper getObjectMapper() {
+            return delegate.getObjectMapper();
+        }
+
+        @Override
+        public String getBaseUri() {
+            return delegate.getBaseUri();
+        }
+
+        @Override
+        public Duration getReadTimeout() {
+            return delegate.getReadTimeout();
+        }
+
+        @Override
+        public Consumer<HttpRequest.Builder> getRequestInterceptor() {
+            Consumer<HttpRequest.Builder> interceptor = delegate.getRequestInterceptor();
+            return b -> {
+                b.header("Content-Encoding", "gzip");
+                if (interceptor != null) {
+                    interceptor.accept(b);
+                }
+            };
+        }
+
+        @Override
+        public Consumer<HttpResponse<InputStream>> getResponseInterceptor() {
+            return delegate.getResponseInterceptor();
+        }
+
+        @Override
+        public Consumer<HttpResponse<String>> getAsyncResponseInterceptor() {
+            return delegate.getAsyncResponseInterceptor();
+        }
+    }
+}
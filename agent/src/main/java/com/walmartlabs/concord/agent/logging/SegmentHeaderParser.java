@@ -35,6 +35,13 @@ public class SegmentHeaderParser {
     // msgLength|segmentId|status|warnings|errors|msg
 
     public static int parse(byte[] ab, List<Segment> segments, List<Position> invalidSegments) {
+        return parse(ab, ab.length, segments, invalidSegments);
+    }
+
+    /**
+     * Same as {@link #parse(byte[], List, List)}, but only the first {@code len} bytes are parsed.
+     */
+    public static int parse(byte[] ab, int len, List<Segment> segments, List<Position> invalidSegments) {
         Field field = Field.MSG_LENGTH;
         StringBuilder fieldData = new StringBuilder();
         int mark = -1;
@@ -42,7 +49,7 @@ public class SegmentHeaderParser {
 
         boolean continueParse = true;
         State state = State.FIND_HEADER;
-        ByteBuffer bb = ByteBuffer.wrap(ab);
+        ByteBuffer bb = ByteBuffer.wrap(ab, 0, len);
         while (continueParse) {
             switch (state) {
                 case FIND_HEADER: {
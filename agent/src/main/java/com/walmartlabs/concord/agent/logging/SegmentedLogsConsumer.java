@@ -32,12 +32,17 @@ import static com.walmartlabs.concord.agent.logging.SegmentHeaderParser.Segment;
 
 public class SegmentedLogsConsumer implements Consumer<RedirectedProcessLog.Chunk> {
 
-    private static final byte[] EMPTY = new byte[0];
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
 
     private final UUID instanceId;
     private final LogAppender logAppender;
 
-    private byte[] unparsed = EMPTY;
+    /**
+     * Working buffer, starts with the unparsed data left from the previous chunk.
+     * Reused between chunks to avoid allocating a new array for each chunk.
+     */
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int unparsedLength = 0;
 
     public SegmentedLogsConsumer(UUID instanceId, LogAppender logAppender) {
         this.instanceId = instanceId;
@@ -46,47 +51,49 @@ public class SegmentedLogsConsumer implements Consumer<RedirectedProcessLog.Chun
 
     @Override
     public void accept(RedirectedProcessLog.Chunk chunk) {
-        byte[] ab = new byte[unparsed.length + chunk.len()];
-        if (unparsed.length > 0) {
-            System.arraycopy(unparsed, 0, ab, 0, unparsed.length);
-        }
-        System.arraycopy(chunk.bytes(), 0, ab, unparsed.length, chunk.len());
-        unparsed = EMPTY;
+        int length = unparsedLength + chunk.len();
+        buffer = ensureCapacity(buffer, unparsedLength, length);
+        System.arraycopy(chunk.bytes(), 0, buffer, unparsedLength, chunk.len());
+        unparsedLength = 0;
+
+        byte[] ab = buffer;
 
         List<Segment> segments = new ArrayList<>();
         List<Position> invalidSegments = new ArrayList<>();
-        int pos = SegmentHeaderParser.parse(ab, segments, invalidSegments);
+        int pos = SegmentHeaderParser.parse(ab, length, segments, invalidSegments);
 
         invalidSegmentsToSystemSegments(invalidSegments, segments);
         Map<Long, List<Segment>> segmentsById = byId(segments);
         for (Map.Entry<Long, List<Segment>> e : segmentsById.entrySet()) {
-            int buffLength = e.getValue().stream().mapToInt(h -> actualLength(h, ab.length)).sum();
-            byte[] segmentBuffer = new byte[buffLength];
-            fillBuffer(e.getValue(), ab, segmentBuffer);
-
+            List<Segment> parts = e.getValue();
+            byte[] segmentBuffer = toSegmentBuffer(parts, ab, length);
             if (segmentBuffer.length > 0) {
                 // TODO: retry?
                 logAppender.appendLog(instanceId, e.getKey(), segmentBuffer);
             }
 
-            LogSegmentStats stats = findStats(e.getValue());
+            LogSegmentStats stats = findStats(parts);
             if (stats != null) {
                 logAppender.updateSegment(instanceId, e.getKey(), stats);
             }
         }
 
-        Segment partialSegment = findPartialSegment(segments, ab.length);
+        Segment partialSegment = findPartialSegment(segments, length);
         if (partialSegment != null) {
-            unparsed = LogSegmentSerializer.serializeHeader(
-                    partialSegment.header(), partialSegment.header().length() - actualLength(partialSegment, ab.length));
+            byte[] header = LogSegmentSerializer.serializeHeader(
+                    partialSegment.header(), partialSegment.header().length() - actualLength(partialSegment, length));
+            System.arraycopy(header, 0, buffer, 0, header.length);
+            unparsedLength = header.length;
         }
 
-        if (pos < ab.length) {
-            if (unparsed != EMPTY) {
+        if (pos < length) {
+            if (unparsedLength != 0) {
                 throw new RuntimeException("Unexpected partial segment and unparsed tail");
             }
 
-            unparsed = Arrays.copyOfRange(ab, pos, ab.length);
+            // move the tail to the beginning of the buffer
+            System.arraycopy(ab, pos, buffer, 0, length - pos);
+            unparsedLength = length - pos;
         }
     }
 
@@ -116,14 +123,32 @@ public class SegmentedLogsConsumer implements Consumer<RedirectedProcessLog.Chun
         return result;
     }
 
-    private static void fillBuffer(List<Segment> segments, byte[] from, byte[] to) {
+    private static byte[] toSegmentBuffer(List<Segment> segments, byte[] from, int fromLength) {
+        if (segments.size() == 1) {
+            Segment s = segments.get(0);
+            return Arrays.copyOfRange(from, s.msgStart(), s.msgStart() + actualLength(s, fromLength));
+        }
+
+        int buffLength = segments.stream().mapToInt(h -> actualLength(h, fromLength)).sum();
+        byte[] result = new byte[buffLength];
+
         int i = 0;
         for (Segment s : segments) {
-            int actualLength = actualLength(s, from.length);
-            for (int j = 0; j < actualLength; j++) {
-                to[i++] = from[j + s.msgStart()];
-            }
+            int actualLength = actualLength(s, fromLength);
+            System.arraycopy(from, s.msgStart(), result, i, actualLength);
+            i += actualLength;
         }
+        return result;
+    }
+
+    private static byte[] ensureCapacity(byte[] ab, int keep, int capacity) {
+        if (ab.length >= capacity) {
+            return ab;
+        }
+
+        byte[] result = new byte[Math.max(capacity, ab.length * 2)];
+        System.arraycopy(ab, 0, result, 0, keep);
+        return result;
     }
 
     private static Segment findPartialSegment(List<Segment> segments, int chunkLength) {
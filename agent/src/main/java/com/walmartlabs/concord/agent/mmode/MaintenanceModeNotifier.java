@@ -30,11 +30,14 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.util.function.Supplier;
 
 public class MaintenanceModeNotifier {
 
     private static final Logger log = LoggerFactory.getLogger(MaintenanceModeNotifier.class);
 
+    private static final String NOT_FOUND_RESPONSE = "404 (Not Found)\n";
+
     private final HttpServer server;
 
     public MaintenanceModeNotifier(String host, Integer port, MaintenanceModeListener listener) throws IOException {
@@ -42,6 +45,13 @@ public class MaintenanceModeNotifier {
         this.server.createContext("/maintenance-mode", new MaintenanceModeHandler(listener));
     }
 
+    /**
+     * Exposes the specified metrics as JSON on {@code GET /metrics}.
+     */
+    public void addMetrics(Supplier<Object> metrics) {
+        this.server.createContext("/metrics", new MetricsHandler(metrics));
+    }
+
     public void start() {
         server.start();
         log.info("start -> done, listening on {}", server.getAddress());
@@ -52,9 +62,35 @@ public class MaintenanceModeNotifier {
         log.info("stop -> done");
     }
 
-    private static class MaintenanceModeHandler implements HttpHandler {
+    private static void response(HttpExchange httpExchange, int code, byte[] response) throws IOException {
+        httpExchange.sendResponseHeaders(code, response.length);
+        try (OutputStream os = httpExchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
 
-        private static final String NOT_FOUND_RESPONSE = "404 (Not Found)\n";
+    private static class MetricsHandler implements HttpHandler {
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final Supplier<Object> metrics;
+
+        private MetricsHandler(Supplier<Object> metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void handle(HttpExchange httpExchange) throws IOException {
+            if (!"GET".equals(httpExchange.getRequestMethod())) {
+                response(httpExchange, 404, NOT_FOUND_RESPONSE.getBytes());
+                return;
+            }
+
+            httpExchange.getResponseHeaders().set("Content-Type", "application/json");
+            response(httpExchange, 200, objectMapper.writeValueAsBytes(metrics.get()));
+        }
+    }
+
+    private static class MaintenanceModeHandler implements HttpHandler {
 
         private final ObjectMapper objectMapper = new ObjectMapper();
         private final MaintenanceModeListener listener;
@@ -81,13 +117,6 @@ public class MaintenanceModeNotifier {
             response(httpExchange, 404, NOT_FOUND_RESPONSE.getBytes());
         }
 
-        private void response(HttpExchange httpExchange, int code, byte[] response) throws IOException {
-            httpExchange.sendResponseHeaders(code, response.length);
-            try (OutputStream os = httpExchange.getResponseBody()) {
-                os.write(response);
-            }
-        }
-
         private MaintenanceModeListener.Status onMaintenanceMode() {
             MaintenanceModeListener.Status status = listener.onMaintenanceMode();
 
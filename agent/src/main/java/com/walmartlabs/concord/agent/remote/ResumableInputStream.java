@@ -0,0 +1,111 @@
+package com.walmartlabs.concord.agent.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Re-opens the underlying stream at the current position when reading fails,
+ * e.g. when the connection is reset in the middle of a download.
+ */
+public class ResumableInputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableInputStream.class);
+
+    private final Opener opener;
+    private final int maxAttempts;
+    private final long retryDelay;
+
+    private InputStream delegate;
+    private long position;
+    private int attempts;
+
+    public ResumableInputStream(Opener opener, int maxAttempts, long retryDelay) throws IOException {
+        this.opener = opener;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.delegate = opener.open(0);
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] ab = new byte[1];
+        int n = read(ab, 0, 1);
+        return n < 0 ? -1 : ab[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            try {
+                int n = delegate.read(b, off, len);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            } catch (IOException e) {
+                if (attempts >= maxAttempts) {
+                    throw e;
+                }
+
+                attempts++;
+                log.warn("read -> error at {} byte(s), resuming (attempt {}/{}): {}", position, attempts, maxAttempts, e.getMessage());
+
+                closeQuietly(delegate);
+                Utils.sleep(retryDelay);
+                delegate = opener.open(position);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public interface Opener {
+
+        /**
+         * Opens the stream starting at the specified offset.
+         */
+        InputStream open(long offset) throws IOException;
+    }
+}
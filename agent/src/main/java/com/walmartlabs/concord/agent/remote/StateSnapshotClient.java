@@ -0,0 +1,163 @@
+package com.walmartlabs.concord.agent.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.client2.ApiClient;
+import com.walmartlabs.concord.client2.ApiException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Downloads process state snapshots using the manifest-based API:
+ * the list of files is fetched first, then the snapshot is downloaded
+ * without the files the agent already has.
+ */
+public class StateSnapshotClient {
+
+    private final ApiClient apiClient;
+    private final ObjectMapper objectMapper;
+
+    public StateSnapshotClient(ApiClient apiClient, ObjectMapper objectMapper) {
+        this.apiClient = apiClient;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the state manifest or {@code null} if the server doesn't support manifests.
+     */
+    public Manifest getManifest(UUID instanceId) throws ApiException, IOException, InterruptedException {
+        HttpRequest.Builder b = requestBuilder("/api/v1/process/" + instanceId + "/state/manifest")
+                .header("Accept", "application/json")
+                .GET();
+
+        HttpResponse<InputStream> resp = send(b);
+        try (InputStream in = resp.body()) {
+            if (resp.statusCode() == 404 || resp.statusCode() == 405) {
+                // older server version
+                return null;
+            }
+
+            assertOk(resp, in);
+            return objectMapper.readValue(in, Manifest.class);
+        }
+    }
+
+    /**
+     * Opens the snapshot stream. The data is the same for the same {@code etag},
+     * so the download can be resumed by specifying the number of bytes received
+     * before the interruption.
+     *
+     * @throws StateChangedException if the state no longer matches the {@code etag}
+     */
+    public InputStream openSnapshot(UUID instanceId, String etag, long offset, Set<String> excludeHashes) throws ApiException, IOException, InterruptedException {
+        Map<String, Object> req = new HashMap<>();
+        req.put("etag", etag);
+        req.put("offset", offset);
+        req.put("excludeHashes", excludeHashes);
+
+        HttpRequest.Builder b = requestBuilder("/api/v1/process/" + instanceId + "/state/snapshot")
+                .header("Accept", "application/zip")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(req)));
+
+        HttpResponse<InputStream> resp = send(b);
+        if (resp.statusCode() == 412) {
+            resp.body().close();
+            throw new StateChangedException(instanceId);
+        }
+
+        if (resp.statusCode() / 100 != 2) {
+            try (InputStream in = resp.body()) {
+                assertOk(resp, in);
+            }
+        }
+
+        return resp.body();
+    }
+
+    private HttpRequest.Builder requestBuilder(String path) {
+        HttpRequest.Builder b = apiClient.requestBuilder()
+                .uri(URI.create(apiClient.getBaseUri() + path));
+
+        if (apiClient.getReadTimeout() != null) {
+            b.timeout(apiClient.getReadTimeout());
+        }
+
+        Consumer<HttpRequest.Builder> interceptor = apiClient.getRequestInterceptor();
+        if (interceptor != null) {
+            interceptor.accept(b);
+        }
+
+        return b;
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest.Builder b) throws IOException, InterruptedException {
+        HttpResponse<InputStream> resp = apiClient.getHttpClient().send(b.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        Consumer<HttpResponse<InputStream>> responseInterceptor = apiClient.getResponseInterceptor();
+        if (responseInterceptor != null) {
+            responseInterceptor.accept(resp);
+        }
+
+        return resp;
+    }
+
+    private static void assertOk(HttpResponse<InputStream> resp, InputStream in) throws IOException, ApiException {
+        if (resp.statusCode() / 100 == 2) {
+            return;
+        }
+
+        String body = new String(in.readAllBytes());
+        throw new ApiException(resp.statusCode(), "State download failed with: " + resp.statusCode() + " - " + body, resp.headers(), body);
+    }
+
+    /**
+     * The process state was changed after the manifest was received.
+     * The download must be restarted with a new manifest.
+     */
+    public static class StateChangedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public StateChangedException(UUID instanceId) {
+            super("The process state has changed: " + instanceId);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Manifest(String etag, List<Item> items) {
+    }
+
+    /**
+     * @param hash SHA-256 of the file's content, {@code null} for small files
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Item(String name, int unixMode, long size, String hash) {
+    }
+}
@@ -0,0 +1,312 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import com.walmartlabs.concord.client2.ApiClient;
+import com.walmartlabs.concord.client2.ProcessApi;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+import static com.walmartlabs.concord.agent.StateCacheTest.sha256;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultStateFetcherTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final UUID instanceId = UUID.randomUUID();
+
+    private HttpServer server;
+    private FakeState state;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        state = new FakeState();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/process/" + instanceId + "/state/manifest", state::manifest);
+        server.createContext("/api/v1/process/" + instanceId + "/state/snapshot", state::snapshot);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDownload(@TempDir Path tempDir) throws Exception {
+        String large = "x".repeat(100_000);
+        state.files.put("a.txt", "aaa");
+        state.files.put("dir/large.bin", large);
+        state.hashed.add("dir/large.bin");
+
+        DefaultStateFetcher fetcher = fetcher(tempDir);
+
+        Path dst = tempDir.resolve("payload1");
+        fetcher.downloadState(job(), dst);
+
+        assertEquals("aaa", Files.readString(dst.resolve("a.txt")));
+        assertEquals(large, Files.readString(dst.resolve("dir/large.bin")));
+        assertEquals(Set.of(), state.lastExcludeHashes);
+
+        // the large file is taken from the cache the second time
+
+        dst = tempDir.resolve("payload2");
+        fetcher.downloadState(job(), dst);
+
+        assertEquals("aaa", Files.readString(dst.resolve("a.txt")));
+        assertEquals(large, Files.readString(dst.resolve("dir/large.bin")));
+        assertEquals(Set.of(sha256(large)), state.lastExcludeHashes);
+    }
+
+    @Test
+    public void testResume(@TempDir Path tempDir) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            state.files.put("file" + i, random(10_000));
+        }
+        state.breakAfter = 100_000;
+
+        Path dst = tempDir.resolve("payload");
+        fetcher(tempDir).downloadState(job(), dst);
+
+        for (Map.Entry<String, String> e : state.files.entrySet()) {
+            assertEquals(e.getValue(), Files.readString(dst.resolve(e.getKey())));
+        }
+
+        assertEquals(0L, state.offsets.get(0));
+        assertTrue(state.offsets.size() > 1);
+        assertTrue(state.offsets.get(1) > 0);
+    }
+
+    @Test
+    public void testRestartOnStateChange(@TempDir Path tempDir) throws Exception {
+        state.files.put("a.txt", "aaa");
+        state.files.put("b.txt", "bbb");
+        state.changeOnSnapshot = Map.of("a.txt", "AAA", "c.txt", "ccc");
+
+        Path dst = tempDir.resolve("payload");
+        fetcher(tempDir).downloadState(job(), dst);
+
+        assertEquals("AAA", Files.readString(dst.resolve("a.txt")));
+        assertEquals("bbb", Files.readString(dst.resolve("b.txt")));
+        assertEquals("ccc", Files.readString(dst.resolve("c.txt")));
+        assertEquals(2, state.manifestRequests);
+    }
+
+    @Test
+    public void testUnixModes(@TempDir Path tempDir) throws Exception {
+        state.files.put("a.txt", "aaa");
+        state.files.put("run.sh", "#!/bin/sh");
+        state.files.put("bin/tool", "x".repeat(2 * 1024 * 1024));
+        state.modes.put("run.sh", 0755);
+        state.modes.put("bin/tool", 0755);
+
+        Path dst = tempDir.resolve("payload");
+        fetcher(tempDir).downloadState(job(), dst);
+
+        assertEquals(PosixFilePermissions.fromString("rw-r--r--"), Files.getPosixFilePermissions(dst.resolve("a.txt")));
+        assertEquals(PosixFilePermissions.fromString("rwxr-xr-x"), Files.getPosixFilePermissions(dst.resolve("run.sh")));
+        assertEquals(PosixFilePermissions.fromString("rwxr-xr-x"), Files.getPosixFilePermissions(dst.resolve("bin/tool")));
+    }
+
+    @Test
+    public void testOldServer(@TempDir Path tempDir) throws Exception {
+        server.removeContext("/api/v1/process/" + instanceId + "/state/manifest");
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            addEntry(out, "a.txt", "aaa");
+        }
+
+        ProcessApi processApi = mock(ProcessApi.class);
+        when(processApi.downloadState(instanceId)).thenReturn(new java.io.ByteArrayInputStream(zip.toByteArray()));
+
+        Path dst = tempDir.resolve("payload");
+        new DefaultStateFetcher(apiClient(), processApi, cfg(tempDir), new StateCache(cfg(tempDir)), objectMapper)
+                .downloadState(job(), dst);
+
+        assertEquals("aaa", Files.readString(dst.resolve("a.txt")));
+    }
+
+    private DefaultStateFetcher fetcher(Path tempDir) throws Exception {
+        AgentConfiguration cfg = cfg(tempDir);
+        return new DefaultStateFetcher(apiClient(), mock(ProcessApi.class), cfg, new StateCache(cfg), objectMapper);
+    }
+
+    private ApiClient apiClient() {
+        return new ApiClient(HttpClient.newHttpClient())
+                .setBaseUrl("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private JobRequest job() {
+        JobRequest job = mock(JobRequest.class);
+        when(job.getInstanceId()).thenReturn(instanceId);
+        return job;
+    }
+
+    private static AgentConfiguration cfg(Path tempDir) throws Exception {
+        AgentConfiguration cfg = StateCacheTest.cfg(tempDir.resolve("cache"), 1024 * 1024);
+        when(cfg.isStateStreaming()).thenReturn(true);
+        when(cfg.getStateWriterThreads()).thenReturn(2);
+        when(cfg.getStateMaxResumeAttempts()).thenReturn(10);
+        return cfg;
+    }
+
+    private static String random(int size) {
+        Random rnd = new Random();
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static void addEntry(ZipArchiveOutputStream out, String name, String content) throws IOException {
+        addEntry(out, name, content, 0644);
+    }
+
+    private static void addEntry(ZipArchiveOutputStream out, String name, String content, int unixMode) throws IOException {
+        ZipArchiveEntry e = new ZipArchiveEntry(name);
+        e.setUnixMode(unixMode);
+        e.setTime(0);
+        out.putArchiveEntry(e);
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeArchiveEntry();
+    }
+
+    /**
+     * Mimics the server's manifest and snapshot endpoints.
+     */
+    private static class FakeState {
+
+        private final Map<String, String> files = new TreeMap<>();
+        private final Set<String> hashed = new HashSet<>();
+        private final Map<String, Integer> modes = new HashMap<>();
+        private final List<Long> offsets = new ArrayList<>();
+
+        /**
+         * Break the first snapshot response after the specified number of bytes.
+         */
+        private long breakAfter = -1;
+
+        /**
+         * Modify the state after the first snapshot request.
+         */
+        private Map<String, String> changeOnSnapshot;
+
+        private int manifestRequests;
+        private Set<String> lastExcludeHashes;
+
+        private synchronized String etag() {
+            return String.valueOf(files.hashCode());
+        }
+
+        private synchronized void manifest(HttpExchange exchange) throws IOException {
+            manifestRequests++;
+
+            List<Map<String, Object>> items = new ArrayList<>();
+            files.forEach((name, content) -> {
+                Map<String, Object> i = new HashMap<>();
+                i.put("name", name);
+                i.put("unixMode", modes.getOrDefault(name, 0644));
+                i.put("size", content.length());
+                if (hashed.contains(name)) {
+                    i.put("hash", sha256(content));
+                }
+                items.add(i);
+            });
+
+            respond(exchange, objectMapper.writeValueAsBytes(Map.of("etag", etag(), "items", items)), -1);
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void snapshot(HttpExchange exchange) throws IOException {
+            Map<String, Object> req = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+            long offset = ((Number) req.get("offset")).longValue();
+            offsets.add(offset);
+            lastExcludeHashes = new HashSet<>((List<String>) req.get("excludeHashes"));
+
+            if (changeOnSnapshot != null) {
+                files.putAll(changeOnSnapshot);
+                changeOnSnapshot = null;
+            }
+
+            if (!etag().equals(req.get("etag"))) {
+                exchange.sendResponseHeaders(412, -1);
+                exchange.close();
+                return;
+            }
+
+            // like the server, write the archive as a stream, i.e. with data descriptors
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+                for (Map.Entry<String, String> e : files.entrySet()) {
+                    if (hashed.contains(e.getKey()) && lastExcludeHashes.contains(sha256(e.getValue()))) {
+                        continue;
+                    }
+                    addEntry(out, e.getKey(), e.getValue(), modes.getOrDefault(e.getKey(), 0644));
+                }
+            }
+
+            byte[] ab = zip.toByteArray();
+            respond(exchange, Arrays.copyOfRange(ab, (int) offset, ab.length), breakAfter);
+
+            // break only the first response
+            breakAfter = -1;
+        }
+
+        private static void respond(HttpExchange exchange, byte[] ab, long breakAfter) throws IOException {
+            exchange.sendResponseHeaders(200, ab.length);
+            OutputStream out = exchange.getResponseBody();
+            if (breakAfter > 0 && breakAfter < ab.length) {
+                out.write(ab, 0, (int) breakAfter);
+                out.flush();
+                // closes the connection before all bytes are sent
+                exchange.close();
+                return;
+            }
+            out.write(ab);
+            exchange.close();
+        }
+    }
+}
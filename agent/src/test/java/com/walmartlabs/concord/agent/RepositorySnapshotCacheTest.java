@@ -0,0 +1,242 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.cfg.RepositoryCacheConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RepositorySnapshotCacheTest {
+
+    private static final String REPO_URL = "https://example.com/org/repo.git";
+    private static final String COMMIT_A = "a".repeat(40);
+    private static final String COMMIT_B = "b".repeat(40);
+    private static final String COMMIT_C = "c".repeat(40);
+
+    @Test
+    public void testCreateAndAcquire(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+
+        assertNull(cache.acquire(REPO_URL, COMMIT_A, null));
+
+        try (RepositorySnapshotCache.Lease l = cache.create(REPO_URL, COMMIT_A, null, dst -> write(dst, "aaa"))) {
+            assertEquals("aaa", Files.readString(l.path().resolve("file.txt")));
+        }
+
+        try (RepositorySnapshotCache.Lease l = cache.acquire(REPO_URL, COMMIT_A, null)) {
+            assertNotNull(l);
+            assertEquals("aaa", Files.readString(l.path().resolve("file.txt")));
+        }
+
+        // different repository path, different snapshot
+        assertNull(cache.acquire(REPO_URL, COMMIT_A, "sub/dir"));
+
+        assertEquals(1L, cache.getMetrics().get("hits"));
+        assertEquals(2L, cache.getMetrics().get("misses"));
+        assertEquals(1, cache.getMetrics().get("count"));
+        assertEquals(3L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testCreateExisting(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+
+        AtomicInteger exports = new AtomicInteger();
+        RepositorySnapshotCache.Exporter exporter = dst -> {
+            exports.incrementAndGet();
+            write(dst, "aaa");
+        };
+
+        cache.create(REPO_URL, COMMIT_A, null, exporter).close();
+        cache.create(REPO_URL, COMMIT_A, null, exporter).close();
+
+        assertEquals(1, exports.get());
+        assertEquals(3L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testExportError(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+
+        assertThrows(IOException.class, () -> cache.create(REPO_URL, COMMIT_A, null, dst -> {
+            write(dst, "aaa");
+            throw new IOException("boom");
+        }));
+
+        assertNull(cache.acquire(REPO_URL, COMMIT_A, null));
+        assertEquals(0L, countFiles(tempDir.resolve("snapshots")));
+    }
+
+    @Test
+    public void testIsCacheable(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+
+        assertTrue(cache.isCacheable(COMMIT_A));
+        assertTrue(cache.isCacheable("a".repeat(64)));
+        assertFalse(cache.isCacheable(null));
+        assertFalse(cache.isCacheable("aaaaaaa"));
+        assertFalse(cache.isCacheable("master"));
+        assertFalse(cache.isCacheable("../" + "a".repeat(37)));
+
+        assertThrows(IllegalArgumentException.class, () -> cache.acquire(REPO_URL, "master", null));
+    }
+
+    @Test
+    public void testEviction(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 25, Duration.ofHours(1)));
+
+        cache.create(REPO_URL, COMMIT_A, null, dst -> write(dst, "1111111111")).close();
+        Thread.sleep(10);
+        cache.create(REPO_URL, COMMIT_B, null, dst -> write(dst, "2222222222")).close();
+        Thread.sleep(10);
+
+        // make the first snapshot the most recently used one
+        cache.acquire(REPO_URL, COMMIT_A, null).close();
+        Thread.sleep(10);
+
+        cache.create(REPO_URL, COMMIT_C, null, dst -> write(dst, "3333333333")).close();
+        cache.cleanup();
+
+        assertNotNull(cache.acquire(REPO_URL, COMMIT_A, null));
+        assertNull(cache.acquire(REPO_URL, COMMIT_B, null));
+        assertNotNull(cache.acquire(REPO_URL, COMMIT_C, null));
+        assertEquals(1L, cache.getMetrics().get("evictions"));
+        assertEquals(20L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testLeasedSnapshotsAreKept(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofMillis(1)));
+
+        RepositorySnapshotCache.Lease l = cache.create(REPO_URL, COMMIT_A, null, dst -> write(dst, "aaa"));
+        Thread.sleep(10);
+
+        // expired, but still in use
+        cache.cleanup();
+        assertTrue(Files.exists(l.path()));
+
+        l.close();
+        // closing twice doesn't release someone else's lease
+        l.close();
+
+        cache.cleanup();
+        assertFalse(Files.exists(l.path()));
+        assertNull(cache.acquire(REPO_URL, COMMIT_A, null));
+        assertEquals(0L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testOversizedSnapshot(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 5, Duration.ofHours(1)));
+
+        // larger than the cache, but leased until the job is done
+        try (RepositorySnapshotCache.Lease l = cache.create(REPO_URL, COMMIT_A, null, dst -> write(dst, "1111111111"))) {
+            cache.cleanup();
+            assertEquals("1111111111", Files.readString(l.path().resolve("file.txt")));
+        }
+
+        cache.cleanup();
+        assertNull(cache.acquire(REPO_URL, COMMIT_A, null));
+        assertEquals(0L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testCreatedConcurrently(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+
+        // another worker creates the same snapshot while this one is exporting
+        RepositorySnapshotCache.Exporter exporter = dst -> {
+            cache.create(REPO_URL, COMMIT_A, null, d -> write(d, "aaa")).close();
+            write(dst, "aaa");
+        };
+
+        try (RepositorySnapshotCache.Lease l = cache.create(REPO_URL, COMMIT_A, null, exporter)) {
+            cache.cleanup();
+            assertEquals("aaa", Files.readString(l.path().resolve("file.txt")));
+        }
+
+        assertEquals(1, cache.getMetrics().get("count"));
+        assertEquals(3L, cache.getMetrics().get("size"));
+    }
+
+    @Test
+    public void testRestart(@TempDir Path tempDir) throws Exception {
+        new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)))
+                .create(REPO_URL, COMMIT_A, null, dst -> write(dst, "aaa"))
+                .close();
+
+        // a leftover of an interrupted export
+        Path snapshots = tempDir.resolve("snapshots");
+        Path repoDir;
+        try (Stream<Path> s = Files.list(snapshots)) {
+            repoDir = s.findFirst().orElseThrow();
+        }
+        Files.createDirectories(repoDir.resolve(COMMIT_B + ".tmp123"));
+
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 1024, Duration.ofHours(1)));
+        assertEquals(1, cache.getMetrics().get("count"));
+        assertEquals(3L, cache.getMetrics().get("size"));
+        assertFalse(Files.exists(repoDir.resolve(COMMIT_B + ".tmp123")));
+
+        try (RepositorySnapshotCache.Lease l = cache.acquire(REPO_URL, COMMIT_A, null)) {
+            assertNotNull(l);
+        }
+    }
+
+    @Test
+    public void testDisabled(@TempDir Path tempDir) throws Exception {
+        RepositorySnapshotCache cache = new RepositorySnapshotCache(cfg(tempDir, 0, Duration.ofHours(1)));
+
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.isCacheable(COMMIT_A));
+    }
+
+    private static RepositoryCacheConfiguration cfg(Path tempDir, long maxSize, Duration maxAge) throws Exception {
+        Path snapshotDir = Files.createDirectories(tempDir.resolve("snapshots"));
+
+        RepositoryCacheConfiguration cfg = mock(RepositoryCacheConfiguration.class);
+        when(cfg.getSnapshotDir()).thenReturn(snapshotDir);
+        when(cfg.getSnapshotMaxSize()).thenReturn(maxSize);
+        when(cfg.getMaxAge()).thenReturn(maxAge);
+        return cfg;
+    }
+
+    private static void write(Path dir, String s) throws IOException {
+        Files.writeString(dir.resolve("file.txt"), s);
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            return s.filter(Files::isRegularFile).count();
+        }
+    }
+}
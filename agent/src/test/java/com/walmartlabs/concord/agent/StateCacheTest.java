@@ -0,0 +1,138 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StateCacheTest {
+
+    @Test
+    public void testPutAndGet(@TempDir Path tempDir) throws Exception {
+        StateCache cache = new StateCache(cfg(tempDir.resolve("cache"), 1024));
+
+        Path src = write(tempDir.resolve("a"), "aaa");
+        String hash = sha256("aaa");
+
+        assertNull(cache.get(hash));
+
+        cache.put(hash, src);
+
+        Path cached = cache.get(hash);
+        assertNotNull(cached);
+        assertEquals("aaa", Files.readString(cached));
+
+        // invalid hashes are ignored
+        assertNull(cache.get("../a"));
+    }
+
+    @Test
+    public void testHashMismatch(@TempDir Path tempDir) throws Exception {
+        StateCache cache = new StateCache(cfg(tempDir.resolve("cache"), 1024));
+
+        Path src = write(tempDir.resolve("a"), "aaa");
+        String hash = sha256("bbb");
+
+        cache.put(hash, src);
+        assertNull(cache.get(hash));
+
+        // no leftovers
+        try (var s = Files.list(tempDir.resolve("cache"))) {
+            assertEquals(0, s.count());
+        }
+    }
+
+    @Test
+    public void testEviction(@TempDir Path tempDir) throws Exception {
+        StateCache cache = new StateCache(cfg(tempDir.resolve("cache"), 25));
+
+        String h1 = sha256("1111111111");
+        String h2 = sha256("2222222222");
+        String h3 = sha256("3333333333");
+
+        cache.put(h1, write(tempDir.resolve("1"), "1111111111"));
+        cache.put(h2, write(tempDir.resolve("2"), "2222222222"));
+
+        // make the first file the most recently used one
+        Files.setLastModifiedTime(tempDir.resolve("cache").resolve(h2), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        assertNotNull(cache.get(h1));
+
+        cache.put(h3, write(tempDir.resolve("3"), "3333333333"));
+
+        assertNotNull(cache.get(h1));
+        assertNull(cache.get(h2));
+        assertNotNull(cache.get(h3));
+    }
+
+    @Test
+    public void testInitialSize(@TempDir Path tempDir) throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+
+        String h1 = sha256("1111111111");
+        String h2 = sha256("2222222222");
+        new StateCache(cfg(cacheDir, 1024)).put(h1, write(tempDir.resolve("1"), "1111111111"));
+
+        // the existing files are taken into account after a restart
+        StateCache cache = new StateCache(cfg(cacheDir, 15));
+        cache.put(h2, write(tempDir.resolve("2"), "2222222222"));
+
+        assertNull(cache.get(h1));
+        assertNotNull(cache.get(h2));
+    }
+
+    @Test
+    public void testDisabled(@TempDir Path tempDir) throws Exception {
+        StateCache cache = new StateCache(cfg(tempDir.resolve("cache"), 0));
+
+        String hash = sha256("aaa");
+        cache.put(hash, write(tempDir.resolve("a"), "aaa"));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(hash));
+    }
+
+    static AgentConfiguration cfg(Path cacheDir, long maxSize) throws Exception {
+        Files.createDirectories(cacheDir);
+
+        AgentConfiguration cfg = mock(AgentConfiguration.class);
+        when(cfg.getStateCacheDir()).thenReturn(cacheDir);
+        when(cfg.getStateCacheMaxSize()).thenReturn(maxSize);
+        return cfg;
+    }
+
+    static String sha256(String s) {
+        return Hashing.sha256().hashBytes(s.getBytes()).toString();
+    }
+
+    private static Path write(Path p, String s) throws Exception {
+        return Files.writeString(p, s);
+    }
+}
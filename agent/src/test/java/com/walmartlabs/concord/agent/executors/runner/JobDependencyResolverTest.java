@@ -0,0 +1,176 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.agent.ExecutionException;
+import com.walmartlabs.concord.agent.logging.ProcessLog;
+import com.walmartlabs.concord.dependencymanager.DependencyEntity;
+import com.walmartlabs.concord.dependencymanager.DependencyManager;
+import com.walmartlabs.concord.sdk.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class JobDependencyResolverTest {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private DependencyManager dependencyManager;
+    private DefaultDependencies defaultDependencies;
+    private ProcessLog processLog;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dependencyManager = mock(DependencyManager.class);
+        when(dependencyManager.resolve(anyCollection(), any())).thenAnswer(i -> {
+            Collection<URI> uris = i.getArgument(0);
+            return uris.stream()
+                    .map(u -> {
+                        String[] s = u.getAuthority().split(":");
+                        return new DependencyEntity(Paths.get("/tmp/" + s[1] + ".jar"), s[0], s[1], s[2]);
+                    })
+                    .toList();
+        });
+
+        defaultDependencies = mock(DefaultDependencies.class);
+        when(defaultDependencies.getDependencies()).thenReturn(List.of());
+
+        processLog = mock(ProcessLog.class);
+    }
+
+    @Test
+    public void testPreparedResultIsUsed(@TempDir Path stateDir) throws Exception {
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), Map.of("dependencyRewrite", List.of(
+                Map.of("groupId", "com.example", "artifactId", "a", "toVersion", "1.5", "value", "mvn://com.example:a:2.0"))));
+
+        JobDependencyResolver resolver = new JobDependencyResolver(dependencyManager, defaultDependencies, null, executor);
+        resolver.prepare(stateDir, processLog);
+
+        // the rewrite is reported in the process log
+        verify(processLog).info(eq("Updating dependency from '{}' to '{}'"), eq(URI.create("mvn://com.example:a:1.0")), eq(URI.create("mvn://com.example:a:2.0")));
+        verify(dependencyManager).resolve(eq(List.of(URI.create("mvn://com.example:a:2.0"))), any());
+
+        JobDependencyResolver.Result result = resolver.resolve(job(stateDir));
+        assertEquals(List.of(URI.create("mvn://com.example:a:2.0")), result.uris());
+        assertEquals(1, result.dependencies().size());
+
+        // no second resolution
+        verify(dependencyManager, times(1)).resolve(anyCollection(), any());
+    }
+
+    @Test
+    public void testPreparedPolicyViolation(@TempDir Path stateDir) throws Exception {
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), Map.of("dependency", Map.of("deny", List.of(
+                Map.of("msg", "forbidden", "groupId", "com.example", "artifactId", "a")))));
+
+        JobDependencyResolver resolver = new JobDependencyResolver(dependencyManager, defaultDependencies, null, executor);
+        assertThrows(ExecutionException.class, () -> resolver.prepare(stateDir, processLog));
+
+        verify(processLog).warn(eq("Artifact '{}' is forbidden by the dependency policy {}"), any(), eq("forbidden"));
+
+        // the same error without resolving the dependencies again
+        RunnerJob job = job(stateDir);
+        assertThrows(ExecutionException.class, () -> resolver.resolve(job));
+        verify(dependencyManager, times(1)).resolve(anyCollection(), any());
+    }
+
+    @Test
+    public void testPolicyCheckedOnPreparedResult(@TempDir Path stateDir) throws Exception {
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), null);
+
+        JobDependencyResolver resolver = new JobDependencyResolver(dependencyManager, defaultDependencies, null, executor);
+        resolver.prepare(stateDir, processLog);
+
+        // same dependencies, but the job's policy forbids them
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), Map.of("dependency", Map.of("deny", List.of(
+                Map.of("msg", "forbidden", "groupId", "com.example", "artifactId", "a")))));
+
+        RunnerJob job = job(stateDir);
+        assertThrows(ExecutionException.class, () -> resolver.resolve(job));
+        verify(job.getLog()).warn(eq("Artifact '{}' is forbidden by the dependency policy {}"), any(), eq("forbidden"));
+
+        // the prepared result is reused
+        verify(dependencyManager, times(1)).resolve(anyCollection(), any());
+    }
+
+    @Test
+    public void testChangedDependencies(@TempDir Path stateDir) throws Exception {
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), null);
+
+        JobDependencyResolver resolver = new JobDependencyResolver(dependencyManager, defaultDependencies, null, executor);
+        resolver.prepare(stateDir, processLog);
+
+        // the job's configuration doesn't match the state
+        writeState(stateDir, List.of("mvn://com.example:b:1.0"), null);
+
+        JobDependencyResolver.Result result = resolver.resolve(job(stateDir));
+        assertEquals(List.of(URI.create("mvn://com.example:b:1.0")), result.uris());
+        verify(dependencyManager, times(2)).resolve(anyCollection(), any());
+    }
+
+    @Test
+    public void testWithoutPrepare(@TempDir Path stateDir) throws Exception {
+        writeState(stateDir, List.of("mvn://com.example:a:1.0"), null);
+
+        JobDependencyResolver resolver = new JobDependencyResolver(dependencyManager, defaultDependencies, null, executor);
+
+        JobDependencyResolver.Result result = resolver.resolve(job(stateDir));
+        assertEquals(List.of(URI.create("mvn://com.example:a:1.0")), result.uris());
+        verify(dependencyManager, times(1)).resolve(anyCollection(), any());
+    }
+
+    private static RunnerJob job(Path payloadDir) throws Exception {
+        RunnerJob job = mock(RunnerJob.class);
+        when(job.getProcessCfg()).thenReturn(RunnerJob.readProcessCfg(payloadDir));
+        when(job.getPayloadDir()).thenReturn(payloadDir);
+        when(job.getPolicyEngine()).thenReturn(RunnerJob.readPolicyEngine(payloadDir));
+        when(job.getLog()).thenReturn(mock(RunnerLog.class));
+        return job;
+    }
+
+    private static void writeState(Path dir, List<String> dependencies, Map<String, Object> policy) throws Exception {
+        ObjectMapper om = new ObjectMapper();
+
+        Files.write(dir.resolve(Constants.Files.CONFIGURATION_FILE_NAME),
+                om.writeValueAsBytes(Map.of(Constants.Request.DEPENDENCIES_KEY, dependencies)));
+
+        if (policy != null) {
+            Path p = dir.resolve(Constants.Files.CONCORD_SYSTEM_DIR_NAME).resolve(Constants.Files.POLICY_FILE_NAME);
+            Files.createDirectories(p.getParent());
+            Files.write(p, om.writeValueAsBytes(policy));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.agent.Utils;
+import com.walmartlabs.concord.agent.cfg.PreForkConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class ProcessPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Signatures are removed by the maintenance while {@link ProcessPool#take(HashCode, ProcessPool.ProcessLauncher)}
+     * is starting a JVM. Every started JVM must be either taken or killed.
+     */
+    @Test
+    public void testTakeAndMaintenance() throws Exception {
+        PreForkConfiguration cfg = mock(PreForkConfiguration.class);
+        when(cfg.getMaxAge()).thenReturn(1L);
+        when(cfg.getMaxCount()).thenReturn(10000);
+        when(cfg.getMaxPerSignature()).thenReturn(2);
+        when(cfg.getLeadTime()).thenReturn(1000L);
+        when(cfg.getDemandWindow()).thenReturn(2L);
+
+        ProcessPool pool = new ProcessPool(cfg);
+
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger killed = new AtomicInteger();
+
+        ProcessPool.ProcessLauncher launcher = () -> {
+            Utils.sleep(1);
+            started.incrementAndGet();
+            return new ProcessPool.ProcessEntry(new FakeProcess(killed), tempDir.resolve("p" + started.get()));
+        };
+
+        AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<?>> takes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                takes.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        HashCode hc = Hashing.sha256().hashString("sig" + j % 100, StandardCharsets.UTF_8);
+                        pool.take(hc, launcher);
+                        taken.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> futures = new ArrayList<>(takes);
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        pool.maintenance();
+                        Utils.sleep(1);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : takes) {
+                f.get(1, TimeUnit.MINUTES);
+            }
+            done.set(true);
+
+            for (Future<?> f : futures) {
+                f.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // wait for the pending populate() calls and expire the remaining spares
+        long deadline = System.currentTimeMillis() + 10000;
+        while (started.get() != taken.get() + killed.get() && System.currentTimeMillis() < deadline) {
+            Utils.sleep(50);
+            pool.maintenance();
+        }
+
+        assertEquals(started.get(), taken.get() + killed.get());
+        assertEquals(0, pool.getMetrics().get("size"));
+        assertEquals(0, pool.getMetrics().get("signatures"));
+    }
+
+    private static final class FakeProcess extends Process {
+
+        private final AtomicInteger killed;
+        private final ProcessHandle handle = mock(ProcessHandle.class);
+
+        private FakeProcess(AtomicInteger killed) {
+            this.killed = killed;
+        }
+
+        @Override
+        public ProcessHandle toHandle() {
+            killed.incrementAndGet();
+            return handle;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return true;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogShipperTest {
+
+    @Test
+    public void testOrderWithFailures(@TempDir Path tempDir) {
+        RecordingAppender appender = new RecordingAppender(1);
+
+        LogShipper.LogShipperConfiguration cfg = LogShipper.LogShipperConfiguration.builder()
+                .batchSize(8)
+                .flushInterval(10)
+                .maxQueueSize(16)
+                .maxSpoolSize(1024 * 1024)
+                .retryDelay(10)
+                .build();
+
+        UUID instanceId = UUID.randomUUID();
+
+        StringBuilder expected1 = new StringBuilder();
+        StringBuilder expected2 = new StringBuilder();
+
+        try (LogShipper shipper = new LogShipper(instanceId, appender, cfg, tempDir.resolve("spool"))) {
+            for (int i = 0; i < 20; i++) {
+                String s1 = "a" + i + ";";
+                String s2 = "b" + i + ";";
+
+                shipper.appendLog(instanceId, 1, s1.getBytes());
+                shipper.appendLog(instanceId, 2, s2.getBytes());
+
+                expected1.append(s1);
+                expected2.append(s2);
+            }
+
+            shipper.updateSegment(instanceId, 1, LogSegmentStats.builder().errors(1).build());
+            shipper.appendLog(instanceId, 2, "end".getBytes());
+            expected2.append("end");
+        }
+
+        assertEquals(expected1.toString(), appender.data(1));
+        assertEquals(expected2.toString(), appender.data(2));
+
+        // the update must be received after the segment's data
+        assertEquals("update:1", appender.events.stream().filter(e -> e.startsWith("update")).findFirst().orElse(null));
+        assertEquals(appender.events.lastIndexOf("data:1") + 1, appender.events.indexOf("update:1"));
+    }
+
+    @Test
+    public void testGiveUp(@TempDir Path tempDir) {
+        // the server rejects the first chunk of the segment 1
+        RecordingAppender appender = new RecordingAppender(0) {
+            @Override
+            public synchronized boolean appendLog(UUID instanceId, long segmentId, byte[] ab) {
+                if (segmentId == 1 && new String(ab).startsWith("rejected")) {
+                    return false;
+                }
+                return super.appendLog(instanceId, segmentId, ab);
+            }
+        };
+
+        LogShipper.LogShipperConfiguration cfg = LogShipper.LogShipperConfiguration.builder()
+                .batchSize(8)
+                .flushInterval(10)
+                .maxQueueSize(4)
+                .maxSpoolSize(1024 * 1024)
+                .maxAttempts(3)
+                .retryDelay(10)
+                .build();
+
+        UUID instanceId = UUID.randomUUID();
+
+        try (LogShipper shipper = new LogShipper(instanceId, appender, cfg, tempDir.resolve("spool"))) {
+            shipper.appendLog(instanceId, 1, "rejected".getBytes());
+            shipper.appendLog(instanceId, 1, "a1;".getBytes());
+            shipper.appendLog(instanceId, 2, "b1;".getBytes());
+        }
+
+        // the rejected chunk is dropped, the rest is delivered
+        assertEquals("a1;", appender.data(1));
+        assertEquals("b1;", appender.data(2));
+    }
+
+    private static class RecordingAppender implements LogAppender {
+
+        private final Map<Long, ByteArrayOutputStream> data = new HashMap<>();
+        private final List<String> events = new ArrayList<>();
+
+        private int failuresLeft;
+
+        private RecordingAppender(int failures) {
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public void appendLog(UUID instanceId, byte[] ab) {
+            throw new IllegalStateException("Not expected");
+        }
+
+        @Override
+        public synchronized boolean appendLog(UUID instanceId, long segmentId, byte[] ab) {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                return false;
+            }
+
+            data.computeIfAbsent(segmentId, id -> new ByteArrayOutputStream()).writeBytes(ab);
+            events.add("data:" + segmentId);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean updateSegment(UUID instanceId, long segmentId, LogSegmentStats stats) {
+            events.add("update:" + segmentId);
+            return true;
+        }
+
+        synchronized String data(long segmentId) {
+            return data.get(segmentId).toString();
+        }
+    }
+}
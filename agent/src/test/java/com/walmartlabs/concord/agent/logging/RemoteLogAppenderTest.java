@@ -0,0 +1,129 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.walmartlabs.concord.agent.cfg.AgentConfiguration;
+import com.walmartlabs.concord.client2.ApiClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemoteLogAppenderTest {
+
+    private final UUID instanceId = UUID.randomUUID();
+    private final List<Request> requests = new ArrayList<>();
+
+    private HttpServer server;
+    private int status = 204;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v2/process/" + instanceId + "/log/segment/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCompressed() {
+        RemoteLogAppender appender = new RemoteLogAppender(apiClient(), cfg(true));
+
+        String large = "x".repeat(10_000);
+        assertTrue(appender.appendLog(instanceId, 1, large.getBytes()));
+        assertTrue(appender.appendLog(instanceId, 1, "small".getBytes()));
+
+        assertEquals(2, requests.size());
+
+        // large chunks are compressed and sent using the same client, with the same authentication
+        Request r = requests.get(0);
+        assertEquals("gzip", r.contentEncoding);
+        assertEquals("test-key", r.authorization);
+        assertEquals(large, r.body);
+
+        // small chunks are sent as is
+        r = requests.get(1);
+        assertNull(r.contentEncoding);
+        assertEquals("test-key", r.authorization);
+        assertEquals("small", r.body);
+    }
+
+    @Test
+    public void testRejected() {
+        status = 404;
+
+        RemoteLogAppender appender = new RemoteLogAppender(apiClient(), cfg(true));
+
+        // permanently rejected chunks are not retried
+        assertTrue(appender.appendLog(instanceId, 1, "x".repeat(10_000).getBytes()));
+        assertEquals(1, requests.size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equals(contentEncoding)) {
+            in = new GZIPInputStream(in);
+        }
+
+        String body = new String(in.readAllBytes());
+        synchronized (requests) {
+            requests.add(new Request(contentEncoding, exchange.getRequestHeaders().getFirst("Authorization"), body));
+        }
+
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private ApiClient apiClient() {
+        return new ApiClient(HttpClient.newHttpClient())
+                .setBaseUrl("http://localhost:" + server.getAddress().getPort())
+                .setApiKey("test-key");
+    }
+
+    private static AgentConfiguration cfg(boolean compress) {
+        AgentConfiguration cfg = mock(AgentConfiguration.class);
+        when(cfg.isLogShippingCompress()).thenReturn(compress);
+        return cfg;
+    }
+
+    private record Request(String contentEncoding, String authorization, String body) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.walmartlabs.concord.agent.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResumableInputStreamTest {
+
+    @Test
+    public void testResume() throws Exception {
+        byte[] data = data(10_000);
+
+        List<Long> offsets = new ArrayList<>();
+        ResumableInputStream.Opener opener = offset -> {
+            offsets.add(offset);
+            // each connection breaks after 3000 bytes
+            return new FailingInputStream(Arrays.copyOfRange(data, (int) offset, data.length), 3000);
+        };
+
+        try (ResumableInputStream in = new ResumableInputStream(opener, 5, 0)) {
+            assertArrayEquals(data, in.readAllBytes());
+            assertEquals(data.length, in.getPosition());
+        }
+
+        assertEquals(List.of(0L, 3000L, 6000L, 9000L), offsets);
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception {
+        byte[] data = data(10_000);
+
+        ResumableInputStream.Opener opener = offset -> new FailingInputStream(Arrays.copyOfRange(data, (int) offset, data.length), 1000);
+
+        try (ResumableInputStream in = new ResumableInputStream(opener, 2, 0)) {
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertEquals("boom", e.getMessage());
+            assertEquals(3000, in.getPosition());
+        }
+    }
+
+    @Test
+    public void testOpenError() throws Exception {
+        byte[] data = data(10_000);
+
+        ResumableInputStream.Opener opener = offset -> {
+            if (offset > 0) {
+                throw new IOException("can't resume");
+            }
+            return new FailingInputStream(data, 1000);
+        };
+
+        // errors while re-opening the stream are not retried
+        try (ResumableInputStream in = new ResumableInputStream(opener, 5, 0)) {
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertEquals("can't resume", e.getMessage());
+        }
+    }
+
+    private static byte[] data(int size) {
+        byte[] ab = new byte[size];
+        for (int i = 0; i < size; i++) {
+            ab[i] = (byte) i;
+        }
+        return ab;
+    }
+
+    /**
+     * Fails after the specified number of bytes.
+     */
+    private static class FailingInputStream extends InputStream {
+
+        private final InputStream delegate;
+        private long remaining;
+
+        private FailingInputStream(byte[] data, long failAfter) {
+            this.delegate = new ByteArrayInputStream(data);
+            this.remaining = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] ab = new byte[1];
+            int n = read(ab, 0, 1);
+            return n < 0 ? -1 : ab[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("boom");
+            }
+
+            int n = delegate.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Pre-compiled version of {@link Matcher}. Converts the conditions into
+ * a tree of predicates once, so the tree can be reused to match any number
+ * of values. The results are the same as {@code Matcher.matches(data, conditions)}.
+ * <p>
+ * String conditions without any regex metacharacters are matched without
+ * using {@link Pattern}.
+ */
+public final class CompiledMatcher {
+
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    private static final Map<Object, CompiledMatcher> cache = new ConcurrentHashMap<>();
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+    private static final Map<String, Pattern> caseSensitivePatterns = new ConcurrentHashMap<>();
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    /**
+     * Compiles the conditions. The conditions must not be modified afterwards.
+     */
+    public static CompiledMatcher compile(Object conditions) {
+        return new CompiledMatcher(toNode(conditions));
+    }
+
+    /**
+     * Same as {@link #compile(Object)}, but returns a cached instance if
+     * the same (equal) conditions were compiled before.
+     */
+    public static CompiledMatcher cached(Object conditions) {
+        if (conditions == null) {
+            return compile(null);
+        }
+
+        CompiledMatcher result = cache.get(conditions);
+        if (result == null) {
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+
+            result = compile(conditions);
+            cache.put(conditions, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a cached case-insensitive {@link Pattern} for the specified regex.
+     */
+    static Pattern pattern(String regex) {
+        return pattern(patterns, regex, Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Returns a cached case-sensitive {@link Pattern} for the specified regex.
+     */
+    public static Pattern caseSensitivePattern(String regex) {
+        return pattern(caseSensitivePatterns, regex, 0);
+    }
+
+    private static Pattern pattern(Map<String, Pattern> cache, String regex, int flags) {
+        Pattern result = cache.get(regex);
+        if (result == null) {
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+
+            result = Pattern.compile(regex, flags);
+            cache.put(regex, result);
+        }
+        return result;
+    }
+
+    private final Node root;
+
+    private CompiledMatcher(Node root) {
+        this.root = root;
+    }
+
+    public boolean matches(Object data) {
+        return root.test(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node toNode(Object conditions) {
+        if (conditions == null) {
+            return Objects::isNull;
+        } else if (conditions instanceof Map) {
+            return new MapNode((Map<String, Object>) conditions);
+        } else if (conditions instanceof String) {
+            return new StringNode((String) conditions);
+        } else if (conditions instanceof Collection) {
+            return new CollectionNode((Collection<Object>) conditions);
+        } else {
+            return new ValueNode(conditions);
+        }
+    }
+
+    private static boolean anyElement(Node n, Collection<?> items) {
+        for (Object i : items) {
+            if (n.test(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private interface Node {
+
+        boolean test(Object data);
+    }
+
+    private static final class MapNode implements Node {
+
+        private final Map<String, Object> conditions;
+        private final Map<String, Node> children;
+
+        private MapNode(Map<String, Object> conditions) {
+            this.conditions = conditions;
+            this.children = new LinkedHashMap<>(conditions.size());
+            conditions.forEach((k, v) -> children.put(k, toNode(v)));
+        }
+
+        @Override
+        public boolean test(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (data instanceof Map) {
+                Map<?, ?> m = (Map<?, ?>) data;
+                if (children.isEmpty() && !m.isEmpty()) {
+                    return false;
+                }
+
+                for (Map.Entry<String, Node> e : children.entrySet()) {
+                    if (!e.getValue().test(m.get(e.getKey()))) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (data instanceof Collection) {
+                return anyElement(this, (Collection<?>) data);
+            }
+
+            return data.equals(conditions);
+        }
+    }
+
+    private static final class StringNode implements Node {
+
+        private final String condition;
+        private final boolean literal;
+        private final Pattern pattern;
+
+        private StringNode(String condition) {
+            this.condition = condition;
+            this.literal = isLiteral(condition);
+            this.pattern = literal ? null : compileOrNull(condition);
+        }
+
+        @Override
+        public boolean test(Object data) {
+            if (data == null) {
+                data = "";
+            }
+
+            if (data instanceof String) {
+                return testString((String) data);
+            } else if (data instanceof UUID) {
+                return testString(data.toString());
+            } else if (data instanceof Collection) {
+                return anyElement(this, (Collection<?>) data);
+            }
+
+            return data.equals(condition);
+        }
+
+        private boolean testString(String value) {
+            if (literal) {
+                return equalsIgnoreAsciiCase(condition, value);
+            }
+
+            // invalid patterns fail only when used, same as in Matcher
+            Pattern p = pattern != null ? pattern : pattern(condition);
+            return p.matcher(value).matches();
+        }
+
+        private static Pattern compileOrNull(String regex) {
+            try {
+                return pattern(regex);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        private static boolean isLiteral(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c > 127 || REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Same as {@link Pattern#CASE_INSENSITIVE} matching of a literal:
+         * only US-ASCII characters are compared case-insensitively.
+         */
+        private static boolean equalsIgnoreAsciiCase(String literal, String value) {
+            if (literal.length() != value.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < literal.length(); i++) {
+                char a = literal.charAt(i);
+                char b = value.charAt(i);
+                if (a != b && (b > 127 || toLowerAscii(a) != toLowerAscii(b))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static char toLowerAscii(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+
+    private static final class CollectionNode implements Node {
+
+        private final List<Node> children;
+
+        private CollectionNode(Collection<Object> conditions) {
+            this.children = new ArrayList<>(conditions.size());
+            conditions.forEach(c -> children.add(toNode(c)));
+        }
+
+        @Override
+        public boolean test(Object data) {
+            if (data instanceof Collection) {
+                Collection<?> items = (Collection<?>) data;
+                if (children.size() > items.size()) {
+                    return false;
+                }
+
+                if (children.isEmpty() && !items.isEmpty()) {
+                    return false;
+                }
+
+                for (Node c : children) {
+                    if (!anyElement(c, items)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            for (Node c : children) {
+                if (c.test(data)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class ValueNode implements Node {
+
+        private final Object value;
+
+        private ValueNode(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(Object data) {
+            if (data == null) {
+                return false;
+            } else if (data instanceof Collection) {
+                return anyElement(this, (Collection<?>) data);
+            }
+
+            return data.equals(value);
+        }
+    }
+}
@@ -23,8 +23,13 @@ package com.walmartlabs.concord.common;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
-import java.util.regex.Pattern;
 
+/**
+ * Matches data (e.g. events, agent capabilities) with conditions.
+ * String conditions are case-insensitive regular expressions.
+ *
+ * @see CompiledMatcher
+ */
 public final class Matcher {
 
     public static boolean matches(Object data, Object conditions) {
@@ -108,7 +113,7 @@ public final class Matcher {
     }
 
     private static boolean compareStringValues(String value, String condition) {
-        return Pattern.compile(condition, Pattern.CASE_INSENSITIVE).matcher(value).matches();
+        return CompiledMatcher.pattern(condition).matcher(value).matches();
     }
 
     private static boolean compareArrayNodes(Collection<Object> dataElements, Collection<Object> conditionElements) {
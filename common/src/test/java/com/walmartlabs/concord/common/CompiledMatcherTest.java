@@ -0,0 +1,102 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.regex.PatternSyntaxException;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledMatcherTest {
+
+    @Test
+    public void testSameAsInterpreter() {
+        List<Object> values = asList(
+                null,
+                "",
+                "abc",
+                "ABC",
+                "a.c",
+                "abc.*",
+                "ab?",
+                "ÄBC",
+                "äbc",
+                "k8s-small",
+                123,
+                true,
+                UUID.fromString("2a4b0b52-0c5d-11ee-be56-0242ac120002"),
+                "2A4B0B52-0C5D-11EE-BE56-0242AC120002",
+                emptyList(),
+                asList("abc", "xyz"),
+                asList("1", "2", "3"),
+                asList(null, "abc"),
+                emptyMap(),
+                singletonMap("a", "abc"),
+                singletonMap("a", null),
+                map("a", "abc", "b", asList("1", "2")),
+                asList(singletonMap("a", "abc"), singletonMap("a", "xyz")));
+
+        for (Object conditions : values) {
+            CompiledMatcher m = CompiledMatcher.compile(conditions);
+            for (Object data : values) {
+                assertEquals(Matcher.matches(data, conditions), m.matches(data),
+                        "data: " + data + ", conditions: " + conditions);
+            }
+        }
+    }
+
+    @Test
+    public void testLiteral() {
+        CompiledMatcher m = CompiledMatcher.compile(singletonMap("flavor", "k8s-Small"));
+
+        assertTrue(m.matches(singletonMap("flavor", "K8S-small")));
+        assertFalse(m.matches(singletonMap("flavor", "k8s-small2")));
+        assertFalse(m.matches(singletonMap("flavor", "k8s")));
+    }
+
+    @Test
+    public void testInvalidPattern() {
+        CompiledMatcher m = CompiledMatcher.compile(asList("abc", "[abc"));
+
+        assertTrue(m.matches("abc"));
+        assertThrows(PatternSyntaxException.class, () -> m.matches("xyz"));
+    }
+
+    @Test
+    public void testCached() {
+        Map<String, Object> a = map("a", "abc", "b", asList("1", "2"));
+        Map<String, Object> b = map("a", "abc", "b", asList("1", "2"));
+
+        assertSame(CompiledMatcher.cached(a), CompiledMatcher.cached(b));
+    }
+
+    private static Map<String, Object> map(Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i < kv.length; i += 2) {
+            m.put((String) kv[i], kv[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,106 @@
+package com.walmartlabs.concord.common;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Matcher#matches(Object, Object)} with {@link CompiledMatcher}.
+ * Emulates a GitHub event matched against a set of trigger conditions.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.walmartlabs.concord.common.MatcherBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+    private static final String[] REPOS = {"concord", "concord-plugins", "ansible", "k8s-deploy", "docs"};
+    private static final String[] BRANCHES = {"master", "main", "release/.*", "feature-.*"};
+
+    @Param({"200"})
+    public int triggerCount;
+
+    private Map<String, Object> event;
+    private List<Map<String, Object>> conditions;
+    private List<CompiledMatcher> compiled;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(123);
+
+        event = new HashMap<>();
+        event.put("type", "push");
+        event.put("githubOrg", "walmartlabs");
+        event.put("githubRepo", "concord");
+        event.put("branch", "release/1.0");
+        event.put("status", "opened");
+        event.put("payload", Collections.singletonMap("sender", Collections.singletonMap("login", "octocat")));
+
+        conditions = new ArrayList<>(triggerCount);
+        compiled = new ArrayList<>(triggerCount);
+        for (int i = 0; i < triggerCount; i++) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("type", "push");
+            m.put("githubOrg", "walmartlabs");
+            m.put("githubRepo", REPOS[rnd.nextInt(REPOS.length)]);
+            m.put("branch", BRANCHES[rnd.nextInt(BRANCHES.length)]);
+            if (rnd.nextBoolean()) {
+                m.put("payload", Collections.singletonMap("sender", Collections.singletonMap("login", "(?!bot-).*")));
+            }
+
+            conditions.add(m);
+            compiled.add(CompiledMatcher.compile(m));
+        }
+    }
+
+    @Benchmark
+    public void interpreter(Blackhole bh) {
+        for (Map<String, Object> c : conditions) {
+            bh.consume(Matcher.matches(event, c));
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole bh) {
+        for (CompiledMatcher m : compiled) {
+            bh.consume(m.matches(event));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MatcherBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -20,7 +20,7 @@ package com.walmartlabs.concord.policyengine;
  * =====
  */
 
-import com.walmartlabs.concord.common.Matcher;
+import com.walmartlabs.concord.common.CompiledMatcher;
 
 import java.util.List;
 import java.util.Map;
@@ -33,15 +33,15 @@ public final class Utils {
     private static final Pattern FILE_SIZE_PATTERN = Pattern.compile("([\\d.]+)(.*)");
 
     public static boolean matchAny(List<String> patterns, String value) {
-        return Matcher.matchAny(patterns, value);
+        return CompiledMatcher.cached(patterns).matches(value);
     }
 
     public static boolean matches(String pattern, String value) {
-        return Matcher.matches(value, pattern);
+        return CompiledMatcher.cached(pattern).matches(value);
     }
 
     public static boolean matches(Map<String, Object> conditions, Map<String, Object> data) {
-        return Matcher.matches(data, conditions);
+        return CompiledMatcher.cached(conditions).matches(data);
     }
 
     public static Long parseFileSize(String v) {
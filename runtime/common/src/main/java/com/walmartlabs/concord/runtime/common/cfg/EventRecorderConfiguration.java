@@ -0,0 +1,69 @@
+package com.walmartlabs.concord.runtime.common.cfg;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+/**
+ * Parameters of the process event batching.
+ *
+ * @apiNote only for the runtime v2.
+ */
+@Value.Immutable
+@Value.Style(jdkOnly = true)
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonSerialize(as = ImmutableEventRecorderConfiguration.class)
+@JsonDeserialize(as = ImmutableEventRecorderConfiguration.class)
+public interface EventRecorderConfiguration {
+
+    /**
+     * Max number of events sent to the server in a single request.
+     */
+    @Value.Default
+    default int batchSize() {
+        return 100;
+    }
+
+    /**
+     * Max time (in ms) an event can wait in the buffer before it is sent
+     * to the server.
+     */
+    @Value.Default
+    default long batchFlushInterval() {
+        return 1000;
+    }
+
+    /**
+     * Max number of events waiting to be sent, including the events of
+     * a batch that failed to send. New events are dropped when the buffer is full.
+     */
+    @Value.Default
+    default int maxBufferSize() {
+        return 10000;
+    }
+
+    static ImmutableEventRecorderConfiguration.Builder builder() {
+        return ImmutableEventRecorderConfiguration.builder();
+    }
+}
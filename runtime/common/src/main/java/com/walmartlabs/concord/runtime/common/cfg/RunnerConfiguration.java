@@ -122,6 +122,14 @@ public interface RunnerConfiguration {
         return DockerConfiguration.builder().build();
     }
 
+    /**
+     * Process event batching configuration.
+     */
+    @Value.Default
+    default EventRecorderConfiguration eventRecorder() {
+        return EventRecorderConfiguration.builder().build();
+    }
+
     static ImmutableRunnerConfiguration.Builder builder() {
         return ImmutableRunnerConfiguration.builder();
     }
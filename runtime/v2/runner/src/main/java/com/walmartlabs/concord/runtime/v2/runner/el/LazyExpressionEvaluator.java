@@ -44,13 +44,46 @@ import static com.walmartlabs.concord.runtime.v2.runner.el.ThreadLocalEvalContex
  */
 public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
-    private final ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
+    /**
+     * Max number of parsed expressions to keep. Flows typically use a few
+     * hundred distinct expressions at most.
+     */
+    static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final ExpressionFactory expressionFactory;
     private final TaskProviders taskProviders;
     private final FunctionMapper functionMapper;
+    private final ELContext parseContext;
+    private final ExpressionCache expressionCache;
+
+    /**
+     * Resolvers that don't depend on the evaluation context.
+     * Created once and shared between all evaluations.
+     */
+    private final List<ELResolver> commonResolvers;
 
     public LazyExpressionEvaluator(TaskProviders taskProviders) {
+        this(taskProviders, DEFAULT_CACHE_SIZE);
+    }
+
+    LazyExpressionEvaluator(TaskProviders taskProviders, int cacheSize) {
+        this(taskProviders, cacheSize, ExpressionFactory.newInstance());
+    }
+
+    LazyExpressionEvaluator(TaskProviders taskProviders, int cacheSize, ExpressionFactory expressionFactory) {
+        this.expressionFactory = expressionFactory;
         this.taskProviders = taskProviders;
         this.functionMapper = createFunctionMapper();
+        this.parseContext = createContext(new CompositeELResolver());
+        this.expressionCache = cacheSize > 0 ? new ExpressionCache(cacheSize) : null;
+        this.commonResolvers = List.of(
+                expressionFactory.getStreamELResolver(),
+                new StaticFieldELResolver(),
+                new MapELResolver(),
+                new MethodAccessorResolver(),
+                new ResourceBundleELResolver(),
+                new ListELResolver(),
+                new ArrayELResolver());
     }
 
     @Override
@@ -121,22 +154,9 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
     }
 
     private <T> T evalExpr(LazyEvalContext ctx, String expr, Class<T> type) {
-        ELResolver resolver = createResolver(ctx, expressionFactory);
-
-        StandardELContext sc = new StandardELContext(expressionFactory) {
-            @Override
-            public ELResolver getELResolver() {
-                return resolver;
-            }
+        ELContext sc = createContext(createResolver(ctx));
 
-            @Override
-            public FunctionMapper getFunctionMapper() {
-                return functionMapper;
-            }
-        };
-        sc.putContext(ExpressionFactory.class, expressionFactory);
-
-        ValueExpression x = expressionFactory.createValueExpression(sc, expr, type);
+        ValueExpression x = parse(sc, expr, type);
         try {
             Object v = withEvalContext(ctx, () -> x.getValue(sc));
             return type.cast(v);
@@ -166,13 +186,47 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         }
     }
 
+    /**
+     * Parsed expressions don't hold any references to the context they were
+     * created with (the function mapper is the same for all evaluations),
+     * so they can be safely reused between evaluations and threads.
+     */
+    private ValueExpression parse(ELContext ctx, String expr, Class<?> type) {
+        if (expressionCache == null) {
+            return expressionFactory.createValueExpression(ctx, expr, type);
+        }
+
+        ExpressionKey key = new ExpressionKey(expr, type);
+        ValueExpression x = expressionCache.get(key);
+        if (x == null) {
+            x = expressionFactory.createValueExpression(parseContext, expr, type);
+            expressionCache.put(key, x);
+        }
+        return x;
+    }
+
+    private ELContext createContext(ELResolver resolver) {
+        StandardELContext sc = new StandardELContext(expressionFactory) {
+            @Override
+            public ELResolver getELResolver() {
+                return resolver;
+            }
+
+            @Override
+            public FunctionMapper getFunctionMapper() {
+                return functionMapper;
+            }
+        };
+        sc.putContext(ExpressionFactory.class, expressionFactory);
+        return sc;
+    }
+
     /**
      * Based on the original code from {@link StandardELContext#getELResolver()}.
      * Creates a {@link ELResolver} instance with "sub-resolvers" in the original order.
+     * Only the context-dependent resolvers are created, the rest are shared.
      */
-    private ELResolver createResolver(LazyEvalContext evalContext,
-                                      ExpressionFactory expressionFactory) {
-
+    private ELResolver createResolver(LazyEvalContext evalContext) {
         CompositeELResolver r = new CompositeELResolver();
         if (evalContext.scope() != null) {
             r.add(new VariableResolver(evalContext.scope()));
@@ -181,17 +235,13 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         if (evalContext.context() != null) {
             r.add(new TaskResolver(evalContext.context(), taskProviders));
         }
-        r.add(expressionFactory.getStreamELResolver());
-        r.add(new StaticFieldELResolver());
-        r.add(new MapELResolver());
-        r.add(new MethodAccessorResolver());
-        r.add(new ResourceBundleELResolver());
-        r.add(new ListELResolver());
-        r.add(new ArrayELResolver());
+        for (ELResolver c : commonResolvers) {
+            r.add(c);
+        }
         if (evalContext.context() != null) {
             r.add(new TaskMethodResolver(evalContext.context()));
         }
-        r.add(new BeanELResolver());
+        r.add(BEAN_RESOLVER);
         return r;
     }
 
@@ -246,6 +296,12 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
         return result;
     }
 
+    /**
+     * {@link javax.el.BeanELResolver} caches bean properties in a static,
+     * thread-safe cache, so a single instance is enough.
+     */
+    private static final ELResolver BEAN_RESOLVER = new BeanELResolver();
+
     private static final String PROP_NOT_FOUND_EL_MESSAGE = "ELResolver cannot handle a null base Object with identifier ";
 
     private static String propertyNameFromException(PropertyNotFoundException e) {
@@ -259,4 +315,32 @@ public class LazyExpressionEvaluator implements ExpressionEvaluator {
 
         return null;
     }
+
+    private record ExpressionKey(String expr, Class<?> type) {
+    }
+
+    /**
+     * Simple bounded LRU cache of parsed expressions.
+     */
+    private static final class ExpressionCache {
+
+        private final Map<ExpressionKey, ValueExpression> items;
+
+        private ExpressionCache(int maxSize) {
+            this.items = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ExpressionKey, ValueExpression> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized ValueExpression get(ExpressionKey key) {
+            return items.get(key);
+        }
+
+        synchronized void put(ExpressionKey key, ValueExpression value) {
+            items.put(key, value);
+        }
+    }
 }
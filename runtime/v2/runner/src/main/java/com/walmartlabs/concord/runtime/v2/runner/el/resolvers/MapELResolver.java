@@ -24,14 +24,28 @@ import javax.el.ELContext;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MapELResolver extends javax.el.MapELResolver {
 
+    /**
+     * Map class -> (value class -> "get" methods). The lookup is done for
+     * every map property access, so the results are cached.
+     */
+    private static final ClassValue<Map<Class<?>, List<Method>>> GET_METHODS = new ClassValue<>() {
+        @Override
+        protected Map<Class<?>, List<Method>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     @Override
     public Object getValue(ELContext context, Object base, Object property) {
         Object result = super.getValue(context, base, property);
         if (result != null && context.isPropertyResolved()) {
-            List<Method> methods = findMapGetMethods(base.getClass(), result.getClass());
+            List<Method> methods = GET_METHODS.get(base.getClass())
+                    .computeIfAbsent(result.getClass(), returnType -> List.copyOf(findMapGetMethods(base.getClass(), returnType)));
             SensitiveDataProcessor.processFirstMatch(result, methods);
         }
         return result;
@@ -35,6 +35,7 @@ import com.walmartlabs.concord.runtime.v2.runner.logging.RunnerLogger;
 import com.walmartlabs.concord.runtime.v2.runner.remote.ApiClientProvider;
 import com.walmartlabs.concord.runtime.v2.runner.remote.DefaultProcessStatusCallback;
 import com.walmartlabs.concord.runtime.v2.runner.remote.EventRecordingExecutionListener;
+import com.walmartlabs.concord.runtime.v2.runner.remote.ProcessEventRecorder;
 import com.walmartlabs.concord.runtime.v2.runner.remote.TaskCallEventRecordingListener;
 import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskCallListener;
 import com.walmartlabs.concord.runtime.v2.sdk.*;
@@ -60,6 +61,7 @@ public class DefaultRunnerModule extends AbstractModule {
         bind(LockService.class).to(DefaultLockService.class).in(Singleton.class);
         bind(PersistenceService.class).to(DefaultPersistenceService.class).in(Singleton.class);
         bind(ProcessStatusCallback.class).to(DefaultProcessStatusCallback.class).in(Singleton.class);
+        bind(ProcessEventRecorder.class).in(Singleton.class);
         bind(SecretService.class).to(DefaultSecretService.class).in(Singleton.class);
         bind(RunnerLogger.class).toProvider(LoggerProvider.class);
         bind(LoggingClient.class).to(DefaultLoggingClient.class);
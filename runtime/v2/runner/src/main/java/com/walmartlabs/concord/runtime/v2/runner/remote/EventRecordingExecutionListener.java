@@ -20,11 +20,7 @@ package com.walmartlabs.concord.runtime.v2.runner.remote;
  * =====
  */
 
-import com.walmartlabs.concord.client2.ApiClient;
-import com.walmartlabs.concord.client2.ApiException;
 import com.walmartlabs.concord.client2.ProcessEventRequest;
-import com.walmartlabs.concord.client2.ProcessEventsApi;
-import com.walmartlabs.concord.runtime.common.injector.InstanceId;
 import com.walmartlabs.concord.runtime.v2.ProcessDefinitionUtils;
 import com.walmartlabs.concord.runtime.v2.model.*;
 import com.walmartlabs.concord.runtime.v2.runner.vm.LogSegmentScopeCommand;
@@ -32,8 +28,6 @@ import com.walmartlabs.concord.runtime.v2.runner.vm.StepCommand;
 import com.walmartlabs.concord.runtime.v2.sdk.ProcessConfiguration;
 import com.walmartlabs.concord.svm.Runtime;
 import com.walmartlabs.concord.svm.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.Instant;
@@ -43,16 +37,12 @@ import java.util.Map;
 
 public class EventRecordingExecutionListener implements ExecutionListener {
 
-    private static final Logger log = LoggerFactory.getLogger(EventRecordingExecutionListener.class);
-
-    private final ProcessEventsApi eventsApi;
-    private final InstanceId processInstanceId;
+    private final ProcessEventRecorder eventRecorder;
     private final EventConfiguration eventConfiguration;
 
     @Inject
-    public EventRecordingExecutionListener(ApiClient apiClient, InstanceId processInstanceId, ProcessConfiguration processConfiguration) {
-        this.eventsApi = new ProcessEventsApi(apiClient);
-        this.processInstanceId = processInstanceId;
+    public EventRecordingExecutionListener(ProcessEventRecorder eventRecorder, ProcessConfiguration processConfiguration) {
+        this.eventRecorder = eventRecorder;
         this.eventConfiguration = processConfiguration.events();
     }
 
@@ -93,15 +83,22 @@ public class EventRecordingExecutionListener implements ExecutionListener {
         req.setData(m);
         req.setEventDate(Instant.now().atOffset(ZoneOffset.UTC));
 
-        try {
-            eventsApi.event(processInstanceId.getValue(), req);
-        } catch (ApiException e) {
-            log.warn("afterCommand [{}] -> error while sending an event to the server: {}", cmd, e.getMessage());
-        }
+        eventRecorder.record(req);
 
         return Result.CONTINUE;
     }
 
+    @Override
+    public void afterProcessEnds(Runtime runtime, State state, Frame lastFrame) {
+        // called when the process finishes or suspends
+        eventRecorder.flush();
+    }
+
+    @Override
+    public void onProcessError(Runtime runtime, State state, Exception e) {
+        eventRecorder.flush();
+    }
+
     private static String getDescription(Step step) {
         // TODO: add 'description' into step? so we will not miss description for new steps...
         if (step instanceof FlowCall) {
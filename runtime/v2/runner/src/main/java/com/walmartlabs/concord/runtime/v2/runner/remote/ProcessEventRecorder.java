@@ -0,0 +1,240 @@
+package com.walmartlabs.concord.runtime.v2.runner.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.client2.ApiClient;
+import com.walmartlabs.concord.client2.ApiException;
+import com.walmartlabs.concord.client2.ClientUtils;
+import com.walmartlabs.concord.client2.ProcessEventRequest;
+import com.walmartlabs.concord.client2.ProcessEventsApi;
+import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecorderConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.RunnerConfiguration;
+import com.walmartlabs.concord.runtime.common.injector.InstanceId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers process events and sends them to the server in batches using
+ * a background thread. A batch is sent when it reaches
+ * {@link EventRecorderConfiguration#batchSize()} or when the oldest event is older
+ * than {@link EventRecorderConfiguration#batchFlushInterval()}.
+ * <p>
+ * If a batch can't be sent, it is kept and retried later. New events are
+ * dropped only when the buffer (including the failed batch) is full.
+ * <p>
+ * {@link #flush()} must be called before the process suspends or finishes,
+ * otherwise the buffered events are lost.
+ */
+@Singleton
+public class ProcessEventRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessEventRecorder.class);
+
+    private final ProcessEventsApi eventsApi;
+    private final UUID instanceId;
+    private final ApiConfiguration apiConfiguration;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxBufferSize;
+    private final BlockingQueue<ProcessEventRequest> buffer = new LinkedBlockingQueue<>();
+
+    /**
+     * Number of events in {@link #buffer} and {@link #pending}.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Guards the actual sending, makes sure the events are sent in order
+     * and {@link #flush()} doesn't return while some events are in flight.
+     */
+    private final Object sendLock = new Object();
+    private final Object batchReady = new Object();
+
+    /**
+     * The batch being sent. Kept if the batch can't be sent.
+     * Guarded by {@link #sendLock}.
+     */
+    private final List<ProcessEventRequest> pending = new ArrayList<>();
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread sender;
+
+    @Inject
+    public ProcessEventRecorder(ApiClient apiClient,
+                                InstanceId processInstanceId,
+                                RunnerConfiguration runnerConfiguration) {
+
+        this(new ProcessEventsApi(apiClient), processInstanceId.getValue(), runnerConfiguration.api(), runnerConfiguration.eventRecorder());
+    }
+
+    ProcessEventRecorder(ProcessEventsApi eventsApi,
+                         UUID instanceId,
+                         ApiConfiguration apiConfiguration,
+                         EventRecorderConfiguration cfg) {
+
+        this.eventsApi = eventsApi;
+        this.instanceId = instanceId;
+        this.apiConfiguration = apiConfiguration;
+        this.batchSize = Math.max(1, cfg.batchSize());
+        this.flushInterval = Math.max(1, cfg.batchFlushInterval());
+        this.maxBufferSize = Math.max(batchSize, cfg.maxBufferSize());
+    }
+
+    /**
+     * Adds the event to the buffer. Never blocks, the event is dropped if
+     * the buffer is full.
+     */
+    public void record(ProcessEventRequest event) {
+        if (size.incrementAndGet() > maxBufferSize) {
+            size.decrementAndGet();
+            if (dropped.getAndIncrement() == 0) {
+                log.warn("record -> the event buffer is full, dropping events");
+            }
+            return;
+        }
+
+        buffer.add(event);
+        queued.incrementAndGet();
+
+        ensureSenderStarted();
+
+        if (buffer.size() >= batchSize) {
+            synchronized (batchReady) {
+                batchReady.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sends all buffered events. Blocks until the events are sent or
+     * a batch fails to send.
+     */
+    public void flush() {
+        if (!sendBuffered()) {
+            log.warn("flush -> {} event(s) couldn't be sent (queued: {}, sent: {}, dropped: {})", size.get(), queued.get(), sent.get(), dropped.get());
+        } else if (dropped.get() > 0) {
+            log.warn("flush -> some events were dropped (queued: {}, sent: {}, dropped: {})", queued.get(), sent.get(), dropped.get());
+        } else {
+            log.debug("flush -> done (queued: {}, sent: {}, dropped: {})", queued.get(), sent.get(), dropped.get());
+        }
+    }
+
+    /**
+     * @return number of events accepted into the buffer.
+     */
+    public long queued() {
+        return queued.get();
+    }
+
+    /**
+     * @return number of events successfully sent to the server.
+     */
+    public long sent() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of events dropped due to the buffer overflow.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private synchronized void ensureSenderStarted() {
+        if (sender != null) {
+            return;
+        }
+
+        sender = new Thread(this::run, "process-event-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (batchReady) {
+                    if (buffer.size() < batchSize) {
+                        batchReady.wait(flushInterval);
+                    }
+                }
+
+                if (!sendBuffered()) {
+                    // the server is unavailable, try again later
+                    Thread.sleep(flushInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if a batch couldn't be sent.
+     */
+    private boolean sendBuffered() {
+        synchronized (sendLock) {
+            while (true) {
+                if (pending.isEmpty() && buffer.drainTo(pending, batchSize) == 0) {
+                    return true;
+                }
+
+                if (!send(pending)) {
+                    // the request was already retried, keep the batch and
+                    // don't block the process retrying it again
+                    return false;
+                }
+
+                size.addAndGet(-pending.size());
+                pending.clear();
+            }
+        }
+    }
+
+    private boolean send(List<ProcessEventRequest> batch) {
+        try {
+            ClientUtils.withRetry(apiConfiguration.retryCount(), apiConfiguration.retryInterval(), () -> {
+                eventsApi.batchEvent(instanceId, batch);
+                return null;
+            });
+            sent.addAndGet(batch.size());
+            return true;
+        } catch (ApiException e) {
+            log.warn("send -> error while sending {} event(s) to the server: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+}
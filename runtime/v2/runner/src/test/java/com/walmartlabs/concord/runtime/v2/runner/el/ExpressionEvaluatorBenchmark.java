@@ -0,0 +1,110 @@
+package com.walmartlabs.concord.runtime.v2.runner.el;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskProviders;
+import com.walmartlabs.concord.runtime.v2.sdk.EvalContext;
+import com.walmartlabs.concord.runtime.v2.sdk.MapBackedVariables;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the expression throughput of {@link LazyExpressionEvaluator} with
+ * and without the parsed expression cache. Emulates a typical step: a handful
+ * of distinct expressions evaluated over and over.
+ * <p>
+ * Both evaluators share the other optimizations (the shared resolvers and the
+ * {@code MapELResolver} method cache), so the difference shows the effect of
+ * the expression cache only, not the difference to the previous versions.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.walmartlabs.concord.runtime.v2.runner.el.ExpressionEvaluatorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionEvaluatorBenchmark {
+
+    private static final List<String> EXPRESSIONS = List.of(
+            "${name}",
+            "Hello, ${name}!",
+            "${item.value * 2 + 1}",
+            "${item.tags.contains('b') ? 'yes' : 'no'}",
+            "${hasVariable('item') && item.enabled}",
+            "${orDefault('missing', 'default')}",
+            "${items.stream().filter(x -> x > 2).count()}");
+
+    private LazyExpressionEvaluator noExpressionCache;
+    private LazyExpressionEvaluator cached;
+    private EvalContext ctx;
+
+    @Setup
+    public void setup() {
+        noExpressionCache = new LazyExpressionEvaluator(new TaskProviders(), 0);
+        cached = new LazyExpressionEvaluator(new TaskProviders());
+
+        Map<String, Object> item = new HashMap<>();
+        item.put("value", 42);
+        item.put("enabled", true);
+        item.put("tags", List.of("a", "b", "c"));
+
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("name", "Concord");
+        vars.put("item", item);
+        vars.put("items", List.of(1, 2, 3, 4, 5));
+
+        ctx = EvalContext.builder()
+                .variables(new MapBackedVariables(vars))
+                .build();
+    }
+
+    @Benchmark
+    public void noExpressionCache(Blackhole bh) {
+        for (String expr : EXPRESSIONS) {
+            bh.consume(noExpressionCache.eval(ctx, expr, Object.class));
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole bh) {
+        for (String expr : EXPRESSIONS) {
+            bh.consume(cached.eval(ctx, expr, Object.class));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExpressionEvaluatorBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,132 @@
+package com.walmartlabs.concord.runtime.v2.runner.el;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.runtime.v2.runner.tasks.TaskProviders;
+import com.walmartlabs.concord.runtime.v2.sdk.EvalContext;
+import org.junit.jupiter.api.Test;
+
+import javax.el.*;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LazyExpressionEvaluatorTest {
+
+    @Test
+    public void testCacheHit() {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        LazyExpressionEvaluator ee = new LazyExpressionEvaluator(new TaskProviders(), 10, factory);
+
+        assertEquals(2L, ee.eval(ctx(1), "${a + 1}", Object.class));
+        assertEquals(3L, ee.eval(ctx(2), "${a + 1}", Object.class));
+
+        // parsed once, evaluated with different variables
+        assertEquals(1, factory.parsed);
+    }
+
+    @Test
+    public void testExpectedTypes() {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        LazyExpressionEvaluator ee = new LazyExpressionEvaluator(new TaskProviders(), 10, factory);
+
+        // the same expression with different expected types is cached separately
+        assertEquals(1, ee.eval(ctx(1), "${a}", Object.class));
+        assertEquals("1", ee.eval(ctx(1), "${a}", String.class));
+        assertEquals(1, ee.eval(ctx(1), "${a}", Object.class));
+        assertEquals("1", ee.eval(ctx(1), "${a}", String.class));
+
+        assertEquals(2, factory.parsed);
+    }
+
+    @Test
+    public void testEviction() {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        LazyExpressionEvaluator ee = new LazyExpressionEvaluator(new TaskProviders(), 2, factory);
+
+        ee.eval(ctx(1), "${a + 1}", Object.class);
+        ee.eval(ctx(1), "${a + 2}", Object.class);
+        // "${a + 1}" is now the most recently used
+        ee.eval(ctx(1), "${a + 1}", Object.class);
+        assertEquals(2, factory.parsed);
+
+        // evicts "${a + 2}"
+        ee.eval(ctx(1), "${a + 3}", Object.class);
+        assertEquals(3, factory.parsed);
+
+        ee.eval(ctx(1), "${a + 1}", Object.class);
+        assertEquals(3, factory.parsed);
+
+        assertEquals(3L, ee.eval(ctx(1), "${a + 2}", Object.class));
+        assertEquals(4, factory.parsed);
+    }
+
+    @Test
+    public void testDisabled() {
+        CountingExpressionFactory factory = new CountingExpressionFactory();
+        LazyExpressionEvaluator ee = new LazyExpressionEvaluator(new TaskProviders(), 0, factory);
+
+        ee.eval(ctx(1), "${a + 1}", Object.class);
+        ee.eval(ctx(1), "${a + 1}", Object.class);
+
+        assertEquals(2, factory.parsed);
+    }
+
+    private static EvalContext ctx(int a) {
+        return new EvalContextFactoryImpl().global(new SingleFrameContext(Map.of("a", a)));
+    }
+
+    /**
+     * Counts the parsed value expressions.
+     */
+    private static class CountingExpressionFactory extends ExpressionFactory {
+
+        private final ExpressionFactory delegate = ExpressionFactory.newInstance();
+
+        private int parsed;
+
+        @Override
+        public ValueExpression createValueExpression(ELContext context, String expression, Class<?> expectedType) {
+            parsed++;
+            return delegate.createValueExpression(context, expression, expectedType);
+        }
+
+        @Override
+        public ValueExpression createValueExpression(Object instance, Class<?> expectedType) {
+            return delegate.createValueExpression(instance, expectedType);
+        }
+
+        @Override
+        public MethodExpression createMethodExpression(ELContext context, String expression, Class<?> expectedReturnType, Class<?>[] expectedParamTypes) {
+            return delegate.createMethodExpression(context, expression, expectedReturnType, expectedParamTypes);
+        }
+
+        @Override
+        public Object coerceToType(Object obj, Class<?> targetType) {
+            return delegate.coerceToType(obj, targetType);
+        }
+
+        @Override
+        public ELResolver getStreamELResolver() {
+            return delegate.getStreamELResolver();
+        }
+    }
+}
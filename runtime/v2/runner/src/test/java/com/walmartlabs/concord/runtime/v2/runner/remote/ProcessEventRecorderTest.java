@@ -0,0 +1,162 @@
+package com.walmartlabs.concord.runtime.v2.runner.remote;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.client2.ApiException;
+import com.walmartlabs.concord.client2.ProcessEventRequest;
+import com.walmartlabs.concord.client2.ProcessEventsApi;
+import com.walmartlabs.concord.runtime.common.cfg.ApiConfiguration;
+import com.walmartlabs.concord.runtime.common.cfg.EventRecorderConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ProcessEventRecorderTest {
+
+    @Test
+    public void testBatching() throws Exception {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        ProcessEventsApi api = mock(ProcessEventsApi.class);
+        doAnswer(inv -> {
+            List<ProcessEventRequest> batch = inv.getArgument(1);
+            batchSizes.add(batch.size());
+            batch.forEach(e -> received.add(e.getEventType()));
+            return null;
+        }).when(api).batchEvent(any(UUID.class), anyList());
+
+        ProcessEventRecorder recorder = new ProcessEventRecorder(api, UUID.randomUUID(), apiCfg(), eventCfg(3, 100));
+        for (int i = 0; i < 7; i++) {
+            recorder.record(event("e" + i));
+        }
+        recorder.flush();
+
+        assertEquals(List.of("e0", "e1", "e2", "e3", "e4", "e5", "e6"), received);
+        assertTrue(batchSizes.stream().allMatch(s -> s <= 3), "batch sizes: " + batchSizes);
+        assertEquals(7, recorder.queued());
+        assertEquals(7, recorder.sent());
+        assertEquals(0, recorder.dropped());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean fail = new AtomicBoolean(true);
+
+        ProcessEventsApi api = mock(ProcessEventsApi.class);
+        doAnswer(inv -> {
+            if (fail.get()) {
+                throw new ApiException("boom");
+            }
+            List<ProcessEventRequest> batch = inv.getArgument(1);
+            batch.forEach(e -> received.add(e.getEventType()));
+            return null;
+        }).when(api).batchEvent(any(UUID.class), anyList());
+
+        ProcessEventRecorder recorder = new ProcessEventRecorder(api, UUID.randomUUID(), apiCfg(), eventCfg(2, 100));
+        for (int i = 0; i < 5; i++) {
+            recorder.record(event("e" + i));
+        }
+        recorder.flush();
+
+        // the failed batch is kept
+        assertEquals(5, recorder.queued());
+        assertEquals(0, recorder.sent());
+        assertEquals(0, recorder.dropped());
+
+        fail.set(false);
+        recorder.record(event("e5"));
+        recorder.flush();
+
+        assertEquals(List.of("e0", "e1", "e2", "e3", "e4", "e5"), received);
+        assertEquals(6, recorder.sent());
+        assertEquals(0, recorder.dropped());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean fail = new AtomicBoolean(true);
+
+        ProcessEventsApi api = mock(ProcessEventsApi.class);
+        doAnswer(inv -> {
+            if (fail.get()) {
+                throw new ApiException("boom");
+            }
+            List<ProcessEventRequest> batch = inv.getArgument(1);
+            batch.forEach(e -> received.add(e.getEventType()));
+            return null;
+        }).when(api).batchEvent(any(UUID.class), anyList());
+
+        ProcessEventRecorder recorder = new ProcessEventRecorder(api, UUID.randomUUID(), apiCfg(), eventCfg(2, 4));
+        for (int i = 0; i < 3; i++) {
+            recorder.record(event("e" + i));
+        }
+        recorder.flush();
+
+        // the failed batch counts towards the buffer size
+        for (int i = 3; i < 6; i++) {
+            recorder.record(event("e" + i));
+        }
+
+        assertEquals(4, recorder.queued());
+        assertEquals(2, recorder.dropped());
+
+        fail.set(false);
+        recorder.flush();
+
+        assertEquals(List.of("e0", "e1", "e2", "e3"), received);
+        assertEquals(4, recorder.sent());
+    }
+
+    private static ProcessEventRequest event(String type) {
+        ProcessEventRequest e = new ProcessEventRequest();
+        e.setEventType(type);
+        return e;
+    }
+
+    private static ApiConfiguration apiCfg() {
+        return ApiConfiguration.builder()
+                .retryCount(0)
+                .retryInterval(0)
+                .build();
+    }
+
+    private static EventRecorderConfiguration eventCfg(int batchSize, int maxBufferSize) {
+        return EventRecorderConfiguration.builder()
+                .batchSize(batchSize)
+                .maxBufferSize(maxBufferSize)
+                .batchFlushInterval(60000)
+                .build();
+    }
+}
@@ -34,6 +34,7 @@ import org.jooq.SQLDialect;
 import org.jooq.conf.RenderNameStyle;
 import org.jooq.conf.Settings;
 import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultTransactionListenerProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -114,7 +115,8 @@ public final class DataSourceUtils {
         return new DefaultConfiguration()
                 .set(settings)
                 .set(ds)
-                .set(SQLDialect.POSTGRES);
+                .set(SQLDialect.POSTGRES)
+                .set(new DefaultTransactionListenerProvider(new TransactionHooks.Listener()));
     }
 
     private static void migrateDb(Connection conn,
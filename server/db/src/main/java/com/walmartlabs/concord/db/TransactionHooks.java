@@ -0,0 +1,119 @@
+package com.walmartlabs.concord.db;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.jooq.DSLContext;
+import org.jooq.TransactionContext;
+import org.jooq.impl.DefaultTransactionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs actions after the current transaction is committed.
+ * Requires {@link Listener} to be registered in the jOOQ configuration
+ * (see {@link DataSourceUtils#createJooqConfiguration(javax.sql.DataSource)}).
+ */
+public final class TransactionHooks {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionHooks.class);
+
+    private static final String CALLBACKS_KEY = TransactionHooks.class.getName() + ".callbacks";
+    private static final String NESTED_KEY = TransactionHooks.class.getName() + ".nested";
+
+    /**
+     * Runs the action after the transaction of {@code tx} is committed.
+     * The action is discarded if the transaction is rolled back.
+     * If {@code tx} is not transactional, the action is executed immediately.
+     */
+    @SuppressWarnings("unchecked")
+    public static void afterCommit(DSLContext tx, Runnable action) {
+        List<Runnable> callbacks = (List<Runnable>) tx.configuration().data(CALLBACKS_KEY);
+        if (callbacks == null) {
+            action.run();
+            return;
+        }
+
+        synchronized (callbacks) {
+            callbacks.add(action);
+        }
+    }
+
+    public static final class Listener extends DefaultTransactionListener {
+
+        @Override
+        public void beginEnd(TransactionContext ctx) {
+            // nested transactions share the callbacks of the outermost transaction
+            if (ctx.configuration().data(CALLBACKS_KEY) != null) {
+                ctx.data(NESTED_KEY, Boolean.TRUE);
+                return;
+            }
+
+            ctx.configuration().data(CALLBACKS_KEY, new ArrayList<Runnable>());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void commitEnd(TransactionContext ctx) {
+            if (ctx.data(NESTED_KEY) != null) {
+                return;
+            }
+
+            List<Runnable> callbacks = (List<Runnable>) ctx.configuration().data(CALLBACKS_KEY);
+            if (callbacks == null) {
+                return;
+            }
+
+            List<Runnable> actions;
+            synchronized (callbacks) {
+                actions = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+
+            for (Runnable a : actions) {
+                try {
+                    a.run();
+                } catch (Exception e) {
+                    log.warn("commitEnd -> error while running an after-commit action: {}", e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void rollbackEnd(TransactionContext ctx) {
+            if (ctx.data(NESTED_KEY) != null) {
+                return;
+            }
+
+            Object callbacks = ctx.configuration().data(CALLBACKS_KEY);
+            if (callbacks != null) {
+                synchronized (callbacks) {
+                    ((List<?>) callbacks).clear();
+                }
+            }
+        }
+    }
+
+    private TransactionHooks() {
+    }
+}
@@ -0,0 +1,94 @@
+package com.walmartlabs.concord.db;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultTransactionListenerProvider;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransactionHooksTest {
+
+    private final Configuration cfg = new DefaultConfiguration()
+            .set(new MockConnection(ctx -> new MockResult[0]))
+            .set(SQLDialect.POSTGRES)
+            .set(new DefaultTransactionListenerProvider(new TransactionHooks.Listener()));
+
+    @Test
+    public void testCommit() {
+        AtomicInteger counter = new AtomicInteger();
+
+        DSL.using(cfg).transaction(c -> {
+            DSLContext tx = DSL.using(c);
+            TransactionHooks.afterCommit(tx, counter::incrementAndGet);
+            TransactionHooks.afterCommit(tx, counter::incrementAndGet);
+            assertEquals(0, counter.get());
+        });
+
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void testRollback() {
+        AtomicInteger counter = new AtomicInteger();
+
+        assertThrows(RuntimeException.class, () -> DSL.using(cfg).transaction(c -> {
+            TransactionHooks.afterCommit(DSL.using(c), counter::incrementAndGet);
+            throw new RuntimeException("rollback");
+        }));
+
+        assertEquals(0, counter.get());
+
+        // the next transaction doesn't see the discarded actions
+        DSL.using(cfg).transaction(c -> {
+        });
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testNested() {
+        AtomicInteger counter = new AtomicInteger();
+
+        DSL.using(cfg).transaction(outer -> {
+            DSL.using(outer).transaction(inner -> TransactionHooks.afterCommit(DSL.using(inner), counter::incrementAndGet));
+            assertEquals(0, counter.get());
+        });
+
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testNoTransaction() {
+        AtomicInteger counter = new AtomicInteger();
+        TransactionHooks.afterCommit(DSL.using(cfg), counter::incrementAndGet);
+        assertEquals(1, counter.get());
+    }
+}
@@ -30,6 +30,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 
 /**
  * Locking mechanism based on DB (advisory) locks
@@ -39,6 +41,8 @@ import java.sql.CallableStatement;
 public class Locks {
 
     private static final String LOCK_SQL = "{ call pg_advisory_xact_lock(?) }";
+    private static final String LOCK_SHARED_SQL = "{ call pg_advisory_xact_lock_shared(?) }";
+    private static final String TRY_LOCK_SQL = "select pg_try_advisory_xact_lock(?)";
 
     private final LockingConfiguration cfg;
 
@@ -61,6 +65,37 @@ public class Locks {
         });
     }
 
+    /**
+     * Same as {@link #lock(DSLContext, long)}, but the lock can be held by
+     * multiple transactions at once. Conflicts only with the exclusive lock.
+     */
+    @WithTimer
+    public void lockShared(DSLContext tx, long key) {
+        tx.connection(conn -> {
+            try (CallableStatement cs = conn.prepareCall(LOCK_SHARED_SQL)) {
+                cs.setLong(1, key);
+                cs.execute();
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #lock(DSLContext, long)}, but doesn't wait for the lock.
+     *
+     * @return {@code true} if the lock was acquired
+     */
+    @WithTimer
+    public boolean tryLock(DSLContext tx, long key) {
+        return tx.connectionResult(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(TRY_LOCK_SQL)) {
+                ps.setLong(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() && rs.getBoolean(1);
+                }
+            }
+        });
+    }
+
     @SuppressWarnings("UnstableApiUsage")
     private long hash(String key) {
         HashCode hc = HashCode.fromBytes(key.getBytes());
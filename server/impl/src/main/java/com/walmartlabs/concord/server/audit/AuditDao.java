@@ -30,16 +30,12 @@ import com.walmartlabs.concord.server.jooq.tables.records.AuditLogRecord;
 import com.walmartlabs.concord.server.org.EntityOwner;
 import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
 import com.walmartlabs.concord.server.user.UserType;
-import org.jooq.Configuration;
-import org.jooq.JSONB;
-import org.jooq.Record9;
-import org.jooq.SelectOnConditionStep;
+import org.jooq.*;
+import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import java.time.OffsetDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.jooq.tables.AuditLog.AUDIT_LOG;
 import static com.walmartlabs.concord.server.jooq.tables.Users.USERS;
@@ -84,6 +80,71 @@ public class AuditDao extends AbstractDao {
                 .build();
     }
 
+    /**
+     * Assigns {@code ENTRY_SEQ} and {@code ENTRY_DATE} to the entries without
+     * inserting them. The events can be inserted later using {@link #insert(List)}.
+     *
+     * @return the events, in the same order as {@code entries}.
+     */
+    public List<AuditEvent> prepare(List<NewEntry> entries) {
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Result<Record> ids = txResult(tx -> tx.resultQuery("select nextval(pg_get_serial_sequence('audit_log', 'entry_seq')), current_timestamp " +
+                        "from generate_series(1, {0})", DSL.inline(entries.size()))
+                .fetch());
+
+        List<AuditEvent> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            NewEntry e = entries.get(i);
+            Record r = ids.get(i);
+            result.add(AuditEvent.builder()
+                    .entrySeq(r.get(0, Long.class))
+                    .entryDate(r.get(1, OffsetDateTime.class))
+                    .userId(e.userId())
+                    .object(e.object().toString())
+                    .action(e.action().toString())
+                    .details(e.details())
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Inserts multiple events prepared by {@link #prepare(List)} using a single
+     * statement. Events that are already inserted are ignored, so the insert
+     * can be safely retried.
+     */
+    public void insert(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        tx(tx -> {
+            InsertValuesStep6<AuditLogRecord, Long, OffsetDateTime, UUID, String, String, JSONB> q = tx.insertInto(AUDIT_LOG)
+                    .columns(AUDIT_LOG.ENTRY_SEQ,
+                            AUDIT_LOG.ENTRY_DATE,
+                            AUDIT_LOG.USER_ID,
+                            AUDIT_LOG.ENTRY_OBJECT,
+                            AUDIT_LOG.ENTRY_ACTION,
+                            AUDIT_LOG.ENTRY_DETAILS);
+
+            for (AuditEvent ev : events) {
+                q = q.values(ev.entrySeq(),
+                        ev.entryDate(),
+                        ev.userId(),
+                        ev.object(),
+                        ev.action(),
+                        objectMapper.toJSONB(ev.details()));
+            }
+
+            q.onConflict(AUDIT_LOG.ENTRY_SEQ)
+                    .doNothing()
+                    .execute();
+        });
+    }
+
     public List<AuditLogEntry> list(AuditLogFilter filter) {
         return txResult(tx -> {
             AuditLog l = AUDIT_LOG.as("l");
@@ -147,6 +208,9 @@ public class AuditDao extends AbstractDao {
         });
     }
 
+    public record NewEntry(UUID userId, AuditObject object, AuditAction action, Map<String, Object> details) {
+    }
+
     private AuditLogEntry toEntry(Record9<OffsetDateTime, String, String, JSONB, UUID, String, String, String, String> r) {
         ImmutableAuditLogEntry.Builder b = AuditLogEntry.builder()
                 .entryDate(r.get(0, OffsetDateTime.class))
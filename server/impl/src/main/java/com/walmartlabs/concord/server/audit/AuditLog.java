@@ -20,12 +20,10 @@ package com.walmartlabs.concord.server.audit;
  * =====
  */
 
-import com.walmartlabs.concord.server.Listeners;
 import com.walmartlabs.concord.server.RequestUtils;
 import com.walmartlabs.concord.server.cfg.AuditConfiguration;
 import com.walmartlabs.concord.server.org.project.DiffUtils;
 import com.walmartlabs.concord.server.sdk.PartialProcessKey;
-import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.security.sessionkey.SessionKeyPrincipal;
 import org.slf4j.Logger;
@@ -57,14 +55,12 @@ public class AuditLog {
     }
 
     private final AuditConfiguration cfg;
-    private final AuditDao auditDao;
-    private final Listeners listeners;
+    private final AuditLogBuffer buffer;
 
     @Inject
-    public AuditLog(AuditConfiguration cfg, AuditDao auditDao, Listeners listeners) {
+    public AuditLog(AuditConfiguration cfg, AuditLogBuffer buffer) {
         this.cfg = cfg;
-        this.auditDao = auditDao;
-        this.listeners = listeners;
+        this.buffer = buffer;
     }
 
     public EntryBuilder add(AuditObject object, AuditAction action) {
@@ -169,8 +165,7 @@ public class AuditLog {
                 details.put("changes", changes);
             }
 
-            AuditEvent ev = auditDao.insert(userId, object, action, details);
-            listeners.onAuditEvent(ev);
+            buffer.write(new AuditDao.NewEntry(userId, object, action, details));
         }
     }
 
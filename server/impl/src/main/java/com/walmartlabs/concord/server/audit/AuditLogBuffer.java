@@ -0,0 +1,253 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2023 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.Listeners;
+import com.walmartlabs.concord.server.audit.AuditDao.NewEntry;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit log entries in batches using a background thread.
+ * <p>
+ * Only the entries with the actions listed in {@code audit.async.actions}
+ * are buffered, the rest are written synchronously. When the buffer is full,
+ * the entries are written synchronously as well.
+ * <p>
+ * The {@link Listeners#onAuditEvent(AuditEvent)} listeners of the buffered
+ * entries are called by the background thread after the entries are written.
+ */
+@Named
+@Singleton
+public class AuditLogBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLogBuffer.class);
+
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final AuditConfiguration cfg;
+    private final AuditDao auditDao;
+    private final Listeners listeners;
+    private final Set<AuditAction> asyncActions;
+    private final BlockingQueue<PendingEntry> queue;
+
+    private final Meter bufferedEntries;
+    private final Meter overflowEntries;
+    private final Histogram batchSize;
+    private final Timer flushTimer;
+    private final Timer latency;
+
+    private volatile Thread worker;
+
+    @Inject
+    public AuditLogBuffer(AuditConfiguration cfg,
+                          AuditDao auditDao,
+                          Listeners listeners,
+                          MetricRegistry metricRegistry) {
+
+        this.cfg = cfg;
+        this.auditDao = auditDao;
+        this.listeners = listeners;
+
+        Set<AuditAction> actions = EnumSet.noneOf(AuditAction.class);
+        for (String a : cfg.getAsyncActions()) {
+            actions.add(AuditAction.valueOf(a));
+        }
+        this.asyncActions = actions;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, cfg.getAsyncMaxQueueSize()));
+
+        this.bufferedEntries = metricRegistry.meter("audit-log-buffer-entries");
+        this.overflowEntries = metricRegistry.meter("audit-log-buffer-overflow");
+        this.batchSize = metricRegistry.histogram("audit-log-buffer-batch-size");
+        this.flushTimer = metricRegistry.timer("audit-log-buffer-flush-timer");
+        this.latency = metricRegistry.timer("audit-log-buffer-latency");
+
+        metricRegistry.gauge("audit-log-buffer-queue-size", () -> queue::size);
+    }
+
+    @Override
+    public void start() {
+        if (!cfg.isEnabled() || !cfg.isAsyncEnabled()) {
+            return;
+        }
+
+        Thread t = new Thread(this::run, "audit-log-buffer");
+        t.start();
+        this.worker = t;
+    }
+
+    @Override
+    public void stop() {
+        Thread t = this.worker;
+        if (t == null) {
+            return;
+        }
+
+        this.worker = null;
+
+        t.interrupt();
+        try {
+            t.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // flush whatever is left, entries received after this point are written synchronously
+        List<PendingEntry> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        flush(batch);
+    }
+
+    /**
+     * Writes the entry. Blocks until the entry is written unless the entry's
+     * action is configured to be written asynchronously.
+     */
+    public void write(NewEntry entry) {
+        if (worker != null && asyncActions.contains(entry.action())) {
+            if (queue.offer(new PendingEntry(entry, System.nanoTime()))) {
+                bufferedEntries.mark();
+
+                if (worker == null) {
+                    // the buffer was stopped concurrently, flush the remaining entries ourselves
+                    List<PendingEntry> batch = new ArrayList<>();
+                    queue.drainTo(batch);
+                    flush(batch);
+                }
+
+                return;
+            }
+
+            overflowEntries.mark();
+        }
+
+        AuditEvent ev = auditDao.insert(entry.userId(), entry.object(), entry.action(), entry.details());
+        listeners.onAuditEvent(ev);
+    }
+
+    private void run() {
+        int maxBatchSize = Math.max(1, cfg.getAsyncMaxBatchSize());
+
+        boolean interrupted = false;
+        while (!interrupted) {
+            List<PendingEntry> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+
+            flush(batch);
+        }
+    }
+
+    private void flush(List<PendingEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<NewEntry> entries = new ArrayList<>(batch.size());
+        for (PendingEntry p : batch) {
+            entries.add(p.entry);
+        }
+
+        List<AuditEvent> events;
+        try (Timer.Context ignored = flushTimer.time()) {
+            events = insert(entries);
+        }
+
+        long now = System.nanoTime();
+        for (PendingEntry p : batch) {
+            latency.update(now - p.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+        batchSize.update(batch.size());
+
+        for (AuditEvent ev : events) {
+            try {
+                listeners.onAuditEvent(ev);
+            } catch (Exception e) {
+                log.warn("flush -> error while calling the audit log listeners: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The IDs are assigned before the insert. If the batch insert fails, the
+     * entries are retried one by one with the same IDs, the entries of a batch
+     * that was actually committed are not inserted twice.
+     */
+    private List<AuditEvent> insert(List<NewEntry> entries) {
+        List<AuditEvent> events;
+        try {
+            events = auditDao.prepare(entries);
+        } catch (Exception e) {
+            log.warn("insert -> can't assign the IDs, inserting each entry separately: {}", e.getMessage());
+
+            // nothing is inserted yet
+            events = new ArrayList<>(entries.size());
+            for (NewEntry entry : entries) {
+                try {
+                    events.add(auditDao.insert(entry.userId(), entry.object(), entry.action(), entry.details()));
+                } catch (Exception ex) {
+                    log.error("insert -> error while inserting an audit log entry: {}", ex.getMessage(), ex);
+                }
+            }
+            return events;
+        }
+
+        try {
+            auditDao.insert(events);
+            return events;
+        } catch (Exception e) {
+            log.warn("insert -> batch insert failed, retrying each entry separately: {}", e.getMessage());
+        }
+
+        // isolate the failing entries so they don't affect the rest of the batch
+        List<AuditEvent> result = new ArrayList<>(events.size());
+        for (AuditEvent ev : events) {
+            try {
+                auditDao.insert(List.of(ev));
+                result.add(ev);
+            } catch (Exception ex) {
+                log.error("insert -> error while inserting an audit log entry: {}", ex.getMessage(), ex);
+            }
+        }
+        return result;
+    }
+
+    private record PendingEntry(NewEntry entry, long enqueuedAt) {
+    }
+}
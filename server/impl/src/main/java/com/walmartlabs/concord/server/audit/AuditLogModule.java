@@ -22,8 +22,10 @@ package com.walmartlabs.concord.server.audit;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
 import com.walmartlabs.concord.server.sdk.audit.AuditLogListener;
 
+import static com.google.inject.Scopes.SINGLETON;
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
 import static com.walmartlabs.concord.server.Utils.bindJaxRsResource;
 import static com.walmartlabs.concord.server.Utils.bindSingletonScheduledTask;
@@ -35,5 +37,8 @@ public class AuditLogModule implements Module {
         newSetBinder(binder, AuditLogListener.class);
         bindSingletonScheduledTask(binder, AuditLogCleaner.class);
         bindJaxRsResource(binder, AuditLogResource.class);
+
+        binder.bind(AuditLogBuffer.class).in(SINGLETON);
+        newSetBinder(binder, BackgroundTask.class).addBinding().to(AuditLogBuffer.class);
     }
 }
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.boot.filters;
 import com.walmartlabs.concord.common.secret.SecretUtils;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.apikey.ApiKey;
 import com.walmartlabs.concord.server.security.apikey.ApiKeyDao;
 import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
@@ -54,11 +55,13 @@ public class ConcordAuthenticationHandler implements AuthenticationHandler {
 
     private final ApiKeyDao apiKeyDao;
     private final SecretStoreConfiguration secretCfg;
+    private final AuthenticationCache authCache;
 
     @Inject
-    public ConcordAuthenticationHandler(ApiKeyDao apiKeyDao, SecretStoreConfiguration secretCfg) {
+    public ConcordAuthenticationHandler(ApiKeyDao apiKeyDao, SecretStoreConfiguration secretCfg, AuthenticationCache authCache) {
         this.apiKeyDao = apiKeyDao;
         this.secretCfg = secretCfg;
+        this.authCache = authCache;
     }
 
     @Override
@@ -100,7 +103,8 @@ public class ConcordAuthenticationHandler implements AuthenticationHandler {
                 return null;
             }
 
-            ApiKeyEntry apiKey = apiKeyDao.find(h);
+            String key = h;
+            ApiKeyEntry apiKey = authCache.getApiKey(key, () -> apiKeyDao.find(key));
             if (apiKey == null) {
                 return new UsernamePasswordToken();
             }
@@ -26,6 +26,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.List;
 
 public class AuditConfiguration implements Serializable {
 
@@ -48,6 +49,22 @@ public class AuditConfiguration implements Serializable {
     @Config("audit.maxSearchInterval")
     private Duration maxSearchInterval;
 
+    @Inject
+    @Config("audit.async.enabled")
+    private boolean asyncEnabled;
+
+    @Inject
+    @Config("audit.async.actions")
+    private List<String> asyncActions;
+
+    @Inject
+    @Config("audit.async.maxQueueSize")
+    private int asyncMaxQueueSize;
+
+    @Inject
+    @Config("audit.async.maxBatchSize")
+    private int asyncMaxBatchSize;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -63,4 +80,20 @@ public class AuditConfiguration implements Serializable {
     public Duration getMaxSearchInterval() {
         return maxSearchInterval;
     }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public List<String> getAsyncActions() {
+        return asyncActions;
+    }
+
+    public int getAsyncMaxQueueSize() {
+        return asyncMaxQueueSize;
+    }
+
+    public int getAsyncMaxBatchSize() {
+        return asyncMaxBatchSize;
+    }
 }
@@ -43,12 +43,14 @@ public class ConfigurationModule implements Module {
         binder.bind(AgentConfiguration.class).in(SINGLETON);
         binder.bind(ApiKeyConfiguration.class).in(SINGLETON);
         binder.bind(AuditConfiguration.class).in(SINGLETON);
+        binder.bind(AuthCacheConfiguration.class).in(SINGLETON);
         binder.bind(ConcordSecretStoreConfiguration.class).in(SINGLETON);
         binder.bind(CustomFormConfiguration.class).in(SINGLETON);
         binder.bind(DependenciesConfiguration.class).in(SINGLETON);
         binder.bind(DependencyVersionConfiguration.class).in(SINGLETON);
         binder.bind(EmailNotifierConfiguration.class).in(SINGLETON);
         binder.bind(EnqueueWorkersConfiguration.class).in(SINGLETON);
+        binder.bind(EventInboxConfiguration.class).in(SINGLETON);
         binder.bind(ExternalEventsConfiguration.class).in(SINGLETON);
         binder.bind(GitConfiguration.class).in(SINGLETON);
         binder.bind(GithubConfiguration.class).in(SINGLETON);
@@ -0,0 +1,88 @@
+package com.walmartlabs.concord.server.cfg;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.ollie.config.Config;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.time.Duration;
+
+public class EventInboxConfiguration implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    @Config("eventInbox.enabled")
+    private boolean enabled;
+
+    @Inject
+    @Config("eventInbox.workerThreads")
+    private int workerThreads;
+
+    @Inject
+    @Config("eventInbox.batchSize")
+    private int batchSize;
+
+    @Inject
+    @Config("eventInbox.pollInterval")
+    private Duration pollInterval;
+
+    @Inject
+    @Config("eventInbox.claimTimeout")
+    private Duration claimTimeout;
+
+    @Inject
+    @Config("eventInbox.maxAttempts")
+    private int maxAttempts;
+
+    @Inject
+    @Config("eventInbox.retentionPeriod")
+    private Duration retentionPeriod;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public Duration getClaimTimeout() {
+        return claimTimeout;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getRetentionPeriod() {
+        return retentionPeriod;
+    }
+}
@@ -90,6 +90,102 @@ public class ProcessConfiguration implements Serializable {
     @Config("process.extraRuntimes")
     private List<String> extraRuntimes;
 
+    @Inject
+    @Config("process.logBatching.enabled")
+    private boolean logBatchingEnabled;
+
+    @Inject
+    @Config("process.logBatching.window")
+    private Duration logBatchingWindow;
+
+    @Inject
+    @Config("process.logBatching.maxBatchSize")
+    private int logBatchingMaxBatchSize;
+
+    @Inject
+    @Config("process.logBatching.maxPendingSize")
+    private int logBatchingMaxPendingSize;
+
+    @Inject
+    @Config("process.heartbeatBatching.enabled")
+    private boolean heartbeatBatchingEnabled;
+
+    @Inject
+    @Config("process.heartbeatBatching.flushInterval")
+    private Duration heartbeatBatchingFlushInterval;
+
+    @Inject
+    @Config("process.logCompaction.interval")
+    private Duration logCompactionInterval;
+
+    @Inject
+    @Config("process.logCompaction.delay")
+    private Duration logCompactionDelay;
+
+    @Inject
+    @Config("process.logCompaction.maxAge")
+    private Duration logCompactionMaxAge;
+
+    @Inject
+    @Config("process.logCompaction.batchSize")
+    private int logCompactionBatchSize;
+
+    @Inject
+    @Config("process.logCompaction.maxChunkSize")
+    private int logCompactionMaxChunkSize;
+
+    @Inject
+    @Config("process.stateTransfer.parallelism")
+    private int stateTransferParallelism;
+
+    @Inject
+    @Config("process.stateTransfer.minItems")
+    private int stateTransferMinItems;
+
+    @Inject
+    @Config("process.stateTransfer.maxBatchSize")
+    private long stateTransferMaxBatchSize;
+
+    @Inject
+    @Config("process.stateDedup.enabled")
+    private boolean stateDedupEnabled;
+
+    @Inject
+    @Config("process.stateDedup.minSize")
+    private long stateDedupMinSize;
+
+    @Inject
+    @Config("process.stateDedup.gracePeriod")
+    private Duration stateDedupGracePeriod;
+
+    @Inject
+    @Config("process.incrementalCleanup.enabled")
+    private boolean incrementalCleanupEnabled;
+
+    @Inject
+    @Config("process.incrementalCleanup.batchSize")
+    private int incrementalCleanupBatchSize;
+
+    @Inject
+    @Config("process.incrementalCleanup.maxRowsPerSecond")
+    private int incrementalCleanupMaxRowsPerSecond;
+
+    @Inject
+    @Config("process.incrementalCleanup.orphanBatchesPerRun")
+    private int incrementalCleanupOrphanBatchesPerRun;
+
+    @Inject
+    @Config("process.partitioning.interval")
+    private Duration partitioningInterval;
+
+    @Inject
+    @Config("process.partitioning.precreateDays")
+    private int partitioningPrecreateDays;
+
+    @Inject
+    @Config("process.partitioning.dropExpired")
+    private boolean partitioningDropExpired;
+
     @Inject
     public ProcessConfiguration(@Config("process.signingKeyPath") @Nullable String signingKeyPath) {
         this.signingKeyPath = signingKeyPath != null ? Paths.get(signingKeyPath) : null;
@@ -155,4 +251,100 @@ public class ProcessConfiguration implements Serializable {
     public List<String> getExtraRuntimes() {
         return extraRuntimes;
     }
+
+    public boolean isLogBatchingEnabled() {
+        return logBatchingEnabled;
+    }
+
+    public Duration getLogBatchingWindow() {
+        return logBatchingWindow;
+    }
+
+    public int getLogBatchingMaxBatchSize() {
+        return logBatchingMaxBatchSize;
+    }
+
+    public int getLogBatchingMaxPendingSize() {
+        return logBatchingMaxPendingSize;
+    }
+
+    public boolean isHeartbeatBatchingEnabled() {
+        return heartbeatBatchingEnabled;
+    }
+
+    public Duration getHeartbeatBatchingFlushInterval() {
+        return heartbeatBatchingFlushInterval;
+    }
+
+    public Duration getLogCompactionInterval() {
+        return logCompactionInterval;
+    }
+
+    public Duration getLogCompactionDelay() {
+        return logCompactionDelay;
+    }
+
+    public Duration getLogCompactionMaxAge() {
+        return logCompactionMaxAge;
+    }
+
+    public int getLogCompactionBatchSize() {
+        return logCompactionBatchSize;
+    }
+
+    public int getLogCompactionMaxChunkSize() {
+        return logCompactionMaxChunkSize;
+    }
+
+    public int getStateTransferParallelism() {
+        return stateTransferParallelism;
+    }
+
+    public int getStateTransferMinItems() {
+        return stateTransferMinItems;
+    }
+
+    public long getStateTransferMaxBatchSize() {
+        return stateTransferMaxBatchSize;
+    }
+
+    public boolean isStateDedupEnabled() {
+        return stateDedupEnabled;
+    }
+
+    public long getStateDedupMinSize() {
+        return stateDedupMinSize;
+    }
+
+    public Duration getStateDedupGracePeriod() {
+        return stateDedupGracePeriod;
+    }
+
+    public boolean isIncrementalCleanupEnabled() {
+        return incrementalCleanupEnabled;
+    }
+
+    public int getIncrementalCleanupBatchSize() {
+        return incrementalCleanupBatchSize;
+    }
+
+    public int getIncrementalCleanupMaxRowsPerSecond() {
+        return incrementalCleanupMaxRowsPerSecond;
+    }
+
+    public int getIncrementalCleanupOrphanBatchesPerRun() {
+        return incrementalCleanupOrphanBatchesPerRun;
+    }
+
+    public Duration getPartitioningInterval() {
+        return partitioningInterval;
+    }
+
+    public int getPartitioningPrecreateDays() {
+        return partitioningPrecreateDays;
+    }
+
+    public boolean isPartitioningDropExpired() {
+        return partitioningDropExpired;
+    }
 }
@@ -38,6 +38,22 @@ public class ProcessQueueConfiguration implements Serializable {
     @Config("queue.dispatcher.batchSize")
     private int dispatcherBatchSize;
 
+    @Inject
+    @Config("queue.dispatcher.responseWorkerCount")
+    private int dispatcherResponseWorkerCount;
+
+    @Inject
+    @Config("queue.dispatcher.shardCount")
+    private int dispatcherShardCount;
+
+    @Inject
+    @Config("queue.dispatcher.indexEnabled")
+    private boolean dispatcherIndexEnabled;
+
+    @Inject
+    @Config("queue.dispatcher.indexResyncInterval")
+    private Duration dispatcherIndexResyncInterval;
+
     public Duration getDispatcherPollDelay() {
         return dispatcherPollDelay;
     }
@@ -45,4 +61,20 @@ public class ProcessQueueConfiguration implements Serializable {
     public int getDispatcherBatchSize() {
         return dispatcherBatchSize;
     }
+
+    public int getDispatcherResponseWorkerCount() {
+        return dispatcherResponseWorkerCount;
+    }
+
+    public int getDispatcherShardCount() {
+        return dispatcherShardCount;
+    }
+
+    public boolean isDispatcherIndexEnabled() {
+        return dispatcherIndexEnabled;
+    }
+
+    public Duration getDispatcherIndexResyncInterval() {
+        return dispatcherIndexResyncInterval;
+    }
 }
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.cfg;
 import com.walmartlabs.ollie.config.Config;
 
 import javax.inject.Inject;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +45,18 @@ public class TriggersConfiguration {
     @Config("triggers.defaultConfiguration")
     private Map<String, Object> defaultConfiguration;
 
+    @Inject
+    @Config("triggers.index.enabled")
+    private boolean indexEnabled;
+
+    @Inject
+    @Config("triggers.index.checkInterval")
+    private Duration indexCheckInterval;
+
+    @Inject
+    @Config("triggers.index.reloadInterval")
+    private Duration indexReloadInterval;
+
     public boolean isDisableAll() {
         return disableAll;
     }
@@ -60,4 +73,15 @@ public class TriggersConfiguration {
         return defaultConfiguration;
     }
 
+    public boolean isIndexEnabled() {
+        return indexEnabled;
+    }
+
+    public Duration getIndexCheckInterval() {
+        return indexCheckInterval;
+    }
+
+    public Duration getIndexReloadInterval() {
+        return indexReloadInterval;
+    }
 }
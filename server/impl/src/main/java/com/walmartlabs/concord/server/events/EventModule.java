@@ -22,14 +22,18 @@ package com.walmartlabs.concord.server.events;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.walmartlabs.concord.server.events.inbox.EventInboxWorker;
 import com.walmartlabs.concord.server.sdk.events.ProcessEventListener;
 
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
+import static com.walmartlabs.concord.server.Utils.bindSingletonBackgroundTask;
 
 public class EventModule implements Module {
 
     @Override
     public void configure(Binder binder) {
         newSetBinder(binder, ProcessEventListener.class);
+
+        bindSingletonBackgroundTask(binder, EventInboxWorker.class);
     }
 }
@@ -25,6 +25,9 @@ import com.walmartlabs.concord.server.audit.AuditLog;
 import com.walmartlabs.concord.server.audit.AuditObject;
 import com.walmartlabs.concord.server.cfg.ExternalEventsConfiguration;
 import com.walmartlabs.concord.server.events.externalevent.ExternalEventTriggerProcessor;
+import com.walmartlabs.concord.server.events.inbox.EventInbox;
+import com.walmartlabs.concord.server.events.inbox.EventInboxHandler;
+import com.walmartlabs.concord.server.events.inbox.InboxEvent;
 import com.walmartlabs.concord.server.sdk.PartialProcessKey;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.sdk.rest.Resource;
@@ -51,21 +54,27 @@ import static com.walmartlabs.concord.common.MemoSupplier.memo;
  * Handles generic external events.
  * Receives arbitrary JSON bodies and matches them with whatever is configured
  * in the trigger.
+ * <p>
+ * If {@link EventInbox} is enabled, the events are saved into the inbox
+ * and processed asynchronously.
  */
 @Named
 @Singleton
 @Path("/api/v1/events")
 @Tag(name = "External Events")
-public class ExternalEventResource implements Resource {
+public class ExternalEventResource implements Resource, EventInboxHandler {
 
     private static final Logger log = LoggerFactory.getLogger(ExternalEventResource.class);
 
+    private static final String INBOX_EVENT_SOURCE = "external";
+
     private final ExternalEventsConfiguration cfg;
     private final TriggerProcessExecutor executor;
     private final UserManager userManager;
     private final TriggerEventInitiatorResolver initiatorResolver;
     private final List<ExternalEventTriggerProcessor> processors;
     private final AuditLog auditLog;
+    private final EventInbox inbox;
 
     @Inject
     public ExternalEventResource(ExternalEventsConfiguration cfg,
@@ -73,7 +82,8 @@ public class ExternalEventResource implements Resource {
                                  UserManager userManager,
                                  TriggerEventInitiatorResolver initiatorResolver,
                                  List<ExternalEventTriggerProcessor> processors,
-                                 AuditLog auditLog) {
+                                 AuditLog auditLog,
+                                 EventInbox inbox) {
 
         this.cfg = cfg;
         this.executor = executor;
@@ -81,6 +91,7 @@ public class ExternalEventResource implements Resource {
         this.initiatorResolver = initiatorResolver;
         this.processors = processors;
         this.auditLog = auditLog;
+        this.inbox = inbox;
     }
 
     @POST
@@ -108,6 +119,32 @@ public class ExternalEventResource implements Resource {
                     .log();
         }
 
+        if (inbox.isEnabled()) {
+            // check the roles while we still can respond with an error
+            executor.assertRoles(eventName);
+
+            if (inbox.add(INBOX_EVENT_SOURCE, eventName, eventId, event, null)) {
+                log.info("event ['{}', '{}'] -> queued", eventId, eventName);
+            }
+            return Response.ok().build();
+        }
+
+        process(eventName, eventId, event);
+
+        return Response.ok().build();
+    }
+
+    @Override
+    public String eventSource() {
+        return INBOX_EVENT_SOURCE;
+    }
+
+    @Override
+    public void handle(InboxEvent event) {
+        process(event.eventName(), event.eventId(), event.data());
+    }
+
+    private void process(String eventName, String eventId, Map<String, Object> event) {
         List<ExternalEventTriggerProcessor.Result> results = new ArrayList<>();
         processors.forEach(p -> p.process(eventName, event, results));
 
@@ -122,7 +159,5 @@ public class ExternalEventResource implements Resource {
             List<PartialProcessKey> processKeys = executor.execute(e, initiatorResolver, r.triggers());
             log.info("event ['{}', '{}', '{}'] -> done, {} processes started", eventId, eventName, event, processKeys.size());
         }
-
-        return Response.ok().build();
     }
 }
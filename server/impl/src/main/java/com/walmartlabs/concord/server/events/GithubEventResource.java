@@ -33,6 +33,9 @@ import com.walmartlabs.concord.server.audit.AuditObject;
 import com.walmartlabs.concord.server.cfg.GithubConfiguration;
 import com.walmartlabs.concord.server.events.github.GithubTriggerProcessor;
 import com.walmartlabs.concord.server.events.github.Payload;
+import com.walmartlabs.concord.server.events.inbox.EventInbox;
+import com.walmartlabs.concord.server.events.inbox.EventInboxHandler;
+import com.walmartlabs.concord.server.events.inbox.InboxEvent;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerUtils;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
@@ -51,6 +54,7 @@ import io.swagger.v3.oas.annotations.extensions.Extension;
 import io.swagger.v3.oas.annotations.extensions.ExtensionProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.jboss.resteasy.specimpl.ResteasyUriInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +65,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
+import java.net.URI;
 import java.util.*;
 import java.util.function.Supplier;
 
@@ -73,13 +78,16 @@ import static com.walmartlabs.concord.server.events.github.Constants.EVENT_SOURC
  * Uses a custom authentication mechanism,
  * see {@link com.walmartlabs.concord.server.security.GithubAuthenticatingFilter}.
  * <p>
+ * If {@link EventInbox} is enabled, the events are saved into the inbox
+ * and processed asynchronously.
+ * <p>
  * See also https://developer.github.com/webhooks/
  */
 @Named
 @Singleton
 @Path("/events/github")
 @Tag(name = "GitHub Events")
-public class GithubEventResource implements Resource {
+public class GithubEventResource implements Resource, EventInboxHandler {
 
     private static final Logger log = LoggerFactory.getLogger(GithubEventResource.class);
 
@@ -90,6 +98,7 @@ public class GithubEventResource implements Resource {
     private final UserManager userManager;
     private final LdapManager ldapManager;
     private final TriggerEventInitiatorResolver initiatorResolver;
+    private final EventInbox inbox;
     private final Histogram startedProcessesPerEvent;
 
     @Inject
@@ -100,6 +109,7 @@ public class GithubEventResource implements Resource {
                                UserManager userManager,
                                LdapManager ldapManager,
                                TriggerEventInitiatorResolver initiatorResolver,
+                               EventInbox inbox,
                                MetricRegistry metricRegistry) {
 
         this.githubCfg = githubCfg;
@@ -109,6 +119,7 @@ public class GithubEventResource implements Resource {
         this.userManager = userManager;
         this.ldapManager = ldapManager;
         this.initiatorResolver = initiatorResolver;
+        this.inbox = inbox;
         this.startedProcessesPerEvent = metricRegistry.histogram("started-processes-per-github-event");
     }
 
@@ -152,6 +163,37 @@ public class GithubEventResource implements Resource {
             return "ok";
         }
 
+        if (inbox.isEnabled()) {
+            String eventId = deliveryId != null ? deliveryId : UUID.randomUUID().toString();
+            if (inbox.add(EVENT_SOURCE, eventName, eventId, data, uriInfo.getRequestUri())) {
+                log.info("onEvent ['{}', '{}'] -> queued", deliveryId, eventName);
+            }
+            return "ok";
+        }
+
+        process(deliveryId, eventName, payload, uriInfo);
+
+        return "ok";
+    }
+
+    @Override
+    public String eventSource() {
+        return EVENT_SOURCE;
+    }
+
+    @Override
+    public void handle(InboxEvent event) {
+        Payload payload = Payload.from(event.eventName(), event.data());
+        if (payload == null) {
+            log.warn("handle ['{}', '{}'] -> can't parse payload", event.eventId(), event.eventName());
+            return;
+        }
+
+        URI requestUri = URI.create(event.requestUri() != null ? event.requestUri() : "/events/github/webhook");
+        process(event.eventId(), event.eventName(), payload, new ResteasyUriInfo(requestUri));
+    }
+
+    private void process(String deliveryId, String eventName, Payload payload, UriInfo uriInfo) {
         List<GithubTriggerProcessor.Result> results = new ArrayList<>();
         processors.forEach(p -> p.process(eventName, payload, uriInfo, results));
 
@@ -180,8 +222,6 @@ public class GithubEventResource implements Resource {
         startedProcessesPerEvent.update(startedProcesses);
 
         log.info("onEvent ['{}', '{}'] -> done, started process count: {}", deliveryId, eventName, startedProcesses);
-
-        return "ok";
     }
 
     private static class GithubExclusiveParamsResolver implements TriggerProcessExecutor.TriggerExclusiveParamsResolver {
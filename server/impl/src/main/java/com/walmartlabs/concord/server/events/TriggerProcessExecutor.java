@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
 import com.walmartlabs.concord.server.org.project.ProjectDao;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggerIndex;
 import com.walmartlabs.concord.server.org.triggers.TriggerUtils;
 import com.walmartlabs.concord.server.process.*;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
@@ -64,6 +65,7 @@ public class TriggerProcessExecutor {
     private final TriggersConfiguration triggersCfg;
     private final ProcessManager processManager;
     private final RepositoryDao repositoryDao;
+    private final TriggerIndex triggerIndex;
     private final ProjectDao projectDao;
     private final ProcessSecurityContext processSecurityContext;
     private final ExecutorService executor;
@@ -73,6 +75,7 @@ public class TriggerProcessExecutor {
                                   TriggersConfiguration triggersCfg,
                                   ProcessManager processManager,
                                   RepositoryDao repositoryDao,
+                                  TriggerIndex triggerIndex,
                                   ProjectDao projectDao,
                                   ProcessSecurityContext processSecurityContext) {
 
@@ -80,6 +83,7 @@ public class TriggerProcessExecutor {
         this.triggersCfg = triggersCfg;
         this.processManager = processManager;
         this.repositoryDao = repositoryDao;
+        this.triggerIndex = triggerIndex;
         this.projectDao = projectDao;
         this.processSecurityContext = processSecurityContext;
         this.executor = createExecutor(eventsCfg.getWorkerThreads());
@@ -120,7 +124,7 @@ public class TriggerProcessExecutor {
                 .collect(Collectors.toList());
     }
 
-    private void assertRoles(String eventName) {
+    public void assertRoles(String eventName) {
         if (Roles.isAdmin()) {
             return;
         }
@@ -139,6 +143,10 @@ public class TriggerProcessExecutor {
     }
 
     private boolean isRepositoryDisabled(TriggerEntry t) {
+        Boolean disabled = triggerIndex.isRepositoryDisabled(t.getRepositoryId());
+        if (disabled != null) {
+            return disabled;
+        }
         return repositoryDao.get(t.getRepositoryId()).isDisabled();
     }
 
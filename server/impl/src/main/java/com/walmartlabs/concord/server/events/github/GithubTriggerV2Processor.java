@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.events.DefaultEventFilter;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggerIndex;
 import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.security.github.GithubKey;
@@ -234,14 +235,17 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
     public static class Dao {
         private final RepositoryDao repoDao;
         private final TriggersDao triggersDao;
+        private final TriggerIndex triggerIndex;
         private final Configuration cfg;
 
         @Inject
         public Dao(@MainDB Configuration cfg,
                    RepositoryDao repoDao,
-                   TriggersDao triggersDao) {
+                   TriggersDao triggersDao,
+                   TriggerIndex triggerIndex) {
             this.cfg = cfg;
             this.triggersDao = triggersDao;
+            this.triggerIndex = triggerIndex;
             this.repoDao = repoDao;
         }
 
@@ -261,7 +265,7 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
                 conditions.put(GITHUB_REPO_KEY, repo);
             }
 
-            return triggersDao.list(projectId, EVENT_SOURCE, VERSION_ID, conditions);
+            return triggerIndex.list(projectId, EVENT_SOURCE, VERSION_ID, conditions);
         }
 
         void disable(UUID projectId, UUID repoId) {
@@ -269,6 +273,8 @@ public class GithubTriggerV2Processor implements GithubTriggerProcessor {
                 repoDao.disable(tx, repoId);
                 triggersDao.delete(tx, projectId, repoId);
             });
+
+            triggerIndex.onRepositoryChange(projectId, repoId);
         }
 
         private DSLContext dsl() {
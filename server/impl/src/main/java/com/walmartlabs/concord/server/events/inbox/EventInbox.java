@@ -0,0 +1,198 @@
+package com.walmartlabs.concord.server.events.inbox;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.db.PgUtils;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.cfg.EventInboxConfiguration;
+import com.walmartlabs.concord.server.process.ProcessSecurityContext;
+import com.walmartlabs.concord.server.security.SecurityUtils;
+import org.jooq.Configuration;
+import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.jooq.Tables.EVENT_INBOX;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Durable queue of incoming events. When enabled, the event endpoints save
+ * the events here and return immediately. The events are processed
+ * by {@link EventInboxWorker}.
+ * <p>
+ * Events are de-duplicated using the event's source, name and ID
+ * (e.g. GitHub's delivery ID) for {@code eventInbox.retentionPeriod}.
+ */
+@Named
+@Singleton
+public class EventInbox {
+
+    private static final Logger log = LoggerFactory.getLogger(EventInbox.class);
+
+    private final EventInboxConfiguration cfg;
+    private final ProcessSecurityContext securityContext;
+    private final Dao dao;
+    private final Object mutex = new Object();
+
+    @Inject
+    public EventInbox(EventInboxConfiguration cfg,
+                      ProcessSecurityContext securityContext,
+                      Dao dao) {
+
+        this.cfg = cfg;
+        this.securityContext = securityContext;
+        this.dao = dao;
+    }
+
+    public boolean isEnabled() {
+        return cfg.isEnabled();
+    }
+
+    /**
+     * Saves the event. The event is processed in the security context
+     * of the current user.
+     *
+     * @return {@code false} if the event with the same ID was received before
+     */
+    public boolean add(String eventSource, String eventName, String eventId, Map<String, Object> data, URI requestUri) {
+        byte[] principals = securityContext.serializePrincipals(SecurityUtils.getSubject().getPrincipals());
+
+        boolean added = dao.insert(eventSource, eventName, eventId, data, requestUri != null ? requestUri.toString() : null, principals);
+        if (!added) {
+            log.info("add ['{}', '{}', '{}'] -> duplicate event, skipping", eventSource, eventName, eventId);
+            return false;
+        }
+
+        synchronized (mutex) {
+            mutex.notifyAll();
+        }
+
+        return true;
+    }
+
+    Dao dao() {
+        return dao;
+    }
+
+    /**
+     * Waits for new events added by this server instance.
+     */
+    void await(Duration timeout) throws InterruptedException {
+        synchronized (mutex) {
+            mutex.wait(timeout.toMillis());
+        }
+    }
+
+    record ClaimedEvent(InboxEvent event, byte[] principals) {
+    }
+
+    public static class Dao extends AbstractDao {
+
+        private final ConcordObjectMapper objectMapper;
+
+        @Inject
+        public Dao(@MainDB Configuration cfg, ConcordObjectMapper objectMapper) {
+            super(cfg);
+            this.objectMapper = objectMapper;
+        }
+
+        public boolean insert(String eventSource, String eventName, String eventId, Map<String, Object> data, String requestUri, byte[] principals) {
+            return txResult(tx -> tx.insertInto(EVENT_INBOX)
+                    .columns(EVENT_INBOX.EVENT_SOURCE, EVENT_INBOX.EVENT_NAME, EVENT_INBOX.EVENT_ID, EVENT_INBOX.EVENT_DATA, EVENT_INBOX.REQUEST_URI, EVENT_INBOX.PRINCIPALS)
+                    .values(eventSource, eventName, eventId, objectMapper.toJSONB(data), requestUri, principals)
+                    .onConflictDoNothing()
+                    .execute()) > 0;
+        }
+
+        /**
+         * Claims up to {@code limit} unprocessed events. Events claimed
+         * by other workers are skipped unless the claim is older than
+         * {@code claimTimeout}. The events are returned in the order
+         * they were received.
+         */
+        List<ClaimedEvent> claim(int limit, Duration claimTimeout) {
+            Select<Record1<UUID>> ids = select(EVENT_INBOX.INBOX_ID)
+                    .from(EVENT_INBOX)
+                    .where(EVENT_INBOX.PROCESSED_AT.isNull()
+                            .and(EVENT_INBOX.CLAIMED_AT.isNull()
+                                    .or(EVENT_INBOX.CLAIMED_AT.lessThan(PgUtils.nowMinus(claimTimeout)))))
+                    .orderBy(EVENT_INBOX.RECEIVED_AT)
+                    .limit(limit)
+                    .forUpdate()
+                    .skipLocked();
+
+            return txResult(tx -> tx.update(EVENT_INBOX)
+                    .set(EVENT_INBOX.CLAIMED_AT, currentOffsetDateTime())
+                    .set(EVENT_INBOX.ATTEMPTS, EVENT_INBOX.ATTEMPTS.plus(1))
+                    .where(EVENT_INBOX.INBOX_ID.in(ids))
+                    .returning()
+                    .fetch()
+                    // "update ... returning" doesn't preserve the order of the subquery
+                    .sortAsc(EVENT_INBOX.RECEIVED_AT)
+                    .map(this::toClaimedEvent));
+        }
+
+        void markProcessed(UUID inboxId) {
+            tx(tx -> tx.update(EVENT_INBOX)
+                    .set(EVENT_INBOX.PROCESSED_AT, currentOffsetDateTime())
+                    .where(EVENT_INBOX.INBOX_ID.eq(inboxId))
+                    .execute());
+        }
+
+        int countPending() {
+            return dsl().fetchCount(EVENT_INBOX, EVENT_INBOX.PROCESSED_AT.isNull());
+        }
+
+        int deleteProcessed(Duration retentionPeriod) {
+            return txResult(tx -> tx.deleteFrom(EVENT_INBOX)
+                    .where(EVENT_INBOX.PROCESSED_AT.lessThan(PgUtils.nowMinus(retentionPeriod)))
+                    .execute());
+        }
+
+        private ClaimedEvent toClaimedEvent(Record r) {
+            InboxEvent e = InboxEvent.builder()
+                    .inboxId(r.get(EVENT_INBOX.INBOX_ID))
+                    .eventSource(r.get(EVENT_INBOX.EVENT_SOURCE))
+                    .eventName(r.get(EVENT_INBOX.EVENT_NAME))
+                    .eventId(r.get(EVENT_INBOX.EVENT_ID))
+                    .data(objectMapper.fromJSONB(r.get(EVENT_INBOX.EVENT_DATA)))
+                    .requestUri(r.get(EVENT_INBOX.REQUEST_URI))
+                    .receivedAt(r.get(EVENT_INBOX.RECEIVED_AT))
+                    .attempts(r.get(EVENT_INBOX.ATTEMPTS))
+                    .build();
+
+            return new ClaimedEvent(e, r.get(EVENT_INBOX.PRINCIPALS));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.walmartlabs.concord.server.events.inbox;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+/**
+ * Processes events of a specific source saved into {@link EventInbox}.
+ * Called in the security context of the original caller.
+ */
+public interface EventInboxHandler {
+
+    /**
+     * @see EventInbox#add(String, String, String, java.util.Map, java.net.URI)
+     */
+    String eventSource();
+
+    /**
+     * Can be called multiple times for the same event if the previous
+     * attempt failed or was interrupted.
+     */
+    void handle(InboxEvent event) throws Exception;
+}
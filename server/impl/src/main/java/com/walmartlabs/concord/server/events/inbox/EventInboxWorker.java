@@ -0,0 +1,189 @@
+package com.walmartlabs.concord.server.events.inbox;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.cfg.EventInboxConfiguration;
+import com.walmartlabs.concord.server.process.ProcessSecurityContext;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import com.walmartlabs.concord.server.security.SecurityUtils;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Processes the events saved into {@link EventInbox} using
+ * the registered {@link EventInboxHandler}s.
+ * <p>
+ * Failed events are retried after {@code eventInbox.claimTimeout} up to
+ * {@code eventInbox.maxAttempts} times. The events are processed
+ * at least once: each attempt calls {@link EventInboxHandler#handle(InboxEvent)}
+ * again, even if the previous attempt managed to start some processes.
+ */
+public class EventInboxWorker implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(EventInboxWorker.class);
+    private static final long ERROR_DELAY = 10000;
+    private static final long MAINTENANCE_INTERVAL = Duration.ofMinutes(1).toMillis();
+
+    private final EventInboxConfiguration cfg;
+    private final EventInbox inbox;
+    private final EventInbox.Dao dao;
+    private final Map<String, EventInboxHandler> handlers;
+    private final ProcessSecurityContext securityContext;
+
+    private final Timer lag;
+    private final Timer processingTime;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile int depth;
+    private long lastMaintenanceAt;
+
+    @Inject
+    public EventInboxWorker(EventInboxConfiguration cfg,
+                            EventInbox inbox,
+                            List<EventInboxHandler> handlers,
+                            ProcessSecurityContext securityContext,
+                            MetricRegistry metricRegistry) {
+
+        this.cfg = cfg;
+        this.inbox = inbox;
+        this.dao = inbox.dao();
+        this.handlers = new HashMap<>();
+        handlers.forEach(h -> this.handlers.put(h.eventSource(), h));
+        this.securityContext = securityContext;
+
+        this.lag = metricRegistry.timer("event-inbox-lag");
+        this.processingTime = metricRegistry.timer("event-inbox-processing-time");
+        metricRegistry.gauge("event-inbox-depth", () -> () -> depth);
+    }
+
+    @Override
+    public void start() {
+        if (!cfg.isEnabled()) {
+            return;
+        }
+
+        for (int i = 0; i < cfg.getWorkerThreads(); i++) {
+            boolean maintenance = i == 0;
+            Thread t = new Thread(() -> run(maintenance), "event-inbox-worker-" + i);
+            t.start();
+            workers.add(t);
+        }
+
+        log.info("start -> started {} worker(s)", workers.size());
+    }
+
+    @Override
+    public void stop() {
+        workers.forEach(Thread::interrupt);
+        workers.clear();
+    }
+
+    private void run(boolean maintenance) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (maintenance) {
+                    performMaintenance();
+                }
+
+                List<EventInbox.ClaimedEvent> events = dao.claim(cfg.getBatchSize(), cfg.getClaimTimeout());
+                if (events.isEmpty()) {
+                    inbox.await(cfg.getPollInterval());
+                    continue;
+                }
+
+                for (EventInbox.ClaimedEvent e : events) {
+                    process(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("run -> error", e);
+
+                try {
+                    Thread.sleep(ERROR_DELAY);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    void process(EventInbox.ClaimedEvent claimed) {
+        InboxEvent e = claimed.event();
+
+        if (e.attempts() == 1) {
+            lag.update(Duration.between(e.receivedAt(), OffsetDateTime.now()));
+        }
+
+        EventInboxHandler handler = handlers.get(e.eventSource());
+        if (handler == null) {
+            log.warn("process ['{}', '{}'] -> unknown event source '{}', skipping", e.inboxId(), e.eventId(), e.eventSource());
+            dao.markProcessed(e.inboxId());
+            return;
+        }
+
+        try (Timer.Context ignored = processingTime.time()) {
+            PrincipalCollection principals = SecurityUtils.deserialize(claimed.principals())
+                    .orElseThrow(() -> new IllegalStateException("Principals not found"));
+
+            securityContext.runAs(principals, () -> {
+                handler.handle(e);
+                return null;
+            });
+        } catch (Exception ex) {
+            if (e.attempts() < cfg.getMaxAttempts()) {
+                log.warn("process ['{}', '{}', '{}'] -> error (attempt {}), will retry: {}", e.inboxId(), e.eventName(), e.eventId(), e.attempts(), ex.getMessage());
+                return;
+            }
+
+            log.error("process ['{}', '{}', '{}'] -> error (attempt {}), giving up", e.inboxId(), e.eventName(), e.eventId(), e.attempts(), ex);
+        }
+
+        dao.markProcessed(e.inboxId());
+    }
+
+    private void performMaintenance() {
+        depth = dao.countPending();
+
+        long now = System.currentTimeMillis();
+        if (now - lastMaintenanceAt < MAINTENANCE_INTERVAL) {
+            return;
+        }
+        lastMaintenanceAt = now;
+
+        int deleted = dao.deleteProcessed(cfg.getRetentionPeriod());
+        if (deleted > 0) {
+            log.info("performMaintenance -> removed {} processed event(s)", deleted);
+        }
+    }
+}
@@ -21,10 +21,12 @@ package com.walmartlabs.concord.server.org.triggers;
  */
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.walmartlabs.concord.common.CompiledMatcher;
 import com.walmartlabs.concord.common.validation.ConcordKey;
 import org.immutables.builder.Builder;
 
@@ -70,6 +72,8 @@ public class TriggerEntry implements Serializable {
     @NotNull
     private final Map<String, Object> cfg;
 
+    private transient volatile CompiledMatcher conditionsMatcher;
+
     @JsonCreator
     @Builder.Constructor
     public TriggerEntry(@JsonProperty("id") UUID id,
@@ -147,6 +151,20 @@ public class TriggerEntry implements Serializable {
         return cfg;
     }
 
+    /**
+     * Returns the compiled {@link #getConditions() conditions}. The conditions
+     * are compiled on the first call.
+     */
+    @JsonIgnore
+    public CompiledMatcher getConditionsMatcher() {
+        CompiledMatcher result = conditionsMatcher;
+        if (result == null) {
+            result = CompiledMatcher.compile(conditions);
+            conditionsMatcher = result;
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         return "TriggerEntry{" +
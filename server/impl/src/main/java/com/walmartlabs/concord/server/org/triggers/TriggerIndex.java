@@ -0,0 +1,703 @@
+package com.walmartlabs.concord.server.org.triggers;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2023 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.CompiledMatcher;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.jooq.Configuration;
+import org.jooq.Field;
+import org.jooq.Record3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.walmartlabs.concord.server.events.github.Constants.GITHUB_ORG_KEY;
+import static com.walmartlabs.concord.server.jooq.Tables.REPOSITORIES;
+import static com.walmartlabs.concord.server.jooq.Tables.TRIGGERS;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * In-memory copy of the TRIGGERS table used to resolve incoming events
+ * (GitHub notifications, external events) without querying the DB.
+ * <p>
+ * Triggers are grouped by the event source and by the GitHub organization
+ * name, if the trigger's conditions use a plain name (the most common case,
+ * see {@link GithubTriggerEnricher}). Other triggers are checked for each
+ * event of the same source.
+ * <p>
+ * The index is updated incrementally for repositories refreshed by
+ * {@link TriggerManager} and re-synchronized when the DB fingerprint
+ * of the TRIGGERS table differs from the index' fingerprint (i.e. when the
+ * triggers were modified by another server instance) or when
+ * {@code triggers.index.reloadInterval} passes.
+ * <p>
+ * Until the first load is complete (or if the index is disabled)
+ * all lookups are delegated to {@link TriggersDao}.
+ */
+public class TriggerIndex implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(TriggerIndex.class);
+    private static final long ERROR_DELAY = 10000;
+
+    /**
+     * Conditions with values matching this pattern can be used as
+     * the lookup keys: the DB filter (case-sensitive substring regex match)
+     * accepts such values only if they are substrings of the event's value.
+     */
+    private static final Pattern PLAIN_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final String ANY = "*";
+
+    /**
+     * Key of the triggers with conditions that use regular expression
+     * features outside of the subset with the same semantics in PostgreSQL
+     * (ARE) and {@link Pattern} (see {@link #toJavaRegex(String)}).
+     * Lookups for the event sources with such triggers are delegated to the DB.
+     */
+    private static final String UNSUPPORTED = "?";
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final TriggersConfiguration cfg;
+    private final TriggersDao triggersDao;
+    private final Dao dao;
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final Object refreshMutex = new Object();
+
+    /**
+     * Repositories modified since the last check.
+     * Can be updated by any thread.
+     */
+    private final ConcurrentMap<UUID, UUID> changedRepos = new ConcurrentHashMap<>();
+
+    private final Map<UUID, List<TriggerEntry>> byRepo = new HashMap<>();
+    private final Map<String, Map<String, Map<UUID, TriggerEntry>>> bySource = new HashMap<>();
+    private final Map<UUID, Boolean> disabledRepos = new HashMap<>();
+
+    private volatile boolean loaded;
+    private volatile int size;
+    private long lastReloadAt;
+    private Thread loader;
+
+    @Inject
+    public TriggerIndex(TriggersConfiguration cfg,
+                        TriggersDao triggersDao,
+                        Dao dao,
+                        MetricRegistry metricRegistry) {
+
+        this.cfg = cfg;
+        this.triggersDao = triggersDao;
+        this.dao = dao;
+
+        metricRegistry.gauge("triggers-index-size", () -> () -> size);
+    }
+
+    @Override
+    public void start() {
+        if (!cfg.isIndexEnabled()) {
+            return;
+        }
+
+        this.loader = new Thread(this::run, "trigger-index-loader");
+        this.loader.start();
+    }
+
+    @Override
+    public void stop() {
+        if (loader != null) {
+            loader.interrupt();
+            loader = null;
+        }
+    }
+
+    /**
+     * Marks the repository's triggers as modified. The change is picked up
+     * by the loader thread. Must be called after the change is committed,
+     * e.g. using {@link com.walmartlabs.concord.db.TransactionHooks#afterCommit}.
+     */
+    public void onRepositoryChange(UUID projectId, UUID repoId) {
+        if (loader == null) {
+            return;
+        }
+
+        changedRepos.put(repoId, projectId);
+
+        synchronized (refreshMutex) {
+            refreshMutex.notifyAll();
+        }
+    }
+
+    /**
+     * Same as {@link TriggersDao#list(UUID, String, Integer, Map)}.
+     */
+    public List<TriggerEntry> list(UUID projectId, String eventSource, Integer version, Map<String, String> conditions) {
+        if (!loaded) {
+            return triggersDao.list(projectId, eventSource, version, conditions);
+        }
+
+        Lock l = rwLock.readLock();
+        l.lock();
+        try {
+            Map<String, Map<UUID, TriggerEntry>> buckets = bySource.get(eventSource);
+            if (buckets == null) {
+                return Collections.emptyList();
+            }
+
+            if (buckets.containsKey(UNSUPPORTED)) {
+                return triggersDao.list(projectId, eventSource, version, conditions);
+            }
+
+            Collection<Map<UUID, TriggerEntry>> candidates;
+            String org = conditions != null ? conditions.get(GITHUB_ORG_KEY) : null;
+            if (org == null) {
+                candidates = buckets.values();
+            } else {
+                candidates = new ArrayList<>();
+                for (String key : routeKeys(org)) {
+                    Map<UUID, TriggerEntry> bucket = buckets.get(key);
+                    if (bucket != null) {
+                        candidates.add(bucket);
+                    }
+                }
+            }
+
+            List<TriggerEntry> result = new ArrayList<>();
+            for (Map<UUID, TriggerEntry> c : candidates) {
+                for (TriggerEntry t : c.values()) {
+                    if (matches(t, projectId, version, conditions)) {
+                        result.add(t);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * @return {@code null} if the repository is unknown to the index
+     */
+    public Boolean isRepositoryDisabled(UUID repoId) {
+        if (!loaded) {
+            return null;
+        }
+
+        Lock l = rwLock.readLock();
+        l.lock();
+        try {
+            return disabledRepos.get(repoId);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                check();
+
+                synchronized (refreshMutex) {
+                    if (changedRepos.isEmpty()) {
+                        refreshMutex.wait(cfg.getIndexCheckInterval().toMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("run -> error", e);
+
+                try {
+                    Thread.sleep(ERROR_DELAY);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (!loaded || now - lastReloadAt >= cfg.getIndexReloadInterval().toMillis()) {
+            reload();
+            lastReloadAt = now;
+            return;
+        }
+
+        if (!changedRepos.isEmpty()) {
+            Map<UUID, UUID> repos = new HashMap<>(changedRepos);
+            repos.forEach(changedRepos::remove);
+            update(repos);
+        }
+
+        Fingerprint expected = dao.fingerprint();
+        Fingerprint actual = fingerprint();
+        if (!expected.equals(actual)) {
+            log.info("check -> fingerprint mismatch (db: {}, index: {}), reloading...", expected, actual);
+            reload();
+            lastReloadAt = now;
+        }
+    }
+
+    private void reload() {
+        long t1 = System.currentTimeMillis();
+
+        List<TriggerEntry> triggers = triggersDao.list(null, null, null, (String) null);
+        Map<UUID, Boolean> disabled = dao.listDisabledFlags(null);
+
+        Lock l = rwLock.writeLock();
+        l.lock();
+        try {
+            byRepo.clear();
+            bySource.clear();
+            disabledRepos.clear();
+
+            for (TriggerEntry t : triggers) {
+                byRepo.computeIfAbsent(t.getRepositoryId(), k -> new ArrayList<>()).add(t);
+                add(t);
+            }
+            disabledRepos.putAll(disabled);
+
+            size = triggers.size();
+            loaded = true;
+        } finally {
+            l.unlock();
+        }
+
+        log.info("reload -> done, {} trigger(s), took {}ms", triggers.size(), System.currentTimeMillis() - t1);
+    }
+
+    private void update(Map<UUID, UUID> repos) {
+        Map<UUID, List<TriggerEntry>> triggers = new HashMap<>();
+        repos.forEach((repoId, projectId) -> triggers.put(repoId, triggersDao.list(projectId, repoId)));
+        Map<UUID, Boolean> disabled = dao.listDisabledFlags(repos.keySet());
+
+        Lock l = rwLock.writeLock();
+        l.lock();
+        try {
+            for (Map.Entry<UUID, List<TriggerEntry>> e : triggers.entrySet()) {
+                UUID repoId = e.getKey();
+
+                List<TriggerEntry> prev = byRepo.remove(repoId);
+                if (prev != null) {
+                    prev.forEach(this::remove);
+                }
+
+                disabledRepos.remove(repoId);
+                Boolean d = disabled.get(repoId);
+                if (d != null) {
+                    disabledRepos.put(repoId, d);
+                }
+
+                if (e.getValue().isEmpty()) {
+                    continue;
+                }
+
+                byRepo.put(repoId, new ArrayList<>(e.getValue()));
+                e.getValue().forEach(this::add);
+            }
+
+            size = byRepo.values().stream().mapToInt(List::size).sum();
+        } finally {
+            l.unlock();
+        }
+
+        log.debug("update -> done, {} repositories", repos.size());
+    }
+
+    private void add(TriggerEntry t) {
+        bySource.computeIfAbsent(t.getEventSource(), k -> new HashMap<>())
+                .computeIfAbsent(routeKey(t), k -> new HashMap<>())
+                .put(t.getId(), t);
+    }
+
+    private void remove(TriggerEntry t) {
+        Map<String, Map<UUID, TriggerEntry>> buckets = bySource.get(t.getEventSource());
+        if (buckets == null) {
+            return;
+        }
+
+        String key = routeKey(t);
+        Map<UUID, TriggerEntry> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.remove(t.getId());
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+        if (buckets.isEmpty()) {
+            bySource.remove(t.getEventSource());
+        }
+    }
+
+    private Fingerprint fingerprint() {
+        Lock l = rwLock.readLock();
+        l.lock();
+        try {
+            long count = 0;
+            long idSum = 0;
+            long disabledIdSum = 0;
+            for (List<TriggerEntry> triggers : byRepo.values()) {
+                for (TriggerEntry t : triggers) {
+                    int h = (int) (t.getId().getMostSignificantBits() >>> 32);
+                    count++;
+                    idSum += h;
+                    if (Boolean.TRUE.equals(disabledRepos.get(t.getRepositoryId()))) {
+                        disabledIdSum += h;
+                    }
+                }
+            }
+            return new Fingerprint(count, idSum, disabledIdSum);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    private static String routeKey(TriggerEntry t) {
+        Map<String, Object> conditions = t.getConditions();
+        if (conditions == null) {
+            return ANY;
+        }
+
+        for (Object v : conditions.values()) {
+            String regex = jsonbText(v);
+            if (regex != null && toJavaRegex(regex) == null) {
+                return UNSUPPORTED;
+            }
+        }
+
+        Object org = conditions.get(GITHUB_ORG_KEY);
+        if (isPlainName(org)) {
+            return (String) org;
+        }
+
+        return ANY;
+    }
+
+    /**
+     * @return keys of the triggers that can match the organization name:
+     * all plain name substrings of the name and {@link #ANY}
+     */
+    static Set<String> routeKeys(String org) {
+        Set<String> result = new HashSet<>();
+        result.add(ANY);
+
+        for (int i = 0; i < org.length(); i++) {
+            for (int j = i + 1; j <= org.length(); j++) {
+                String s = org.substring(i, j);
+                if (!PLAIN_NAME.matcher(s).matches()) {
+                    break;
+                }
+                result.add(s);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isPlainName(Object v) {
+        return v instanceof String s && PLAIN_NAME.matcher(s).matches();
+    }
+
+    /**
+     * Mirrors the filter used by {@link TriggersDao#list(UUID, String, Integer, Map)}:
+     * <ul>
+     *     <li>{@code conditions->>'version' = :version}, triggers without
+     *     the version match {@code version = 1};</li>
+     *     <li>{@code conditions->>:key is null or :value ~ conditions->>:key}
+     *     for each of the event's conditions.</li>
+     * </ul>
+     * Conditions outside of the supported regex subset don't match,
+     * see {@link #UNSUPPORTED}.
+     */
+    static boolean matches(TriggerEntry t, UUID projectId, Integer version, Map<String, String> conditions) {
+        if (projectId != null && !projectId.equals(t.getProjectId())) {
+            return false;
+        }
+
+        Map<String, Object> triggerConditions = t.getConditions() != null ? t.getConditions() : Collections.emptyMap();
+
+        if (version != null) {
+            String v = jsonbText(triggerConditions.get("version"));
+            boolean matches = v != null ? v.equals(String.valueOf(version)) : version == 1;
+            if (!matches) {
+                return false;
+            }
+        }
+
+        if (conditions == null) {
+            return true;
+        }
+
+        for (Map.Entry<String, String> e : conditions.entrySet()) {
+            String regex = jsonbText(triggerConditions.get(e.getKey()));
+            if (regex == null) {
+                continue;
+            }
+
+            if (e.getValue() == null) {
+                return false;
+            }
+
+            if (!find(regex, e.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean find(String regex, String value) {
+        if (isLiteral(regex)) {
+            return value.contains(regex);
+        }
+
+        String javaRegex = toJavaRegex(regex);
+        if (javaRegex == null) {
+            return false;
+        }
+
+        try {
+            return CompiledMatcher.caseSensitivePattern(javaRegex).matcher(value).find();
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a PostgreSQL regular expression into an equivalent
+     * {@link Pattern} regex. Only the subset with the same semantics in both
+     * engines is supported: literal characters, escaped metacharacters,
+     * {@code .}, {@code ^}, {@code $}, {@code |}, groups and the greedy
+     * {@code *}, {@code +} and {@code ?} quantifiers. Bracket expressions,
+     * bounds, backreferences, class escapes ({@code \d}, {@code \w}, etc.),
+     * non-greedy quantifiers and {@code (?} constructs are not supported.
+     * <p>
+     * In PostgreSQL {@code .} matches newlines and {@code $} matches only
+     * at the end of the value, so the result uses {@code (?s)} and {@code \z}.
+     *
+     * @return {@code null} if the regex is not supported
+     */
+    static String toJavaRegex(String regex) {
+        StringBuilder sb = new StringBuilder("(?s)");
+        int depth = 0;
+        boolean quantifiable = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 >= regex.length() || REGEX_METACHARACTERS.indexOf(regex.charAt(i + 1)) < 0) {
+                        return null;
+                    }
+                    sb.append(c).append(regex.charAt(++i));
+                    quantifiable = true;
+                }
+                case '.' -> {
+                    sb.append(c);
+                    quantifiable = true;
+                }
+                case '^', '|' -> {
+                    sb.append(c);
+                    quantifiable = false;
+                }
+                case '$' -> {
+                    sb.append("\\z");
+                    quantifiable = false;
+                }
+                case '(' -> {
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                        return null;
+                    }
+                    sb.append(c);
+                    depth++;
+                    quantifiable = false;
+                }
+                case ')' -> {
+                    if (depth == 0) {
+                        return null;
+                    }
+                    sb.append(c);
+                    depth--;
+                    quantifiable = true;
+                }
+                case '*', '+', '?' -> {
+                    if (!quantifiable) {
+                        return null;
+                    }
+                    sb.append(c);
+                    quantifiable = false;
+                }
+                case '[', ']', '{', '}' -> {
+                    return null;
+                }
+                default -> {
+                    sb.append(c);
+                    quantifiable = true;
+                }
+            }
+        }
+
+        if (depth != 0) {
+            return null;
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Same as the {@code ->>} operator: the value as text or {@code null}
+     * for missing values and JSON nulls.
+     */
+    static String jsonbText(Object v) {
+        if (v == null) {
+            return null;
+        }
+
+        if (v instanceof String s) {
+            return s;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        appendJsonb(sb, v);
+        return sb.toString();
+    }
+
+    /**
+     * Renders the value the way PostgreSQL prints JSONB values, i.e. with
+     * the object keys ordered by length first.
+     */
+    @SuppressWarnings("unchecked")
+    private static void appendJsonb(StringBuilder sb, Object v) {
+        if (v instanceof String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\b' -> sb.append("\\b");
+                    case '\f' -> sb.append("\\f");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            sb.append('"');
+        } else if (v instanceof Map) {
+            List<Map.Entry<String, Object>> entries = new ArrayList<>(((Map<String, Object>) v).entrySet());
+            entries.sort(Comparator.comparingInt((Map.Entry<String, Object> e) -> e.getKey().length()).thenComparing(Map.Entry::getKey));
+
+            sb.append('{');
+            for (int i = 0; i < entries.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                appendJsonb(sb, entries.get(i).getKey());
+                sb.append(": ");
+                appendJsonb(sb, entries.get(i).getValue());
+            }
+            sb.append('}');
+        } else if (v instanceof Collection) {
+            sb.append('[');
+            int i = 0;
+            for (Object o : (Collection<Object>) v) {
+                if (i++ > 0) {
+                    sb.append(", ");
+                }
+                appendJsonb(sb, o);
+            }
+            sb.append(']');
+        } else {
+            sb.append(v);
+        }
+    }
+
+    /**
+     * Number of triggers, sum of the high 32 bits of their IDs and the same sum
+     * for the triggers of disabled repositories. Cheap to compute on both sides.
+     */
+    record Fingerprint(long count, long idSum, long disabledIdSum) {
+    }
+
+    public static class Dao extends AbstractDao {
+
+        private static final Field<Integer> ID_HASH = field("('x' || substr({0}::text, 1, 8))::bit(32)::int", Integer.class, TRIGGERS.TRIGGER_ID);
+
+        @Inject
+        public Dao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        public Fingerprint fingerprint() {
+            Record3<Integer, Long, Long> r = dsl().select(
+                            count(),
+                            coalesce(sum(ID_HASH), 0).cast(Long.class),
+                            coalesce(sum(when(REPOSITORIES.IS_DISABLED.isTrue(), ID_HASH).otherwise(0)), 0).cast(Long.class))
+                    .from(TRIGGERS)
+                    .leftJoin(REPOSITORIES).on(REPOSITORIES.REPO_ID.eq(TRIGGERS.REPO_ID))
+                    .fetchOne();
+
+            return new Fingerprint(r.value1(), r.value2(), r.value3());
+        }
+
+        /**
+         * @param repoIds if {@code null}, returns the flags of all repositories with triggers
+         */
+        public Map<UUID, Boolean> listDisabledFlags(Collection<UUID> repoIds) {
+            return dsl().select(REPOSITORIES.REPO_ID, REPOSITORIES.IS_DISABLED)
+                    .from(REPOSITORIES)
+                    .where(repoIds != null ? REPOSITORIES.REPO_ID.in(repoIds) : REPOSITORIES.REPO_ID.in(selectDistinct(TRIGGERS.REPO_ID).from(TRIGGERS)))
+                    .fetchMap(REPOSITORIES.REPO_ID, REPOSITORIES.IS_DISABLED);
+        }
+    }
+}
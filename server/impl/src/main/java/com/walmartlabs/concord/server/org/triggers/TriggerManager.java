@@ -25,6 +25,7 @@ import com.google.common.collect.ListMultimap;
 import com.walmartlabs.concord.common.ConfigurationUtils;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.db.TransactionHooks;
 import com.walmartlabs.concord.process.loader.model.ProcessDefinition;
 import com.walmartlabs.concord.process.loader.model.Trigger;
 import com.walmartlabs.concord.sdk.MapUtils;
@@ -52,6 +53,7 @@ public class TriggerManager extends AbstractDao {
 
     private final ProjectDao projectDao;
     private final TriggersDao triggersDao;
+    private final TriggerIndex triggerIndex;
     private final PolicyManager policyManager;
     private final TriggersConfiguration triggersCfg;
 
@@ -62,6 +64,7 @@ public class TriggerManager extends AbstractDao {
     public TriggerManager(@MainDB Configuration cfg,
                           ProjectDao projectDao,
                           TriggersDao triggersDao,
+                          TriggerIndex triggerIndex,
                           PolicyManager policyManager,
                           TriggersConfiguration triggersCfg,
                           CronTriggerProcessor cronTriggerProcessor,
@@ -71,6 +74,7 @@ public class TriggerManager extends AbstractDao {
 
         this.projectDao = projectDao;
         this.triggersDao = triggersDao;
+        this.triggerIndex = triggerIndex;
         this.policyManager = policyManager;
         this.triggersCfg = triggersCfg;
 
@@ -117,11 +121,14 @@ public class TriggerManager extends AbstractDao {
             triggersDao.delete(tx, triggerIds.values().stream().map(TriggerEntry::getId).collect(Collectors.toList()));
         }
 
+        TransactionHooks.afterCommit(tx, () -> triggerIndex.onRepositoryChange(projectId, repoId));
+
         log.info("refresh ['{}', '{}'] -> done, triggers count: {}", projectId, repoId, pd.triggers().size());
     }
 
     public void clearTriggers(DSLContext tx, UUID projectId, UUID repoId) {
         triggersDao.delete(tx, projectId, repoId);
+        TransactionHooks.afterCommit(tx, () -> triggerIndex.onRepositoryChange(projectId, repoId));
     }
 
     private Trigger enrichTriggerDefinition(DSLContext tx, UUID repoId, Trigger t) {
@@ -25,6 +25,7 @@ import com.google.inject.Module;
 
 import static com.google.inject.Scopes.SINGLETON;
 import static com.walmartlabs.concord.server.Utils.bindJaxRsResource;
+import static com.walmartlabs.concord.server.Utils.bindSingletonBackgroundTask;
 import static com.walmartlabs.concord.server.Utils.bindSingletonScheduledTask;
 
 public class TriggersModule implements Module {
@@ -35,11 +36,13 @@ public class TriggersModule implements Module {
         binder.bind(GithubTriggerEnricher.class).in(SINGLETON);
         binder.bind(TriggerManager.class).in(SINGLETON);
         binder.bind(TriggerScheduleDao.class).in(SINGLETON);
+        binder.bind(TriggerIndex.Dao.class).in(SINGLETON);
         binder.bind(TriggersDao.class).in(SINGLETON);
 
         bindJaxRsResource(binder, TriggerResource.class);
         bindJaxRsResource(binder, TriggerV2Resource.class);
 
+        bindSingletonBackgroundTask(binder, TriggerIndex.class);
         bindSingletonScheduledTask(binder, TriggerScheduler.class);
     }
 }
@@ -54,6 +54,14 @@ public class ImportsNormalizerFactory {
         return imports -> ImportsNormalizerFactory.this.normalize(ImportContext.ofProject(projectId), imports);
     }
 
+    /**
+     * Same as {@link #forProject(UUID)}, but uses the provided organization name
+     * instead of fetching it from the DB.
+     */
+    public ImportsNormalizer forProject(UUID projectId, String orgName) {
+        return imports -> ImportsNormalizerFactory.this.normalize(ImportContext.ofProject(projectId, orgName), imports);
+    }
+
     private Imports normalize(ImportContext ctx, Imports imports) {
         List<Import> items = imports != null ? imports.items() : null;
         if (items == null || items.isEmpty()) {
@@ -116,6 +124,10 @@ public class ImportsNormalizerFactory {
     }
 
     private String getOrgName(ImportContext ctx) {
+        if (ctx.orgName() != null) {
+            return ctx.orgName();
+        }
+
         UUID projectId = ctx.projectId();
         if (projectId == null) {
             return null;
@@ -137,6 +149,27 @@ public class ImportsNormalizerFactory {
             return () -> projectId;
         }
 
+        static ImportContext ofProject(UUID projectId, String orgName) {
+            return new ImportContext() {
+                @Override
+                public UUID projectId() {
+                    return projectId;
+                }
+
+                @Override
+                public String orgName() {
+                    return orgName;
+                }
+            };
+        }
+
         UUID projectId();
+
+        /**
+         * @return the project's organization name, if known in advance
+         */
+        default String orgName() {
+            return null;
+        }
     }
 }
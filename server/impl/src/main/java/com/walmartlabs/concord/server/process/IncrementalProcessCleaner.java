@@ -0,0 +1,396 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.RateLimiter;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.PgUtils;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.jooq.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+import static com.walmartlabs.concord.server.jooq.Tables.*;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Removes the expired process data in small batches. Walks the expired
+ * {@link com.walmartlabs.concord.server.jooq.tables.ProcessQueue} entries in
+ * the (CREATED_AT, INSTANCE_ID) order and removes their data table by table,
+ * each batch in a separate transaction. The process state is removed first.
+ * Each transaction locks the batch's PROCESS_QUEUE rows that are still expired
+ * and removes the data of those processes only. The current position is saved
+ * in PROCESS_CLEANER_CURSORS after each batch.
+ * <p>
+ * If PROCESS_QUEUE entries are removed too, the walk starts from the beginning
+ * once it is complete. Otherwise the saved position is kept as a watermark, so
+ * the next run doesn't rescan the entries which data was already removed. The
+ * watermark doesn't move past the processes created before the cutoff that
+ * aren't expired yet (e.g. still running), those are picked up on a later run.
+ * <p>
+ * Orphan data (i.e. data without a PROCESS_QUEUE entry) is handled the same way,
+ * each table is walked in the INSTANCE_ID order.
+ */
+class IncrementalProcessCleaner {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalProcessCleaner.class);
+
+    private static final String EXPIRED_CURSOR = "expired";
+    private static final String ORPHANS_CURSOR_PREFIX = "orphans:";
+
+    /**
+     * Max number of expired processes to count when estimating the backlog.
+     */
+    private static final int MAX_BACKLOG_COUNT = 100_000;
+
+    private final ProcessConfiguration cfg;
+    private final CleanerDao dao;
+    private final Meter deletedRows;
+
+    private volatile long backlog;
+
+    IncrementalProcessCleaner(ProcessConfiguration cfg, Configuration dbCfg, MetricRegistry metricRegistry) {
+        this.cfg = cfg;
+        this.dao = new CleanerDao(dbCfg);
+        this.deletedRows = metricRegistry.meter("process-cleaner-deleted-rows");
+        metricRegistry.gauge("process-cleaner-backlog", () -> () -> backlog);
+    }
+
+    void run() {
+        long t1 = System.currentTimeMillis();
+
+        int maxRate = cfg.getIncrementalCleanupMaxRowsPerSecond();
+        Stats stats = new Stats(maxRate > 0 ? RateLimiter.create(maxRate) : null);
+
+        int processes = deleteExpired(stats);
+        deleteOrphans(stats);
+
+        long t2 = System.currentTimeMillis();
+        log.info("run -> removed {} process(es) older than {}, deleted rows: {}, took {}ms",
+                processes, cfg.getMaxStateAge(), stats.rows, (t2 - t1));
+    }
+
+    private int deleteExpired(Stats stats) {
+        List<List<Target>> targets = expiredTargets(cfg);
+        if (targets.isEmpty()) {
+            return 0;
+        }
+
+        Field<OffsetDateTime> cutoff = PgUtils.nowMinus(cfg.getMaxStateAge());
+        int batchSize = cfg.getIncrementalCleanupBatchSize();
+
+        // without the queue cleanup the expired entries stay in PROCESS_QUEUE,
+        // keep the position instead of rescanning them on every run
+        boolean watermark = !cfg.isQueueCleanup();
+        boolean watermarkFrozen = false;
+
+        Cursor cursor = dao.getCursor(EXPIRED_CURSOR);
+        backlog = dao.countExpired(cursor, cutoff, MAX_BACKLOG_COUNT);
+
+        int processes = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Cursor> batch = dao.nextExpired(cursor, cutoff, batchSize);
+            if (batch.isEmpty()) {
+                if (!watermark) {
+                    // start from the beginning next time
+                    dao.saveCursor(EXPIRED_CURSOR, null);
+                }
+                break;
+            }
+
+            for (List<Target> group : targets) {
+                int[] counts = dao.deleteExpired(group, batch, cutoff);
+                for (int i = 0; i < group.size(); i++) {
+                    stats.add(group.get(i), counts[i]);
+                }
+            }
+
+            Cursor last = batch.get(batch.size() - 1);
+            if (!watermark) {
+                dao.saveCursor(EXPIRED_CURSOR, last);
+            } else if (!watermarkFrozen) {
+                if (dao.hasNotExpired(cursor, last, cutoff)) {
+                    // keep the watermark before the process, continue the walk
+                    watermarkFrozen = true;
+                } else {
+                    dao.saveCursor(EXPIRED_CURSOR, last);
+                }
+            }
+            cursor = last;
+
+            processes += batch.size();
+            backlog = Math.max(0, backlog - batch.size());
+        }
+
+        return processes;
+    }
+
+    private void deleteOrphans(Stats stats) {
+        int batchSize = cfg.getIncrementalCleanupBatchSize();
+        int batchesPerRun = cfg.getIncrementalCleanupOrphanBatchesPerRun();
+
+        for (Target t : orphanTargets(cfg)) {
+            String cursorName = ORPHANS_CURSOR_PREFIX + t.table().getName();
+
+            Cursor cursor = dao.getCursor(cursorName);
+            for (int i = 0; i < batchesPerRun && !Thread.currentThread().isInterrupted(); i++) {
+                List<UUID> ids = dao.nextInstanceIds(t, cursor, batchSize);
+                if (ids.isEmpty()) {
+                    cursor = null;
+                    dao.saveCursor(cursorName, null);
+                    break;
+                }
+
+                stats.add(t, dao.deleteOrphans(t, ids));
+
+                cursor = new Cursor(null, ids.get(ids.size() - 1));
+                dao.saveCursor(cursorName, cursor);
+            }
+        }
+    }
+
+    /**
+     * Tables to clean up for each expired process, grouped by transaction.
+     * The state tables must be the first, PROCESS_QUEUE must be the last.
+     */
+    static List<List<Target>> expiredTargets(ProcessConfiguration cfg) {
+        List<List<Target>> result = new ArrayList<>();
+        if (cfg.isStateCleanup()) {
+            result.add(List.of(
+                    new Target(PROCESS_STATE, PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT),
+                    new Target(PROCESS_INITIAL_STATE, PROCESS_INITIAL_STATE.INSTANCE_ID, PROCESS_INITIAL_STATE.INSTANCE_CREATED_AT)));
+        }
+        if (cfg.isEventsCleanup()) {
+            result.add(List.of(new Target(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID, PROCESS_EVENTS.INSTANCE_CREATED_AT)));
+        }
+        if (cfg.isLogsCleanup()) {
+            result.add(List.of(new Target(PROCESS_LOG_DATA, PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT)));
+            result.add(List.of(new Target(PROCESS_LOG_SEGMENTS, PROCESS_LOG_SEGMENTS.INSTANCE_ID, PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT)));
+            result.add(List.of(new Target(PROCESS_LOG_COMPACTIONS, PROCESS_LOG_COMPACTIONS.INSTANCE_ID, PROCESS_LOG_COMPACTIONS.INSTANCE_CREATED_AT)));
+        }
+        if (cfg.isCheckpointCleanup()) {
+            result.add(List.of(new Target(PROCESS_CHECKPOINTS, PROCESS_CHECKPOINTS.INSTANCE_ID, PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT)));
+        }
+        if (cfg.isQueueCleanup()) {
+            result.add(List.of(new Target(PROCESS_WAIT_CONDITIONS, PROCESS_WAIT_CONDITIONS.INSTANCE_ID, PROCESS_WAIT_CONDITIONS.INSTANCE_CREATED_AT)));
+            result.add(List.of(new Target(PROCESS_QUEUE, PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)));
+        }
+        return result;
+    }
+
+    private static List<Target> orphanTargets(ProcessConfiguration cfg) {
+        List<Target> result = new ArrayList<>();
+        if (cfg.isStateCleanup()) {
+            result.add(new Target(PROCESS_STATE, PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT));
+        }
+        if (cfg.isEventsCleanup()) {
+            result.add(new Target(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID, PROCESS_EVENTS.INSTANCE_CREATED_AT));
+        }
+        if (cfg.isCheckpointCleanup()) {
+            result.add(new Target(PROCESS_CHECKPOINTS, PROCESS_CHECKPOINTS.INSTANCE_ID, PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT));
+        }
+        if (cfg.isLogsCleanup()) {
+            result.add(new Target(PROCESS_LOG_DATA, PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT));
+            result.add(new Target(PROCESS_LOG_SEGMENTS, PROCESS_LOG_SEGMENTS.INSTANCE_ID, PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT));
+            result.add(new Target(PROCESS_LOG_COMPACTIONS, PROCESS_LOG_COMPACTIONS.INSTANCE_ID, PROCESS_LOG_COMPACTIONS.INSTANCE_CREATED_AT));
+        }
+        return result;
+    }
+
+    record Target(Table<?> table, Field<UUID> instanceId, Field<OffsetDateTime> createdAt) {
+    }
+
+    /**
+     * Position of the cleaner. {@code createdAt} is used only for PROCESS_QUEUE.
+     */
+    record Cursor(OffsetDateTime createdAt, UUID instanceId) {
+    }
+
+    private class Stats {
+
+        private final RateLimiter rateLimiter;
+        private final Map<String, Integer> rows = new LinkedHashMap<>();
+
+        private Stats(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+        }
+
+        void add(Target t, int count) {
+            rows.merge(t.table().getName(), count, Integer::sum);
+
+            if (count <= 0) {
+                return;
+            }
+
+            deletedRows.mark(count);
+
+            if (rateLimiter != null) {
+                rateLimiter.acquire(count);
+            }
+        }
+    }
+
+    static class CleanerDao extends AbstractDao {
+
+        CleanerDao(Configuration cfg) {
+            super(cfg);
+        }
+
+        Cursor getCursor(String name) {
+            return dsl().select(PROCESS_CLEANER_CURSORS.LAST_CREATED_AT, PROCESS_CLEANER_CURSORS.LAST_INSTANCE_ID)
+                    .from(PROCESS_CLEANER_CURSORS)
+                    .where(PROCESS_CLEANER_CURSORS.CURSOR_NAME.eq(name)
+                            .and(PROCESS_CLEANER_CURSORS.LAST_INSTANCE_ID.isNotNull()))
+                    .fetchOne(r -> new Cursor(r.value1(), r.value2()));
+        }
+
+        void saveCursor(String name, Cursor cursor) {
+            OffsetDateTime createdAt = cursor != null ? cursor.createdAt() : null;
+            UUID instanceId = cursor != null ? cursor.instanceId() : null;
+
+            tx(tx -> tx.insertInto(PROCESS_CLEANER_CURSORS)
+                    .columns(PROCESS_CLEANER_CURSORS.CURSOR_NAME, PROCESS_CLEANER_CURSORS.LAST_CREATED_AT, PROCESS_CLEANER_CURSORS.LAST_INSTANCE_ID)
+                    .values(name, createdAt, instanceId)
+                    .onConflict(PROCESS_CLEANER_CURSORS.CURSOR_NAME)
+                    .doUpdate()
+                    .set(PROCESS_CLEANER_CURSORS.LAST_CREATED_AT, createdAt)
+                    .set(PROCESS_CLEANER_CURSORS.LAST_INSTANCE_ID, instanceId)
+                    .set(PROCESS_CLEANER_CURSORS.UPDATED_AT, currentOffsetDateTime())
+                    .execute());
+        }
+
+        long countExpired(Cursor cursor, Field<OffsetDateTime> cutoff, int limit) {
+            Table<?> expired = selectOne()
+                    .from(PROCESS_QUEUE)
+                    .where(expired(cutoff).and(after(cursor)))
+                    .limit(limit)
+                    .asTable("expired");
+
+            return dsl().selectCount().from(expired).fetchOne(0, long.class);
+        }
+
+        List<Cursor> nextExpired(Cursor cursor, Field<OffsetDateTime> cutoff, int limit) {
+            return dsl().select(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID)
+                    .from(PROCESS_QUEUE)
+                    .where(expired(cutoff).and(after(cursor)))
+                    .orderBy(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID)
+                    .limit(limit)
+                    .fetch(r -> new Cursor(r.value1(), r.value2()));
+        }
+
+        /**
+         * @return {@code true} if there are processes created in the
+         * ({@code from}, {@code to}] range that aren't expired.
+         */
+        boolean hasNotExpired(Cursor from, Cursor to, Field<OffsetDateTime> cutoff) {
+            return dsl().fetchExists(selectOne()
+                    .from(PROCESS_QUEUE)
+                    .where(after(from)
+                            .and(row(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID).le(to.createdAt(), to.instanceId()))
+                            .and(not(expired(cutoff)))));
+        }
+
+        /**
+         * Removes the data of the specified processes from the specified
+         * tables in a single transaction. The processes are checked again and
+         * locked, in case they are updated concurrently or were updated after
+         * {@link #nextExpired}. The batch is ordered by CREATED_AT, the range
+         * condition allows partition pruning on the partitioned tables.
+         *
+         * @return number of deleted rows for each table
+         */
+        int[] deleteExpired(List<Target> targets, List<Cursor> batch, Field<OffsetDateTime> cutoff) {
+            List<Row2<UUID, OffsetDateTime>> keys = new ArrayList<>(batch.size());
+            for (Cursor c : batch) {
+                keys.add(row(c.instanceId(), c.createdAt()));
+            }
+
+            OffsetDateTime first = batch.get(0).createdAt();
+            OffsetDateTime last = batch.get(batch.size() - 1).createdAt();
+
+            return txResult(tx -> {
+                int[] result = new int[targets.size()];
+
+                List<Row2<UUID, OffsetDateTime>> expiredKeys = tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.CREATED_AT.between(first, last)
+                                .and(row(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT).in(keys))
+                                .and(expired(cutoff)))
+                        .forUpdate()
+                        .fetch(r -> row(r.value1(), r.value2()));
+
+                if (expiredKeys.isEmpty()) {
+                    return result;
+                }
+
+                for (int i = 0; i < targets.size(); i++) {
+                    Target t = targets.get(i);
+                    result[i] = tx.deleteFrom(t.table())
+                            .where(t.createdAt().between(first, last)
+                                    .and(row(t.instanceId(), t.createdAt()).in(expiredKeys)))
+                            .execute();
+                }
+
+                return result;
+            });
+        }
+
+        List<UUID> nextInstanceIds(Target t, Cursor cursor, int limit) {
+            Condition c = cursor != null ? t.instanceId().gt(cursor.instanceId()) : noCondition();
+            return dsl().selectDistinct(t.instanceId())
+                    .from(t.table())
+                    .where(c)
+                    .orderBy(t.instanceId())
+                    .limit(limit)
+                    .fetch(t.instanceId());
+        }
+
+        int deleteOrphans(Target t, List<UUID> ids) {
+            return txResult(tx -> tx.deleteFrom(t.table())
+                    .where(t.instanceId().in(ids)
+                            .andNotExists(selectOne()
+                                    .from(PROCESS_QUEUE)
+                                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(t.instanceId()))))
+                    .execute());
+        }
+
+        private static Condition expired(Field<OffsetDateTime> cutoff) {
+            // CREATED_AT is always less or equal LAST_UPDATED_AT, the first condition allows
+            // the use of the CREATED_AT index
+            return PROCESS_QUEUE.CREATED_AT.lessThan(cutoff)
+                    .and(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff))
+                    .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(ProcessCleaner.EXCLUDE_STATUSES));
+        }
+
+        private static Condition after(Cursor cursor) {
+            if (cursor == null) {
+                return noCondition();
+            }
+
+            return row(PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.INSTANCE_ID).gt(cursor.createdAt(), cursor.instanceId());
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.codahale.metrics.MetricRegistry;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.db.PgUtils;
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.*;
@@ -39,12 +41,15 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROC
 import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_EVENTS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static org.jooq.impl.DSL.noCondition;
+import static org.jooq.impl.DSL.row;
+import static org.jooq.impl.DSL.selectOne;
 
 public class ProcessCleaner implements ScheduledTask {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessCleaner.class);
 
-    private static final String[] EXCLUDE_STATUSES = {
+    static final String[] EXCLUDE_STATUSES = {
             ProcessStatus.STARTING.toString(),
             ProcessStatus.RUNNING.toString(),
             ProcessStatus.RESUMING.toString()
@@ -52,11 +57,13 @@ public class ProcessCleaner implements ScheduledTask {
 
     private final ProcessConfiguration cfg;
     private final CleanerDao cleanerDao;
+    private final IncrementalProcessCleaner incrementalCleaner;
 
     @Inject
-    public ProcessCleaner(ProcessConfiguration cfg, @MainDB Configuration dbCfg) {
+    public ProcessCleaner(ProcessConfiguration cfg, @MainDB Configuration dbCfg, MetricRegistry metricRegistry) {
         this.cfg = cfg;
         this.cleanerDao = new CleanerDao(dbCfg);
+        this.incrementalCleaner = new IncrementalProcessCleaner(cfg, dbCfg, metricRegistry);
     }
 
     @Override
@@ -71,13 +78,24 @@ public class ProcessCleaner implements ScheduledTask {
 
     @Override
     public void performTask() {
-        cleanerDao.deleteOldState(cfg);
-        cleanerDao.deleteOrphans(cfg);
+        if (cfg.isIncrementalCleanupEnabled()) {
+            incrementalCleaner.run();
+        } else {
+            cleanerDao.deleteOldState(cfg);
+            cleanerDao.deleteOrphans(cfg);
+        }
+        cleanerDao.deleteUnusedBlobs(cfg);
     }
 
-    private static class CleanerDao extends AbstractDao {
+    static class CleanerDao extends AbstractDao {
+
+        /**
+         * Max number of state blobs removed in a single transaction.
+         * The blobs can be large, the batches are kept small.
+         */
+        private static final int BLOB_BATCH_SIZE = 100;
 
-        private CleanerDao(@MainDB Configuration cfg) {
+        CleanerDao(@MainDB Configuration cfg) {
             super(cfg);
         }
 
@@ -87,7 +105,8 @@ public class ProcessCleaner implements ScheduledTask {
             Field<OffsetDateTime> cutoff = PgUtils.nowMinus(jobCfg.getMaxStateAge());
 
             tx(tx -> {
-                SelectConditionStep<Record1<UUID>> ids = tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                // (INSTANCE_ID, CREATED_AT) pairs, the process data tables can be partitioned by INSTANCE_CREATED_AT
+                SelectConditionStep<Record2<UUID, OffsetDateTime>> ids = tx.select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)
                         .from(PROCESS_QUEUE)
                         .where(PROCESS_QUEUE.LAST_UPDATED_AT.lessThan(cutoff)
                                 .and(PROCESS_QUEUE.CURRENT_STATUS.notIn(EXCLUDE_STATUSES)));
@@ -96,18 +115,18 @@ public class ProcessCleaner implements ScheduledTask {
                 int initialStateRecords = 0;
                 if (jobCfg.isStateCleanup()) {
                     stateRecords = tx.deleteFrom(PROCESS_STATE)
-                            .where(PROCESS_STATE.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT).in(ids))
                             .execute();
 
                     initialStateRecords = tx.deleteFrom(PROCESS_INITIAL_STATE)
-                            .where(PROCESS_INITIAL_STATE.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_INITIAL_STATE.INSTANCE_ID, PROCESS_INITIAL_STATE.INSTANCE_CREATED_AT).in(ids))
                             .execute();
                 }
 
                 int events = 0;
                 if (jobCfg.isEventsCleanup()) {
                     events = tx.deleteFrom(PROCESS_EVENTS)
-                            .where(PROCESS_EVENTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_EVENTS.INSTANCE_ID, PROCESS_EVENTS.INSTANCE_CREATED_AT).in(ids))
                             .execute();
                 }
 
@@ -115,29 +134,33 @@ public class ProcessCleaner implements ScheduledTask {
                 int logSegmentEntries = 0;
                 if (jobCfg.isLogsCleanup()) {
                     logDataEntries = tx.deleteFrom(PROCESS_LOG_DATA)
-                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT).in(ids))
                             .execute();
 
                     logSegmentEntries = tx.deleteFrom(PROCESS_LOG_SEGMENTS)
-                            .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_LOG_SEGMENTS.INSTANCE_ID, PROCESS_LOG_SEGMENTS.INSTANCE_CREATED_AT).in(ids))
+                            .execute();
+
+                    tx.deleteFrom(PROCESS_LOG_COMPACTIONS)
+                            .where(row(PROCESS_LOG_COMPACTIONS.INSTANCE_ID, PROCESS_LOG_COMPACTIONS.INSTANCE_CREATED_AT).in(ids))
                             .execute();
                 }
 
                 int checkpoints = 0;
                 if (jobCfg.isCheckpointCleanup()) {
                     checkpoints = tx.deleteFrom(PROCESS_CHECKPOINTS)
-                            .where(PROCESS_CHECKPOINTS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_CHECKPOINTS.INSTANCE_ID, PROCESS_CHECKPOINTS.INSTANCE_CREATED_AT).in(ids))
                             .execute();
                 }
 
                 int queueEntries = 0;
                 if (jobCfg.isQueueCleanup()) {
                     tx.deleteFrom(PROCESS_WAIT_CONDITIONS)
-                            .where(PROCESS_WAIT_CONDITIONS.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_WAIT_CONDITIONS.INSTANCE_ID, PROCESS_WAIT_CONDITIONS.INSTANCE_CREATED_AT).in(ids))
                             .execute();
 
                     queueEntries = tx.deleteFrom(PROCESS_QUEUE)
-                            .where(PROCESS_QUEUE.INSTANCE_ID.in(ids))
+                            .where(row(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT).in(ids))
                             .execute();
                 }
 
@@ -186,6 +209,10 @@ public class ProcessCleaner implements ScheduledTask {
                     logSegmentEntries = tx.deleteFrom(PROCESS_LOG_SEGMENTS)
                             .where(PROCESS_LOG_SEGMENTS.INSTANCE_ID.notIn(alive))
                             .execute();
+
+                    tx.deleteFrom(PROCESS_LOG_COMPACTIONS)
+                            .where(PROCESS_LOG_COMPACTIONS.INSTANCE_ID.notIn(alive))
+                            .execute();
                 }
 
                 log.info("deleteOrphans -> removed orphan data: {} log data entries, {} log segments, {} state item(s), {} event(s), {} checkpoint(s)",
@@ -195,5 +222,63 @@ public class ProcessCleaner implements ScheduledTask {
             long t2 = System.currentTimeMillis();
             log.info("deleteOrphans -> took {}ms", (t2 - t1));
         }
+
+        /**
+         * Removes the state blobs that are no longer referenced by any process.
+         * The grace period protects the blobs whose new references are not committed yet.
+         * <p>
+         * The blobs are walked in the BLOB_HASH order and removed in small
+         * batches, each batch in a separate transaction.
+         */
+        void deleteUnusedBlobs(ProcessConfiguration jobCfg) {
+            if (!jobCfg.isStateCleanup()) {
+                return;
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            Field<OffsetDateTime> cutoff = PgUtils.nowMinus(jobCfg.getStateDedupGracePeriod());
+
+            int blobs = 0;
+            String last = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                Condition c = last != null ? PROCESS_STATE_BLOBS.BLOB_HASH.gt(last) : noCondition();
+                List<String> hashes = dsl().select(PROCESS_STATE_BLOBS.BLOB_HASH)
+                        .from(PROCESS_STATE_BLOBS)
+                        .where(c.and(unusedBlob(cutoff)))
+                        .orderBy(PROCESS_STATE_BLOBS.BLOB_HASH)
+                        .limit(BLOB_BATCH_SIZE)
+                        .fetch(PROCESS_STATE_BLOBS.BLOB_HASH);
+
+                if (hashes.isEmpty()) {
+                    break;
+                }
+
+                // check again, the blobs could be reused after the select
+                blobs += txResult(tx -> tx.deleteFrom(PROCESS_STATE_BLOBS)
+                        .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(hashes)
+                                .and(unusedBlob(cutoff)))
+                        .execute());
+
+                if (hashes.size() < BLOB_BATCH_SIZE) {
+                    break;
+                }
+
+                last = hashes.get(hashes.size() - 1);
+            }
+
+            long t2 = System.currentTimeMillis();
+            log.info("deleteUnusedBlobs -> removed {} state blob(s), took {}ms", blobs, (t2 - t1));
+        }
+
+        private static Condition unusedBlob(Field<OffsetDateTime> cutoff) {
+            return PROCESS_STATE_BLOBS.LAST_USED_AT.lessThan(cutoff)
+                    .andNotExists(selectOne()
+                            .from(PROCESS_STATE)
+                            .where(PROCESS_STATE.BLOB_HASH.eq(PROCESS_STATE_BLOBS.BLOB_HASH)))
+                    .andNotExists(selectOne()
+                            .from(PROCESS_INITIAL_STATE)
+                            .where(PROCESS_INITIAL_STATE.BLOB_HASH.eq(PROCESS_STATE_BLOBS.BLOB_HASH)));
+        }
     }
 }
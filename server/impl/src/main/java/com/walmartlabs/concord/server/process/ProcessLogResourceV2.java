@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process;
  * =====
  */
 
+import com.google.common.io.ByteStreams;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.server.HttpUtils;
 import com.walmartlabs.concord.server.OperationResult;
@@ -40,6 +41,8 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -47,9 +50,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
-import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ChunkConsumer;
 
 /**
  * API to work with segmented process logs.
@@ -58,6 +61,8 @@ import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.Process
 @Tag(name = "ProcessLogV2")
 public class ProcessLogResourceV2 implements Resource {
 
+    private static final String GZIP_ENCODING = "gzip";
+
     private final ProcessManager processManager;
     private final ProcessLogManager logManager;
     private final ProcessLogAccessManager logAccessManager;
@@ -147,8 +152,9 @@ public class ProcessLogResourceV2 implements Resource {
 
         ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
-        ProcessLog l = logManager.segmentData(processKey, segmentId, range.start(), range.end());
-        return toResponse(instanceId, segmentId, l, range);
+        int size = logManager.segmentSize(processKey, segmentId);
+        return toResponse(instanceId, segmentId, size, range,
+                (start, end, consumer) -> logManager.streamSegmentData(processKey, segmentId, start, end, consumer));
     }
 
     /**
@@ -166,15 +172,30 @@ public class ProcessLogResourceV2 implements Resource {
     )
     public void append(@PathParam("id") UUID instanceId,
                        @PathParam("segmentId") long segmentId,
-                       InputStream data) {
+                       InputStream data,
+                       @Context HttpHeaders headers) {
 
         ProcessKey processKey = logAccessManager.assertLogAccess(instanceId);
 
+        int logSizeLimit = processCfg.getLogSizeLimit();
         try {
+            // agents can send compressed data, see Agent's logShipping.compress
+            boolean compressed = GZIP_ENCODING.equalsIgnoreCase(headers.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            if (compressed) {
+                // one extra byte to detect bodies over the limit
+                data = ByteStreams.limit(new GZIPInputStream(data), logSizeLimit + 1L);
+            }
+
             byte[] ab = IOUtils.toByteArray(data);
-            int upper = logManager.log(processKey, segmentId, ab);
+            if (compressed && ab.length > logSizeLimit) {
+                logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
+                processManager.kill(processKey);
+                throw new ConcordApplicationException("The uncompressed log data exceeds the maximum log size of " + logSizeLimit + " bytes",
+                        Response.Status.REQUEST_ENTITY_TOO_LARGE);
+            }
+
+            int upper = logManager.append(processKey, segmentId, ab);
 
-            int logSizeLimit = processCfg.getLogSizeLimit();
             if (upper >= logSizeLimit) {
                 logManager.error(processKey, "Maximum log size reached: {}. Process cancelled.", logSizeLimit);
                 processManager.kill(processKey);
@@ -184,27 +205,35 @@ public class ProcessLogResourceV2 implements Resource {
         }
     }
 
-    public static Response toResponse(UUID instanceId, long segmentId, ProcessLog l, HttpUtils.Range range) {
-        List<ProcessLogChunk> data = l.getChunks();
-        if (data.isEmpty()) {
+    /**
+     * Streams the requested range of a log. Only the requested bytes are read
+     * from the DB, see {@link ProcessLogManager#streamSegmentData(ProcessKey, long, int, int, ChunkConsumer)}.
+     */
+    public static Response toResponse(UUID instanceId, long segmentId, int size, HttpUtils.Range range, RangeReader reader) {
+        int start;
+        int end;
+        if (range.start() != null) {
+            // [start, end)
+            start = range.start();
+            end = range.end() != null ? Math.min(range.end(), size) : size;
+        } else if (range.end() != null) {
+            // last N bytes
+            start = Math.max(size - range.end(), 0);
+            end = size;
+        } else {
+            // entire file
+            start = 0;
+            end = size;
+        }
+
+        if (start >= end) {
             int actualStart = range.start() != null ? range.start() : 0;
             int actualEnd = range.end() != null ? range.end() : actualStart;
-            return downloadableFile(instanceId, segmentId, null, actualStart, actualEnd, l.getSize());
+            return downloadableFile(instanceId, segmentId, null, actualStart, actualEnd, size);
         }
 
-        ProcessLogChunk firstChunk = data.get(0);
-        int actualStart = firstChunk.getStart();
-
-        ProcessLogChunk lastChunk = data.get(data.size() - 1);
-        int actualEnd = lastChunk.getStart() + lastChunk.getData().length;
-
-        StreamingOutput out = output -> {
-            for (ProcessLogChunk e : data) {
-                output.write(e.getData());
-            }
-        };
-
-        return downloadableFile(instanceId, segmentId, out, actualStart, actualEnd, l.getSize());
+        StreamingOutput out = output -> reader.read(start, end, output::write);
+        return downloadableFile(instanceId, segmentId, out, start, end, size);
     }
 
     private static Response downloadableFile(UUID instanceId, long segmentId, StreamingOutput out, int start, int end, int size) {
@@ -214,4 +243,9 @@ public class ProcessLogResourceV2 implements Resource {
                 .header("Content-Disposition", "attachment; filename=\"" + instanceId + "_" + segmentId + ".log\"")
                 .build();
     }
+
+    public interface RangeReader {
+
+        void read(int start, int end, ChunkConsumer consumer) throws IOException;
+    }
 }
@@ -35,15 +35,20 @@ import com.walmartlabs.concord.server.process.locks.ProcessLocksDao;
 import com.walmartlabs.concord.server.process.locks.ProcessLocksResource;
 import com.walmartlabs.concord.server.process.locks.ProcessLocksWatchdog;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogBuffer;
+import com.walmartlabs.concord.server.process.logs.ProcessLogCompactor;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.process.pipelines.processors.ExclusiveGroupProcessor;
 import com.walmartlabs.concord.server.process.pipelines.processors.policy.*;
 import com.walmartlabs.concord.server.process.queue.EnqueuedTaskProvider;
 import com.walmartlabs.concord.server.process.queue.ExternalProcessListenerHandler;
+import com.walmartlabs.concord.server.process.queue.ProcessHeartbeatBuffer;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueWatchdog;
 import com.walmartlabs.concord.server.process.queue.ProcessStatusListener;
 import com.walmartlabs.concord.server.process.queue.dispatcher.ConcurrentProcessFilter;
 import com.walmartlabs.concord.server.process.queue.dispatcher.Dispatcher;
+import com.walmartlabs.concord.server.process.queue.dispatcher.DispatcherSignal;
+import com.walmartlabs.concord.server.process.queue.dispatcher.EnqueuedProcessIndex;
 import com.walmartlabs.concord.server.process.queue.dispatcher.ExclusiveProcessFilter;
 import com.walmartlabs.concord.server.process.queue.dispatcher.Filter;
 import com.walmartlabs.concord.server.process.state.ProcessCheckpointDao;
@@ -74,11 +79,14 @@ public class ProcessModule implements Module {
         binder.bind(ProcessCheckpointDao.class).in(SINGLETON);
         binder.bind(ProcessCheckpointManager.class).in(SINGLETON);
         binder.bind(ProcessStateManager.class).in(SINGLETON);
+        newSetBinder(binder, BackgroundTask.class).addBinding().to(ProcessStateManager.class);
         binder.bind(ProcessWaitManager.class).in(SINGLETON);
 
         binder.bind(ProjectLoaderConfiguration.class).toProvider(ProjectLoaderConfigurationProvider.class);
 
         bindSingletonScheduledTask(binder, ProcessCleaner.class);
+        bindSingletonScheduledTask(binder, ProcessLogCompactor.class);
+        bindSingletonScheduledTask(binder, ProcessPartitionManager.class);
         bindSingletonScheduledTask(binder, ProcessLocksWatchdog.class);
         bindSingletonScheduledTask(binder, ProcessQueueWatchdog.class);
         bindSingletonScheduledTask(binder, ProcessWaitWatchdog.class);
@@ -87,10 +95,18 @@ public class ProcessModule implements Module {
         newSetBinder(binder, BackgroundTask.class).addBinding().to(Dispatcher.class);
         newSetBinder(binder, BackgroundTask.class).addBinding().toProvider(EnqueuedTaskProvider.class).in(SINGLETON);
 
+        binder.bind(ProcessLogBuffer.class).in(SINGLETON);
+        newSetBinder(binder, BackgroundTask.class).addBinding().to(ProcessLogBuffer.class);
+
+        binder.bind(ProcessHeartbeatBuffer.class).in(SINGLETON);
+        newSetBinder(binder, BackgroundTask.class).addBinding().to(ProcessHeartbeatBuffer.class);
+
         newSetBinder(binder, ProcessStatusListener.class).addBinding().to(WaitProcessStatusListener.class);
         newSetBinder(binder, ProcessStatusListener.class).addBinding().to(ExternalProcessListenerHandler.class);
         newSetBinder(binder, ProcessStatusListener.class).addBinding().to(WaitConditionUpdater.class);
         newSetBinder(binder, ProcessStatusListener.class).addBinding().to(TotalRuntimeCalculator.class);
+        newSetBinder(binder, ProcessStatusListener.class).addBinding().to(EnqueuedProcessIndex.class);
+        newSetBinder(binder, ProcessStatusListener.class).addBinding().to(DispatcherSignal.class);
 
         newSetBinder(binder, Filter.class).addBinding().to(ConcurrentProcessFilter.class);
         newSetBinder(binder, Filter.class).addBinding().to(ExclusiveProcessFilter.class);
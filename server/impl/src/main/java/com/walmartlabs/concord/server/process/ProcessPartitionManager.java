@@ -0,0 +1,262 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.ScheduledTask;
+import org.jooq.Condition;
+import org.jooq.Configuration;
+import org.jooq.exception.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_QUEUE;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Maintains the daily partitions of the process data tables partitioned by
+ * INSTANCE_CREATED_AT (see the "processDataPartitioning" DB migration parameter).
+ * Creates partitions in advance and removes the expired ones, which is much
+ * cheaper than deleting the rows.
+ * <p>
+ * A partition is removed only when it is older than {@code process.maxStateAge}
+ * and none of the processes created in the partition's range are running or
+ * were updated recently. Partitions of a table are never removed if the
+ * table's cleanup is disabled ({@code process.stateCleanup},
+ * {@code process.eventsCleanup} or {@code process.logsCleanup}).
+ * <p>
+ * If the default partition already contains rows in the range of a new
+ * partition (e.g. the task didn't run for a while), the rows are moved into
+ * the new partition.
+ */
+public class ProcessPartitionManager implements ScheduledTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessPartitionManager.class);
+
+    private static final List<String> TABLES = List.of("process_state", "process_events", "process_log_data");
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final ProcessConfiguration cfg;
+    private final PartitionDao dao;
+
+    @Inject
+    public ProcessPartitionManager(ProcessConfiguration cfg, @MainDB Configuration dbCfg) {
+        this.cfg = cfg;
+        this.dao = new PartitionDao(dbCfg);
+    }
+
+    @Override
+    public String getId() {
+        return "process-partition-manager";
+    }
+
+    @Override
+    public long getIntervalInSec() {
+        return cfg.getPartitioningInterval().getSeconds();
+    }
+
+    @Override
+    public void performTask() {
+        for (String table : TABLES) {
+            if (!dao.isManaged(table)) {
+                continue;
+            }
+
+            List<Partition> partitions = dao.listPartitions(table);
+            createPartitions(table, partitions);
+            if (isCleanupEnabled(table)) {
+                removeExpired(table, partitions);
+            }
+        }
+    }
+
+    private boolean isCleanupEnabled(String table) {
+        return switch (table) {
+            case "process_state" -> cfg.isStateCleanup();
+            case "process_events" -> cfg.isEventsCleanup();
+            case "process_log_data" -> cfg.isLogsCleanup();
+            default -> throw new IllegalArgumentException("Unknown table: " + table);
+        };
+    }
+
+    private void createPartitions(String table, List<Partition> partitions) {
+        OffsetDateTime last = partitions.stream()
+                .map(Partition::upperBound)
+                .filter(Objects::nonNull)
+                .max(OffsetDateTime::compareTo)
+                .orElse(null);
+
+        OffsetDateTime today = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+        OffsetDateTime end = today.plusDays(cfg.getPartitioningPrecreateDays() + 1);
+
+        OffsetDateTime from = last != null ? last : today;
+        while (from.isBefore(end)) {
+            OffsetDateTime to = from.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            String name = table + "_p" + PARTITION_SUFFIX.format(from);
+
+            try {
+                if (dao.hasDefaultRows(table, from, to)) {
+                    int rows = dao.createPartitionFromDefault(table, name, from, to);
+                    log.warn("createPartitions -> created {} [{}, {}), moved {} row(s) from the default partition", name, from, to, rows);
+                } else {
+                    dao.createPartition(table, name, from, to);
+                    log.info("createPartitions -> created {} [{}, {})", name, from, to);
+                }
+            } catch (DataAccessException e) {
+                // the data goes into the default partition until the partition is created,
+                // the next run starts from the same range
+                log.error("createPartitions -> can't create {} [{}, {}): {}", name, from, to, e.getMessage());
+                return;
+            }
+
+            from = to;
+        }
+    }
+
+    private void removeExpired(String table, List<Partition> partitions) {
+        Pattern managed = Pattern.compile(Pattern.quote(table) + "_(p\\d{8}|legacy)");
+        OffsetDateTime cutoff = OffsetDateTime.now(ZoneOffset.UTC).minus(cfg.getMaxStateAge());
+
+        for (Partition p : partitions) {
+            if (p.upperBound() == null || p.upperBound().isAfter(cutoff) || !managed.matcher(p.name()).matches()) {
+                continue;
+            }
+
+            if (dao.hasActiveProcesses(p, cutoff)) {
+                log.info("removeExpired -> {} has active processes, skipping", p.name());
+                continue;
+            }
+
+            boolean drop = cfg.isPartitioningDropExpired();
+            dao.removePartition(table, p.name(), drop);
+            log.info("removeExpired -> {} {}", drop ? "dropped" : "detached", p.name());
+        }
+    }
+
+    /**
+     * @param lowerBound inclusive, {@code null} if MINVALUE
+     * @param upperBound exclusive, {@code null} for the default partition
+     */
+    record Partition(String name, OffsetDateTime lowerBound, OffsetDateTime upperBound) {
+    }
+
+    private static class PartitionDao extends AbstractDao {
+
+        private PartitionDao(Configuration cfg) {
+            super(cfg);
+        }
+
+        /**
+         * Only the tables partitioned by the DB migration (i.e. with the
+         * "_default" partition) are managed. Tables partitioned by other
+         * means are left as is.
+         */
+        boolean isManaged(String table) {
+            return dsl().fetchExists(selectOne()
+                    .from(table("pg_inherits"))
+                    .where(field("inhparent").eq(field("to_regclass({0})", Object.class, inline(table)))
+                            .and(field("inhrelid").eq(field("to_regclass({0})", Object.class, inline(table + "_default"))))));
+        }
+
+        List<Partition> listPartitions(String table) {
+            return dsl().resultQuery("select c.relname, " +
+                                    "substring(pg_get_expr(c.relpartbound, c.oid) from 'FROM \\(''([^'']*)''\\)')::timestamptz, " +
+                                    "substring(pg_get_expr(c.relpartbound, c.oid) from 'TO \\(''([^'']*)''\\)')::timestamptz " +
+                                    "from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                                    "where i.inhparent = to_regclass({0}) " +
+                                    "order by 3 nulls last",
+                            inline(table))
+                    .fetch(r -> new Partition(r.get(0, String.class), r.get(1, OffsetDateTime.class), r.get(2, OffsetDateTime.class)));
+        }
+
+        void createPartition(String table, String partition, OffsetDateTime from, OffsetDateTime to) {
+            // bounds must be plain literals in PG 11
+            tx(tx -> tx.execute("create table if not exists {0} partition of {1} for values from ({2}) to ({3})",
+                    name(partition), name(table), inline(from.toString()), inline(to.toString())));
+        }
+
+        boolean hasDefaultRows(String table, OffsetDateTime from, OffsetDateTime to) {
+            return dsl().fetchExists(selectOne()
+                    .from(table(name(table + "_default")))
+                    .where(field(name("instance_created_at"), OffsetDateTime.class).greaterOrEqual(from)
+                            .and(field(name("instance_created_at"), OffsetDateTime.class).lessThan(to))));
+        }
+
+        /**
+         * Creates the partition and moves the rows in its range from the
+         * default partition. The default partition is detached while the rows
+         * are moved, the table is locked until the transaction completes.
+         *
+         * @return number of moved rows
+         */
+        int createPartitionFromDefault(String table, String partition, OffsetDateTime from, OffsetDateTime to) {
+            String defaultPartition = table + "_default";
+            return txResult(tx -> {
+                tx.execute("alter table {0} detach partition {1}", name(table), name(defaultPartition));
+                tx.execute("create table {0} partition of {1} for values from ({2}) to ({3})",
+                        name(partition), name(table), inline(from.toString()), inline(to.toString()));
+                int rows = tx.execute("with moved as (delete from {0} where instance_created_at >= {2} and instance_created_at < {3} returning *) " +
+                                "insert into {1} select * from moved",
+                        name(defaultPartition), name(table), inline(from), inline(to));
+                tx.execute("alter table {0} attach partition {1} default", name(table), name(defaultPartition));
+                return rows;
+            });
+        }
+
+        /**
+         * Returns {@code true} if any process created in the partition's range
+         * is running or was updated after the cutoff.
+         */
+        boolean hasActiveProcesses(Partition p, OffsetDateTime cutoff) {
+            Condition createdAt = PROCESS_QUEUE.CREATED_AT.lessThan(p.upperBound());
+            if (p.lowerBound() != null) {
+                createdAt = createdAt.and(PROCESS_QUEUE.CREATED_AT.greaterOrEqual(p.lowerBound()));
+            }
+
+            return dsl().fetchExists(selectOne()
+                    .from(PROCESS_QUEUE)
+                    .where(createdAt
+                            .and(PROCESS_QUEUE.LAST_UPDATED_AT.greaterOrEqual(cutoff)
+                                    .or(PROCESS_QUEUE.CURRENT_STATUS.in(ProcessCleaner.EXCLUDE_STATUSES)))));
+        }
+
+        void removePartition(String table, String partition, boolean drop) {
+            tx(tx -> {
+                tx.execute("alter table {0} detach partition {1}", name(table), name(partition));
+                if (drop) {
+                    tx.execute("drop table {0}", name(partition));
+                }
+            });
+        }
+    }
+}
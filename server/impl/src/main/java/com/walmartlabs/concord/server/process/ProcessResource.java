@@ -21,6 +21,8 @@ package com.walmartlabs.concord.server.process;
  */
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.walmartlabs.concord.common.ConfigurationUtils;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.imports.Imports;
@@ -46,7 +48,6 @@ import com.walmartlabs.concord.server.process.ProcessEntry.ProcessWaitEntry;
 import com.walmartlabs.concord.server.process.ProcessManager.ProcessResult;
 import com.walmartlabs.concord.server.process.logs.ProcessLogAccessManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
-import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
 import com.walmartlabs.concord.server.process.queue.ProcessFilter;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
@@ -86,9 +87,11 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.Status;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -777,8 +780,9 @@ public class ProcessResource implements Resource {
 
         HttpUtils.Range range = HttpUtils.parseRangeHeaderValue(rangeHeader);
 
-        ProcessLog l = logManager.get(processKey, range.start(), range.end());
-        return ProcessLogResourceV2.toResponse(instanceId, 0, l, range);
+        int size = logManager.size(processKey);
+        return ProcessLogResourceV2.toResponse(instanceId, 0, size, range,
+                (start, end, consumer) -> logManager.streamData(processKey, start, end, consumer));
     }
 
     /**
@@ -802,7 +806,7 @@ public class ProcessResource implements Resource {
 
         try {
             byte[] ab = IOUtils.toByteArray(data);
-            int upper = logManager.log(processKey, ab);
+            int upper = logManager.append(processKey, ab);
 
             // whenever we accept logs from an external source (e.g. from an Agent) we need to check
             // the log size limits
@@ -849,6 +853,79 @@ public class ProcessResource implements Resource {
                 .build();
     }
 
+    /**
+     * Lists the files of the current state snapshot of a process.
+     */
+    @GET
+    @javax.ws.rs.Path("/{id}/state/manifest")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(description = "List the files of a process state snapshot", operationId = "getStateManifest")
+    public ProcessStateManifest getStateManifest(@PathParam("id") UUID instanceId) {
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
+
+        assertProcessAccess(entry, "state");
+
+        return toManifest(listState(processKey, instanceId));
+    }
+
+    /**
+     * Downloads the current state snapshot of a process. Unlike {@link #downloadState(UUID)},
+     * the snapshot's content is always the same for the same state, so an interrupted
+     * download can be resumed using {@link ProcessStateSnapshotRequest#offset()}.
+     * Files with the specified hashes are excluded.
+     */
+    @POST
+    @javax.ws.rs.Path("/{id}/state/snapshot")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    @Operation(description = "Download a process state snapshot, excluding the specified files", operationId = "downloadStateSnapshot")
+    @ApiResponse(responseCode = "200", description = "File content",
+            content = @Content(mediaType = "application/zip",
+                    schema = @Schema(type = "string", format = "binary"))
+    )
+    public Response downloadState(@PathParam("id") UUID instanceId, ProcessStateSnapshotRequest request) {
+        ProcessStateSnapshotRequest req = request != null ? request : ProcessStateSnapshotRequest.builder().build();
+
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = new ProcessKey(entry.instanceId(), entry.createdAt());
+
+        assertProcessAccess(entry, "state");
+
+        if (req.offset() < 0) {
+            throw new ValidationErrorsException("Invalid offset: " + req.offset());
+        }
+
+        if (req.offset() > 0 && req.etag() == null) {
+            throw new ValidationErrorsException("'etag' is required when 'offset' is specified");
+        }
+
+        if (req.etag() != null) {
+            String etag = toManifest(listState(processKey, instanceId)).etag();
+            if (!etag.equals(req.etag())) {
+                throw new ConcordApplicationException("The process state has changed", Status.PRECONDITION_FAILED);
+            }
+        }
+
+        // entries must be the same on each request
+        long entryTime = entry.createdAt().toInstant().toEpochMilli();
+
+        StreamingOutput out = output -> {
+            try (ZipArchiveOutputStream dst = new ZipArchiveOutputStream(new SkippingOutputStream(output, req.offset()))) {
+                stateManager.exportOrdered(processKey, req.excludeHashes(), new ProcessStateManager.FilteringConsumer(zipTo(dst, entryTime), s -> {
+                    if (!isSessionResource(s)) {
+                        return true;
+                    }
+                    return isSessionKeyAccess(instanceId);
+                }));
+            }
+        };
+
+        return Response.ok(out, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + instanceId + ".zip\"")
+                .build();
+    }
+
     /**
      * Downloads a single file from the current state snapshot of a process.
      */
@@ -1074,6 +1151,39 @@ public class ProcessResource implements Resource {
         throw new UnauthorizedException("Resource accessible with session process key only");
     }
 
+    private List<ProcessStateManager.StateItem> listState(ProcessKey processKey, UUID instanceId) {
+        boolean sessionKeyAccess = isSessionKeyAccess(instanceId);
+        return stateManager.list(processKey).stream()
+                .filter(i -> sessionKeyAccess || !isSessionResource(i.path()))
+                .collect(Collectors.toList());
+    }
+
+    private static ProcessStateManifest toManifest(List<ProcessStateManager.StateItem> items) {
+        Hasher etag = Hashing.sha256().newHasher();
+
+        List<ProcessStateManifestItem> result = new ArrayList<>(items.size());
+        for (ProcessStateManager.StateItem i : items) {
+            etag.putString(i.path(), StandardCharsets.UTF_8)
+                    .putInt(i.unixMode())
+                    .putLong(i.size())
+                    .putString(String.valueOf(i.hash()), StandardCharsets.UTF_8)
+                    // the size alone doesn't catch changes in the content of inline items
+                    .putString(String.valueOf(i.digest()), StandardCharsets.UTF_8);
+
+            result.add(ProcessStateManifestItem.builder()
+                    .name(i.path())
+                    .unixMode(i.unixMode())
+                    .size(i.size())
+                    .hash(i.hash())
+                    .build());
+        }
+
+        return ProcessStateManifest.builder()
+                .etag(etag.hash().toString())
+                .items(result)
+                .build();
+    }
+
     private boolean isSessionResource(String resource) {
         return resource.startsWith(path(Constants.Files.JOB_ATTACHMENTS_DIR_NAME, Constants.Files.JOB_SESSION_FILES_DIR_NAME));
     }
@@ -1167,4 +1277,38 @@ public class ProcessResource implements Resource {
         }
         return sb.toString();
     }
+
+    /**
+     * Discards the specified number of bytes, writes the rest as is.
+     */
+    private static final class SkippingOutputStream extends FilterOutputStream {
+
+        private long remaining;
+
+        private SkippingOutputStream(OutputStream out, long skip) {
+            super(out);
+            this.remaining = skip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (remaining > 0) {
+                remaining--;
+                return;
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (remaining >= len) {
+                remaining -= len;
+                return;
+            }
+
+            int skip = (int) remaining;
+            remaining = 0;
+            out.write(b, off + skip, len - skip);
+        }
+    }
 }
@@ -134,7 +134,10 @@ public class ProcessSecurityContext {
 
     public <T> T runAsCurrentUser(ProcessKey processKey, Callable<T> c) throws Exception {
         PrincipalCollection principals = getPrincipals(processKey);
+        return runAs(principals, c);
+    }
 
+    public <T> T runAs(PrincipalCollection principals, Callable<T> c) throws Exception {
         ThreadContext.bind(securityManager);
 
         Subject subject = new Subject.Builder()
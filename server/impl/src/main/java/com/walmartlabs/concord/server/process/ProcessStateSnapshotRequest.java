@@ -0,0 +1,61 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+
+@Value.Immutable
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonSerialize(as = ImmutableProcessStateSnapshotRequest.class)
+@JsonDeserialize(as = ImmutableProcessStateSnapshotRequest.class)
+public interface ProcessStateSnapshotRequest {
+
+    /**
+     * {@link ProcessStateManifest#etag()} of the expected snapshot.
+     * Required when resuming a download.
+     */
+    @Nullable
+    String etag();
+
+    /**
+     * Number of bytes to skip, i.e. the number of bytes received before
+     * the download was interrupted.
+     */
+    @Value.Default
+    default long offset() {
+        return 0;
+    }
+
+    /**
+     * Hashes of the files to exclude from the snapshot, see {@link ProcessStateManifestItem#hash()}.
+     */
+    Set<String> excludeHashes();
+
+    static ImmutableProcessStateSnapshotRequest.Builder builder() {
+        return ImmutableProcessStateSnapshotRequest.builder();
+    }
+}
@@ -104,6 +104,10 @@ public class ProcessEventResource implements Resource {
 
         ProcessKey processKey = assertProcessKey(processInstanceId);
 
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
         List<NewProcessEvent> events = data.stream()
                 .map(req -> NewProcessEvent.builder()
                         .processKey(processKey)
@@ -0,0 +1,347 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogAppend;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.Range;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers process log appends and writes them in batches. Appends of the same
+ * process and segment are coalesced into a single row, all rows of a batch
+ * are inserted with a single statement.
+ * <p>
+ * Callers are blocked until their data is written and receive the same
+ * ranges as with the unbuffered {@link ProcessLogsDao#append(ProcessKey, long, byte[])}.
+ * When the buffer is full or a chunk isn't picked up for writing in time,
+ * the chunk is dropped and the callers receive 503 responses and are expected
+ * to retry. Once a chunk is picked up for writing, the caller waits for
+ * the result, so a retried chunk is never written twice.
+ */
+@Named
+@Singleton
+public class ProcessLogBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogBuffer.class);
+
+    private static final long APPEND_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final ProcessConfiguration cfg;
+    private final ProcessLogsDao logsDao;
+    private final long appendTimeout;
+
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private final Meter appendedChunks;
+    private final Meter appendedBytes;
+    private final Meter rejectedChunks;
+    private final Meter timedOutChunks;
+    private final Histogram batchChunks;
+    private final Histogram batchRows;
+    private final Timer flushTimer;
+
+    private volatile Thread worker;
+
+    @Inject
+    public ProcessLogBuffer(ProcessConfiguration cfg,
+                            ProcessLogsDao logsDao,
+                            MetricRegistry metricRegistry) {
+
+        this(cfg, logsDao, metricRegistry, APPEND_TIMEOUT);
+    }
+
+    ProcessLogBuffer(ProcessConfiguration cfg,
+                     ProcessLogsDao logsDao,
+                     MetricRegistry metricRegistry,
+                     long appendTimeout) {
+
+        this.cfg = cfg;
+        this.logsDao = logsDao;
+        this.appendTimeout = appendTimeout;
+
+        this.appendedChunks = metricRegistry.meter("process-log-buffer-chunks");
+        this.appendedBytes = metricRegistry.meter("process-log-buffer-bytes");
+        this.rejectedChunks = metricRegistry.meter("process-log-buffer-rejected");
+        this.timedOutChunks = metricRegistry.meter("process-log-buffer-timed-out");
+        this.batchChunks = metricRegistry.histogram("process-log-buffer-batch-chunks");
+        this.batchRows = metricRegistry.histogram("process-log-buffer-batch-rows");
+        this.flushTimer = metricRegistry.timer("process-log-buffer-flush-timer");
+
+        metricRegistry.gauge("process-log-buffer-pending-bytes", () -> pendingBytes::get);
+    }
+
+    @Override
+    public void start() {
+        if (!cfg.isLogBatchingEnabled()) {
+            return;
+        }
+
+        Thread t = new Thread(this::run, "process-log-buffer");
+        t.start();
+        this.worker = t;
+    }
+
+    @Override
+    public void stop() {
+        Thread t = this.worker;
+        if (t == null) {
+            return;
+        }
+
+        this.worker = null;
+
+        t.interrupt();
+        try {
+            t.join(appendTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // flush whatever is left, appends received after this point are written directly
+        List<PendingAppend> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        flush(batch);
+    }
+
+    /**
+     * Appends a chunk to the process log. Blocks until the chunk is written.
+     *
+     * @return the new chunk range.
+     * @throws ConcordApplicationException with the 503 status if the buffer is full
+     *                                     or the chunk wasn't picked up for writing in time.
+     */
+    public Range append(ProcessKey processKey, long segmentId, byte[] data) {
+        if (worker == null) {
+            return logsDao.append(processKey, segmentId, data);
+        }
+
+        long size = pendingBytes.addAndGet(data.length);
+        if (size > cfg.getLogBatchingMaxPendingSize() && size != data.length) {
+            pendingBytes.addAndGet(-data.length);
+            rejectedChunks.mark();
+            throw unavailable("The log buffer is full, try again later");
+        }
+
+        PendingAppend p = new PendingAppend(processKey, segmentId, data);
+        queue.add(p);
+
+        if (worker == null) {
+            // the buffer was stopped concurrently, flush the remaining appends ourselves
+            List<PendingAppend> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            flush(batch);
+        }
+
+        try {
+            try {
+                return p.result.get(appendTimeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (p.claimed.compareAndSet(false, true)) {
+                    // not picked up yet, drop the chunk so it won't be written after the client retries it
+                    queue.remove(p);
+                    pendingBytes.addAndGet(-data.length);
+                    timedOutChunks.mark();
+                    throw unavailable("Timeout while appending a log, try again later");
+                }
+            }
+
+            // the chunk is being written, wait for the result
+            return p.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcordApplicationException("Interrupted while appending a log");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new ConcordApplicationException(cause);
+        }
+    }
+
+    private void run() {
+        long window = cfg.getLogBatchingWindow().toNanos();
+        long maxBatchSize = cfg.getLogBatchingMaxBatchSize();
+
+        boolean interrupted = false;
+        while (!interrupted) {
+            List<PendingAppend> batch = new ArrayList<>();
+            try {
+                PendingAppend first = queue.take();
+                batch.add(first);
+
+                long batchSize = first.data.length;
+                long deadline = System.nanoTime() + window;
+                while (batchSize < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+
+                    PendingAppend p = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (p == null) {
+                        break;
+                    }
+
+                    batch.add(p);
+                    batchSize += p.data.length;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+
+            flush(batch);
+        }
+    }
+
+    private void flush(List<PendingAppend> batch) {
+        // skip the chunks dropped by their callers
+        batch.removeIf(p -> !p.claimed.compareAndSet(false, true));
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // coalesce the appends of the same process and segment, keep the order of arrival
+        Map<SegmentKey, List<PendingAppend>> groups = new LinkedHashMap<>();
+        long bytes = 0;
+        for (PendingAppend p : batch) {
+            groups.computeIfAbsent(new SegmentKey(p.processKey, p.segmentId), k -> new ArrayList<>()).add(p);
+            bytes += p.data.length;
+        }
+
+        List<LogAppend> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<SegmentKey, List<PendingAppend>> e : groups.entrySet()) {
+            rows.add(new LogAppend(e.getKey().processKey(), e.getKey().segmentId(), concat(e.getValue())));
+        }
+
+        try (Timer.Context ignored = flushTimer.time()) {
+            complete(groups.values(), logsDao.append(rows));
+        } catch (Exception e) {
+            log.warn("flush -> batch insert failed, retrying each segment separately: {}", e.getMessage());
+
+            // isolate the failing segments so they don't affect the rest of the batch
+            int i = 0;
+            for (List<PendingAppend> g : groups.values()) {
+                LogAppend row = rows.get(i++);
+                try {
+                    complete(List.of(g), logsDao.append(List.of(row)));
+                } catch (Exception ex) {
+                    g.forEach(p -> p.result.completeExceptionally(ex));
+                }
+            }
+        } finally {
+            pendingBytes.addAndGet(-bytes);
+        }
+
+        appendedChunks.mark(batch.size());
+        appendedBytes.mark(bytes);
+        batchChunks.update(batch.size());
+        batchRows.update(rows.size());
+    }
+
+    private static ConcordApplicationException unavailable(String message) {
+        return new ConcordApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .entity(message)
+                .type(MediaType.TEXT_PLAIN_TYPE)
+                .build());
+    }
+
+    private static void complete(Collection<List<PendingAppend>> groups, List<Range> ranges) {
+        Iterator<Range> it = ranges.iterator();
+        for (List<PendingAppend> g : groups) {
+            int offset = it.next().lower();
+            for (PendingAppend p : g) {
+                p.result.complete(Range.builder()
+                        .lowerMode(Range.Mode.INCLUSIVE)
+                        .lower(offset)
+                        .upper(offset + p.data.length)
+                        .upperMode(Range.Mode.EXCLUSIVE)
+                        .build());
+
+                offset += p.data.length;
+            }
+        }
+    }
+
+    private static byte[] concat(List<PendingAppend> items) {
+        if (items.size() == 1) {
+            return items.get(0).data;
+        }
+
+        int len = 0;
+        for (PendingAppend p : items) {
+            len += p.data.length;
+        }
+
+        byte[] result = new byte[len];
+        int offset = 0;
+        for (PendingAppend p : items) {
+            System.arraycopy(p.data, 0, result, offset, p.data.length);
+            offset += p.data.length;
+        }
+        return result;
+    }
+
+    private record SegmentKey(ProcessKey processKey, long segmentId) {
+    }
+
+    private static final class PendingAppend {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final byte[] data;
+        private final CompletableFuture<Range> result = new CompletableFuture<>();
+
+        /**
+         * Set either by the writer when the chunk is picked up for writing
+         * or by the caller when the chunk is dropped after a timeout.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private PendingAppend(ProcessKey processKey, long segmentId, byte[] data) {
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+    }
+}
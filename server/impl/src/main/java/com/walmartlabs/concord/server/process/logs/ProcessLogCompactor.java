@@ -0,0 +1,240 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.db.PgUtils;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.sdk.ScheduledTask;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.walmartlabs.concord.db.PgUtils.lowerRange;
+import static com.walmartlabs.concord.db.PgUtils.upperRange;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_COMPACTIONS;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_QUEUE;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.selectOne;
+import static org.jooq.impl.DSL.value;
+
+/**
+ * Merges the log chunks of finished processes into larger chunks.
+ * <p>
+ * Agents send logs in small chunks, so a log of a long-running process can
+ * consist of thousands of rows. Only consecutive chunks of the same segment
+ * are merged, so both {@code LOG_RANGE} and {@code SEGMENT_RANGE} of the merged
+ * chunk remain valid and the range reads (see {@link ProcessLogsDao#streamSegmentData})
+ * don't need to know whether the log was compacted or not.
+ * <p>
+ * Compacted processes are recorded in {@code PROCESS_LOG_COMPACTIONS}, each
+ * process is compacted only once.
+ */
+public class ProcessLogCompactor implements ScheduledTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessLogCompactor.class);
+
+    /**
+     * Inlined to match the partial index IDX_PROC_QUEUE_FINISHED_UPD.
+     */
+    private static final List<Field<String>> FINISHED_STATUSES = List.of(
+            inline(ProcessStatus.FINISHED.toString()),
+            inline(ProcessStatus.FAILED.toString()),
+            inline(ProcessStatus.CANCELLED.toString()),
+            inline(ProcessStatus.TIMED_OUT.toString()));
+
+    private final ProcessConfiguration cfg;
+    private final CompactorDao dao;
+
+    @Inject
+    public ProcessLogCompactor(ProcessConfiguration cfg, @MainDB Configuration dbCfg) {
+        this.cfg = cfg;
+        this.dao = new CompactorDao(dbCfg);
+    }
+
+    @Override
+    public String getId() {
+        return "process-log-compactor";
+    }
+
+    @Override
+    public long getIntervalInSec() {
+        return cfg.getLogCompactionInterval().getSeconds();
+    }
+
+    @Override
+    public void performTask() {
+        long t1 = System.currentTimeMillis();
+
+        List<ProcessKey> processKeys = dao.poll(cfg);
+
+        int chunksBefore = 0;
+        int chunksAfter = 0;
+        for (ProcessKey pk : processKeys) {
+            CompactionResult r = dao.compact(pk, cfg.getLogCompactionMaxChunkSize());
+            chunksBefore += r.chunksBefore();
+            chunksAfter += r.chunksAfter();
+        }
+
+        long t2 = System.currentTimeMillis();
+        if (!processKeys.isEmpty()) {
+            log.info("performTask -> compacted {} process(es), {} -> {} chunk(s), took {}ms",
+                    processKeys.size(), chunksBefore, chunksAfter, (t2 - t1));
+        }
+    }
+
+    /**
+     * Splits the chunks (ordered by {@code LOG_RANGE}) into runs of
+     * chunks that can be merged together.
+     */
+    static List<Run> findRuns(List<Chunk> chunks, int maxChunkSize) {
+        List<Run> result = new ArrayList<>();
+
+        Run current = null;
+        for (Chunk c : chunks) {
+            if (current != null && current.canAppend(c, maxChunkSize)) {
+                current = current.append(c);
+                continue;
+            }
+
+            if (current != null) {
+                result.add(current);
+            }
+
+            current = new Run(c.segmentId(), c.segmentStart(), c.segmentEnd(), c.logStart(), c.logEnd(), 1);
+        }
+
+        if (current != null) {
+            result.add(current);
+        }
+
+        return result;
+    }
+
+    record Chunk(long segmentId, int segmentStart, int segmentEnd, int logStart, int logEnd) {
+    }
+
+    record Run(long segmentId, int segmentStart, int segmentEnd, int logStart, int logEnd, int chunks) {
+
+        boolean canAppend(Chunk c, int maxChunkSize) {
+            return segmentId == c.segmentId()
+                    && segmentEnd == c.segmentStart()
+                    && logEnd == c.logStart()
+                    && c.logEnd() - logStart <= maxChunkSize;
+        }
+
+        Run append(Chunk c) {
+            return new Run(segmentId, segmentStart, c.segmentEnd(), logStart, c.logEnd(), chunks + 1);
+        }
+    }
+
+    record CompactionResult(int chunksBefore, int chunksAfter) {
+    }
+
+    static final class CompactorDao extends AbstractDao {
+
+        private static final String MERGE_SQL = "with d as (" +
+                "delete from PROCESS_LOG_DATA " +
+                "where INSTANCE_ID = {0} and INSTANCE_CREATED_AT = {1} and SEGMENT_ID = {2} and LOG_RANGE <@ int4range({3}, {4}) " +
+                "returning LOG_RANGE, CHUNK_DATA) " +
+                "insert into PROCESS_LOG_DATA (INSTANCE_ID, INSTANCE_CREATED_AT, SEGMENT_ID, SEGMENT_RANGE, LOG_RANGE, CHUNK_DATA) " +
+                "select {0}, {1}, {2}, int4range({5}, {6}), int4range({3}, {4}), string_agg(CHUNK_DATA, ''::bytea order by LOG_RANGE) from d";
+
+        CompactorDao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        List<ProcessKey> poll(ProcessConfiguration cfg) {
+            Field<OffsetDateTime> from = PgUtils.nowMinus(cfg.getLogCompactionMaxAge());
+            Field<OffsetDateTime> to = PgUtils.nowMinus(cfg.getLogCompactionDelay());
+
+            return dsl().select(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.CURRENT_STATUS.in(FINISHED_STATUSES)
+                            .and(PROCESS_QUEUE.LAST_UPDATED_AT.between(from, to))
+                            .andNotExists(selectOne()
+                                    .from(PROCESS_LOG_COMPACTIONS)
+                                    .where(PROCESS_LOG_COMPACTIONS.INSTANCE_ID.eq(PROCESS_QUEUE.INSTANCE_ID)
+                                            .and(PROCESS_LOG_COMPACTIONS.INSTANCE_CREATED_AT.eq(PROCESS_QUEUE.CREATED_AT)))))
+                    .orderBy(PROCESS_QUEUE.LAST_UPDATED_AT)
+                    .limit(cfg.getLogCompactionBatchSize())
+                    .fetch(r -> new ProcessKey(r.value1(), r.value2()));
+        }
+
+        CompactionResult compact(ProcessKey processKey, int maxChunkSize) {
+            return txResult(tx -> {
+                List<Chunk> chunks = listChunks(tx, processKey);
+
+                int chunksAfter = 0;
+                for (Run r : findRuns(chunks, maxChunkSize)) {
+                    chunksAfter++;
+
+                    if (r.chunks() > 1) {
+                        merge(tx, processKey, r);
+                    }
+                }
+
+                tx.insertInto(PROCESS_LOG_COMPACTIONS)
+                        .columns(PROCESS_LOG_COMPACTIONS.INSTANCE_ID,
+                                PROCESS_LOG_COMPACTIONS.INSTANCE_CREATED_AT,
+                                PROCESS_LOG_COMPACTIONS.CHUNKS_BEFORE,
+                                PROCESS_LOG_COMPACTIONS.CHUNKS_AFTER)
+                        .values(processKey.getInstanceId(), processKey.getCreatedAt(), chunks.size(), chunksAfter)
+                        .onConflictDoNothing()
+                        .execute();
+
+                return new CompactionResult(chunks.size(), chunksAfter);
+            });
+        }
+
+        private static List<Chunk> listChunks(DSLContext tx, ProcessKey processKey) {
+            return tx.select(PROCESS_LOG_DATA.SEGMENT_ID,
+                            lowerRange(PROCESS_LOG_DATA.SEGMENT_RANGE),
+                            upperRange(PROCESS_LOG_DATA.SEGMENT_RANGE),
+                            lowerRange(PROCESS_LOG_DATA.LOG_RANGE),
+                            upperRange(PROCESS_LOG_DATA.LOG_RANGE))
+                    .from(PROCESS_LOG_DATA)
+                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
+                    .orderBy(PROCESS_LOG_DATA.LOG_RANGE)
+                    .fetch(r -> new Chunk(r.value1(), r.value2(), r.value3(), r.value4(), r.value5()));
+        }
+
+        private static void merge(DSLContext tx, ProcessKey processKey, Run r) {
+            tx.execute(MERGE_SQL,
+                    value(processKey.getInstanceId()), value(processKey.getCreatedAt()), value(r.segmentId()),
+                    value(r.logStart()), value(r.logEnd()),
+                    value(r.segmentStart()), value(r.segmentEnd()));
+        }
+    }
+}
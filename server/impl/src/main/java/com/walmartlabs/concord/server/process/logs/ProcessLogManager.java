@@ -31,11 +31,13 @@ import com.walmartlabs.concord.server.sdk.metrics.InjectCounter;
 import org.jooq.DSLContext;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.common.LogUtils.LogLevel;
+import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ChunkConsumer;
 import static com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
 
 public class ProcessLogManager {
@@ -43,6 +45,7 @@ public class ProcessLogManager {
     private static final long SYSTEM_SEGMENT_ID = 0;
     private static final String SYSTEM_SEGMENT_NAME = "system";
     private final ProcessLogsDao logsDao;
+    private final ProcessLogBuffer logBuffer;
     private final Listeners listeners;
 
     @InjectCounter
@@ -50,10 +53,12 @@ public class ProcessLogManager {
 
     @Inject
     public ProcessLogManager(ProcessLogsDao logsDao,
+                             ProcessLogBuffer logBuffer,
                              Listeners listeners,
                              Counter logBytesAppended) {
 
         this.logsDao = logsDao;
+        this.logBuffer = logBuffer;
         this.listeners = listeners;
         this.logBytesAppended = logBytesAppended;
     }
@@ -105,8 +110,41 @@ public class ProcessLogManager {
         return logsDao.data(processKey, start, end);
     }
 
+    public int segmentSize(ProcessKey processKey, long segmentId) {
+        return logsDao.segmentSize(processKey, segmentId);
+    }
+
+    public int size(ProcessKey processKey) {
+        return logsDao.dataSize(processKey);
+    }
+
+    public void streamSegmentData(ProcessKey processKey, long segmentId, int start, int end, ChunkConsumer consumer) throws IOException {
+        logsDao.streamSegmentData(processKey, segmentId, start, end, consumer);
+    }
+
+    public void streamData(ProcessKey processKey, int start, int end, ChunkConsumer consumer) throws IOException {
+        logsDao.streamData(processKey, start, end, consumer);
+    }
+
     public int log(ProcessKey processKey, long segmentId, byte[] msg) {
         Range range = logsDao.append(processKey, segmentId, msg);
+        return onAppend(processKey, range, msg);
+    }
+
+    /**
+     * Appends a chunk received from an agent. Same as {@link #log(ProcessKey, long, byte[])},
+     * but goes through {@link ProcessLogBuffer} and may be rejected if the buffer is full.
+     */
+    public int append(ProcessKey processKey, long segmentId, byte[] msg) {
+        Range range = logBuffer.append(processKey, segmentId, msg);
+        return onAppend(processKey, range, msg);
+    }
+
+    public int append(ProcessKey processKey, byte[] msg) {
+        return append(processKey, SYSTEM_SEGMENT_ID, msg);
+    }
+
+    private int onAppend(ProcessKey processKey, Range range, byte[] msg) {
         logBytesAppended.inc(msg.length);
 
         ProcessLogEntry entry = ProcessLogEntry.builder()
@@ -31,11 +31,12 @@ import com.walmartlabs.concord.server.sdk.Range;
 import org.jooq.*;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.OffsetDateTime;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
+import static com.walmartlabs.concord.db.PgUtils.lowerRange;
 import static com.walmartlabs.concord.db.PgUtils.upperRange;
 import static com.walmartlabs.concord.server.jooq.Routines.*;
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOG_DATA;
@@ -44,6 +45,12 @@ import static org.jooq.impl.DSL.*;
 
 public class ProcessLogsDao extends AbstractDao {
 
+    /**
+     * Number of rows to fetch at once when streaming the data.
+     * Compacted chunks can be large, see {@link ProcessLogCompactor}.
+     */
+    private static final int STREAM_PAGE_SIZE = 16;
+
     @Inject
     public ProcessLogsDao(@MainDB Configuration cfg) {
         super(cfg);
@@ -77,6 +84,59 @@ public class ProcessLogsDao extends AbstractDao {
         return PgIntRange.parse(r.getLogRange().toString());
     }
 
+    /**
+     * Appends multiple chunks using a single multi-row insert. The ranges are
+     * calculated for all chunks at once, the chunks of the same process are
+     * placed in the order of the list.
+     *
+     * @return the new chunk ranges, in the same order as {@code chunks}.
+     */
+    public List<Range> append(List<LogAppend> chunks) {
+        if (chunks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return txResult(tx -> {
+            Map<UUID, Integer> logOffsets = getLogUpperBounds(tx, chunks);
+            Map<SegmentKey, Integer> segmentOffsets = getSegmentUpperBounds(tx, chunks);
+
+            InsertValuesStep6<ProcessLogDataRecord, UUID, OffsetDateTime, Long, Object, Object, byte[]> q = tx.insertInto(PROCESS_LOG_DATA)
+                    .columns(PROCESS_LOG_DATA.INSTANCE_ID,
+                            PROCESS_LOG_DATA.INSTANCE_CREATED_AT,
+                            PROCESS_LOG_DATA.SEGMENT_ID,
+                            PROCESS_LOG_DATA.SEGMENT_RANGE,
+                            PROCESS_LOG_DATA.LOG_RANGE,
+                            PROCESS_LOG_DATA.CHUNK_DATA);
+
+            List<Range> result = new ArrayList<>(chunks.size());
+            for (LogAppend c : chunks) {
+                UUID instanceId = c.getProcessKey().getInstanceId();
+                int len = c.getData().length;
+
+                int logStart = logOffsets.merge(instanceId, len, Integer::sum) - len;
+                int segmentStart = segmentOffsets.merge(new SegmentKey(instanceId, c.getSegmentId()), len, Integer::sum) - len;
+
+                q = q.values(value(instanceId),
+                        value(c.getProcessKey().getCreatedAt()),
+                        value(c.getSegmentId()),
+                        intRange(segmentStart, segmentStart + len),
+                        intRange(logStart, logStart + len),
+                        value(c.getData()));
+
+                result.add(Range.builder()
+                        .lowerMode(Range.Mode.INCLUSIVE)
+                        .lower(logStart)
+                        .upper(logStart + len)
+                        .upperMode(Range.Mode.EXCLUSIVE)
+                        .build());
+            }
+
+            q.execute();
+
+            return result;
+        });
+    }
+
     public long createSegment(ProcessKey processKey, UUID correlationId, String name, OffsetDateTime createdAt, String status) {
         return txResult(tx -> tx.insertInto(PROCESS_LOG_SEGMENTS)
                 .columns(PROCESS_LOG_SEGMENTS.INSTANCE_ID,
@@ -194,6 +254,92 @@ public class ProcessLogsDao extends AbstractDao {
         return new ProcessLog(size, chunks);
     }
 
+    /**
+     * @return the size of the segment's data.
+     */
+    public int segmentSize(ProcessKey processKey, long segmentId) {
+        return getSize(PROCESS_LOG_DATA.SEGMENT_RANGE, segmentCondition(processKey, segmentId));
+    }
+
+    /**
+     * @return the size of the process log.
+     */
+    public int dataSize(ProcessKey processKey) {
+        return getSize(PROCESS_LOG_DATA.LOG_RANGE, processCondition(processKey));
+    }
+
+    /**
+     * Streams the segment's data in the specified {@code [start, end)} range.
+     * Unlike {@link #segmentData(ProcessKey, long, Integer, Integer)}, returns
+     * only the requested bytes: the chunks on the edges of the range are trimmed
+     * by the DB and the rows are fetched in pages, without holding a transaction
+     * open while the data is consumed.
+     */
+    public void streamSegmentData(ProcessKey processKey, long segmentId, int start, int end, ChunkConsumer consumer) throws IOException {
+        stream(PROCESS_LOG_DATA.SEGMENT_RANGE, segmentCondition(processKey, segmentId), start, end, consumer);
+    }
+
+    /**
+     * Same as {@link #streamSegmentData(ProcessKey, long, int, int, ChunkConsumer)},
+     * but for the whole process log.
+     */
+    public void streamData(ProcessKey processKey, int start, int end, ChunkConsumer consumer) throws IOException {
+        stream(PROCESS_LOG_DATA.LOG_RANGE, processCondition(processKey), start, end, consumer);
+    }
+
+    private int getSize(Field<Object> rangeField, Condition scope) {
+        Field<Integer> upperRange = max(upperRange(rangeField));
+        return dsl().select(upperRange)
+                .from(PROCESS_LOG_DATA)
+                .where(scope)
+                .fetchOptional(upperRange)
+                .orElse(0);
+    }
+
+    private void stream(Field<Object> rangeField, Condition scope, int start, int end, ChunkConsumer consumer) throws IOException {
+        Field<Integer> lower = lowerRange(rangeField);
+        Field<Integer> upper = upperRange(rangeField);
+
+        // fetch the data in small pages, each page in its own short query,
+        // so the connection isn't held while the data is sent to the client
+        int pos = start;
+        while (pos < end) {
+            // substring() is 1-based
+            Field<Integer> from = greatest(value(pos).minus(lower), inline(0)).plus(1);
+            Field<Integer> length = least(upper, value(end)).minus(greatest(lower, value(pos)));
+            Field<byte[]> data = field("substring({0} from {1} for {2})", byte[].class, PROCESS_LOG_DATA.CHUNK_DATA, from, length);
+
+            // the ranges don't overlap, so the next page starts at the upper bound of the last row
+            List<Record2<byte[], Integer>> page = dsl().select(data, upper)
+                    .from(PROCESS_LOG_DATA)
+                    .where(scope
+                            .and(condition("{0} && int4range({1}, {2})", rangeField, value(pos), value(end))))
+                    .orderBy(rangeField)
+                    .limit(STREAM_PAGE_SIZE)
+                    .fetch();
+
+            for (Record2<byte[], Integer> r : page) {
+                consumer.accept(r.value1());
+            }
+
+            if (page.size() < STREAM_PAGE_SIZE) {
+                break;
+            }
+
+            pos = page.get(page.size() - 1).value2();
+        }
+    }
+
+    private static Condition processCondition(ProcessKey processKey) {
+        return PROCESS_LOG_DATA.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+    }
+
+    private static Condition segmentCondition(ProcessKey processKey, long segmentId) {
+        return processCondition(processKey)
+                .and(PROCESS_LOG_DATA.SEGMENT_ID.eq(segmentId));
+    }
+
     private List<ProcessLogChunk> getSegmentChunks(DSLContext tx, ProcessKey processKey, long segmentId, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         OffsetDateTime createdAt = processKey.getCreatedAt();
@@ -277,6 +423,65 @@ public class ProcessLogsDao extends AbstractDao {
         }
     }
 
+    private static Map<UUID, Integer> getLogUpperBounds(DSLContext tx, List<LogAppend> chunks) {
+        Map<UUID, Row2<UUID, OffsetDateTime>> keys = new HashMap<>();
+        for (LogAppend c : chunks) {
+            ProcessKey pk = c.getProcessKey();
+            keys.putIfAbsent(pk.getInstanceId(), row(pk.getInstanceId(), pk.getCreatedAt()));
+        }
+
+        Map<UUID, Integer> result = new HashMap<>();
+        for (UUID k : keys.keySet()) {
+            result.put(k, 0);
+        }
+
+        Field<Integer> upperRange = max(upperRange(PROCESS_LOG_DATA.LOG_RANGE));
+        tx.select(PROCESS_LOG_DATA.INSTANCE_ID, upperRange)
+                .from(PROCESS_LOG_DATA)
+                .where(row(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT).in(keys.values()))
+                .groupBy(PROCESS_LOG_DATA.INSTANCE_ID)
+                .forEach(r -> {
+                    Integer upper = r.get(upperRange);
+                    if (upper != null) {
+                        result.put(r.get(PROCESS_LOG_DATA.INSTANCE_ID), upper);
+                    }
+                });
+
+        return result;
+    }
+
+    private static Map<SegmentKey, Integer> getSegmentUpperBounds(DSLContext tx, List<LogAppend> chunks) {
+        Map<SegmentKey, Row3<UUID, OffsetDateTime, Long>> keys = new HashMap<>();
+        for (LogAppend c : chunks) {
+            ProcessKey pk = c.getProcessKey();
+            keys.putIfAbsent(new SegmentKey(pk.getInstanceId(), c.getSegmentId()),
+                    row(pk.getInstanceId(), pk.getCreatedAt(), c.getSegmentId()));
+        }
+
+        Map<SegmentKey, Integer> result = new HashMap<>();
+        for (SegmentKey k : keys.keySet()) {
+            result.put(k, 0);
+        }
+
+        Field<Integer> upperRange = max(upperRange(PROCESS_LOG_DATA.SEGMENT_RANGE));
+        tx.select(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.SEGMENT_ID, upperRange)
+                .from(PROCESS_LOG_DATA)
+                .where(row(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.INSTANCE_CREATED_AT, PROCESS_LOG_DATA.SEGMENT_ID).in(keys.values()))
+                .groupBy(PROCESS_LOG_DATA.INSTANCE_ID, PROCESS_LOG_DATA.SEGMENT_ID)
+                .forEach(r -> {
+                    Integer upper = r.get(upperRange);
+                    if (upper != null) {
+                        result.put(new SegmentKey(r.get(PROCESS_LOG_DATA.INSTANCE_ID), r.get(PROCESS_LOG_DATA.SEGMENT_ID)), upper);
+                    }
+                });
+
+        return result;
+    }
+
+    private static Field<Object> intRange(int lower, int upper) {
+        return field("int4range({0}, {1})", Object.class, value(lower), value(upper));
+    }
+
     private static ProcessLogChunk toChunk(Record2<Object, byte[]> r) {
         return new ProcessLogChunk((Integer) r.value1(), r.value2());
     }
@@ -295,6 +500,39 @@ public class ProcessLogsDao extends AbstractDao {
                 .build();
     }
 
+    public static final class LogAppend {
+
+        private final ProcessKey processKey;
+        private final long segmentId;
+        private final byte[] data;
+
+        public LogAppend(ProcessKey processKey, long segmentId, byte[] data) { // NOSONAR
+            this.processKey = processKey;
+            this.segmentId = segmentId;
+            this.data = data;
+        }
+
+        public ProcessKey getProcessKey() {
+            return processKey;
+        }
+
+        public long getSegmentId() {
+            return segmentId;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    public interface ChunkConsumer {
+
+        void accept(byte[] ab) throws IOException;
+    }
+
+    private record SegmentKey(UUID instanceId, long segmentId) {
+    }
+
     public static final class ProcessLogChunk implements Serializable {
 
         private static final long serialVersionUID = 1L;
@@ -0,0 +1,207 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2023 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects process heartbeats in memory and writes them using a single
+ * update per {@code process.heartbeatBatching.flushInterval}.
+ * <p>
+ * The first heartbeat of a process is written directly to make sure the
+ * process exists. The subsequent heartbeats are only recorded and written
+ * on the next flush. Processes not found during a flush are forgotten, i.e.
+ * their next heartbeat is written directly again.
+ * <p>
+ * {@link ProcessQueueWatchdog} accounts for the flush delay using
+ * {@link #getMaxDelay()}.
+ */
+@Named
+@Singleton
+public class ProcessHeartbeatBuffer implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessHeartbeatBuffer.class);
+
+    /**
+     * Processes without heartbeats for this long are forgotten.
+     */
+    private static final long KNOWN_TTL = TimeUnit.MINUTES.toNanos(10);
+
+    private final ProcessConfiguration cfg;
+    private final ProcessQueueDao queueDao;
+
+    private final Map<UUID, Long> known = new ConcurrentHashMap<>();
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    private final Meter received;
+    private final Meter direct;
+    private final Histogram batchSize;
+    private final Timer flushTimer;
+
+    private volatile Thread worker;
+
+    @Inject
+    public ProcessHeartbeatBuffer(ProcessConfiguration cfg,
+                                  ProcessQueueDao queueDao,
+                                  MetricRegistry metricRegistry) {
+
+        this.cfg = cfg;
+        this.queueDao = queueDao;
+
+        this.received = metricRegistry.meter("process-heartbeat-buffer-received");
+        this.direct = metricRegistry.meter("process-heartbeat-buffer-direct");
+        this.batchSize = metricRegistry.histogram("process-heartbeat-buffer-batch-size");
+        this.flushTimer = metricRegistry.timer("process-heartbeat-buffer-flush-timer");
+
+        metricRegistry.gauge("process-heartbeat-buffer-pending", () -> pending::size);
+    }
+
+    @Override
+    public void start() {
+        if (!cfg.isHeartbeatBatchingEnabled()) {
+            return;
+        }
+
+        Thread t = new Thread(this::run, "process-heartbeat-buffer");
+        t.start();
+        this.worker = t;
+    }
+
+    @Override
+    public void stop() {
+        Thread t = this.worker;
+        if (t == null) {
+            return;
+        }
+
+        this.worker = null;
+
+        t.interrupt();
+        try {
+            t.join(cfg.getHeartbeatBatchingFlushInterval().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // heartbeats received after this point are written directly
+        flush();
+    }
+
+    /**
+     * Records a heartbeat of the specified process.
+     *
+     * @return {@code false} if the process doesn't exist.
+     */
+    public boolean touch(UUID instanceId) {
+        received.mark();
+
+        if (worker == null) {
+            return queueDao.touch(instanceId);
+        }
+
+        long now = System.nanoTime();
+        if (known.replace(instanceId, now) != null) {
+            pending.add(instanceId);
+            return true;
+        }
+
+        direct.mark();
+        if (!queueDao.touch(instanceId)) {
+            return false;
+        }
+
+        known.put(instanceId, now);
+        return true;
+    }
+
+    /**
+     * @return max delay between a heartbeat and its write to the DB.
+     */
+    public Duration getMaxDelay() {
+        if (!cfg.isHeartbeatBatchingEnabled()) {
+            return Duration.ZERO;
+        }
+        return cfg.getHeartbeatBatchingFlushInterval();
+    }
+
+    private void run() {
+        long interval = cfg.getHeartbeatBatchingFlushInterval().toMillis();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("run -> error while flushing heartbeats: {}", e.getMessage());
+            }
+        }
+    }
+
+    void flush() {
+        List<UUID> batch = new ArrayList<>(pending.size());
+        for (Iterator<UUID> it = pending.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+        }
+
+        if (!batch.isEmpty()) {
+            Set<UUID> updated;
+            try (Timer.Context ignored = flushTimer.time()) {
+                updated = queueDao.touch(batch);
+            } catch (RuntimeException e) {
+                // keep the heartbeats for the next attempt
+                pending.addAll(batch);
+                throw e;
+            }
+
+            batchSize.update(batch.size());
+
+            for (UUID id : batch) {
+                if (!updated.contains(id)) {
+                    known.remove(id);
+                }
+            }
+        }
+
+        long cutoff = System.nanoTime() - KNOWN_TTL;
+        known.values().removeIf(t -> t - cutoff < 0);
+    }
+}
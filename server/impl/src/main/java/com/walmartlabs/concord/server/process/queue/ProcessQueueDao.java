@@ -383,6 +383,29 @@ public class ProcessQueueDao extends AbstractDao {
         });
     }
 
+    /**
+     * Updates LAST_UPDATED_AT of the specified processes using a single statement.
+     *
+     * @return IDs of the processes that were found and updated.
+     */
+    public Set<UUID> touch(Collection<UUID> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return Set.of();
+        }
+
+        // sorted to keep the row lock order stable between the server instances
+        UUID[] ids = instanceIds.stream().sorted().toArray(UUID[]::new);
+
+        return txResult(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentOffsetDateTime())
+                .where(PROCESS_QUEUE.INSTANCE_ID.eq(any(ids)))
+                .returning(PROCESS_QUEUE.INSTANCE_ID)
+                .fetch()
+                .stream()
+                .map(ProcessQueueRecord::getInstanceId)
+                .collect(Collectors.toSet()));
+    }
+
     public ProcessEntry get(ProcessKey processKey) {
         return get(processKey, DEFAULT_INCLUDES);
     }
@@ -113,6 +113,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
     private final ProcessManager processManager;
     private final ProcessQueueManager queueManager;
     private final ProcessSecurityContext processSecurityContext;
+    private final ProcessHeartbeatBuffer heartbeatBuffer;
 
     @Inject
     public ProcessQueueWatchdog(ProcessWatchdogConfiguration cfg,
@@ -124,7 +125,8 @@ public class ProcessQueueWatchdog implements ScheduledTask {
                                 PayloadManager payloadManager,
                                 ProcessManager processManager,
                                 ProcessQueueManager queueManager,
-                                ProcessSecurityContext processSecurityContext) {
+                                ProcessSecurityContext processSecurityContext,
+                                ProcessHeartbeatBuffer heartbeatBuffer) {
         this.cfg = cfg;
 
         this.queueDao = queueDao;
@@ -136,6 +138,7 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         this.processManager = processManager;
         this.queueManager = queueManager;
         this.processSecurityContext = processSecurityContext;
+        this.heartbeatBuffer = heartbeatBuffer;
     }
 
     @Override
@@ -217,7 +220,8 @@ public class ProcessQueueWatchdog implements ScheduledTask {
         @Override
         public void run() {
             watchdogDao.transaction(tx -> {
-                Field<OffsetDateTime> cutoff = PgUtils.nowMinus(cfg.getMaxStalledAge());
+                // buffered heartbeats are written with a delay
+                Field<OffsetDateTime> cutoff = PgUtils.nowMinus(cfg.getMaxStalledAge().plus(heartbeatBuffer.getMaxDelay()));
 
                 List<ProcessKey> pks = watchdogDao.pollStalled(tx, POTENTIAL_STALLED_STATUSES, cutoff, 1);
                 for (ProcessKey pk : pks) {
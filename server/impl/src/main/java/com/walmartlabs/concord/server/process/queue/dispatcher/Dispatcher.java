@@ -21,9 +21,12 @@ package com.walmartlabs.concord.server.process.queue.dispatcher;
  */
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.walmartlabs.concord.common.Matcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.imports.Imports;
@@ -36,9 +39,12 @@ import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.process.ImportsNormalizerFactory;
 import com.walmartlabs.concord.server.process.SessionTokenCreator;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
+import com.walmartlabs.concord.server.process.queue.dispatcher.EnqueuedProcessIndex.Candidate;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.queueclient.message.Message;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
@@ -47,6 +53,7 @@ import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.websocket.WebSocketChannel;
 import com.walmartlabs.concord.server.websocket.WebSocketChannelManager;
 import org.jooq.*;
+import org.jooq.Record;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,7 +61,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.server.jooq.tables.Organizations.ORGANIZATIONS;
@@ -74,6 +81,14 @@ public class Dispatcher extends PeriodicTask {
 
     private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(30);
     private static final long LOCK_KEY = 1552468327245L;
+    private static final long SHARD_LOCK_KEY_BASE = LOCK_KEY + 1;
+
+    /**
+     * How long to cache the repository secrets and project organization names
+     * used in the responses.
+     */
+    private static final long RESPONSE_DATA_CACHE_TTL = TimeUnit.SECONDS.toMillis(10);
+    private static final long RESPONSE_DATA_CACHE_SIZE = 1024;
 
     private final Locks locks;
     private final DispatcherDao dao;
@@ -82,11 +97,25 @@ public class Dispatcher extends PeriodicTask {
     private final ProcessQueueManager queueManager;
     private final Set<Filter> filters;
     private final ImportsNormalizerFactory importsNormalizerFactory;
+    private final EnqueuedProcessIndex index;
+    private final SignatureMatcher signatureMatcher;
+    private final DispatcherSignal signal;
 
     private final int batchSize;
+    private final int shardCount;
 
     private final Histogram dispatchedCountHistogram;
+    private final Histogram batchSizeHistogram;
+    private final Histogram indexScannedHistogram;
+    private final Meter indexClaimMisses;
+    private final Meter shardsSkipped;
     private final Timer responseTimer;
+    private final Timer prepareResponsesTimer;
+    private final Timer sendResponseTimer;
+
+    private final ThreadPoolExecutor responseExecutor;
+    private final Cache<UUID, SecretReference> secretReferenceCache;
+    private final Cache<UUID, String> projectOrgNameCache;
 
     private final SessionTokenCreator sessionTokenCreator;
 
@@ -98,6 +127,9 @@ public class Dispatcher extends PeriodicTask {
                       ProcessQueueManager queueManager,
                       Set<Filter> filters,
                       ImportsNormalizerFactory importsNormalizerFactory,
+                      EnqueuedProcessIndex index,
+                      SignatureMatcher signatureMatcher,
+                      DispatcherSignal signal,
                       ProcessQueueConfiguration cfg,
                       MetricRegistry metricRegistry,
                       SessionTokenCreator sessionTokenCreator) {
@@ -111,19 +143,65 @@ public class Dispatcher extends PeriodicTask {
         this.queueManager = queueManager;
         this.filters = filters;
         this.importsNormalizerFactory = importsNormalizerFactory;
+        this.index = index;
+        this.signatureMatcher = signatureMatcher;
+        this.signal = signal;
 
         this.batchSize = cfg.getDispatcherBatchSize();
+        this.shardCount = Math.max(cfg.getDispatcherShardCount(), 1);
         this.sessionTokenCreator = sessionTokenCreator;
 
         this.dispatchedCountHistogram = metricRegistry.histogram("process-queue-dispatcher-dispatched-count");
+        this.batchSizeHistogram = metricRegistry.histogram("process-queue-dispatcher-batch-size");
+        this.indexScannedHistogram = metricRegistry.histogram("process-queue-dispatcher-index-scanned");
+        this.indexClaimMisses = metricRegistry.meter("process-queue-dispatcher-index-claim-misses");
+        this.shardsSkipped = metricRegistry.meter("process-queue-dispatcher-shards-skipped");
         this.responseTimer = metricRegistry.timer("process-queue-dispatcher-response-timer");
+        this.prepareResponsesTimer = metricRegistry.timer("process-queue-dispatcher-prepare-responses-timer");
+        this.sendResponseTimer = metricRegistry.timer("process-queue-dispatcher-send-response-timer");
+
+        int responseWorkers = Math.max(cfg.getDispatcherResponseWorkerCount(), 1);
+        this.responseExecutor = createResponseExecutor(responseWorkers, responseWorkers * batchSize);
+
+        metricRegistry.gauge("process-queue-dispatcher-response-queue-size", () -> () -> responseExecutor.getQueue().size());
+
+        this.secretReferenceCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(RESPONSE_DATA_CACHE_TTL, TimeUnit.MILLISECONDS)
+                .maximumSize(RESPONSE_DATA_CACHE_SIZE)
+                .build();
+
+        this.projectOrgNameCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(RESPONSE_DATA_CACHE_TTL, TimeUnit.MILLISECONDS)
+                .maximumSize(RESPONSE_DATA_CACHE_SIZE)
+                .build();
+
+        // new agent requests are dispatched right away
+        channelManager.addRequestListener(MessageType.PROCESS_REQUEST, signal::signal);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        responseExecutor.shutdownNow();
+    }
+
+    /**
+     * Waits for new agent requests or enqueued processes. The poll delay is
+     * used as a safety net, e.g. for processes enqueued by other server instances.
+     */
+    @Override
+    protected void idle(long interval) {
+        try {
+            signal.await(interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
     @WithTimer
     protected boolean performTask() {
-        // TODO the WebSocketChannelManager business can be replaced with an async jax-rs endpoint and an "inbox" queue
-
         // grab the requests w/o responses
         Map<WebSocketChannel, ProcessRequest> requests = this.channelManager.getRequests(MessageType.PROCESS_REQUEST);
         if (requests.isEmpty()) {
@@ -134,41 +212,179 @@ public class Dispatcher extends PeriodicTask {
                 .map(e -> new Request(e.getKey(), e.getValue()))
                 .collect(Collectors.toList());
 
-        // prepare all responses in a single transaction
-        // take a global lock to avoid races
-        List<Match> matches = dao.txResult(tx -> {
-            locks.lock(tx, LOCK_KEY);
-            try {
-                return match(tx, l);
-            } finally {
-                filters.forEach(Filter::cleanup);
-            }
-        });
+        if (index.isEnabled()) {
+            index.refresh();
+        }
+
+        // candidates that were dispatched or no longer can be claimed
+        List<ProcessKey> processed = new ArrayList<>();
+
+        List<Match> matches;
+        if (shardCount > 1) {
+            matches = dispatchSharded(l, processed);
+        } else {
+            // prepare all responses in a single transaction
+            // take a global lock to avoid races
+            matches = dao.txResult(tx -> {
+                locks.lock(tx, LOCK_KEY);
+                return match(tx, l, 0, processed);
+            });
+        }
 
         dispatchedCountHistogram.update(matches.size());
 
+        if (index.isEnabled()) {
+            matches.forEach(m -> processed.add(m.response.key()));
+            index.removeAll(processed);
+        }
+
         // no matches, retry after a delay
         if (matches.isEmpty()) {
             return false;
         }
 
+        // fetch the data required for the responses in bulk
+        ResponseData data = prepareResponsesTimer.timeSupplier(() -> prepareResponseData(matches));
+
         // send all responses in parallel
-        withTimer(responseTimer, () -> matches.stream()
-                .parallel()
-                .forEach(this::sendResponse));
+        withTimer(responseTimer, () -> sendResponses(matches, data));
 
         return true;
     }
 
-    private List<Match> match(DSLContext tx, List<Request> requests) {
-        // we need it modifiable
+    private ResponseData prepareResponseData(List<Match> matches) {
+        Set<UUID> repoIds = new HashSet<>();
+        Set<UUID> projectIds = new HashSet<>();
+        for (Match m : matches) {
+            ProcessQueueEntry item = m.response;
+            if (item.repoId() != null) {
+                repoIds.add(item.repoId());
+            }
+            if (item.projectId() != null) {
+                projectIds.add(item.projectId());
+            }
+        }
+
+        Map<UUID, SecretReference> secrets = new HashMap<>(secretReferenceCache.getAllPresent(repoIds));
+        Set<UUID> missingRepoIds = new HashSet<>(repoIds);
+        missingRepoIds.removeAll(secrets.keySet());
+        if (!missingRepoIds.isEmpty()) {
+            Map<UUID, SecretReference> m = dao.getSecretReferences(missingRepoIds);
+            secretReferenceCache.putAll(m);
+            secrets.putAll(m);
+        }
+
+        Map<UUID, String> orgNames = new HashMap<>(projectOrgNameCache.getAllPresent(projectIds));
+        Set<UUID> missingProjectIds = new HashSet<>(projectIds);
+        missingProjectIds.removeAll(orgNames.keySet());
+        if (!missingProjectIds.isEmpty()) {
+            Map<UUID, String> m = dao.getOrgNames(missingProjectIds);
+            projectOrgNameCache.putAll(m);
+            orgNames.putAll(m);
+        }
+
+        return new ResponseData(secrets, orgNames);
+    }
+
+    private void sendResponses(List<Match> matches, ResponseData data) {
+        // requests with multiple slots get all their processes in a single response
+        Map<Request, List<Match>> byRequest = new LinkedHashMap<>();
+        for (Match m : matches) {
+            byRequest.computeIfAbsent(m.request, k -> new ArrayList<>()).add(m);
+        }
+
+        List<Callable<Void>> tasks = byRequest.entrySet().stream()
+                .map(e -> (Callable<Void>) () -> {
+                    withTimer(sendResponseTimer, () -> sendResponse(e.getKey(), e.getValue(), data));
+                    return null;
+                })
+                .collect(Collectors.toList());
+
+        try {
+            responseExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The queue is bounded, if it's full the responses are sent by the
+     * caller's (i.e. the dispatcher's) thread. Unlike
+     * {@link ThreadPoolExecutor.CallerRunsPolicy}, rejected tasks are run
+     * even after the executor is shut down, otherwise
+     * {@link ExecutorService#invokeAll(Collection)} would wait for the
+     * discarded tasks forever.
+     */
+    static ThreadPoolExecutor createResponseExecutor(int workers, int queueSize) {
+        return new ThreadPoolExecutor(workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("dispatcher-response-%d").setDaemon(true).build(),
+                (r, executor) -> r.run());
+    }
+
+    /**
+     * Dispatches each shard in its own transaction, under its own lock.
+     * The shards currently locked by other server instances are skipped,
+     * they will be retried on the next iteration.
+     * <p>
+     * The global lock is held in shared mode, so the instances that don't
+     * use sharding (e.g. during a rolling configuration change) don't
+     * dispatch at the same time.
+     */
+    private List<Match> dispatchSharded(List<Request> requests, List<ProcessKey> processed) {
         List<Request> inbox = new ArrayList<>(requests);
+        List<Match> result = new ArrayList<>();
+
+        // start with a random shard to spread the server instances
+        int start = ThreadLocalRandom.current().nextInt(shardCount);
+        for (int i = 0; i < shardCount && !inbox.isEmpty(); i++) {
+            int shard = (start + i) % shardCount;
+
+            List<ProcessKey> shardProcessed = new ArrayList<>();
+            List<Match> matches;
+            try {
+                matches = dao.txResult(tx -> {
+                    locks.lockShared(tx, LOCK_KEY);
+                    if (!locks.tryLock(tx, SHARD_LOCK_KEY_BASE + shard)) {
+                        shardsSkipped.mark();
+                        return Collections.emptyList();
+                    }
+                    return match(tx, inbox, shard, shardProcessed);
+                });
+            } catch (Exception e) {
+                // the previous shards are already committed, their responses must be sent
+                log.warn("dispatchSharded -> error while dispatching shard {}: {}", shard, e.getMessage(), e);
+                break;
+            }
+
+            processed.addAll(shardProcessed);
+            inbox.removeIf(r -> r.remaining == 0);
+            result.addAll(matches);
+        }
+
+        return result;
+    }
+
+    private List<Match> match(DSLContext tx, List<Request> requests, int shard, List<ProcessKey> processed) {
+        try {
+            if (index.isEnabled()) {
+                return matchIndexed(tx, requests, shard, processed);
+            }
+            return matchPaged(tx, requests, shard);
+        } finally {
+            filters.forEach(Filter::cleanup);
+        }
+    }
+
+    private List<Match> matchPaged(DSLContext tx, List<Request> requests, int shard) {
+        Inbox inbox = new Inbox(requests);
 
         int offset = 0;
         List<Match> matches = new ArrayList<>();
         while (true) {
             // fetch the next few ENQUEUED processes from the DB
-            List<ProcessQueueEntry> candidates = dao.next(tx, offset, batchSize);
+            List<ProcessQueueEntry> candidates = dao.next(tx, shard, shardCount, offset, batchSize);
             if (candidates.isEmpty()) {
                 break;
             }
@@ -176,7 +392,7 @@ public class Dispatcher extends PeriodicTask {
             // filter out the candidates that shouldn't be dispatched at the moment (e.g. due to concurrency limits)
             for (ProcessQueueEntry e : candidates) {
                 // find request/agent who can handle process
-                Request req = findRequest(e, inbox);
+                Request req = inbox.find(signatureMatcher, Signature.of(getAgentRequirements(e)));
                 if (req == null) {
                     continue;
                 }
@@ -202,30 +418,92 @@ public class Dispatcher extends PeriodicTask {
             offset += batchSize;
         }
 
-        for (Match m : matches) {
-            ProcessQueueEntry candidate = m.response;
-
-            // mark the process as STARTING
-            queueManager.updateAgentId(tx, candidate.key(), m.request.channel.getAgentId(), ProcessStatus.STARTING);
-        }
+        markStarting(tx, matches);
 
         return matches;
     }
 
-    private static Request findRequest(ProcessQueueEntry candidate, List<Request> requests) {
-        for (Request req : requests) {
-            Map<String, Object> capabilities = req.request.getCapabilities();
-            Map<String, Object> m = getAgentRequirements(candidate);
-            if (m.isEmpty() || Matcher.matches(capabilities, m)) {
-                return req;
+    /**
+     * Same as {@link #matchPaged(DSLContext, List, int)}, but takes the candidates from
+     * the {@link EnqueuedProcessIndex}. Only the buckets compatible with at least
+     * one of the requests are scanned and the DB is used only to claim the candidates.
+     */
+    private List<Match> matchIndexed(DSLContext tx, List<Request> requests, int shard, List<ProcessKey> processed) {
+        Inbox inbox = new Inbox(requests);
+
+        // merge the compatible buckets, oldest candidates first
+        PriorityQueue<BucketCursor> cursors = new PriorityQueue<>((a, b) -> Candidate.ORDER.compare(a.head, b.head));
+        for (EnqueuedProcessIndex.Bucket b : index.buckets(shard)) {
+            List<Signature> compatible = inbox.compatible(signatureMatcher, b.requirements());
+
+            BucketCursor cursor = new BucketCursor(b.iterator(), compatible);
+            if (!compatible.isEmpty() && cursor.advance()) {
+                cursors.add(cursor);
             }
         }
 
-        return null;
+        OffsetDateTime now = OffsetDateTime.now();
+
+        int scanned = 0;
+        List<Match> matches = new ArrayList<>();
+        while (!inbox.isEmpty() && !cursors.isEmpty()) {
+            BucketCursor cursor = cursors.poll();
+            Candidate candidate = cursor.head;
+
+            // skip the bucket entirely if all compatible agents are already taken
+            Request req = inbox.first(cursor.capabilities);
+            if (req == null) {
+                continue;
+            }
+
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+
+            if (!candidate.isReady(now)) {
+                continue;
+            }
+
+            scanned++;
+
+            ProcessQueueEntry e = candidate.entry();
+            ClaimResult claim = dao.claim(tx, e.key());
+            if (claim != ClaimResult.CLAIMED) {
+                indexClaimMisses.mark();
+                if (claim == ClaimResult.GONE) {
+                    // the process was taken by someone else or its status has changed
+                    processed.add(e.key());
+                }
+                // otherwise the record is locked by another transaction, keep the entry in the index
+                continue;
+            }
+
+            List<ProcessQueueEntry> startingProcesses = matches.stream().map(m -> m.response).collect(Collectors.toList());
+
+            if (pass(tx, e, startingProcesses)) {
+                matches.add(new Match(req, e));
+                inbox.remove(req);
+            }
+        }
+
+        indexScannedHistogram.update(scanned);
+
+        markStarting(tx, matches);
+
+        return matches;
+    }
+
+    private void markStarting(DSLContext tx, List<Match> matches) {
+        for (Match m : matches) {
+            ProcessQueueEntry candidate = m.response;
+
+            // mark the process as STARTING
+            queueManager.updateAgentId(tx, candidate.key(), m.request.channel.getAgentId(), ProcessStatus.STARTING);
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
+    static Map<String, Object> getAgentRequirements(ProcessQueueEntry entry) {
         Map<String, Object> requirements = entry.requirements();
         if (requirements == null) {
             return Collections.emptyMap();
@@ -249,40 +527,81 @@ public class Dispatcher extends PeriodicTask {
         return true;
     }
 
-    private void sendResponse(Match match) {
-        WebSocketChannel channel = match.request.channel;
-        long correlationId = match.request.request.getCorrelationId();
-        ProcessQueueEntry item = match.response;
+    private void sendResponse(Request request, List<Match> matches, ResponseData data) {
+        WebSocketChannel channel = request.channel;
+        long correlationId = request.request.getCorrelationId();
 
-        try {
-            SecretReference secret = null;
-            if (item.repoId() != null) {
-                secret = dao.getSecretReference(item.repoId());
+        List<ProcessResponse> responses = new ArrayList<>(matches.size());
+        List<ProcessKey> keys = new ArrayList<>(matches.size());
+        for (Match m : matches) {
+            ProcessQueueEntry item = m.response;
+            try {
+                responses.add(toResponse(correlationId, item, data));
+                keys.add(item.key());
+            } catch (Exception e) {
+                log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
             }
+        }
 
-            // backward compatibility with old process queue entries that are not normalized
-            Imports imports = importsNormalizerFactory.forProject(item.projectId())
-                    .normalize(item.imports());
-
-            ProcessResponse resp = new ProcessResponse(correlationId,
-                    sessionTokenCreator.create(item.key()),
-                    item.key().getInstanceId(),
-                    secret != null ? secret.orgName : null,
-                    item.repoUrl(),
-                    item.repoPath(),
-                    item.commitId(),
-                    item.commitBranch(),
-                    secret != null ? secret.secretName : null,
-                    imports);
-
-            if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
-                log.warn("sendResponse ['{}'] -> failed", correlationId);
-            }
+        if (responses.isEmpty()) {
+            return;
+        }
+
+        Message resp;
+        if (request.request.getSlots() > 1) {
+            batchSizeHistogram.update(responses.size());
+            resp = new ProcessBatchResponse(correlationId, responses);
+        } else {
+            resp = responses.get(0);
+        }
 
-            logManager.info(item.key(), "Acquired by: " + channel.getUserAgent());
-        } catch (Exception e) {
-            log.error("sendResponse ['{}'] -> failed (instanceId: {})", correlationId, item.key().getInstanceId());
+        if (!channelManager.sendResponse(channel.getChannelId(), resp)) {
+            log.warn("sendResponse ['{}'] -> failed", correlationId);
         }
+
+        for (ProcessKey k : keys) {
+            logManager.info(k, "Acquired by: " + channel.getUserAgent());
+        }
+    }
+
+    private ProcessResponse toResponse(long correlationId, ProcessQueueEntry item, ResponseData data) {
+        SecretReference secret = null;
+        if (item.repoId() != null) {
+            secret = data.secrets.get(item.repoId());
+        }
+
+        // backward compatibility with old process queue entries that are not normalized
+        Imports imports = importsNormalizerFactory.forProject(item.projectId(), data.orgNames.get(item.projectId()))
+                .normalize(item.imports());
+
+        return new ProcessResponse(correlationId,
+                sessionTokenCreator.create(item.key()),
+                item.key().getInstanceId(),
+                secret != null ? secret.orgName() : null,
+                item.repoUrl(),
+                item.repoPath(),
+                item.commitId(),
+                item.commitBranch(),
+                secret != null ? secret.secretName() : null,
+                imports);
+    }
+
+    public enum ClaimResult {
+
+        /**
+         * The process' queue record is locked by the current transaction.
+         */
+        CLAIMED,
+
+        /**
+         * The process is still ENQUEUED, but its record is locked by another transaction.
+         */
+        LOCKED,
+
+        /**
+         * The process is no longer ENQUEUED or was removed from the queue.
+         */
+        GONE
     }
 
     @Named
@@ -306,8 +625,11 @@ public class Dispatcher extends PeriodicTask {
             return super.txResult(t);
         }
 
+        /**
+         * Returns the next batch of ENQUEUED processes of the specified {@link DispatcherShards shard}.
+         */
         @WithTimer
-        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
+        public List<ProcessQueueEntry> next(DSLContext tx, int shard, int shardCount, int offset, int limit) {
             offsetHistogram.update(offset);
 
             ProcessQueue q = PROCESS_QUEUE.as("q");
@@ -332,9 +654,15 @@ public class Dispatcher extends PeriodicTask {
                             q.COMMIT_BRANCH)
                             .from(q);
 
-            s.where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+            Condition c = q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
                     .and(or(q.START_AT.isNull(),
-                            q.START_AT.le(currentOffsetDateTime()))));
+                            q.START_AT.le(currentOffsetDateTime())));
+
+            if (shardCount > 1) {
+                c = c.and(DispatcherShards.shardOf(orgIdField, q.INSTANCE_ID, shardCount).eq(shard));
+            }
+
+            s.where(c);
 
             return s.orderBy(q.LAST_UPDATED_AT)
                     .offset(offset)
@@ -359,13 +687,134 @@ public class Dispatcher extends PeriodicTask {
                             .build());
         }
 
-        public SecretReference getSecretReference(UUID repoId) {
-            return dsl().select(ORGANIZATIONS.ORG_NAME, SECRETS.SECRET_NAME)
+        /**
+         * Returns the specified processes if they are still ENQUEUED.
+         */
+        @WithTimer
+        public List<Candidate> getEnqueued(List<ProcessKey> processKeys) {
+            ProcessQueue q = PROCESS_QUEUE.as("q");
+
+            UUID[] instanceIds = processKeys.stream()
+                    .map(ProcessKey::getInstanceId)
+                    .toArray(UUID[]::new);
+
+            return selectCandidates(dsl(), q)
+                    .where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+                            .and(q.INSTANCE_ID.in(instanceIds)))
+                    .fetch(r -> toCandidate(q, r));
+        }
+
+        /**
+         * Returns the next page of ENQUEUED processes, ordered by {@code (last_updated_at, instance_id)}.
+         * Doesn't lock the rows.
+         */
+        @WithTimer
+        public List<Candidate> listEnqueued(OffsetDateTime afterUpdatedAt, UUID afterInstanceId, int limit) {
+            ProcessQueue q = PROCESS_QUEUE.as("q");
+
+            Condition c = q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString());
+            if (afterUpdatedAt != null) {
+                c = c.and(row(q.LAST_UPDATED_AT, q.INSTANCE_ID).gt(afterUpdatedAt, afterInstanceId));
+            }
+
+            return selectCandidates(dsl(), q)
+                    .where(c)
+                    .orderBy(q.LAST_UPDATED_AT, q.INSTANCE_ID)
+                    .limit(limit)
+                    .fetch(r -> toCandidate(q, r));
+        }
+
+        /**
+         * Locks the process' queue record if the process is still ENQUEUED.
+         * If the record can't be locked, checks whether the process is still
+         * in the queue to distinguish between a lock held by another
+         * transaction and a process that was taken or removed.
+         */
+        public ClaimResult claim(DSLContext tx, ProcessKey processKey) {
+            UUID instanceId = tx.select(PROCESS_QUEUE.INSTANCE_ID)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())))
+                    .forUpdate()
+                    .skipLocked()
+                    .fetchOne(PROCESS_QUEUE.INSTANCE_ID);
+
+            if (instanceId != null) {
+                return ClaimResult.CLAIMED;
+            }
+
+            String status = tx.select(PROCESS_QUEUE.CURRENT_STATUS)
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId()))
+                    .fetchOne(PROCESS_QUEUE.CURRENT_STATUS);
+
+            if (ProcessStatus.ENQUEUED.toString().equals(status)) {
+                return ClaimResult.LOCKED;
+            }
+
+            return ClaimResult.GONE;
+        }
+
+        private static SelectJoinStep<Record> selectCandidates(DSLContext tx, ProcessQueue q) {
+            Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField(PROJECTS.ORG_ID.getName());
+
+            return tx.select(Arrays.asList(
+                            q.INSTANCE_ID,
+                            q.CREATED_AT,
+                            q.PROJECT_ID,
+                            orgIdField,
+                            q.INITIATOR_ID,
+                            q.PARENT_INSTANCE_ID,
+                            q.REPO_PATH,
+                            q.REPO_URL,
+                            q.COMMIT_ID,
+                            q.REPO_ID,
+                            q.IMPORTS,
+                            q.REQUIREMENTS,
+                            q.EXCLUSIVE,
+                            q.COMMIT_BRANCH,
+                            q.LAST_UPDATED_AT,
+                            q.START_AT))
+                    .from(q);
+        }
+
+        private Candidate toCandidate(ProcessQueue q, Record r) {
+            ProcessQueueEntry entry = ProcessQueueEntry.builder()
+                    .key(new ProcessKey(r.get(q.INSTANCE_ID), r.get(q.CREATED_AT)))
+                    .projectId(r.get(q.PROJECT_ID))
+                    .orgId(r.get(PROJECTS.ORG_ID.getName(), UUID.class))
+                    .initiatorId(r.get(q.INITIATOR_ID))
+                    .parentInstanceId(r.get(q.PARENT_INSTANCE_ID))
+                    .repoPath(r.get(q.REPO_PATH))
+                    .repoUrl(r.get(q.REPO_URL))
+                    .commitId(r.get(q.COMMIT_ID))
+                    .commitBranch(r.get(q.COMMIT_BRANCH))
+                    .repoId(r.get(q.REPO_ID))
+                    .imports(objectMapper.fromJSONB(r.get(q.IMPORTS), Imports.class))
+                    .requirements(objectMapper.fromJSONB(r.get(q.REQUIREMENTS)))
+                    .exclusive(objectMapper.fromJSONB(r.get(q.EXCLUSIVE), ExclusiveMode.class))
+                    .build();
+
+            return new Candidate(entry, r.get(q.LAST_UPDATED_AT), r.get(q.START_AT));
+        }
+
+        @WithTimer
+        public Map<UUID, SecretReference> getSecretReferences(Collection<UUID> repoIds) {
+            return dsl().select(REPOSITORIES.REPO_ID, ORGANIZATIONS.ORG_NAME, SECRETS.SECRET_NAME)
                     .from(REPOSITORIES)
                     .leftOuterJoin(SECRETS).on(REPOSITORIES.SECRET_ID.eq(SECRETS.SECRET_ID))
                     .leftOuterJoin(ORGANIZATIONS).on(SECRETS.ORG_ID.eq(ORGANIZATIONS.ORG_ID))
-                    .where(REPOSITORIES.REPO_ID.eq(repoId))
-                    .fetchOne(r -> new SecretReference(r.value1(), r.value2()));
+                    .where(REPOSITORIES.REPO_ID.in(repoIds))
+                    .fetchMap(Record3::value1, r -> new SecretReference(r.value2(), r.value3()));
+        }
+
+        @WithTimer
+        public Map<UUID, String> getOrgNames(Collection<UUID> projectIds) {
+            return dsl().select(PROJECTS.PROJECT_ID, ORGANIZATIONS.ORG_NAME)
+                    .from(PROJECTS)
+                    .innerJoin(ORGANIZATIONS).on(ORGANIZATIONS.ORG_ID.eq(PROJECTS.ORG_ID))
+                    .where(PROJECTS.PROJECT_ID.in(projectIds))
+                    .fetchMap(PROJECTS.PROJECT_ID, ORGANIZATIONS.ORG_NAME);
         }
     }
 
@@ -373,10 +822,128 @@ public class Dispatcher extends PeriodicTask {
 
         private final WebSocketChannel channel;
         private final ProcessRequest request;
+        private final Signature capabilities;
+
+        /**
+         * Number of slots not yet matched with a process.
+         */
+        private int remaining;
 
         private Request(WebSocketChannel channel, ProcessRequest request) {
             this.channel = channel;
             this.request = request;
+            this.capabilities = Signature.of(request.getCapabilities());
+            this.remaining = request.getSlots();
+        }
+    }
+
+    /**
+     * Pending requests grouped by the agent's capabilities.
+     * Requests with multiple slots stay in the inbox until all their slots
+     * are matched.
+     */
+    private static final class Inbox {
+
+        private final Map<Signature, Deque<Request>> groups = new LinkedHashMap<>();
+        private int size;
+
+        private Inbox(List<Request> requests) {
+            for (Request r : requests) {
+                if (r.remaining <= 0) {
+                    continue;
+                }
+                groups.computeIfAbsent(r.capabilities, k -> new ArrayDeque<>()).add(r);
+                size++;
+            }
+        }
+
+        /**
+         * Finds a request whose agent can handle a process with the specified requirements.
+         */
+        private Request find(SignatureMatcher matcher, Signature requirements) {
+            for (Map.Entry<Signature, Deque<Request>> e : groups.entrySet()) {
+                if (matcher.matches(e.getKey(), requirements)) {
+                    return e.getValue().peek();
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Returns the capabilities compatible with the specified requirements.
+         */
+        private List<Signature> compatible(SignatureMatcher matcher, Signature requirements) {
+            List<Signature> result = new ArrayList<>();
+            for (Signature capabilities : groups.keySet()) {
+                if (matcher.matches(capabilities, requirements)) {
+                    result.add(capabilities);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the first remaining request with any of the specified capabilities.
+         */
+        private Request first(List<Signature> capabilities) {
+            for (Signature c : capabilities) {
+                Deque<Request> q = groups.get(c);
+                if (q != null) {
+                    return q.peek();
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Takes a slot of the request. The request is removed when it has no
+         * slots left, otherwise it goes to the end of its group to spread
+         * the processes between the agents.
+         */
+        private void remove(Request r) {
+            Deque<Request> q = groups.get(r.capabilities);
+            if (q == null || !q.remove(r)) {
+                return;
+            }
+
+            if (--r.remaining > 0) {
+                q.addLast(r);
+                return;
+            }
+
+            if (q.isEmpty()) {
+                groups.remove(r.capabilities);
+            }
+
+            size--;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    private static final class BucketCursor {
+
+        private final Iterator<Candidate> candidates;
+        private final List<Signature> capabilities;
+
+        private Candidate head;
+
+        private BucketCursor(Iterator<Candidate> candidates, List<Signature> capabilities) {
+            this.candidates = candidates;
+            this.capabilities = capabilities;
+        }
+
+        private boolean advance() {
+            if (!candidates.hasNext()) {
+                return false;
+            }
+
+            head = candidates.next();
+            return true;
         }
     }
 
@@ -391,14 +958,17 @@ public class Dispatcher extends PeriodicTask {
         }
     }
 
-    private static final class SecretReference {
+    private static final class ResponseData {
 
-        private final String orgName;
-        private final String secretName;
+        private final Map<UUID, SecretReference> secrets;
+        private final Map<UUID, String> orgNames;
 
-        private SecretReference(String orgName, String secretName) {
-            this.orgName = orgName;
-            this.secretName = secretName;
+        private ResponseData(Map<UUID, SecretReference> secrets, Map<UUID, String> orgNames) {
+            this.secrets = secrets;
+            this.orgNames = orgNames;
         }
     }
+
+    record SecretReference(String orgName, String secretName) {
+    }
 }
@@ -0,0 +1,60 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import org.jooq.Field;
+
+import java.util.UUID;
+
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Splits the process queue into shards for the {@link Dispatcher}.
+ * <p>
+ * Processes are assigned to shards using their organization ID, so all
+ * processes of the same organization (and, consequently, of the same project)
+ * are always dispatched under the same lock. This keeps the per-org and per-project
+ * checks of {@link ConcurrentProcessFilter} and {@link ExclusiveProcessFilter} correct.
+ * Processes without an organization are distributed using their instance IDs.
+ * <p>
+ * The shard number is calculated using the first 32 bits of the ID, so it can be
+ * computed both in Java and in SQL.
+ */
+public final class DispatcherShards {
+
+    public static int shardOf(ProcessQueueEntry entry, int shardCount) {
+        UUID id = entry.orgId() != null ? entry.orgId() : entry.key().getInstanceId();
+        int hi = (int) (id.getMostSignificantBits() >>> 32);
+        return (hi & Integer.MAX_VALUE) % shardCount;
+    }
+
+    /**
+     * SQL version of {@link #shardOf(ProcessQueueEntry, int)}.
+     */
+    public static Field<Integer> shardOf(Field<UUID> orgId, Field<UUID> instanceId, int shardCount) {
+        Field<String> id = coalesce(orgId, instanceId).cast(String.class);
+        return field("((('x' || substr({0}, 1, 8))::bit(32)::int & 2147483647) % {1})", Integer.class, id, inline(shardCount));
+    }
+
+    private DispatcherShards() {
+    }
+}
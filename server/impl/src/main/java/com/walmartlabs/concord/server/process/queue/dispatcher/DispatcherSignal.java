@@ -0,0 +1,77 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.TransactionHooks;
+import com.walmartlabs.concord.server.process.queue.ProcessStatusListener;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.DSLContext;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Wakes up the {@link Dispatcher} when there's something to dispatch: a new
+ * agent request or a process enqueued by this server instance. Processes
+ * enqueued by other instances are picked up by the dispatcher's regular poll.
+ */
+@Named
+@Singleton
+public class DispatcherSignal implements ProcessStatusListener {
+
+    private final Object lock = new Object();
+
+    private boolean signaled;
+
+    @Override
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        if (status == ProcessStatus.ENQUEUED) {
+            // the process is visible to the dispatcher only after the commit
+            TransactionHooks.afterCommit(tx, this::signal);
+        }
+    }
+
+    public void signal() {
+        synchronized (lock) {
+            signaled = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for a signal or until the timeout expires.
+     */
+    public void await(long timeout) throws InterruptedException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!signaled) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                lock.wait(remaining);
+            }
+
+            signaled = false;
+        }
+    }
+}
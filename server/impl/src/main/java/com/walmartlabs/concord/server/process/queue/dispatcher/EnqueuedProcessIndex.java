@@ -0,0 +1,297 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.process.queue.ProcessStatusListener;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.DSLContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of ENQUEUED processes grouped by their agent requirements {@link Signature signatures}.
+ * <p>
+ * The index is loaded from the DB once and then updated incrementally using
+ * the process status change notifications. To pick up the processes enqueued
+ * by other server instances, the index periodically fetches the ENQUEUED processes
+ * updated since the previous sync. Entries of the processes taken by other
+ * server instances are removed when the dispatcher fails to claim them.
+ * All methods except {@link #onStatusChange(DSLContext, ProcessKey, ProcessStatus)}
+ * must be called from the {@link Dispatcher}'s thread.
+ */
+@Named
+@Singleton
+public class EnqueuedProcessIndex implements ProcessStatusListener {
+
+    /**
+     * How long to keep the "ENQUEUED" notifications for processes which are not
+     * yet visible in the DB (e.g. the enqueue transaction is not committed yet).
+     */
+    private static final long PENDING_GRACE_PERIOD = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * How far back to look when catching up with the DB. Covers the clock skew
+     * between server instances and the transactions that were committed after
+     * the previous sync.
+     */
+    private static final long CATCH_UP_OVERLAP = TimeUnit.MINUTES.toMillis(1);
+
+    private static final UUID MIN_UUID = new UUID(0, 0);
+
+    private static final int RESYNC_BATCH_SIZE = 1000;
+
+    private final boolean enabled;
+    private final long resyncInterval;
+    private final int shardCount;
+    private final Dispatcher.DispatcherDao dao;
+
+    /**
+     * Status changes received since the last {@link #refresh()}.
+     * Can be updated by any thread.
+     */
+    private final ConcurrentMap<UUID, Change> changes = new ConcurrentHashMap<>();
+
+    private final List<Map<Signature, Bucket>> shards = new ArrayList<>();
+    private final Map<UUID, Candidate> candidates = new HashMap<>();
+
+    private volatile int size;
+    private long lastResyncAt;
+    private OffsetDateTime syncedAt;
+
+    @Inject
+    public EnqueuedProcessIndex(ProcessQueueConfiguration cfg,
+                                Dispatcher.DispatcherDao dao,
+                                MetricRegistry metricRegistry) {
+
+        this.enabled = cfg.isDispatcherIndexEnabled();
+        this.resyncInterval = cfg.getDispatcherIndexResyncInterval().toMillis();
+        this.shardCount = Math.max(cfg.getDispatcherShardCount(), 1);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new HashMap<>());
+        }
+        this.dao = dao;
+
+        metricRegistry.gauge("process-queue-dispatcher-index-size", () -> () -> size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        if (!enabled) {
+            return;
+        }
+
+        changes.put(processKey.getInstanceId(), new Change(processKey, status == ProcessStatus.ENQUEUED, System.currentTimeMillis()));
+    }
+
+    /**
+     * Applies the accumulated status changes and, if necessary, catches up
+     * with the processes enqueued by other server instances.
+     */
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        if (now - lastResyncAt >= resyncInterval) {
+            resync();
+            lastResyncAt = now;
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<Change> l = new ArrayList<>(changes.values());
+        l.forEach(c -> changes.remove(c.processKey.getInstanceId(), c));
+
+        List<ProcessKey> added = new ArrayList<>();
+        for (Change c : l) {
+            if (c.enqueued) {
+                added.add(c.processKey);
+            } else {
+                remove(c.processKey);
+            }
+        }
+
+        if (added.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> found = new HashSet<>();
+        for (Candidate c : dao.getEnqueued(added)) {
+            add(c);
+            found.add(c.entry.key().getInstanceId());
+        }
+
+        // the process might not be visible yet, try again later
+        for (Change c : l) {
+            if (c.enqueued && !found.contains(c.processKey.getInstanceId()) && now - c.timestamp < PENDING_GRACE_PERIOD) {
+                changes.putIfAbsent(c.processKey.getInstanceId(), c);
+            }
+        }
+
+        size = candidates.size();
+    }
+
+    /**
+     * @return buckets of the specified {@link DispatcherShards shard}
+     */
+    public Collection<Bucket> buckets(int shard) {
+        return shards.get(shard).values();
+    }
+
+    public void removeAll(Collection<ProcessKey> processKeys) {
+        processKeys.forEach(this::remove);
+        size = candidates.size();
+    }
+
+    private void resync() {
+        OffsetDateTime startedAt = OffsetDateTime.now();
+
+        // load everything on the first run, afterwards fetch only the recently updated processes
+        OffsetDateTime lastUpdatedAt = null;
+        UUID lastInstanceId = null;
+        if (syncedAt != null) {
+            lastUpdatedAt = syncedAt.minusNanos(TimeUnit.MILLISECONDS.toNanos(CATCH_UP_OVERLAP));
+            lastInstanceId = MIN_UUID;
+        }
+
+        while (true) {
+            List<Candidate> l = dao.listEnqueued(lastUpdatedAt, lastInstanceId, RESYNC_BATCH_SIZE);
+            l.forEach(this::add);
+
+            if (l.size() < RESYNC_BATCH_SIZE) {
+                break;
+            }
+
+            Candidate last = l.get(l.size() - 1);
+            lastUpdatedAt = last.lastUpdatedAt;
+            lastInstanceId = last.entry.key().getInstanceId();
+        }
+
+        syncedAt = startedAt;
+        size = candidates.size();
+    }
+
+    private void add(Candidate c) {
+        remove(c.entry.key());
+
+        shardBuckets(c).computeIfAbsent(c.requirements, Bucket::new).candidates.add(c);
+        candidates.put(c.entry.key().getInstanceId(), c);
+    }
+
+    private void remove(ProcessKey processKey) {
+        Candidate c = candidates.remove(processKey.getInstanceId());
+        if (c == null) {
+            return;
+        }
+
+        Map<Signature, Bucket> buckets = shardBuckets(c);
+        Bucket b = buckets.get(c.requirements);
+        if (b == null) {
+            return;
+        }
+
+        b.candidates.remove(c);
+        if (b.candidates.isEmpty()) {
+            buckets.remove(c.requirements);
+        }
+    }
+
+    private Map<Signature, Bucket> shardBuckets(Candidate c) {
+        return shards.get(DispatcherShards.shardOf(c.entry, shardCount));
+    }
+
+    /**
+     * ENQUEUED processes with the same agent requirements, in the dispatch order.
+     */
+    public static final class Bucket {
+
+        private final Signature requirements;
+        private final NavigableSet<Candidate> candidates = new TreeSet<>(Candidate.ORDER);
+
+        private Bucket(Signature requirements) {
+            this.requirements = requirements;
+        }
+
+        public Signature requirements() {
+            return requirements;
+        }
+
+        public Iterator<Candidate> iterator() {
+            return candidates.iterator();
+        }
+    }
+
+    public static final class Candidate {
+
+        /**
+         * Same order as used by {@link Dispatcher.DispatcherDao#next(DSLContext, int, int, int, int)}
+         */
+        public static final Comparator<Candidate> ORDER = Comparator.<Candidate, OffsetDateTime>comparing(c -> c.lastUpdatedAt)
+                .thenComparing(c -> c.entry.key().getInstanceId());
+
+        private final ProcessQueueEntry entry;
+        private final Signature requirements;
+        private final OffsetDateTime lastUpdatedAt;
+        private final OffsetDateTime startAt;
+
+        public Candidate(ProcessQueueEntry entry, OffsetDateTime lastUpdatedAt, OffsetDateTime startAt) {
+            this.entry = entry;
+            this.requirements = Signature.of(Dispatcher.getAgentRequirements(entry));
+            this.lastUpdatedAt = lastUpdatedAt;
+            this.startAt = startAt;
+        }
+
+        public ProcessQueueEntry entry() {
+            return entry;
+        }
+
+        public boolean isReady(OffsetDateTime now) {
+            return startAt == null || !startAt.isAfter(now);
+        }
+    }
+
+    private static final class Change {
+
+        private final ProcessKey processKey;
+        private final boolean enqueued;
+        private final long timestamp;
+
+        private Change(ProcessKey processKey, boolean enqueued, long timestamp) {
+            this.processKey = processKey;
+            this.enqueued = enqueued;
+            this.timestamp = timestamp;
+        }
+    }
+}
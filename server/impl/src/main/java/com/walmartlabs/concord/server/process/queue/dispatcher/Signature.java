@@ -0,0 +1,91 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hashable representation of agent capabilities or process agent requirements.
+ * The hash code is computed once, so the signatures can be cheaply used as map keys.
+ * The wrapped maps must not be modified after the signature is created.
+ * A {@code null} map produces a signature different from an empty map, so
+ * the matching results are the same as for the original values.
+ */
+public final class Signature {
+
+    public static final Signature EMPTY = new Signature(Collections.emptyMap());
+
+    private static final Signature NULL = new Signature(null);
+
+    public static Signature of(Map<String, Object> m) {
+        if (m == null) {
+            return NULL;
+        }
+
+        if (m.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new Signature(m);
+    }
+
+    private final Map<String, Object> value;
+    private final int hashCode;
+
+    private Signature(Map<String, Object> value) {
+        this.value = value;
+        this.hashCode = Objects.hashCode(value);
+    }
+
+    public Map<String, Object> value() {
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return value == null || value.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        Signature that = (Signature) o;
+        return hashCode == that.hashCode && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,121 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.common.CompiledMatcher;
+import com.walmartlabs.concord.common.Matcher;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Matches agent capabilities with process requirements using their {@link Signature signatures}.
+ * The results of {@link Matcher#matches(Object, Object)} are cached, so each unique
+ * capabilities/requirements pair is evaluated only once. The requirements
+ * are compiled with {@link CompiledMatcher} and reused for all agents.
+ */
+@Named
+@Singleton
+public class SignatureMatcher {
+
+    private static final long MAX_CACHE_SIZE = 10 * 1024L;
+
+    private final Cache<Key, Boolean> cache;
+    private final Cache<Signature, CompiledMatcher> requirementsCache;
+
+    @Inject
+    public SignatureMatcher(MetricRegistry metricRegistry) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .recordStats()
+                .build();
+
+        this.requirementsCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .build();
+
+        metricRegistry.gauge("process-queue-dispatcher-signature-cache-hit-rate", () -> () -> cache.stats().hitRate());
+        metricRegistry.gauge("process-queue-dispatcher-signature-cache-size", () -> cache::size);
+    }
+
+    /**
+     * @return {@code true} if an agent with the specified capabilities can
+     * run a process with the specified requirements.
+     */
+    public boolean matches(Signature capabilities, Signature requirements) {
+        if (requirements.isEmpty()) {
+            return true;
+        }
+
+        Key k = new Key(capabilities, requirements);
+
+        Boolean result = cache.getIfPresent(k);
+        if (result == null) {
+            result = compile(requirements).matches(capabilities.value());
+            cache.put(k, result);
+        }
+
+        return result;
+    }
+
+    private CompiledMatcher compile(Signature requirements) {
+        CompiledMatcher result = requirementsCache.getIfPresent(requirements);
+        if (result == null) {
+            result = CompiledMatcher.compile(requirements.value());
+            requirementsCache.put(requirements, result);
+        }
+        return result;
+    }
+
+    private static final class Key {
+
+        private final Signature capabilities;
+        private final Signature requirements;
+
+        private Key(Signature capabilities, Signature requirements) {
+            this.capabilities = capabilities;
+            this.requirements = requirements;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return capabilities.equals(key.capabilities) && requirements.equals(key.requirements);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * capabilities.hashCode() + requirements.hashCode();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.MoreFiles;
+import com.walmartlabs.concord.db.PgUtils;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_STATE_BLOBS;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Content-addressed storage of process state items. Items with the same content
+ * are stored once in {@code PROCESS_STATE_BLOBS} and referenced by their SHA-256 hash
+ * from {@code PROCESS_STATE} and {@code PROCESS_INITIAL_STATE}.
+ * <p>
+ * Unreferenced blobs are removed by {@link com.walmartlabs.concord.server.process.ProcessCleaner}.
+ */
+final class ProcessStateBlobs {
+
+    public static String hash(byte[] ab) {
+        return Hashing.sha256().hashBytes(ab).toString();
+    }
+
+    /**
+     * Hashes the file without reading it into memory.
+     */
+    public static String hash(Path p) throws IOException {
+        return MoreFiles.asByteSource(p).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Stores the specified blobs, skipping the ones that already exist.
+     * The existing blobs are "touched" to prevent the cleaner from removing them
+     * before the new references are committed.
+     * <p>
+     * The data of the new blobs is streamed into the DB and verified against the hash.
+     */
+    public static void store(DSLContext tx, Map<String, Blob> blobs) {
+        if (blobs.isEmpty()) {
+            return;
+        }
+
+        Set<String> existing = new HashSet<>(tx.update(PROCESS_STATE_BLOBS)
+                .set(PROCESS_STATE_BLOBS.LAST_USED_AT, currentOffsetDateTime())
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(blobs.keySet()))
+                .returning(PROCESS_STATE_BLOBS.BLOB_HASH)
+                .fetch()
+                .getValues(PROCESS_STATE_BLOBS.BLOB_HASH));
+
+        if (existing.size() == blobs.size()) {
+            return;
+        }
+
+        // another process can store the same blob concurrently
+        String sql = tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_DATA, PROCESS_STATE_BLOBS.BLOB_SIZE)
+                .values((String) null, null, null)
+                .onConflictDoNothing()
+                .getSQL();
+
+        Map<String, HashingInputStream> streams = new HashMap<>();
+        try {
+            tx.connection(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (Map.Entry<String, Blob> e : blobs.entrySet()) {
+                        String hash = e.getKey();
+                        if (existing.contains(hash)) {
+                            continue;
+                        }
+
+                        Blob b = e.getValue();
+
+                        HashingInputStream in = new HashingInputStream(Hashing.sha256(), b.open());
+                        streams.put(hash, in);
+
+                        ps.setString(1, hash);
+                        ps.setBinaryStream(2, in, b.size());
+                        ps.setLong(3, b.size());
+                        ps.addBatch();
+                    }
+
+                    ps.executeBatch();
+                }
+            });
+
+            // protects from the files modified after they were hashed
+            for (Map.Entry<String, HashingInputStream> e : streams.entrySet()) {
+                String actual = e.getValue().hash().toString();
+                if (!actual.equals(e.getKey())) {
+                    throw new IllegalStateException("Blob content mismatch: expected " + e.getKey() + ", got " + actual);
+                }
+            }
+        } finally {
+            streams.values().forEach(ProcessStateBlobs::closeSilently);
+        }
+    }
+
+    /**
+     * @return the item's data, either inline or from the referenced blob.
+     */
+    public static Field<byte[]> data(Field<byte[]> itemData, Field<String> blobHash) {
+        return coalesce(itemData, field(select(PROCESS_STATE_BLOBS.BLOB_DATA)
+                .from(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.eq(blobHash))));
+    }
+
+    /**
+     * @return the item's size, either inline or from the referenced blob.
+     */
+    public static Field<Long> size(Field<byte[]> itemData, Field<String> blobHash) {
+        return coalesce(PgUtils.length(itemData), field(select(PROCESS_STATE_BLOBS.BLOB_SIZE)
+                .from(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.eq(blobHash))));
+    }
+
+    private static void closeSilently(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private ProcessStateBlobs() {
+    }
+
+    /**
+     * The data of a blob. Opened only if the blob doesn't exist yet.
+     */
+    public record Blob(long size, Opener opener) {
+
+        public static Blob of(byte[] ab) {
+            return new Blob(ab.length, () -> new ByteArrayInputStream(ab));
+        }
+
+        public static Blob of(Path p, long size) {
+            return new Blob(size, () -> Files.newInputStream(p));
+        }
+
+        InputStream open() throws IOException {
+            return opener.open();
+        }
+    }
+
+    public interface Opener {
+
+        InputStream open() throws IOException;
+    }
+}
@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process.state;
  * =====
  */
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.common.secret.SecretUtils;
@@ -36,6 +37,7 @@ import com.walmartlabs.concord.server.policy.PolicyException;
 import com.walmartlabs.concord.server.policy.PolicyManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogManager;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
+import com.walmartlabs.concord.server.sdk.BackgroundTask;
 import com.walmartlabs.concord.server.sdk.PartialProcessKey;
 import com.walmartlabs.concord.server.sdk.ProcessKey;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
@@ -47,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -56,10 +59,17 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_INITIAL_STATE;
@@ -68,12 +78,24 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_ST
 import static com.walmartlabs.concord.server.jooq.tables.Projects.PROJECTS;
 import static org.jooq.impl.DSL.*;
 
-public class ProcessStateManager extends AbstractDao {
+public class ProcessStateManager extends AbstractDao implements BackgroundTask {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessStateManager.class);
 
     private static final String PATH_SEPARATOR = "/";
-    private static final int INSERT_BATCH_SIZE = 10;
+
+    /**
+     * Max number of items in a single insert batch.
+     * The batches are also limited by size, see {@link #maxBatchSize}.
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final long DEFAULT_MAX_BATCH_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Max number of paths in a single "ITEM_PATH in (...)" condition.
+     */
+    private static final int PATHS_PER_QUERY = 1000;
+    private static final int EXPORT_FETCH_SIZE = 16;
 
     private final SecretStoreConfiguration secretCfg;
     private final PolicyManager policyManager;
@@ -82,6 +104,14 @@ public class ProcessStateManager extends AbstractDao {
 
     private final Set<String> secureFiles;
 
+    private final int parallelism;
+    private final int parallelMinItems;
+    private final long maxBatchSize;
+    private final ExecutorService transferExecutor;
+
+    private final boolean dedupEnabled;
+    private final long dedupMinSize;
+
     @Inject
     protected ProcessStateManager(@MainDB Configuration cfg,
                                   SecretStoreConfiguration secretCfg,
@@ -96,6 +126,32 @@ public class ProcessStateManager extends AbstractDao {
         this.processKeyCache = processKeyCache;
 
         this.secureFiles = Collections.unmodifiableSet(new HashSet<>(stateCfg.getSecureFiles()));
+
+        this.parallelism = stateCfg.getStateTransferParallelism();
+        this.parallelMinItems = stateCfg.getStateTransferMinItems();
+        this.maxBatchSize = stateCfg.getStateTransferMaxBatchSize() > 0 ? stateCfg.getStateTransferMaxBatchSize() : DEFAULT_MAX_BATCH_SIZE;
+
+        // shared by all exports/imports, limits the number of DB connections used for parallel exports
+        this.transferExecutor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("process-state-transfer-%d").setDaemon(true).build()) : null;
+
+        this.dedupEnabled = stateCfg.isStateDedupEnabled();
+        this.dedupMinSize = stateCfg.getStateDedupMinSize();
+    }
+
+    @Override
+    public void stop() {
+        if (transferExecutor == null) {
+            return;
+        }
+
+        transferExecutor.shutdownNow();
+
+        try {
+            transferExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -128,7 +184,7 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private <T> Optional<T> doGet(DSLContext tx, ProcessStateTable table, ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
-        String sql = tx.select(table.IS_ENCRYPTED(), table.ITEM_DATA())
+        String sql = tx.select(table.IS_ENCRYPTED(), itemData(table))
                 .from(table.table())
                 .where(table.INSTANCE_ID().eq((UUID) null)
                         .and(table.INSTANCE_CREATED_AT().eq((OffsetDateTime) null))
@@ -162,7 +218,7 @@ public class ProcessStateManager extends AbstractDao {
     public <T> List<T> forEach(ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
         DSLContext tx = dsl();
 
-        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
+        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, itemData(CurrentProcessStateTable.INSTANCE))
                 .from(PROCESS_STATE)
                 .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                         .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((OffsetDateTime) null))
@@ -299,12 +355,27 @@ public class ProcessStateManager extends AbstractDao {
         if (needEncrypt) {
             data = encrypt(in);
         }
+
+        String blobHash = null;
+        if (isDedupCandidate(needEncrypt, in.length)) {
+            blobHash = ProcessStateBlobs.hash(in);
+            ProcessStateBlobs.store(tx, Collections.singletonMap(blobHash, ProcessStateBlobs.Blob.of(in)));
+            data = null;
+        }
+
         tx.insertInto(table.table())
-                .columns(table.INSTANCE_ID(), table.INSTANCE_CREATED_AT(), table.ITEM_PATH(), table.ITEM_DATA(), table.IS_ENCRYPTED())
-                .values(processKey.getInstanceId(), processKey.getCreatedAt(), path, data, needEncrypt)
+                .columns(table.INSTANCE_ID(), table.INSTANCE_CREATED_AT(), table.ITEM_PATH(), table.ITEM_DATA(), table.IS_ENCRYPTED(), table.BLOB_HASH())
+                .values(processKey.getInstanceId(), processKey.getCreatedAt(), path, data, needEncrypt, blobHash)
                 .execute();
     }
 
+    /**
+     * Encrypted items are always stored inline. Small items are cheaper to store inline too.
+     */
+    private boolean isDedupCandidate(boolean encrypted, long size) {
+        return dedupEnabled && !encrypted && size >= dedupMinSize;
+    }
+
     /**
      * Imports data from the specified directory or a file replacing the existing data.
      * If the filter function returns {@code false}, the matching file will be skipped.
@@ -340,9 +411,38 @@ public class ProcessStateManager extends AbstractDao {
     private void doImportPath(DSLContext tx, ProcessStateTable table, ProcessKey processKey, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
         PolicyEngine policyEngine = assertPolicy(tx, processKey, src, filter);
 
+        long t1 = System.currentTimeMillis();
+
+        List<BatchItem> items = collectItems(path, src, filter);
+
+        long t2 = System.currentTimeMillis();
+
+        deleteItems(tx, table, processKey, items);
+
+        long t3 = System.currentTimeMillis();
+
+        List<List<BatchItem>> batches = toBatches(items);
+        boolean parallel = transferExecutor != null && items.size() >= parallelMinItems && batches.size() > 1;
+        if (parallel) {
+            insertParallel(tx, table, processKey, batches);
+        } else {
+            for (List<BatchItem> batch : batches) {
+                doInsert(tx, table, processKey.getInstanceId(), processKey.getCreatedAt(), batch, null);
+            }
+        }
+
+        long t4 = System.currentTimeMillis();
+
+        logTimings(parallel, "importPath ['{}', '{}'] -> {} item(s), {} batch(es), parallel: {}, walk: {}ms, delete: {}ms, insert: {}ms",
+                processKey, path, items.size(), batches.size(), parallel, (t2 - t1), (t3 - t2), (t4 - t3));
+
+        assertPolicy(tx, processKey, policyEngine);
+    }
+
+    private List<BatchItem> collectItems(String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
         String prefix = fixPath(path);
 
-        List<BatchItem> batch = new ArrayList<>();
+        List<BatchItem> items = new ArrayList<>();
         try {
             Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
                 @Override
@@ -369,39 +469,101 @@ public class ProcessStateManager extends AbstractDao {
                     int unixMode = Posix.unixMode(permissions);
                     boolean needsEncryption = secureFiles.contains(n);
 
-                    tx.deleteFrom(table.table()).where(table.INSTANCE_ID().eq(processKey.getInstanceId())
-                                    .and(table.INSTANCE_CREATED_AT().eq(processKey.getCreatedAt()))
-                                    .and(table.ITEM_PATH().eq(n)))
-                            .execute();
-
-                    batch.add(new BatchItem(n, file, unixMode, needsEncryption));
-                    if (batch.size() >= INSERT_BATCH_SIZE) {
-                        doInsert(tx, table, processKey.getInstanceId(), processKey.getCreatedAt(), batch);
-                        batch.clear();
-                    }
+                    items.add(new BatchItem(n, file, unixMode, needsEncryption, attrs.size()));
 
                     return FileVisitResult.CONTINUE;
                 }
             });
-
-            if (!batch.isEmpty()) {
-                doInsert(tx, table, processKey.getInstanceId(), processKey.getCreatedAt(), batch);
-            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        assertPolicy(tx, processKey, policyEngine);
+        return items;
+    }
+
+    private static void deleteItems(DSLContext tx, ProcessStateTable table, ProcessKey processKey, List<BatchItem> items) {
+        for (int i = 0; i < items.size(); i += PATHS_PER_QUERY) {
+            List<String> paths = items.subList(i, Math.min(i + PATHS_PER_QUERY, items.size())).stream()
+                    .map(item -> item.itemPath)
+                    .collect(Collectors.toList());
+
+            tx.deleteFrom(table.table()).where(table.INSTANCE_ID().eq(processKey.getInstanceId())
+                            .and(table.INSTANCE_CREATED_AT().eq(processKey.getCreatedAt()))
+                            .and(table.ITEM_PATH().in(paths)))
+                    .execute();
+        }
+    }
+
+    /**
+     * Splits the items into batches limited by the number of items and by their total size.
+     */
+    private List<List<BatchItem>> toBatches(List<BatchItem> items) {
+        List<List<BatchItem>> result = new ArrayList<>();
+
+        List<BatchItem> batch = new ArrayList<>();
+        long batchSize = 0;
+        for (BatchItem item : items) {
+            if (!batch.isEmpty() && (batch.size() >= INSERT_BATCH_SIZE || batchSize + item.size > maxBatchSize)) {
+                result.add(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+
+            batch.add(item);
+            batchSize += item.size;
+        }
+
+        if (!batch.isEmpty()) {
+            result.add(batch);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads (and encrypts, if needed) the next batches using {@link #transferExecutor}
+     * while the current batch is being inserted. At most {@link #parallelism} batches
+     * are kept in memory.
+     */
+    private void insertParallel(DSLContext tx, ProcessStateTable table, ProcessKey processKey, List<List<BatchItem>> batches) {
+        Deque<Future<List<byte[]>>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        try {
+            for (List<BatchItem> batch : batches) {
+                while (next < batches.size() && inFlight.size() < parallelism) {
+                    List<BatchItem> b = batches.get(next++);
+                    inFlight.add(transferExecutor.submit(() -> readBatch(b)));
+                }
+
+                List<byte[]> data = await(inFlight.remove());
+                doInsert(tx, table, processKey.getInstanceId(), processKey.getCreatedAt(), batch, data);
+            }
+        } finally {
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private List<byte[]> readBatch(List<BatchItem> batch) throws IOException {
+        List<byte[]> result = new ArrayList<>(batch.size());
+        for (BatchItem item : batch) {
+            byte[] ab = Files.readAllBytes(item.path);
+            result.add(item.needsEncryption ? encrypt(ab) : ab);
+        }
+        return result;
     }
 
     /**
      * Exports all data of a process instance.
      */
     public boolean export(ProcessKey processKey, ItemConsumer consumer) {
+        if (isParallel(consumer)) {
+            return doExportParallel(CurrentProcessStateTable.INSTANCE, processKey, null, consumer);
+        }
+
         DSLContext tx = dsl();
 
         String sql = tx
-                .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
+                .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, itemData(CurrentProcessStateTable.INSTANCE))
                 .from(PROCESS_STATE)
                 .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null).and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((OffsetDateTime) null)))
                 .getSQL();
@@ -431,6 +593,68 @@ public class ProcessStateManager extends AbstractDao {
         });
     }
 
+    /**
+     * Lists the process state items ordered by path. The items stored
+     * in {@code PROCESS_STATE_BLOBS} have their content hash set.
+     * Every item has a digest of its content, see {@link StateItem#digest()}.
+     */
+    public List<StateItem> list(ProcessKey processKey) {
+        Field<String> digest = coalesce(PROCESS_STATE.BLOB_HASH, function("md5", String.class, PROCESS_STATE.ITEM_DATA));
+
+        return dsl().select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, itemSize(CurrentProcessStateTable.INSTANCE), PROCESS_STATE.BLOB_HASH, digest)
+                .from(PROCESS_STATE)
+                .where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                        .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
+                .orderBy(PROCESS_STATE.ITEM_PATH)
+                .fetch(r -> new StateItem(r.value1(),
+                        r.value2() != null ? r.value2() : 0,
+                        r.value3() != null ? r.value3() : 0,
+                        r.value4(),
+                        r.value5()));
+    }
+
+    /**
+     * Same as {@link #export(ProcessKey, ItemConsumer)}, but the items are
+     * always exported one by one in the path order, i.e. the same state is
+     * always exported the same way. Items stored in {@code PROCESS_STATE_BLOBS}
+     * with the specified hashes are skipped.
+     */
+    public boolean exportOrdered(ProcessKey processKey, Set<String> excludeHashes, ItemConsumer consumer) {
+        Condition condition = PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        if (!excludeHashes.isEmpty()) {
+            condition = condition.and(PROCESS_STATE.BLOB_HASH.isNull().or(PROCESS_STATE.BLOB_HASH.notIn(excludeHashes)));
+        }
+
+        Condition finalCondition = condition;
+        return txResult(tx -> {
+            boolean found = false;
+
+            // cursors require a transaction
+            try (Cursor<Record4<String, Short, Boolean, byte[]>> cursor = tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, itemData(CurrentProcessStateTable.INSTANCE))
+                    .from(PROCESS_STATE)
+                    .where(finalCondition)
+                    .orderBy(PROCESS_STATE.ITEM_PATH)
+                    .fetchSize(EXPORT_FETCH_SIZE)
+                    .fetchLazy()) {
+
+                for (Record4<String, Short, Boolean, byte[]> r : cursor) {
+                    found = true;
+
+                    int unixMode = r.value2() != null ? r.value2() : 0;
+                    boolean encrypted = Boolean.TRUE.equals(r.value3());
+                    try (InputStream in = new ByteArrayInputStream(r.value4());
+                         InputStream processed = encrypted ? decrypt(in) : in) {
+                        consumer.accept(r.value1(), unixMode, processed);
+                    }
+                }
+            }
+
+            return found;
+        });
+    }
+
     /**
      * Exports elements whose path begins with the specified value.
      */
@@ -445,10 +669,14 @@ public class ProcessStateManager extends AbstractDao {
     public boolean doExportDirectory(ProcessStateTable table, ProcessKey processKey, String path, ItemConsumer consumer) {
         String dir = fixPath(path);
 
+        if (isParallel(consumer)) {
+            return doExportParallel(table, processKey, dir, consumer);
+        }
+
         DSLContext tx = dsl();
 
         String sql = tx
-                .select(table.ITEM_PATH(), table.UNIX_MODE(), table.IS_ENCRYPTED(), table.ITEM_DATA())
+                .select(table.ITEM_PATH(), table.UNIX_MODE(), table.IS_ENCRYPTED(), itemData(table))
                 .from(table.table())
                 .where(table.INSTANCE_ID().eq((UUID) null)
                         .and(table.INSTANCE_CREATED_AT().eq((OffsetDateTime) null))
@@ -481,6 +709,143 @@ public class ProcessStateManager extends AbstractDao {
         });
     }
 
+    private boolean isParallel(ItemConsumer consumer) {
+        return transferExecutor != null && consumer.isConcurrent();
+    }
+
+    /**
+     * Exports the items using multiple threads. The items are partitioned by path
+     * into groups of roughly the same total size, each group is fetched using
+     * a separate connection and passed to the consumer concurrently.
+     */
+    private boolean doExportParallel(ProcessStateTable table, ProcessKey processKey, String dir, ItemConsumer consumer) {
+        long t1 = System.currentTimeMillis();
+
+        Condition condition = table.INSTANCE_ID().eq(processKey.getInstanceId())
+                .and(table.INSTANCE_CREATED_AT().eq(processKey.getCreatedAt()));
+        if (dir != null) {
+            condition = condition.and(table.ITEM_PATH().startsWith(dir));
+        }
+
+        Field<Long> size = itemSize(table);
+        List<ItemInfo> items = dsl().select(table.ITEM_PATH(), size)
+                .from(table.table())
+                .where(condition)
+                .fetch(r -> new ItemInfo(r.value1(), r.value2() != null ? r.value2() : 0));
+
+        if (items.isEmpty()) {
+            return false;
+        }
+
+        long t2 = System.currentTimeMillis();
+
+        List<List<String>> partitions = items.size() >= parallelMinItems ? partition(items, parallelism) : partition(items, 1);
+        if (partitions.size() == 1) {
+            exportPartition(table, processKey, dir, partitions.get(0), consumer);
+        } else {
+            List<Future<?>> futures = new ArrayList<>(partitions.size());
+            try {
+                for (List<String> p : partitions) {
+                    futures.add(transferExecutor.submit(() -> exportPartition(table, processKey, dir, p, consumer)));
+                }
+
+                for (Future<?> f : futures) {
+                    await(f);
+                }
+            } finally {
+                futures.forEach(f -> f.cancel(true));
+            }
+        }
+
+        long t3 = System.currentTimeMillis();
+
+        logTimings(partitions.size() > 1, "export ['{}', '{}'] -> {} item(s), {} partition(s), list: {}ms, transfer: {}ms",
+                processKey, dir, items.size(), partitions.size(), (t2 - t1), (t3 - t2));
+
+        return true;
+    }
+
+    private void exportPartition(ProcessStateTable table, ProcessKey processKey, String dir, List<String> paths, ItemConsumer consumer) {
+        for (int i = 0; i < paths.size(); i += PATHS_PER_QUERY) {
+            List<String> chunk = paths.subList(i, Math.min(i + PATHS_PER_QUERY, paths.size()));
+
+            // cursors require a transaction
+            tx(tx -> {
+                try (Cursor<Record4<String, Short, Boolean, byte[]>> cursor = tx.select(table.ITEM_PATH(), table.UNIX_MODE(), table.IS_ENCRYPTED(), itemData(table))
+                        .from(table.table())
+                        .where(table.INSTANCE_ID().eq(processKey.getInstanceId())
+                                .and(table.INSTANCE_CREATED_AT().eq(processKey.getCreatedAt()))
+                                .and(table.ITEM_PATH().in(chunk)))
+                        .fetchSize(EXPORT_FETCH_SIZE)
+                        .fetchLazy()) {
+
+                    for (Record4<String, Short, Boolean, byte[]> r : cursor) {
+                        String n = dir != null ? relativize(dir, r.value1()) : r.value1();
+                        int unixMode = r.value2() != null ? r.value2() : 0;
+                        boolean encrypted = Boolean.TRUE.equals(r.value3());
+                        try (InputStream in = new ByteArrayInputStream(r.value4());
+                             InputStream processed = encrypted ? decrypt(in) : in) {
+                            consumer.accept(n, unixMode, processed);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Distributes the items into {@code n} partitions of roughly the same total size.
+     */
+    static List<List<String>> partition(List<ItemInfo> items, int n) {
+        List<ItemInfo> sorted = new ArrayList<>(items);
+        sorted.sort((a, b) -> Long.compare(b.size(), a.size()));
+
+        int count = Math.max(1, Math.min(n, sorted.size()));
+        List<List<String>> result = new ArrayList<>(count);
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            result.add(new ArrayList<>());
+        }
+
+        for (ItemInfo item : sorted) {
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+
+            result.get(smallest).add(item.path());
+            sizes[smallest] += item.size();
+        }
+
+        result.forEach(Collections::sort);
+        return result;
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static void logTimings(boolean parallel, String msg, Object... args) {
+        if (parallel) {
+            log.info(msg, args);
+        } else {
+            log.debug(msg, args);
+        }
+    }
+
     /**
      * Copies the data to the specified target directory.
      *
@@ -508,7 +873,15 @@ public class ProcessStateManager extends AbstractDao {
      * @param dst archive stream.
      */
     public static ItemConsumer zipTo(ZipArchiveOutputStream dst) {
-        return new ZipConsumer(dst);
+        return new ZipConsumer(dst, null);
+    }
+
+    /**
+     * Same as {@link #zipTo(ZipArchiveOutputStream)}, but all entries have
+     * the specified modification time.
+     */
+    public static ItemConsumer zipTo(ZipArchiveOutputStream dst, long entryTime) {
+        return new ZipConsumer(dst, entryTime);
     }
 
     public static ItemConsumer exclude(ItemConsumer delegate, String... patterns) {
@@ -529,17 +902,25 @@ public class ProcessStateManager extends AbstractDao {
                 .execute();
     }
 
-    private void insert(DSLContext tx, UUID instanceId, OffsetDateTime instanceCreatedAt, Collection<BatchItem> batch) {
-        String sql = tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values((UUID) null, null, null, null, null, null)
+    /**
+     * @param prepared the items' data (already encrypted, if needed). If {@code null}
+     *                 the data is streamed from the items' files.
+     */
+    private void doInsert(DSLContext tx, ProcessStateTable table, UUID instanceId, OffsetDateTime instanceCreatedAt, List<BatchItem> batch, List<byte[]> prepared) {
+        String sql = tx.insertInto(table.table())
+                .columns(table.INSTANCE_ID(), table.INSTANCE_CREATED_AT(), table.ITEM_PATH(), table.UNIX_MODE(), table.ITEM_DATA(), table.IS_ENCRYPTED(), table.BLOB_HASH())
+                .values((UUID) null, null, null, null, null, null, null)
                 .getSQL();
 
+        String[] blobHashes = storeBlobs(tx, batch, prepared);
+
         List<InputStream> streams = new LinkedList<>();
         try {
             tx.connection(conn -> {
                 try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    for (BatchItem item : batch) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        BatchItem item = batch.get(i);
+
                         // INSTANCE_ID
                         ps.setObject(1, instanceId);
 
@@ -552,19 +933,28 @@ public class ProcessStateManager extends AbstractDao {
                         // UNIX_MODE
                         ps.setInt(4, item.unixMode);
 
-                        InputStream in = Files.newInputStream(item.path);
-                        streams.add(in); // keep the streams open until the batch is committed
-
-                        if (item.needsEncryption) {
-                            in = encrypt(in);
-                        }
-
                         // ITEM_DATA
-                        ps.setBinaryStream(5, in);
+                        if (blobHashes[i] != null) {
+                            ps.setNull(5, Types.BINARY);
+                        } else if (prepared != null) {
+                            ps.setBytes(5, prepared.get(i));
+                        } else {
+                            InputStream in = Files.newInputStream(item.path);
+                            streams.add(in); // keep the streams open until the batch is committed
+
+                            if (item.needsEncryption) {
+                                in = encrypt(in);
+                            }
+
+                            ps.setBinaryStream(5, in);
+                        }
 
                         // IS_ENCRYPTED
                         ps.setBoolean(6, item.needsEncryption);
 
+                        // BLOB_HASH
+                        ps.setString(7, blobHashes[i]);
+
                         ps.addBatch();
                     }
 
@@ -578,53 +968,49 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
-    private void doInsert(DSLContext tx, ProcessStateTable table, UUID instanceId, OffsetDateTime instanceCreatedAt, Collection<BatchItem> batch) {
-        String sql = tx.insertInto(table.table())
-                .columns(table.INSTANCE_ID(), table.INSTANCE_CREATED_AT(), table.ITEM_PATH(), table.UNIX_MODE(), table.ITEM_DATA(), table.IS_ENCRYPTED())
-                .values((UUID) null, null, null, null, null, null)
-                .getSQL();
-
-        List<InputStream> streams = new LinkedList<>();
-        try {
-            tx.connection(conn -> {
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    for (BatchItem item : batch) {
-                        // INSTANCE_ID
-                        ps.setObject(1, instanceId);
-
-                        // INSTANCE_CREATED_AT
-                        ps.setObject(2, instanceCreatedAt);
-
-                        // ITEM_PATH
-                        ps.setString(3, item.itemPath);
-
-                        // UNIX_MODE
-                        ps.setInt(4, item.unixMode);
-
-                        InputStream in = Files.newInputStream(item.path);
-                        streams.add(in); // keep the streams open until the batch is committed
-
-                        if (item.needsEncryption) {
-                            in = encrypt(in);
-                        }
-
-                        // ITEM_DATA
-                        ps.setBinaryStream(5, in);
-
-                        // IS_ENCRYPTED
-                        ps.setBoolean(6, item.needsEncryption);
+    /**
+     * Stores the batch's deduplication candidates in {@link ProcessStateBlobs}.
+     *
+     * @return the blob hashes of the stored items, {@code null} for the items stored inline.
+     */
+    private String[] storeBlobs(DSLContext tx, List<BatchItem> batch, List<byte[]> prepared) {
+        String[] result = new String[batch.size()];
+        if (!dedupEnabled) {
+            return result;
+        }
 
-                        ps.addBatch();
-                    }
+        Map<String, ProcessStateBlobs.Blob> blobs = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            BatchItem item = batch.get(i);
+            if (!isDedupCandidate(item.needsEncryption, item.size)) {
+                continue;
+            }
 
-                    ps.executeBatch();
-                } catch (SQLException e) {
+            if (prepared != null) {
+                byte[] ab = prepared.get(i);
+                result[i] = ProcessStateBlobs.hash(ab);
+                blobs.putIfAbsent(result[i], ProcessStateBlobs.Blob.of(ab));
+            } else {
+                // large files are never loaded into memory
+                try {
+                    result[i] = ProcessStateBlobs.hash(item.path);
+                } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
-            });
-        } finally {
-            streams.forEach(ProcessStateManager::closeSilently);
+                blobs.putIfAbsent(result[i], ProcessStateBlobs.Blob.of(item.path, item.size));
+            }
         }
+
+        ProcessStateBlobs.store(tx, blobs);
+        return result;
+    }
+
+    private static Field<byte[]> itemData(ProcessStateTable table) {
+        return ProcessStateBlobs.data(table.ITEM_DATA(), table.BLOB_HASH());
+    }
+
+    private static Field<Long> itemSize(ProcessStateTable table) {
+        return ProcessStateBlobs.size(table.ITEM_DATA(), table.BLOB_HASH());
     }
 
     private InputStream decrypt(InputStream in) {
@@ -698,7 +1084,7 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private static StatePolicy.StateStats getStateStats(DSLContext tx, ProcessKey processKey) {
-        return tx.select(DSL.sum(PgUtils.length(PROCESS_STATE.ITEM_DATA)), count(PROCESS_STATE.ITEM_DATA))
+        return tx.select(DSL.sum(itemSize(CurrentProcessStateTable.INSTANCE)), count())
                 .from(PROCESS_STATE)
                 .where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
                         .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
@@ -743,6 +1129,14 @@ public class ProcessStateManager extends AbstractDao {
     public interface ItemConsumer {
 
         void accept(String name, int unixMode, InputStream src);
+
+        /**
+         * @return {@code true} if the consumer can accept items from multiple threads.
+         * Such consumers can be used for parallel exports.
+         */
+        default boolean isConcurrent() {
+            return false;
+        }
     }
 
     public static final class CopyConsumer implements ItemConsumer {
@@ -784,20 +1178,30 @@ public class ProcessStateManager extends AbstractDao {
                 throw new RuntimeException(e);
             }
         }
+
+        @Override
+        public boolean isConcurrent() {
+            return true;
+        }
     }
 
     public static final class ZipConsumer implements ItemConsumer {
 
         private final ZipArchiveOutputStream dst;
+        private final Long entryTime;
 
-        private ZipConsumer(ZipArchiveOutputStream dst) {
+        private ZipConsumer(ZipArchiveOutputStream dst, Long entryTime) {
             this.dst = dst;
+            this.entryTime = entryTime;
         }
 
         @Override
         public void accept(String name, int unixMode, InputStream src) {
             ZipArchiveEntry entry = new ZipArchiveEntry(name);
             entry.setUnixMode(unixMode);
+            if (entryTime != null) {
+                entry.setTime(entryTime);
+            }
 
             try {
                 dst.putArchiveEntry(entry);
@@ -825,6 +1229,11 @@ public class ProcessStateManager extends AbstractDao {
                 delegate.accept(name, unixMode, src);
             }
         }
+
+        @Override
+        public boolean isConcurrent() {
+            return delegate.isConcurrent();
+        }
     }
 
     private static final class BatchItem {
@@ -833,15 +1242,29 @@ public class ProcessStateManager extends AbstractDao {
         private final Path path;
         private final int unixMode;
         private final boolean needsEncryption;
+        private final long size;
 
-        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption) {
+        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption, long size) {
             this.itemPath = itemPath;
             this.path = path;
             this.unixMode = unixMode;
             this.needsEncryption = needsEncryption;
+            this.size = size;
         }
     }
 
+    record ItemInfo(String path, long size) {
+    }
+
+    /**
+     * @param hash   SHA-256 of the item's data if the item is stored in
+     *               {@code PROCESS_STATE_BLOBS}, {@code null} otherwise
+     * @param digest {@code hash} for the items stored in {@code PROCESS_STATE_BLOBS},
+     *               MD5 of the stored data otherwise. Changes whenever the content changes
+     */
+    public record StateItem(String path, int unixMode, long size, String hash, String digest) {
+    }
+
     private interface ProcessStateTable {
 
         Table<?> table();
@@ -857,6 +1280,8 @@ public class ProcessStateManager extends AbstractDao {
         TableField<?, Short> UNIX_MODE();
 
         TableField<?, Boolean> IS_ENCRYPTED();
+
+        TableField<?, String> BLOB_HASH();
     }
 
 
@@ -898,6 +1323,11 @@ public class ProcessStateManager extends AbstractDao {
         public TableField<?, Boolean> IS_ENCRYPTED() {
             return PROCESS_INITIAL_STATE.IS_ENCRYPTED;
         }
+
+        @Override
+        public TableField<?, String> BLOB_HASH() {
+            return PROCESS_INITIAL_STATE.BLOB_HASH;
+        }
     }
 
     static class CurrentProcessStateTable implements ProcessStateTable {
@@ -938,5 +1368,10 @@ public class ProcessStateManager extends AbstractDao {
         public TableField<?, Boolean> IS_ENCRYPTED() {
             return PROCESS_STATE.IS_ENCRYPTED;
         }
+
+        @Override
+        public TableField<?, String> BLOB_HASH() {
+            return PROCESS_STATE.BLOB_HASH;
+        }
     }
 }
@@ -31,6 +31,7 @@ import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.sdk.rest.Resource;
 import com.walmartlabs.concord.server.sdk.validation.Validate;
 import com.walmartlabs.concord.server.sdk.validation.ValidationErrorsException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UnauthorizedException;
 import com.walmartlabs.concord.server.user.RoleEntry;
@@ -53,11 +54,13 @@ public class RoleResource implements Resource {
 
     private final RoleDao roleDao;
     private final AuditLog auditLog;
+    private final AuthenticationCache authCache;
 
     @Inject
-    public RoleResource(RoleDao roleDao, AuditLog auditLog) {
+    public RoleResource(RoleDao roleDao, AuditLog auditLog, AuthenticationCache authCache) {
         this.roleDao = roleDao;
         this.auditLog = auditLog;
+        this.authCache = authCache;
     }
 
     @GET
@@ -111,6 +114,8 @@ public class RoleResource implements Resource {
             return new RoleOperationResponse(id, OperationResult.CREATED);
         } else {
             roleDao.update(id, entry.getName(), entry.getPermissions());
+            // the roles and permissions are part of the cached principals
+            authCache.invalidateAll();
 
             auditLog.add(AuditObject.ROLE, AuditAction.UPDATE)
                     .field("roleId", id)
@@ -135,6 +140,7 @@ public class RoleResource implements Resource {
         }
 
         roleDao.delete(id);
+        authCache.invalidateAll();
 
         auditLog.add(AuditObject.ROLE, AuditAction.DELETE)
                 .field("roleId", id)
@@ -181,6 +187,7 @@ public class RoleResource implements Resource {
                 roleDao.upsertLdapGroup(tx, id, g);
             }
         });
+        authCache.invalidateAll();
 
         auditLog.add(AuditObject.ROLE, AuditAction.UPDATE)
                 .field("roleId", id)
@@ -0,0 +1,245 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.server.cfg.AuthCacheConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessStatusListener;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyUtils;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.jooq.DSLContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the API key and session key authentication results.
+ * <p>
+ * Entries are invalidated when the process finishes, the user is disabled
+ * or deleted and when the API key is deleted. Those changes made on other
+ * server instances are picked up when the entries expire.
+ * <p>
+ * {@code null} results (e.g. unknown keys) are not cached.
+ */
+@Named
+@Singleton
+public class AuthenticationCache implements ProcessStatusListener {
+
+    private static final Set<ProcessStatus> FINISHED_STATUSES = Set.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    private final boolean enabled;
+
+    /**
+     * API key hash -> key.
+     */
+    private final Cache<String, ApiKeyEntry> apiKeys;
+
+    /**
+     * API key ID -> principal of the key's owner.
+     */
+    private final Cache<UUID, UserPrincipal> apiKeyPrincipals;
+
+    /**
+     * Process instance ID -> principals of the process' session key.
+     */
+    private final Cache<UUID, PrincipalCollection> sessionKeyPrincipals;
+
+    /**
+     * Recently finished processes. The status change notifications are
+     * received before the transaction is committed, so the results for those
+     * processes are not cached for a while.
+     */
+    private final Cache<UUID, Boolean> finishedProcesses;
+
+    /**
+     * Incremented on every invalidation. Results loaded concurrently with an
+     * invalidation are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    public AuthenticationCache(AuthCacheConfiguration cfg, MetricRegistry metricRegistry) {
+        this.enabled = cfg.isEnabled();
+
+        this.apiKeys = newCache(cfg);
+        this.apiKeyPrincipals = newCache(cfg);
+        this.sessionKeyPrincipals = newCache(cfg);
+        this.finishedProcesses = CacheBuilder.newBuilder()
+                .expireAfterWrite(cfg.getTtl().toMillis() * 2, TimeUnit.MILLISECONDS)
+                .build();
+
+        registerMetrics(metricRegistry, "auth-cache-api-keys", apiKeys);
+        registerMetrics(metricRegistry, "auth-cache-api-key-principals", apiKeyPrincipals);
+        registerMetrics(metricRegistry, "auth-cache-session-key-principals", sessionKeyPrincipals);
+    }
+
+    /**
+     * Returns the API key with the specified value, the expired keys are
+     * ignored.
+     */
+    public ApiKeyEntry getApiKey(String key, Supplier<ApiKeyEntry> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String hash = ApiKeyUtils.hash(key);
+
+        ApiKeyEntry e = apiKeys.getIfPresent(hash);
+        if (e != null) {
+            OffsetDateTime expiredAt = e.getExpiredAt();
+            if (expiredAt == null || expiredAt.isAfter(OffsetDateTime.now())) {
+                return e;
+            }
+
+            apiKeys.invalidate(hash);
+            return null;
+        }
+
+        long gen = generation.get();
+        e = loader.get();
+        if (e != null && gen == generation.get()) {
+            apiKeys.put(hash, e);
+        }
+        return e;
+    }
+
+    public UserPrincipal getApiKeyPrincipal(UUID keyId, Supplier<UserPrincipal> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        UserPrincipal p = apiKeyPrincipals.getIfPresent(keyId);
+        if (p != null) {
+            return p;
+        }
+
+        long gen = generation.get();
+        p = loader.get();
+        if (p != null && gen == generation.get()) {
+            apiKeyPrincipals.put(keyId, p);
+        }
+        return p;
+    }
+
+    public PrincipalCollection getSessionKeyPrincipals(UUID instanceId, Supplier<PrincipalCollection> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        PrincipalCollection p = sessionKeyPrincipals.getIfPresent(instanceId);
+        if (p != null) {
+            return p;
+        }
+
+        long gen = generation.get();
+        p = loader.get();
+        if (p != null && gen == generation.get() && finishedProcesses.getIfPresent(instanceId) == null) {
+            sessionKeyPrincipals.put(instanceId, p);
+        }
+        return p;
+    }
+
+    public void invalidateApiKey(UUID keyId) {
+        if (!enabled) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        apiKeys.asMap().values().removeIf(e -> keyId.equals(e.getId()));
+        apiKeyPrincipals.invalidate(keyId);
+    }
+
+    public void invalidateUser(UUID userId) {
+        if (!enabled) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        apiKeys.asMap().values().removeIf(e -> userId.equals(e.getUserId()));
+        apiKeyPrincipals.asMap().values().removeIf(p -> userId.equals(p.getId()));
+        sessionKeyPrincipals.asMap().values().removeIf(pc -> pc.byType(UserPrincipal.class).stream()
+                .anyMatch(p -> userId.equals(p.getId())));
+    }
+
+    /**
+     * Invalidates all cached principals, e.g. when a role's permissions or
+     * LDAP groups change.
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        apiKeyPrincipals.invalidateAll();
+        sessionKeyPrincipals.invalidateAll();
+    }
+
+    @Override
+    public void onStatusChange(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
+        if (!enabled) {
+            return;
+        }
+
+        UUID instanceId = processKey.getInstanceId();
+        if (FINISHED_STATUSES.contains(status)) {
+            generation.incrementAndGet();
+            finishedProcesses.put(instanceId, Boolean.TRUE);
+            sessionKeyPrincipals.invalidate(instanceId);
+        } else {
+            // restarted or resumed
+            finishedProcesses.invalidate(instanceId);
+        }
+    }
+
+    private static <K, V> Cache<K, V> newCache(AuthCacheConfiguration cfg) {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(cfg.getTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(cfg.getMaxSize())
+                .concurrencyLevel(32)
+                .recordStats()
+                .build();
+    }
+
+    private static void registerMetrics(MetricRegistry registry, String prefix, Cache<?, ?> cache) {
+        registry.gauge(prefix + "-hit-rate", () -> () -> cache.stats().hitRate());
+        registry.gauge(prefix + "-hits", () -> () -> cache.stats().hitCount());
+        registry.gauge(prefix + "-misses", () -> () -> cache.stats().missCount());
+        registry.gauge(prefix + "-evictions", () -> () -> cache.stats().evictionCount());
+        registry.gauge(prefix + "-size", () -> cache::size);
+    }
+}
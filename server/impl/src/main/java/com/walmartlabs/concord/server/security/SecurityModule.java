@@ -22,6 +22,7 @@ package com.walmartlabs.concord.server.security;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.walmartlabs.concord.server.process.queue.ProcessStatusListener;
 import com.walmartlabs.concord.server.security.apikey.ApiKeyRealm;
 import com.walmartlabs.concord.server.security.github.GithubRealm;
 import com.walmartlabs.concord.server.security.internal.InternalRealm;
@@ -47,6 +48,8 @@ public class SecurityModule implements Module {
         newSetBinder(binder, Realm.class).addBinding().to(LdapRealm.class);
         newSetBinder(binder, Realm.class).addBinding().to(SessionKeyRealm.class);
 
+        newSetBinder(binder, ProcessStatusListener.class).addBinding().to(AuthenticationCache.class);
+
         binder.bind(LdapManager.class).toProvider(LdapManagerProvider.class);
         binder.bind(LdapContextFactory.class).toProvider(LdapContextFactoryProvider.class);
 
@@ -45,8 +45,11 @@ public class LdapGroupDao extends AbstractDao {
         super(cfg);
     }
 
-    public void updateIfNeeded(UUID userId, Set<String> groups, Field<OffsetDateTime> cutOff) {
-        tx(tx -> {
+    /**
+     * @return {@code true} if the groups were updated
+     */
+    public boolean updateIfNeeded(UUID userId, Set<String> groups, Field<OffsetDateTime> cutOff) {
+        return txResult(tx -> {
             Record1<Integer> r = tx.select(value(1)).from(USERS).where(USERS.USER_ID.eq(userId)
                     .and(USERS.LAST_GROUP_SYNC_DT.isNull()
                             .or(USERS.LAST_GROUP_SYNC_DT.lessThan(cutOff))))
@@ -54,11 +57,12 @@ public class LdapGroupDao extends AbstractDao {
                     .fetchOne();
 
             if (r == null) {
-                return;
+                return false;
             }
 
             updateGroups(tx, userId, groups);
             updateLastSyncTimestamp(tx, userId);
+            return true;
         });
     }
 
@@ -22,6 +22,7 @@ package com.walmartlabs.concord.server.security.ldap;
 
 import com.walmartlabs.concord.db.PgUtils;
 import com.walmartlabs.concord.server.cfg.LdapGroupSyncConfiguration;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import org.jooq.Field;
 
 import javax.inject.Inject;
@@ -35,15 +36,28 @@ public class LdapGroupManager {
 
     private final LdapGroupSyncConfiguration syncCfg;
     private final LdapGroupDao groupDao;
+    private final AuthenticationCache authCache;
 
     @Inject
-    public LdapGroupManager(LdapGroupSyncConfiguration syncCfg, LdapGroupDao groupDao) {
+    public LdapGroupManager(LdapGroupSyncConfiguration syncCfg, LdapGroupDao groupDao, AuthenticationCache authCache) {
         this.syncCfg = syncCfg;
         this.groupDao = groupDao;
+        this.authCache = authCache;
     }
 
     public void cacheLdapGroupsIfNeeded(UUID userId, Set<String> groups) {
         Field<OffsetDateTime> cutoff = PgUtils.nowMinus(syncCfg.getMinAgeLogin());
-        groupDao.updateIfNeeded(userId, groups, cutoff);
+        if (groupDao.updateIfNeeded(userId, groups, cutoff)) {
+            authCache.invalidateUser(userId);
+        }
+    }
+
+    /**
+     * Replaces the user's LDAP groups. The groups determine the user's roles,
+     * so the user's cached principals are invalidated.
+     */
+    public void update(UUID userId, Set<String> groups) {
+        groupDao.update(userId, groups);
+        authCache.invalidateUser(userId);
     }
 }
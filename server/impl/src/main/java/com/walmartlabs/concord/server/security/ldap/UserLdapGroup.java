@@ -56,14 +56,14 @@ public class UserLdapGroup implements Resource {
 
     private final UserManager userManager;
     private final LdapUserInfoProvider ldapUserInfoProvider;
-    private final LdapGroupDao ldapGroupsDao;
+    private final LdapGroupManager ldapGroupManager;
     private final LdapManager ldapManager;
 
     @Inject
-    public UserLdapGroup(UserManager userManager, LdapUserInfoProvider ldapUserInfoProvider, LdapGroupDao ldapGroupsDao, LdapManager ldapManager) {
+    public UserLdapGroup(UserManager userManager, LdapUserInfoProvider ldapUserInfoProvider, LdapGroupManager ldapGroupManager, LdapManager ldapManager) {
         this.userManager = userManager;
         this.ldapUserInfoProvider = ldapUserInfoProvider;
-        this.ldapGroupsDao = ldapGroupsDao;
+        this.ldapGroupManager = ldapGroupManager;
         this.ldapManager = ldapManager;
     }
 
@@ -95,9 +95,9 @@ public class UserLdapGroup implements Resource {
         try {
             Set<String> groups = ldapManager.getGroups(req.getUsername(), req.getUserDomain());
             if (groups == null) {
-                ldapGroupsDao.update(id, Collections.emptySet());
+                ldapGroupManager.update(id, Collections.emptySet());
             } else {
-                ldapGroupsDao.update(id, groups);
+                ldapGroupManager.update(id, groups);
             }
         } catch (Exception e) {
             throw new ConcordApplicationException("Failed to update groups for user '" + req.getUsername() + "' error -> '" + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
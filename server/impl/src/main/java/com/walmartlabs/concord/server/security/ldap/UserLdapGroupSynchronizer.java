@@ -57,20 +57,20 @@ public class UserLdapGroupSynchronizer implements ScheduledTask {
     private final Dao dao;
     private final LdapGroupSyncConfiguration cfg;
     private final LdapManager ldapManager;
-    private final LdapGroupDao ldapGroupsDao;
+    private final LdapGroupManager ldapGroupManager;
     private final UserManager userManager;
 
     @Inject
     public UserLdapGroupSynchronizer(Dao dao, LdapGroupSyncConfiguration cfg,
                                      LdapManager ldapManager,
-                                     LdapGroupDao ldapGroupsDao,
+                                     LdapGroupManager ldapGroupManager,
                                      UserManager userManager) {
 
         this.dao = dao;
         this.cfg = cfg;
         this.ldapManager = ldapManager;
         this.userManager = userManager;
-        this.ldapGroupsDao = ldapGroupsDao;
+        this.ldapGroupManager = ldapGroupManager;
     }
 
     @Override
@@ -106,12 +106,12 @@ public class UserLdapGroupSynchronizer implements ScheduledTask {
                 if (u.expired) {
                     deleteUser(u.userId);
                 } else {
-                    ldapGroupsDao.update(u.userId, Collections.emptySet());
+                    ldapGroupManager.update(u.userId, Collections.emptySet());
                     disableUser(u.userId);
                 }
             } else if (!u.permanentlyDisabled) {
                 enableUser(u.userId);
-                ldapGroupsDao.update(u.userId, groups);
+                ldapGroupManager.update(u.userId, groups);
             }
         } catch (Exception e) {
             log.error("processUser ['{}'] -> error", u.username, e);
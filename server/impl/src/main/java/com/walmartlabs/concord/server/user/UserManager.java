@@ -28,6 +28,7 @@ import com.walmartlabs.concord.server.org.team.TeamDao;
 import com.walmartlabs.concord.server.org.team.TeamManager;
 import com.walmartlabs.concord.server.org.team.TeamRole;
 import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.security.AuthenticationCache;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.security.ldap.LdapGroupSearchResult;
 import org.jooq.DSLContext;
@@ -46,14 +47,16 @@ public class UserManager {
     private final TeamDao teamDao;
     private final AuditLog auditLog;
     private final Map<UserType, UserInfoProvider> userInfoProviders;
+    private final AuthenticationCache authCache;
 
     private static final String SSO_REALM_NAME = "sso";
 
     @Inject
-    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, Set<UserInfoProvider> providers) {
+    public UserManager(UserDao userDao, TeamDao teamDao, AuditLog auditLog, Set<UserInfoProvider> providers, AuthenticationCache authCache) {
         this.userDao = userDao;
         this.teamDao = teamDao;
         this.auditLog = auditLog;
+        this.authCache = authCache;
 
         this.userInfoProviders = new HashMap<>();
         providers.forEach(p -> this.userInfoProviders.put(p.getUserType(), p));
@@ -134,6 +137,8 @@ public class UserManager {
         // any actual changes or not
         // add an audit log record only if there was any changes
         if (!changes.isEmpty()) {
+            authCache.invalidateUser(userId);
+
             auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                     .field("userId", userId)
                     .field("username", prevEntry.getName())
@@ -219,6 +224,11 @@ public class UserManager {
                 .log();
     }
 
+    public void updateRoles(UUID userId, Set<String> roles) {
+        userDao.updateRoles(userId, roles);
+        authCache.invalidateUser(userId);
+    }
+
     public void disable(UUID userId) {
         UserEntry user = userDao.get(userId);
         if (user == null) {
@@ -231,6 +241,7 @@ public class UserManager {
         }
 
         userDao.disable(userId, false);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -250,6 +261,7 @@ public class UserManager {
         }
 
         userDao.disable(userId, true);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.UPDATE)
                 .field("userId", userId)
@@ -264,6 +276,7 @@ public class UserManager {
         }
 
         userDao.delete(userId);
+        authCache.invalidateUser(userId);
 
         auditLog.add(AuditObject.USER, AuditAction.DELETE)
                 .field("userId", userId)
@@ -171,7 +171,7 @@ public class UserResource implements Resource {
         UUID id = userManager.getId(username, userDomain, type)
                 .orElseThrow(() -> new ConcordApplicationException("User not found: " + username, Status.NOT_FOUND));
 
-        userDao.updateRoles(id, req.getRoles());
+        userManager.updateRoles(id, req.getRoles());
         return new GenericOperationResult(OperationResult.UPDATED);
     }
 
@@ -27,11 +27,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Named
 @Singleton
@@ -41,6 +39,13 @@ public class WebSocketChannelManager {
 
     private final Map<UUID, WebSocketChannel> channels = new ConcurrentHashMap<>();
 
+    /**
+     * Channels with pending (not yet answered) requests, by request type.
+     * Allows to find the pending requests without scanning all channels.
+     */
+    private final Map<MessageType, Set<UUID>> inbox = new ConcurrentHashMap<>();
+    private final Map<MessageType, List<Runnable>> requestListeners = new ConcurrentHashMap<>();
+
     private volatile boolean isShutdown;
 
     public boolean isShutdown() {
@@ -55,6 +60,8 @@ public class WebSocketChannelManager {
     }
 
     public void close(UUID channelId) {
+        inbox.values().forEach(s -> s.remove(channelId));
+
         WebSocketChannel channel = channels.remove(channelId);
         if (channel == null) {
             log.warn("close ['{}'] -> channel not found", channelId);
@@ -74,6 +81,18 @@ public class WebSocketChannelManager {
         }
 
         channel.onRequest(message);
+
+        MessageType type = message.getMessageType();
+        inbox.computeIfAbsent(type, k -> ConcurrentHashMap.newKeySet()).add(channelId);
+        requestListeners.getOrDefault(type, Collections.emptyList()).forEach(Runnable::run);
+    }
+
+    /**
+     * Registers a listener called on each new request of the specified type.
+     * The listener is called on the channel's thread and must be fast.
+     */
+    public void addRequestListener(MessageType requestType, Runnable listener) {
+        requestListeners.computeIfAbsent(requestType, k -> new CopyOnWriteArrayList<>()).add(listener);
     }
 
     /**
@@ -101,13 +120,26 @@ public class WebSocketChannelManager {
 
     @SuppressWarnings("unchecked")
     public <E> Map<WebSocketChannel, E> getRequests(MessageType requestType) {
+        Set<UUID> pending = inbox.get(requestType);
+        if (pending == null || pending.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
         Map<WebSocketChannel, E> result = new HashMap<>();
-        channels.forEach((channelId, channel) -> {
-            Message m = channel.getRequest(requestType);
+        for (UUID channelId : pending) {
+            WebSocketChannel channel = channels.get(channelId);
+            Message m = channel != null ? channel.getRequest(requestType) : null;
             if (m != null) {
-                result.put(channel, (E)m);
+                result.put(channel, (E) m);
+            } else {
+                // answered or closed
+                pending.remove(channelId);
+                // the request might have been received concurrently
+                if (channel != null && channel.getRequest(requestType) != null) {
+                    pending.add(channelId);
+                }
             }
-        });
+        }
         return result;
     }
 
@@ -36,18 +36,28 @@ import java.lang.reflect.Method;
 import java.time.Duration;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 public abstract class AbstractDaoTest {
 
     private final boolean migrateDb;
+    private final Map<String, Object> changeLogParameters;
 
     public AbstractDaoTest() {
         this(true);
     }
 
     public AbstractDaoTest(boolean migrateDb) {
+        this(migrateDb, Collections.emptyMap());
+    }
+
+    /**
+     * @param changeLogParameters additional DB migration parameters
+     */
+    public AbstractDaoTest(boolean migrateDb, Map<String, Object> changeLogParameters) {
         this.migrateDb = migrateDb;
+        this.changeLogParameters = changeLogParameters;
     }
 
     private DataSource dataSource;
@@ -55,7 +65,7 @@ public abstract class AbstractDaoTest {
 
     @BeforeEach
     public void initDataSource() {
-        DatabaseConfiguration cfg = new DatabaseConfigurationImpl("jdbc:postgresql://localhost:5432/postgres", "postgres", "q1", 3);
+        DatabaseConfiguration cfg = new DatabaseConfigurationImpl("jdbc:postgresql://localhost:5432/postgres", "postgres", "q1", 3, changeLogParameters);
 
         DatabaseModule db = new DatabaseModule(migrateDb);
         this.dataSource = db.appDataSource(cfg, new MetricRegistry(), Collections.singleton(new MainDBChangeLogProvider()));
@@ -86,12 +96,14 @@ public abstract class AbstractDaoTest {
         private final String username;
         private final String password;
         private final int maxPoolSize;
+        private final Map<String, Object> extraParameters;
 
-        private DatabaseConfigurationImpl(String url, String username, String password, int maxPoolSize) {
+        private DatabaseConfigurationImpl(String url, String username, String password, int maxPoolSize, Map<String, Object> extraParameters) {
             this.url = url;
             this.username = username;
             this.password = password;
             this.maxPoolSize = maxPoolSize;
+            this.extraParameters = extraParameters;
         }
 
         @Override
@@ -122,13 +134,15 @@ public abstract class AbstractDaoTest {
         @Override
         public Map<String, Object> changeLogParameters() {
             String fakeSecret = Base64.getEncoder().encodeToString("test".getBytes());
-            return Map.of("createExtensionAvailable", "true",
+            Map<String, Object> m = new HashMap<>(Map.of("createExtensionAvailable", "true",
                     "defaultAdminToken", fakeSecret,
                     "skipAdminTokenGeneration", "true",
                     "defaultAgentToken", fakeSecret,
                     "skipAgentTokenGeneration", "true",
                     "secretStoreSalt", fakeSecret,
-                    "serverPassword", fakeSecret);
+                    "serverPassword", fakeSecret));
+            m.putAll(extraParameters);
+            return m;
         }
     }
 }
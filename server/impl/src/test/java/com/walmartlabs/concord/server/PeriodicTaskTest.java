@@ -0,0 +1,92 @@
+package com.walmartlabs.concord.server;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeriodicTaskTest {
+
+    @Test
+    public void testIdle() throws Exception {
+        BlockingQueue<Long> idleCalls = new LinkedBlockingQueue<>();
+        Semaphore wakeUp = new Semaphore(0);
+        AtomicInteger runs = new AtomicInteger();
+
+        PeriodicTask task = new PeriodicTask(TimeUnit.HOURS.toMillis(1), 1000) {
+            @Override
+            protected boolean performTask() {
+                // has more work on the first run only
+                return runs.incrementAndGet() == 1;
+            }
+
+            @Override
+            protected void idle(long interval) {
+                idleCalls.add(interval);
+                try {
+                    wakeUp.tryAcquire(interval, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        task.start();
+        try {
+            // the task is idle after the second run
+            assertEquals(TimeUnit.HOURS.toMillis(1), idleCalls.poll(10, TimeUnit.SECONDS));
+            assertEquals(2, runs.get());
+
+            // woken up before the interval expires
+            wakeUp.release();
+            assertNotNull(idleCalls.poll(10, TimeUnit.SECONDS));
+            assertEquals(3, runs.get());
+        } finally {
+            task.stop();
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+
+        PeriodicTask task = new PeriodicTask(0, 1000) {
+            @Override
+            protected boolean performTask() {
+                runs.incrementAndGet();
+                return false;
+            }
+        };
+
+        task.start();
+        Thread.sleep(100);
+        task.stop();
+
+        assertEquals(0, runs.get());
+    }
+}
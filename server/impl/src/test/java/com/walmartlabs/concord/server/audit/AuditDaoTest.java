@@ -0,0 +1,87 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.audit.AuditDao.NewEntry;
+import com.walmartlabs.concord.server.jooq.tables.records.AuditLogRecord;
+import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.walmartlabs.concord.server.jooq.Tables.AUDIT_LOG;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Disabled("requires a local DB instance")
+public class AuditDaoTest extends AbstractDaoTest {
+
+    @Test
+    public void testBatchInsert() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        AuditDao auditDao = new AuditDao(getConfiguration(), objectMapper);
+
+        assertTrue(auditDao.prepare(Collections.emptyList()).isEmpty());
+
+        List<NewEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            AuditAction action = AuditAction.values()[i % AuditAction.values().length];
+            entries.add(new NewEntry(null, AuditObject.API_KEY, action, Map.of("n", i)));
+        }
+
+        List<AuditEvent> events = auditDao.prepare(entries);
+        assertEquals(entries.size(), events.size());
+
+        auditDao.insert(events);
+
+        // retries don't insert the same entries twice
+        auditDao.insert(events);
+        auditDao.insert(List.of(events.get(0)));
+
+        int count = getConfiguration().dsl().fetchCount(AUDIT_LOG, AUDIT_LOG.ENTRY_SEQ.in(events.stream().map(AuditEvent::entrySeq).toList()));
+        assertEquals(events.size(), count);
+
+        // the prepared events match the inserted rows, in the same order
+        for (int i = 0; i < entries.size(); i++) {
+            NewEntry e = entries.get(i);
+            AuditEvent ev = events.get(i);
+
+            assertEquals(e.action().toString(), ev.action());
+            assertEquals(e.details(), ev.details());
+
+            AuditLogRecord r = getConfiguration().dsl().selectFrom(AUDIT_LOG)
+                    .where(AUDIT_LOG.ENTRY_SEQ.eq(ev.entrySeq()))
+                    .fetchOne();
+
+            assertEquals(ev.entryDate(), r.getEntryDate());
+            assertEquals(e.object().toString(), r.getEntryObject());
+            assertEquals(e.action().toString(), r.getEntryAction());
+            assertEquals(e.details(), objectMapper.fromJSONB(r.getEntryDetails()));
+        }
+    }
+}
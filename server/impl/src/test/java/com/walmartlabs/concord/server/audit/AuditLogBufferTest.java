@@ -0,0 +1,251 @@
+package com.walmartlabs.concord.server.audit;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.Listeners;
+import com.walmartlabs.concord.server.audit.AuditDao.NewEntry;
+import com.walmartlabs.concord.server.cfg.AuditConfiguration;
+import com.walmartlabs.concord.server.sdk.audit.AuditEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class AuditLogBufferTest {
+
+    private static final AtomicLong seq = new AtomicLong();
+
+    private AuditConfiguration cfg;
+    private AuditDao auditDao;
+    private Listeners listeners;
+    private AuditLogBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        cfg = mock(AuditConfiguration.class);
+        when(cfg.isEnabled()).thenReturn(true);
+        when(cfg.isAsyncEnabled()).thenReturn(true);
+        when(cfg.getAsyncActions()).thenReturn(List.of("ACCESS"));
+        when(cfg.getAsyncMaxQueueSize()).thenReturn(100);
+        when(cfg.getAsyncMaxBatchSize()).thenReturn(10);
+
+        auditDao = mock(AuditDao.class);
+        when(auditDao.insert(any(), any(), any(), any())).thenAnswer(i -> event(new NewEntry(i.getArgument(0), i.getArgument(1), i.getArgument(2), i.getArgument(3))));
+        when(auditDao.prepare(anyList())).thenAnswer(i -> events(i.getArgument(0)));
+
+        listeners = mock(Listeners.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    public void testSyncActions() {
+        buffer = start();
+
+        NewEntry e = entry(AuditAction.CREATE, 1);
+        buffer.write(e);
+
+        // written by the caller's thread
+        verify(auditDao).insert(e.userId(), e.object(), e.action(), e.details());
+        verify(listeners).onAuditEvent(argThat(ev -> ev.details().equals(e.details())));
+        verify(auditDao, never()).prepare(anyList());
+    }
+
+    @Test
+    public void testAsyncActions() {
+        buffer = start();
+
+        for (int i = 0; i < 5; i++) {
+            buffer.write(entry(AuditAction.ACCESS, i));
+        }
+
+        verify(listeners, timeout(5000).times(5)).onAuditEvent(any());
+        verify(auditDao, atLeastOnce()).prepare(anyList());
+        verify(auditDao, atLeastOnce()).insert(anyList());
+        verify(auditDao, never()).insert(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        when(cfg.getAsyncMaxQueueSize()).thenReturn(1);
+
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(i -> {
+            flushStarted.countDown();
+            release.await();
+            return null;
+        }).when(auditDao).insert(anyList());
+
+        buffer = start();
+
+        // taken by the worker, the worker is blocked
+        buffer.write(entry(AuditAction.ACCESS, 1));
+        flushStarted.await(5, TimeUnit.SECONDS);
+
+        // fills the queue
+        buffer.write(entry(AuditAction.ACCESS, 2));
+
+        // the queue is full, written synchronously
+        NewEntry e = entry(AuditAction.ACCESS, 3);
+        buffer.write(e);
+        verify(auditDao).insert(e.userId(), e.object(), e.action(), e.details());
+
+        release.countDown();
+        verify(listeners, timeout(5000).times(3)).onAuditEvent(any());
+    }
+
+    @Test
+    public void testBatchError() {
+        NewEntry bad = entry(AuditAction.ACCESS, 2);
+
+        doAnswer(i -> {
+            List<AuditEvent> events = i.getArgument(0);
+            if (events.size() > 1 || events.get(0).details().equals(bad.details())) {
+                throw new RuntimeException("boom");
+            }
+            return null;
+        }).when(auditDao).insert(anyList());
+
+        buffer = start();
+        buffer.write(entry(AuditAction.ACCESS, 1));
+        buffer.write(bad);
+        buffer.write(entry(AuditAction.ACCESS, 3));
+
+        // the entries are retried one by one, only the failing one is lost
+        verify(listeners, timeout(5000).times(2)).onAuditEvent(any());
+        verify(listeners, never()).onAuditEvent(argThat(ev -> ev.details().equals(bad.details())));
+    }
+
+    @Test
+    public void testRetryAfterCommit() throws Exception {
+        // the first batch blocks the worker until the rest of the entries are queued
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(auditDao.prepare(anyList())).thenAnswer(i -> {
+            if (first.compareAndSet(true, false)) {
+                release.await();
+            }
+            return events(i.getArgument(0));
+        });
+
+        // the batch is committed, but the caller receives an error
+        List<Long> inserted = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean failed = new AtomicBoolean();
+        doAnswer(i -> {
+            List<AuditEvent> events = i.getArgument(0);
+            events.forEach(ev -> inserted.add(ev.entrySeq()));
+            if (events.size() > 1 && failed.compareAndSet(false, true)) {
+                throw new RuntimeException("connection reset");
+            }
+            return null;
+        }).when(auditDao).insert(anyList());
+
+        buffer = start();
+        for (int i = 0; i < 4; i++) {
+            buffer.write(entry(AuditAction.ACCESS, i));
+        }
+        release.countDown();
+
+        verify(listeners, timeout(5000).times(4)).onAuditEvent(any());
+        assertTrue(failed.get());
+
+        // the entries are retried with the same IDs, the inserts are idempotent
+        assertEquals(4, new HashSet<>(inserted).size());
+        verify(auditDao, never()).insert(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testStop() {
+        buffer = start();
+
+        for (int i = 0; i < 20; i++) {
+            buffer.write(entry(AuditAction.ACCESS, i));
+        }
+
+        // everything is written by the time stop() returns
+        buffer.stop();
+        verify(listeners, times(20)).onAuditEvent(any());
+
+        // written synchronously after stop
+        NewEntry e = entry(AuditAction.ACCESS, 100);
+        buffer.write(e);
+        verify(auditDao).insert(e.userId(), e.object(), e.action(), e.details());
+    }
+
+    @Test
+    public void testDisabled() {
+        when(cfg.isAsyncEnabled()).thenReturn(false);
+        buffer = start();
+
+        NewEntry e = entry(AuditAction.ACCESS, 1);
+        buffer.write(e);
+
+        verify(auditDao).insert(e.userId(), e.object(), e.action(), e.details());
+        verify(auditDao, never()).insert(anyList());
+    }
+
+    private AuditLogBuffer start() {
+        AuditLogBuffer b = new AuditLogBuffer(cfg, auditDao, listeners, new MetricRegistry());
+        b.start();
+        return b;
+    }
+
+    private static NewEntry entry(AuditAction action, int n) {
+        return new NewEntry(null, AuditObject.API_KEY, action, Map.of("n", n));
+    }
+
+    private static List<AuditEvent> events(List<NewEntry> entries) {
+        List<AuditEvent> result = new ArrayList<>();
+        for (NewEntry e : entries) {
+            result.add(event(e));
+        }
+        return result;
+    }
+
+    private static AuditEvent event(NewEntry e) {
+        return AuditEvent.builder()
+                .entrySeq(seq.incrementAndGet())
+                .entryDate(OffsetDateTime.now())
+                .userId(e.userId())
+                .object(e.object().toString())
+                .action(e.action().toString())
+                .details(e.details())
+                .build();
+    }
+}
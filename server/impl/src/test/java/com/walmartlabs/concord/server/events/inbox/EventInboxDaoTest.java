@@ -0,0 +1,154 @@
+package com.walmartlabs.concord.server.events.inbox;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.jooq.Tables.EVENT_INBOX;
+import static org.jooq.impl.DSL.currentOffsetDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Disabled("requires a local DB instance")
+public class EventInboxDaoTest extends AbstractDaoTest {
+
+    private static final byte[] PRINCIPALS = new byte[]{1, 2, 3};
+
+    private EventInbox.Dao dao;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new EventInbox.Dao(getConfiguration(), new ConcordObjectMapper(TestObjectMapper.INSTANCE));
+
+        // mark the leftovers of other tests as processed
+        tx(tx -> tx.update(EVENT_INBOX)
+                .set(EVENT_INBOX.PROCESSED_AT, currentOffsetDateTime())
+                .where(EVENT_INBOX.PROCESSED_AT.isNull())
+                .execute());
+    }
+
+    @Test
+    public void testDeduplication() {
+        String eventId = UUID.randomUUID().toString();
+
+        assertTrue(dao.insert("test", "push", eventId, Map.of("k", "v"), null, PRINCIPALS));
+        assertFalse(dao.insert("test", "push", eventId, Map.of("k", "v2"), null, PRINCIPALS));
+
+        // same ID, different event name or source
+        assertTrue(dao.insert("test", "pull_request", eventId, Map.of(), null, PRINCIPALS));
+        assertTrue(dao.insert("other", "push", eventId, Map.of(), null, PRINCIPALS));
+
+        assertEquals(3, dao.countPending());
+    }
+
+    @Test
+    public void testClaim() {
+        String eventId = UUID.randomUUID().toString();
+        dao.insert("test", "push", eventId, Map.of("k", "v"), "/events/test", PRINCIPALS);
+
+        List<EventInbox.ClaimedEvent> claimed = dao.claim(10, Duration.ofMinutes(5));
+        assertEquals(1, claimed.size());
+
+        InboxEvent e = claimed.get(0).event();
+        assertEquals("test", e.eventSource());
+        assertEquals("push", e.eventName());
+        assertEquals(eventId, e.eventId());
+        assertEquals(Map.of("k", "v"), e.data());
+        assertEquals("/events/test", e.requestUri());
+        assertEquals(1, e.attempts());
+        assertArrayEquals(PRINCIPALS, claimed.get(0).principals());
+
+        // already claimed, the claim hasn't expired yet
+        assertTrue(dao.claim(10, Duration.ofMinutes(5)).isEmpty());
+
+        // the claim has expired, the event is claimed again
+        claimed = dao.claim(10, Duration.ZERO);
+        assertEquals(1, claimed.size());
+        assertEquals(2, claimed.get(0).event().attempts());
+
+        dao.markProcessed(e.inboxId());
+        assertTrue(dao.claim(10, Duration.ZERO).isEmpty());
+        assertEquals(0, dao.countPending());
+    }
+
+    @Test
+    public void testClaimLimit() {
+        for (int i = 0; i < 5; i++) {
+            dao.insert("test", "push", UUID.randomUUID().toString(), Map.of("n", i), null, PRINCIPALS);
+        }
+
+        List<EventInbox.ClaimedEvent> a = dao.claim(3, Duration.ofMinutes(5));
+        List<EventInbox.ClaimedEvent> b = dao.claim(3, Duration.ofMinutes(5));
+        assertEquals(3, a.size());
+        assertEquals(2, b.size());
+
+        // claimed in the order of arrival
+        assertEquals(List.of(0, 1, 2), a.stream().map(e -> e.event().data().get("n")).collect(Collectors.toList()));
+        assertEquals(List.of(3, 4), b.stream().map(e -> e.event().data().get("n")).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testClaimSkipLocked() {
+        dao.insert("test", "push", UUID.randomUUID().toString(), Map.of("n", 0), null, PRINCIPALS);
+        dao.insert("test", "push", UUID.randomUUID().toString(), Map.of("n", 1), null, PRINCIPALS);
+
+        List<EventInbox.ClaimedEvent>[] result = new List[1];
+        tx(tx -> {
+            // simulate a concurrent claim holding the lock on the first event
+            tx.selectFrom(EVENT_INBOX)
+                    .where(EVENT_INBOX.PROCESSED_AT.isNull())
+                    .orderBy(EVENT_INBOX.RECEIVED_AT)
+                    .limit(1)
+                    .forUpdate()
+                    .fetch();
+
+            // uses a separate connection
+            result[0] = dao.claim(10, Duration.ZERO);
+        });
+
+        assertEquals(1, result[0].size());
+        assertEquals(1, result[0].get(0).event().data().get("n"));
+    }
+
+    @Test
+    public void testDeleteProcessed() {
+        dao.insert("test", "push", UUID.randomUUID().toString(), Map.of(), null, PRINCIPALS);
+        dao.insert("test", "push", UUID.randomUUID().toString(), Map.of(), null, PRINCIPALS);
+
+        List<EventInbox.ClaimedEvent> claimed = dao.claim(1, Duration.ofMinutes(5));
+        dao.markProcessed(claimed.get(0).event().inboxId());
+
+        assertTrue(dao.deleteProcessed(Duration.ZERO) >= 1);
+
+        // pending events are kept
+        assertEquals(1, dao.countPending());
+    }
+}
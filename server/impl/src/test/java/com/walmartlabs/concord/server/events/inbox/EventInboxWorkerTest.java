@@ -0,0 +1,121 @@
+package com.walmartlabs.concord.server.events.inbox;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.EventInboxConfiguration;
+import com.walmartlabs.concord.server.process.ProcessSecurityContext;
+import com.walmartlabs.concord.server.security.SecurityUtils;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class EventInboxWorkerTest {
+
+    private EventInbox.Dao dao;
+    private EventInboxHandler handler;
+    private EventInboxWorker worker;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        EventInboxConfiguration cfg = mock(EventInboxConfiguration.class);
+        when(cfg.getMaxAttempts()).thenReturn(3);
+
+        dao = mock(EventInbox.Dao.class);
+        EventInbox inbox = mock(EventInbox.class);
+        when(inbox.dao()).thenReturn(dao);
+
+        handler = mock(EventInboxHandler.class);
+        when(handler.eventSource()).thenReturn("test");
+
+        ProcessSecurityContext securityContext = mock(ProcessSecurityContext.class);
+        when(securityContext.runAs(any(PrincipalCollection.class), any())).thenAnswer(i -> ((Callable<?>) i.getArgument(1)).call());
+
+        worker = new EventInboxWorker(cfg, inbox, List.of(handler), securityContext, new MetricRegistry());
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        EventInbox.ClaimedEvent e = event("test", 1);
+
+        worker.process(e);
+
+        verify(handler, times(1)).handle(e.event());
+        verify(dao, times(1)).markProcessed(e.event().inboxId());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        EventInbox.ClaimedEvent e = event("test", 2);
+        doThrow(new RuntimeException("boom")).when(handler).handle(any());
+
+        worker.process(e);
+
+        // not marked as processed, the event is claimed again after claimTimeout
+        verify(handler, times(1)).handle(e.event());
+        verify(dao, never()).markProcessed(any());
+    }
+
+    @Test
+    public void testGiveUp() throws Exception {
+        EventInbox.ClaimedEvent e = event("test", 3);
+        doThrow(new RuntimeException("boom")).when(handler).handle(any());
+
+        worker.process(e);
+
+        verify(handler, times(1)).handle(e.event());
+        verify(dao, times(1)).markProcessed(e.event().inboxId());
+    }
+
+    @Test
+    public void testUnknownEventSource() throws Exception {
+        EventInbox.ClaimedEvent e = event("unknown", 1);
+
+        worker.process(e);
+
+        verify(handler, never()).handle(any());
+        verify(dao, times(1)).markProcessed(e.event().inboxId());
+    }
+
+    private static EventInbox.ClaimedEvent event(String eventSource, int attempts) {
+        InboxEvent e = InboxEvent.builder()
+                .inboxId(UUID.randomUUID())
+                .eventSource(eventSource)
+                .eventName("push")
+                .eventId(UUID.randomUUID().toString())
+                .data(Map.of("k", "v"))
+                .receivedAt(OffsetDateTime.now())
+                .attempts(attempts)
+                .build();
+
+        return new EventInbox.ClaimedEvent(e, SecurityUtils.serialize(new SimplePrincipalCollection("test", "test")));
+    }
+}
@@ -0,0 +1,141 @@
+package com.walmartlabs.concord.server.org.triggers;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
+import com.walmartlabs.concord.server.org.OrganizationManager;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.events.github.Constants.GITHUB_ORG_KEY;
+import static com.walmartlabs.concord.server.events.github.Constants.GITHUB_REPO_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the results of {@link TriggerIndex#list(UUID, String, Integer, Map)}
+ * with {@link TriggersDao#list(UUID, String, Integer, Map)}.
+ */
+@Disabled("requires a local DB instance")
+public class TriggerIndexDaoTest extends AbstractDaoTest {
+
+    @Test
+    public void testList() throws Exception {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        ProjectDao projectDao = new ProjectDao(getConfiguration(), objectMapper);
+        RepositoryDao repositoryDao = new RepositoryDao(getConfiguration(), objectMapper);
+        TriggersDao triggersDao = new TriggersDao(getConfiguration(), objectMapper);
+
+        UUID projectId = projectDao.insert(OrganizationManager.DEFAULT_ORG_ID, "project#" + System.currentTimeMillis(), "test", null, null, null, null, new byte[0], null, null);
+        UUID repoId = repositoryDao.insert(projectId, "repo#" + System.currentTimeMillis(), "n/a", "main", null, null, null, false, null, false);
+
+        List<Map<String, Object>> triggerConditions = List.of(
+                Map.of(),
+                Map.of("version", 2),
+                Map.of("version", "2"),
+                Map.of("version", 2, GITHUB_ORG_KEY, "abc", GITHUB_REPO_KEY, "repo"),
+                Map.of("version", 2, GITHUB_ORG_KEY, "bc", GITHUB_REPO_KEY, "re"),
+                Map.of("version", 2, GITHUB_ORG_KEY, "ABC"),
+                Map.of("version", 2, GITHUB_ORG_KEY, "^a.c$"),
+                Map.of("version", 2, GITHUB_ORG_KEY, "x-y"),
+                Map.of("version", 2, GITHUB_REPO_KEY, "repo"),
+                Map.of("version", 2, "flag", true),
+                Map.of("version", 2, "n", 123),
+                Map.of("version", 2, "list", List.of("a", "b")),
+                Map.of(GITHUB_ORG_KEY, "abc"));
+
+        tx(tx -> {
+            for (Map<String, Object> c : triggerConditions) {
+                triggersDao.insert(tx, projectId, repoId, "github", null, null, c, null);
+            }
+
+            // a valid PostgreSQL regex, but not a valid Pattern
+            triggersDao.insert(tx, projectId, repoId, "test", null, null, Map.of("map", Map.of("a", "x")), null);
+            triggersDao.insert(tx, projectId, repoId, "test", null, null, Map.of("map", "y"), null);
+        });
+
+        TriggersConfiguration cfg = mock(TriggersConfiguration.class);
+        when(cfg.isIndexEnabled()).thenReturn(true);
+        when(cfg.getIndexCheckInterval()).thenReturn(Duration.ofSeconds(1));
+        when(cfg.getIndexReloadInterval()).thenReturn(Duration.ofHours(1));
+
+        TriggerIndex index = new TriggerIndex(cfg, triggersDao, new TriggerIndex.Dao(getConfiguration()), new MetricRegistry());
+        index.start();
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (index.isRepositoryDisabled(repoId) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertNotNull(index.isRepositoryDisabled(repoId));
+
+            List<Map<String, String>> events = new ArrayList<>();
+            events.add(null);
+            events.add(Map.of());
+            for (String org : Arrays.asList("abc", "xabcx", "ab", "ABC", "x-y", "a.c", null)) {
+                for (String repo : Arrays.asList("repo", "myrepo", "r", null)) {
+                    Map<String, String> e = new HashMap<>();
+                    e.put(GITHUB_ORG_KEY, org);
+                    e.put(GITHUB_REPO_KEY, repo);
+                    events.add(e);
+                }
+            }
+            events.add(Map.of("flag", "true"));
+            events.add(Map.of("flag", "false"));
+            events.add(Map.of("n", "x123x"));
+            events.add(Map.of("list", "b"));
+            events.add(Map.of("list", "c"));
+
+            for (Integer version : Arrays.asList(null, 1, 2)) {
+                for (Map<String, String> e : events) {
+                    assertEquals(ids(triggersDao.list(projectId, "github", version, e)),
+                            ids(index.list(projectId, "github", version, e)),
+                            "version: " + version + ", event: " + e);
+                }
+            }
+
+            for (String v : List.of("{\"a\": \"x\"}", "y")) {
+                Map<String, String> e = Map.of("map", v);
+                assertEquals(ids(triggersDao.list(projectId, "test", null, e)), ids(index.list(projectId, "test", null, e)));
+                assertEquals(1, index.list(projectId, "test", null, e).size());
+            }
+        } finally {
+            index.stop();
+        }
+    }
+
+    private static Set<UUID> ids(List<TriggerEntry> triggers) {
+        return triggers.stream()
+                .map(TriggerEntry::getId)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,167 @@
+package com.walmartlabs.concord.server.org.triggers;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.walmartlabs.concord.server.events.github.Constants.GITHUB_ORG_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The expected results follow the filter of {@link TriggersDao#list(UUID, String, Integer, Map)}.
+ */
+public class TriggerIndexTest {
+
+    @Test
+    public void testVersion() {
+        // triggers without the version are v1 triggers
+        assertTrue(matches(trigger(Map.of()), 1, Map.of()));
+        assertFalse(matches(trigger(Map.of()), 2, Map.of()));
+        assertTrue(matches(trigger(null), 1, Map.of()));
+        assertFalse(matches(trigger(null), 2, Map.of()));
+
+        // conditions->>'version' = '2'
+        assertTrue(matches(trigger(Map.of("version", 2)), 2, Map.of()));
+        assertTrue(matches(trigger(Map.of("version", "2")), 2, Map.of()));
+        assertFalse(matches(trigger(Map.of("version", 2)), 1, Map.of()));
+        assertFalse(matches(trigger(Map.of("version", "2.0")), 2, Map.of()));
+
+        // no version filter
+        assertTrue(matches(trigger(Map.of("version", 2)), null, Map.of()));
+    }
+
+    @Test
+    public void testNullConditions() {
+        // conditions->>'key' is null
+        assertTrue(matches(trigger(null), 1, Map.of("org", "abc")));
+        assertTrue(matches(trigger(Map.of("repo", "abc")), 1, Map.of("org", "xyz")));
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("org", null);
+        assertTrue(matches(trigger(conditions), 1, Map.of("org", "xyz")));
+
+        // null ~ regex is null
+        assertFalse(matches(trigger(Map.of("org", "abc")), 1, singletonMap("org", null)));
+        assertTrue(matches(trigger(Map.of("repo", "abc")), 1, singletonMap("org", null)));
+
+        assertTrue(matches(trigger(Map.of("org", "abc")), 1, null));
+    }
+
+    @Test
+    public void testRegex() {
+        // :value ~ conditions->>'key', a case-sensitive substring match
+        assertTrue(matches(trigger(Map.of("org", "abc")), 1, Map.of("org", "abc")));
+        assertTrue(matches(trigger(Map.of("org", "abc")), 1, Map.of("org", "xabcx")));
+        assertFalse(matches(trigger(Map.of("org", "abc")), 1, Map.of("org", "ab")));
+        assertFalse(matches(trigger(Map.of("org", "abc")), 1, Map.of("org", "ABC")));
+        assertTrue(matches(trigger(Map.of("org", "^a.c$")), 1, Map.of("org", "abc")));
+        assertFalse(matches(trigger(Map.of("org", "^a.c$")), 1, Map.of("org", "xabc")));
+
+        // all conditions must match
+        assertFalse(matches(trigger(Map.of("org", "abc", "repo", "x")), 1, Map.of("org", "abc", "repo", "y")));
+
+        // "." matches newlines, "$" matches only at the end
+        assertTrue(matches(trigger(Map.of("org", "a.c")), 1, Map.of("org", "a\nc")));
+        assertFalse(matches(trigger(Map.of("org", "abc$")), 1, Map.of("org", "abc\n")));
+
+        // unsupported regex features, such triggers are checked by the DB
+        assertFalse(matches(trigger(Map.of("org", "(")), 1, Map.of("org", "(")));
+        assertFalse(matches(trigger(Map.of("org", "[a-c]")), 1, Map.of("org", "b")));
+    }
+
+    @Test
+    public void testToJavaRegex() {
+        assertEquals("(?s)abc", TriggerIndex.toJavaRegex("abc"));
+        assertEquals("(?s)^a.c\\z", TriggerIndex.toJavaRegex("^a.c$"));
+        assertEquals("(?s)^(foo|bar-.*)\\.git\\z", TriggerIndex.toJavaRegex("^(foo|bar-.*)\\.git$"));
+        assertEquals("(?s)a+b?c*", TriggerIndex.toJavaRegex("a+b?c*"));
+
+        // different semantics in PostgreSQL and java.util.regex
+        for (String r : List.of("[a-z]", "[[:alpha:]]", "a{2}", "\\d", "\\w", "\\mabc\\M", "\\y",
+                "(a)\\1", "a*?", "a++", "(?i)abc", "(?=a)", "***=abc", "^*", "(a", "a)", "\\")) {
+            assertNull(TriggerIndex.toJavaRegex(r), r);
+        }
+    }
+
+    @Test
+    public void testNonStringConditions() {
+        // conditions->>'key' returns the JSON text of non-string values
+        assertTrue(matches(trigger(Map.of("flag", true)), 1, Map.of("flag", "true")));
+        assertFalse(matches(trigger(Map.of("flag", true)), 1, Map.of("flag", "false")));
+        assertTrue(matches(trigger(Map.of("n", 123)), 1, Map.of("n", "x123x")));
+
+        // ["a", "b"] is a bracket expression, such triggers are checked by the DB
+        assertNull(TriggerIndex.toJavaRegex(TriggerIndex.jsonbText(List.of("a", "b"))));
+
+        // same as jsonb::text, the keys are ordered by length first
+        assertEquals("{\"a\": \"x\", \"bb\": [1, true, null]}", TriggerIndex.jsonbText(Map.of("bb", Arrays.asList(1, true, null), "a", "x")));
+        assertEquals("[\"a\\\"b\", {}]", TriggerIndex.jsonbText(List.of("a\"b", Map.of())));
+    }
+
+    @Test
+    public void testProjectId() {
+        UUID projectId = UUID.randomUUID();
+        TriggerEntry t = trigger(projectId, Map.of());
+
+        assertTrue(TriggerIndex.matches(t, projectId, 1, Map.of()));
+        assertTrue(TriggerIndex.matches(t, null, 1, Map.of()));
+        assertFalse(TriggerIndex.matches(t, UUID.randomUUID(), 1, Map.of()));
+    }
+
+    @Test
+    public void testRouteKeys() {
+        assertEquals(Set.of("*", "a", "b", "ab"), TriggerIndex.routeKeys("ab"));
+        assertEquals(Set.of("*", "a", "b"), TriggerIndex.routeKeys("a.b"));
+        assertEquals(Set.of("*"), TriggerIndex.routeKeys(""));
+
+        // plain names match as substrings
+        String org = "my-org";
+        Set<String> keys = TriggerIndex.routeKeys(org);
+        for (String c : List.of("my", "org", "-", "y-o", "my-org")) {
+            assertTrue(keys.contains(c));
+            assertTrue(matches(trigger(Map.of(GITHUB_ORG_KEY, c)), 1, Map.of(GITHUB_ORG_KEY, org)));
+        }
+    }
+
+    private static boolean matches(TriggerEntry t, Integer version, Map<String, String> conditions) {
+        return TriggerIndex.matches(t, null, version, conditions);
+    }
+
+    private static Map<String, String> singletonMap(String k, String v) {
+        Map<String, String> m = new HashMap<>();
+        m.put(k, v);
+        return m;
+    }
+
+    private static TriggerEntry trigger(Map<String, Object> conditions) {
+        return trigger(UUID.randomUUID(), conditions);
+    }
+
+    private static TriggerEntry trigger(UUID projectId, Map<String, Object> conditions) {
+        return new TriggerEntry(UUID.randomUUID(), UUID.randomUUID(), "org", projectId, "project",
+                UUID.randomUUID(), "repo", "github", null, null, conditions, Map.of());
+    }
+}
@@ -0,0 +1,273 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.db.PgUtils;
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.IncrementalProcessCleaner.CleanerDao;
+import com.walmartlabs.concord.server.process.IncrementalProcessCleaner.Cursor;
+import com.walmartlabs.concord.server.process.IncrementalProcessCleaner.Target;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static com.walmartlabs.concord.server.jooq.Tables.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Disabled("requires a local DB instance")
+public class IncrementalProcessCleanerTest extends AbstractDaoTest {
+
+    private static final Duration MAX_AGE = Duration.ofDays(1);
+
+    private ProcessConfiguration cfg;
+    private CleanerDao dao;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        cfg = new ProcessConfiguration(MAX_AGE, Collections.emptyList());
+        set(cfg, "stateCleanup", true);
+        set(cfg, "queueCleanup", true);
+        set(cfg, "incrementalCleanupBatchSize", 2);
+        set(cfg, "incrementalCleanupMaxRowsPerSecond", 0);
+        set(cfg, "incrementalCleanupOrphanBatchesPerRun", 1);
+
+        dao = new CleanerDao(getConfiguration());
+        dao.saveCursor("expired", null);
+
+        // some tests leave the expired entries in PROCESS_QUEUE
+        tx(tx -> {
+            tx.deleteFrom(PROCESS_STATE).execute();
+            tx.deleteFrom(PROCESS_QUEUE).execute();
+        });
+    }
+
+    @Test
+    public void testCursorWalk() {
+        List<UUID> expired = insertExpired(5);
+        UUID running = insertProcess(OffsetDateTime.now().minusDays(3), ProcessStatus.RUNNING);
+        UUID recent = insertProcess(OffsetDateTime.now(), ProcessStatus.FINISHED);
+
+        new IncrementalProcessCleaner(cfg, getConfiguration(), new MetricRegistry()).run();
+
+        for (UUID id : expired) {
+            assertFalse(exists(id));
+            assertEquals(0, countState(id));
+        }
+
+        assertTrue(exists(running));
+        assertEquals(1, countState(running));
+        assertTrue(exists(recent));
+        assertEquals(1, countState(recent));
+
+        // the walk is complete, the next run starts from the beginning
+        assertNull(dao.getCursor("expired"));
+    }
+
+    @Test
+    public void testResume() {
+        List<UUID> expired = insertExpired(4);
+
+        // interrupted after the first batch
+        List<Cursor> firstBatch = dao.nextExpired(null, PgUtils.nowMinus(MAX_AGE), 2);
+        assertEquals(expired.subList(0, 2), firstBatch.stream().map(Cursor::instanceId).toList());
+        dao.saveCursor("expired", firstBatch.get(1));
+
+        IncrementalProcessCleaner cleaner = new IncrementalProcessCleaner(cfg, getConfiguration(), new MetricRegistry());
+        cleaner.run();
+
+        // continues after the saved position
+        assertTrue(exists(expired.get(0)));
+        assertTrue(exists(expired.get(1)));
+        assertFalse(exists(expired.get(2)));
+        assertFalse(exists(expired.get(3)));
+
+        // and starts from the beginning on the next run
+        cleaner.run();
+        assertFalse(exists(expired.get(0)));
+        assertFalse(exists(expired.get(1)));
+    }
+
+    @Test
+    public void testWatermark() throws Exception {
+        set(cfg, "queueCleanup", false);
+
+        OffsetDateTime createdAt = OffsetDateTime.now().minusDays(3);
+        UUID e0 = insertProcess(createdAt, ProcessStatus.FINISHED);
+        UUID e1 = insertProcess(createdAt.plusSeconds(1), ProcessStatus.FINISHED);
+        UUID running = insertProcess(createdAt.plusSeconds(2), ProcessStatus.RUNNING);
+        UUID e2 = insertProcess(createdAt.plusSeconds(3), ProcessStatus.FINISHED);
+        UUID e3 = insertProcess(createdAt.plusSeconds(4), ProcessStatus.FINISHED);
+
+        IncrementalProcessCleaner cleaner = new IncrementalProcessCleaner(cfg, getConfiguration(), new MetricRegistry());
+        cleaner.run();
+
+        for (UUID id : List.of(e0, e1, e2, e3)) {
+            assertTrue(exists(id));
+            assertEquals(0, countState(id));
+        }
+        assertEquals(1, countState(running));
+
+        // the watermark stops before the running process
+        assertEquals(e1, dao.getCursor("expired").instanceId());
+
+        // the process finishes and expires
+        tx(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.CURRENT_STATUS, ProcessStatus.FINISHED.toString())
+                .where(PROCESS_QUEUE.INSTANCE_ID.eq(running))
+                .execute());
+
+        cleaner.run();
+        assertEquals(0, countState(running));
+        assertEquals(e3, dao.getCursor("expired").instanceId());
+
+        // nothing to rescan
+        cleaner.run();
+        assertEquals(e3, dao.getCursor("expired").instanceId());
+        assertEquals(List.of(), dao.nextExpired(dao.getCursor("expired"), PgUtils.nowMinus(MAX_AGE), 10));
+    }
+
+    @Test
+    public void testRecheck() {
+        List<UUID> expired = insertExpired(3);
+
+        List<Cursor> batch = dao.nextExpired(null, PgUtils.nowMinus(MAX_AGE), 10);
+        assertEquals(3, batch.size());
+
+        // resumed after the batch was selected
+        UUID resumed = expired.get(1);
+        tx(tx -> tx.update(PROCESS_QUEUE)
+                .set(PROCESS_QUEUE.CURRENT_STATUS, ProcessStatus.RESUMING.toString())
+                .set(PROCESS_QUEUE.LAST_UPDATED_AT, OffsetDateTime.now())
+                .where(PROCESS_QUEUE.INSTANCE_ID.eq(resumed))
+                .execute());
+
+        for (List<Target> group : IncrementalProcessCleaner.expiredTargets(cfg)) {
+            dao.deleteExpired(group, batch, PgUtils.nowMinus(MAX_AGE));
+        }
+
+        assertTrue(exists(resumed));
+        assertEquals(1, countState(resumed));
+
+        assertFalse(exists(expired.get(0)));
+        assertEquals(0, countState(expired.get(0)));
+        assertFalse(exists(expired.get(2)));
+        assertEquals(0, countState(expired.get(2)));
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws Exception {
+        List<UUID> expired = insertExpired(2);
+        UUID resumed = expired.get(0);
+
+        List<Cursor> batch = dao.nextExpired(null, PgUtils.nowMinus(MAX_AGE), 10);
+        List<Target> state = IncrementalProcessCleaner.expiredTargets(cfg).get(0);
+
+        try (Connection conn = getConfiguration().connectionProvider().acquire()) {
+            conn.setAutoCommit(false);
+
+            // the process is resumed in a concurrent transaction
+            try (PreparedStatement ps = conn.prepareStatement("update process_queue set current_status = 'RESUMING', last_updated_at = current_timestamp where instance_id = ?")) {
+                ps.setObject(1, resumed);
+                ps.executeUpdate();
+            }
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<int[]> f = executor.submit(() -> dao.deleteExpired(state, batch, PgUtils.nowMinus(MAX_AGE)));
+
+                // waits for the row lock
+                assertThrows(TimeoutException.class, () -> f.get(1, TimeUnit.SECONDS));
+
+                conn.commit();
+
+                // only the other process' state is removed
+                assertArrayEquals(new int[]{1, 0}, f.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        assertEquals(1, countState(resumed));
+        assertEquals(0, countState(expired.get(1)));
+    }
+
+    private List<UUID> insertExpired(int count) {
+        OffsetDateTime createdAt = OffsetDateTime.now().minusDays(3);
+
+        List<UUID> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(insertProcess(createdAt.plusSeconds(i), ProcessStatus.FINISHED));
+        }
+        return result;
+    }
+
+    private UUID insertProcess(OffsetDateTime createdAt, ProcessStatus status) {
+        UUID instanceId = UUID.randomUUID();
+        OffsetDateTime ts = createdAt.truncatedTo(ChronoUnit.MICROS);
+
+        tx(tx -> {
+            tx.insertInto(PROCESS_QUEUE)
+                    .columns(PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.LAST_UPDATED_AT, PROCESS_QUEUE.CURRENT_STATUS)
+                    .values(instanceId, ts, ts, status.toString())
+                    .execute();
+
+            tx.insertInto(PROCESS_STATE)
+                    .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.ITEM_DATA)
+                    .values(instanceId, ts, "a", new byte[]{1})
+                    .execute();
+        });
+
+        return instanceId;
+    }
+
+    private boolean exists(UUID instanceId) {
+        boolean[] result = new boolean[1];
+        tx(tx -> result[0] = tx.fetchExists(PROCESS_QUEUE, PROCESS_QUEUE.INSTANCE_ID.eq(instanceId)));
+        return result[0];
+    }
+
+    private int countState(UUID instanceId) {
+        int[] result = new int[1];
+        tx(tx -> result[0] = tx.fetchCount(PROCESS_STATE, PROCESS_STATE.INSTANCE_ID.eq(instanceId)));
+        return result[0];
+    }
+
+    private static void set(Object o, String name, Object value) throws Exception {
+        Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
+}
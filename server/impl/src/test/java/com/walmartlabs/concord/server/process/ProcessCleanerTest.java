@@ -0,0 +1,136 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.jooq.Tables.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Disabled("requires a local DB instance")
+public class ProcessCleanerTest extends AbstractDaoTest {
+
+    @Test
+    public void testDeleteUnusedBlobs() throws Exception {
+        OffsetDateTime old = OffsetDateTime.now().minusDays(2);
+
+        String referenced = insertBlob(old);
+        String referencedByInitialState = insertBlob(old);
+        String unused = insertBlob(old);
+        String recent = insertBlob(OffsetDateTime.now());
+
+        UUID instanceId = UUID.randomUUID();
+        OffsetDateTime createdAt = OffsetDateTime.now();
+
+        tx(tx -> {
+            tx.insertInto(PROCESS_STATE)
+                    .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.BLOB_HASH)
+                    .values(instanceId, createdAt, "a", referenced)
+                    .execute();
+
+            tx.insertInto(PROCESS_INITIAL_STATE)
+                    .columns(PROCESS_INITIAL_STATE.INSTANCE_ID, PROCESS_INITIAL_STATE.INSTANCE_CREATED_AT, PROCESS_INITIAL_STATE.ITEM_PATH, PROCESS_INITIAL_STATE.BLOB_HASH)
+                    .values(instanceId, createdAt, "b", referencedByInitialState)
+                    .execute();
+        });
+
+        ProcessCleaner.CleanerDao dao = new ProcessCleaner.CleanerDao(getConfiguration());
+
+        // disabled
+        dao.deleteUnusedBlobs(cfg(false, Duration.ofDays(1)));
+        assertEquals(1, countBlobs(unused));
+
+        dao.deleteUnusedBlobs(cfg(true, Duration.ofDays(1)));
+        assertEquals(1, countBlobs(referenced));
+        assertEquals(1, countBlobs(referencedByInitialState));
+        assertEquals(0, countBlobs(unused));
+        // still within the grace period
+        assertEquals(1, countBlobs(recent));
+
+        // not referenced anymore
+        tx(tx -> tx.deleteFrom(PROCESS_STATE).where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)).execute());
+
+        dao.deleteUnusedBlobs(cfg(true, Duration.ofDays(1)));
+        assertEquals(0, countBlobs(referenced));
+        assertEquals(1, countBlobs(referencedByInitialState));
+
+        tx(tx -> {
+            tx.deleteFrom(PROCESS_INITIAL_STATE).where(PROCESS_INITIAL_STATE.INSTANCE_ID.eq(instanceId)).execute();
+            tx.deleteFrom(PROCESS_STATE_BLOBS).where(PROCESS_STATE_BLOBS.BLOB_HASH.in(referencedByInitialState, recent)).execute();
+        });
+    }
+
+    @Test
+    public void testDeleteUnusedBlobsInBatches() throws Exception {
+        OffsetDateTime old = OffsetDateTime.now().minusDays(2);
+
+        // more than a single batch
+        List<String> unused = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            unused.add(insertBlob(old));
+        }
+
+        new ProcessCleaner.CleanerDao(getConfiguration()).deleteUnusedBlobs(cfg(true, Duration.ofDays(1)));
+
+        for (String hash : unused) {
+            assertEquals(0, countBlobs(hash));
+        }
+    }
+
+    private String insertBlob(OffsetDateTime lastUsedAt) {
+        String hash = UUID.randomUUID().toString();
+        tx(tx -> tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_DATA, PROCESS_STATE_BLOBS.BLOB_SIZE, PROCESS_STATE_BLOBS.LAST_USED_AT)
+                .values(hash, hash.getBytes(), (long) hash.length(), lastUsedAt)
+                .execute());
+        return hash;
+    }
+
+    private int countBlobs(String hash) {
+        int[] result = new int[1];
+        tx(tx -> result[0] = tx.fetchCount(PROCESS_STATE_BLOBS, PROCESS_STATE_BLOBS.BLOB_HASH.eq(hash)));
+        return result[0];
+    }
+
+    private static ProcessConfiguration cfg(boolean stateCleanup, Duration gracePeriod) throws Exception {
+        ProcessConfiguration cfg = new ProcessConfiguration(Duration.ofDays(7), Collections.emptyList());
+        set(cfg, "stateCleanup", stateCleanup);
+        set(cfg, "stateDedupGracePeriod", gracePeriod);
+        return cfg;
+    }
+
+    private static void set(Object o, String name, Object value) throws Exception {
+        Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
+}
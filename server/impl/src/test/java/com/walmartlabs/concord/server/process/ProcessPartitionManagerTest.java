@@ -0,0 +1,206 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Disabled("requires a local DB instance")
+public class ProcessPartitionManagerTest extends AbstractDaoTest {
+
+    private static final List<String> TABLES = List.of("process_state", "process_events", "process_log_data");
+
+    /**
+     * The legacy partitions end 8 days after the migration (see v2.15.0.xml).
+     */
+    private static final int LEGACY_DAYS = 8;
+
+    public ProcessPartitionManagerTest() {
+        super(true, Map.of("processDataPartitioning", "true"));
+    }
+
+    @Test
+    public void testCreateAndRemove() throws Exception {
+        OffsetDateTime first = firstPartitionDay();
+        String firstSuffix = "_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(first);
+        String dayAfterSuffix = "_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(first.plusDays(1));
+
+        // partitions are created in advance
+
+        ProcessPartitionManager m = new ProcessPartitionManager(cfg(Duration.ofDays(7), LEGACY_DAYS + 1, true), getConfiguration());
+        m.performTask();
+
+        for (String t : TABLES) {
+            assertTrue(partitions(t).contains(t + "_default"), t);
+            assertTrue(partitions(t).contains(t + firstSuffix), t);
+            assertTrue(partitions(t).contains(t + dayAfterSuffix), t);
+        }
+
+        // partitions with running processes are kept
+
+        UUID instanceId = UUID.randomUUID();
+        tx(tx -> tx.execute("insert into process_queue (instance_id, created_at, current_status, last_updated_at) values (?, ?, 'RUNNING', current_timestamp)",
+                instanceId, first.plusHours(1).toLocalDateTime()));
+
+        try {
+            // everything is expired
+            m = new ProcessPartitionManager(cfg(Duration.ofDays(-30), 0, true), getConfiguration());
+            m.performTask();
+
+            for (String t : TABLES) {
+                List<String> l = partitions(t);
+                assertTrue(l.contains(t + firstSuffix), t);
+                assertFalse(l.contains(t + dayAfterSuffix), t);
+                assertFalse(l.contains(t + "_legacy"), t);
+                assertTrue(l.contains(t + "_default"), t);
+                assertFalse(tableExists(t + dayAfterSuffix), t);
+            }
+
+            // ...until the process finishes
+
+            tx(tx -> tx.execute("update process_queue set current_status = 'FINISHED' where instance_id = ?", instanceId));
+            m.performTask();
+
+            for (String t : TABLES) {
+                assertFalse(partitions(t).contains(t + firstSuffix), t);
+            }
+        } finally {
+            tx(tx -> tx.execute("delete from process_queue where instance_id = ?", instanceId));
+        }
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        String suffix = "_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(firstPartitionDay());
+
+        new ProcessPartitionManager(cfg(Duration.ofDays(7), LEGACY_DAYS, false), getConfiguration()).performTask();
+        new ProcessPartitionManager(cfg(Duration.ofDays(-30), 0, false), getConfiguration()).performTask();
+
+        for (String t : TABLES) {
+            assertFalse(partitions(t).contains(t + suffix), t);
+            // detached, not dropped
+            assertTrue(tableExists(t + suffix), t);
+            tx(tx -> tx.execute("drop table " + t + suffix));
+        }
+    }
+
+    @Test
+    public void testCleanupDisabled() throws Exception {
+        String suffix = "_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(firstPartitionDay());
+
+        new ProcessPartitionManager(cfg(Duration.ofDays(7), LEGACY_DAYS, true), getConfiguration()).performTask();
+
+        // everything is expired, but the logs must be kept
+        ProcessConfiguration cfg = cfg(Duration.ofDays(-30), 0, true);
+        set(cfg, "logsCleanup", false);
+        new ProcessPartitionManager(cfg, getConfiguration()).performTask();
+
+        assertFalse(partitions("process_state").contains("process_state" + suffix));
+        assertFalse(partitions("process_events").contains("process_events" + suffix));
+        assertTrue(partitions("process_log_data").contains("process_log_data" + suffix));
+        assertTrue(partitions("process_log_data").contains("process_log_data_legacy"));
+
+        // cleanup
+        new ProcessPartitionManager(cfg(Duration.ofDays(-30), 0, true), getConfiguration()).performTask();
+    }
+
+    @Test
+    public void testDefaultRows() throws Exception {
+        OffsetDateTime today = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+        OffsetDateTime createdAt = today.plusDays(10).plusHours(1);
+        String partition = "process_state_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(createdAt);
+
+        new ProcessPartitionManager(cfg(Duration.ofDays(7), 1, true), getConfiguration()).performTask();
+
+        // the partition for the process doesn't exist yet
+        UUID instanceId = UUID.randomUUID();
+        tx(tx -> tx.execute("insert into process_state (instance_id, instance_created_at, item_path, item_data) values (?, ?, 'a', ?)",
+                instanceId, createdAt, new byte[]{1}));
+
+        try {
+            assertEquals("process_state_default", partitionOf(instanceId));
+
+            new ProcessPartitionManager(cfg(Duration.ofDays(7), 12, true), getConfiguration()).performTask();
+
+            // the row is moved, the following partitions are created too
+            assertEquals(partition, partitionOf(instanceId));
+            assertTrue(partitions("process_state").contains("process_state_default"));
+            assertTrue(partitions("process_state").contains("process_state_p" + DateTimeFormatter.ofPattern("yyyyMMdd").format(today.plusDays(12))));
+        } finally {
+            tx(tx -> tx.execute("delete from process_state where instance_id = ?", instanceId));
+        }
+    }
+
+    private static OffsetDateTime firstPartitionDay() {
+        return OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).plusDays(LEGACY_DAYS);
+    }
+
+    private String partitionOf(UUID instanceId) {
+        String[] result = new String[1];
+        tx(tx -> result[0] = tx.fetchValue("select tableoid::regclass::text from process_state where instance_id = ?", instanceId).toString());
+        return result[0];
+    }
+
+    private List<String> partitions(String table) {
+        List<String> result = new ArrayList<>();
+        tx(tx -> result.addAll(tx.fetch("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid where i.inhparent = to_regclass(?)", table)
+                .getValues(0, String.class)));
+        return result;
+    }
+
+    private boolean tableExists(String table) {
+        boolean[] result = new boolean[1];
+        tx(tx -> result[0] = tx.fetchValue("select to_regclass(?) is not null", table) == Boolean.TRUE);
+        return result[0];
+    }
+
+    private static ProcessConfiguration cfg(Duration maxStateAge, int precreateDays, boolean dropExpired) throws Exception {
+        ProcessConfiguration cfg = new ProcessConfiguration(maxStateAge, Collections.emptyList());
+        set(cfg, "partitioningPrecreateDays", precreateDays);
+        set(cfg, "partitioningDropExpired", dropExpired);
+        set(cfg, "stateCleanup", true);
+        set(cfg, "eventsCleanup", true);
+        set(cfg, "logsCleanup", true);
+        return cfg;
+    }
+
+    private static void set(Object o, String name, Object value) throws Exception {
+        Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
+}
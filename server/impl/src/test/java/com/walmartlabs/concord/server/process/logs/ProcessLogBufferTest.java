@@ -0,0 +1,203 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogAppend;
+import com.walmartlabs.concord.server.sdk.ConcordApplicationException;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.Range;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ProcessLogBufferTest {
+
+    private ProcessConfiguration cfg;
+    private ProcessLogsDao logsDao;
+    private ExecutorService executor;
+
+    /**
+     * Current log sizes, used to calculate the ranges returned by the mocked DAO.
+     */
+    private final Map<ProcessKey, Integer> logSizes = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        cfg = mock(ProcessConfiguration.class);
+        when(cfg.isLogBatchingEnabled()).thenReturn(true);
+        when(cfg.getLogBatchingWindow()).thenReturn(Duration.ofSeconds(1));
+        when(cfg.getLogBatchingMaxBatchSize()).thenReturn(1024 * 1024);
+        when(cfg.getLogBatchingMaxPendingSize()).thenReturn(1024 * 1024);
+
+        logsDao = mock(ProcessLogsDao.class);
+        when(logsDao.append(anyList())).thenAnswer(i -> {
+            List<LogAppend> rows = i.getArgument(0);
+            List<Range> result = new ArrayList<>();
+            for (LogAppend r : rows) {
+                result.add(append(r.getProcessKey(), r.getData()));
+            }
+            return result;
+        });
+        when(logsDao.append(any(ProcessKey.class), anyLong(), any(byte[].class)))
+                .thenAnswer(i -> append(i.getArgument(0), i.getArgument(2)));
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        ProcessLogBuffer buffer = new ProcessLogBuffer(cfg, logsDao, new MetricRegistry());
+        buffer.start();
+
+        ProcessKey processKey = ProcessKey.random();
+        try {
+            Future<Range> a = executor.submit(() -> buffer.append(processKey, 0, "0123".getBytes()));
+            Future<Range> b = executor.submit(() -> buffer.append(processKey, 0, "45".getBytes()));
+
+            Range ra = a.get(10, TimeUnit.SECONDS);
+            Range rb = b.get(10, TimeUnit.SECONDS);
+
+            // both chunks are coalesced into a single row
+            ArgumentCaptor<List<LogAppend>> captor = captor();
+            verify(logsDao, times(1)).append(captor.capture());
+            assertEquals(1, captor.getValue().size());
+            assertEquals(6, captor.getValue().get(0).getData().length);
+
+            // the ranges don't overlap and cover the whole row
+            Range first = ra.lower() == 0 ? ra : rb;
+            Range second = ra.lower() == 0 ? rb : ra;
+            assertEquals(0, first.lower());
+            assertEquals(first.upper(), second.lower());
+            assertEquals(6, second.upper());
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // batches of a single chunk
+        when(cfg.getLogBatchingMaxBatchSize()).thenReturn(1);
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(logsDao.append(anyList())).thenAnswer(i -> {
+            writing.countDown();
+            release.await();
+            List<LogAppend> rows = i.getArgument(0);
+            return List.of(append(rows.get(0).getProcessKey(), rows.get(0).getData()));
+        });
+
+        ProcessLogBuffer buffer = new ProcessLogBuffer(cfg, logsDao, new MetricRegistry(), 100);
+        buffer.start();
+
+        ProcessKey processKey = ProcessKey.random();
+        try {
+            // the first chunk is picked up by the writer and blocks it
+            Future<Range> a = executor.submit(() -> buffer.append(processKey, 0, "0123".getBytes()));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            // the second chunk waits in the queue and is dropped after the timeout
+            ConcordApplicationException e = assertThrows(ConcordApplicationException.class,
+                    () -> buffer.append(processKey, 0, "45".getBytes()));
+            assertEquals(503, e.getResponse().getStatus());
+
+            release.countDown();
+
+            // the first chunk was already being written, its caller gets the result regardless of the timeout
+            Range ra = a.get(10, TimeUnit.SECONDS);
+            assertEquals(0, ra.lower());
+            assertEquals(4, ra.upper());
+        } finally {
+            buffer.stop();
+        }
+
+        // the dropped chunk is never written
+        ArgumentCaptor<List<LogAppend>> captor = captor();
+        verify(logsDao, times(1)).append(captor.capture());
+        assertArrayEquals("0123".getBytes(), captor.getValue().get(0).getData());
+    }
+
+    @Test
+    public void testStopDrain() throws Exception {
+        // a long window, the chunks are written only when the buffer is stopped
+        when(cfg.getLogBatchingWindow()).thenReturn(Duration.ofMinutes(1));
+
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ProcessLogBuffer buffer = new ProcessLogBuffer(cfg, logsDao, metricRegistry);
+        buffer.start();
+
+        ProcessKey processKey = ProcessKey.random();
+        Future<Range> a = executor.submit(() -> buffer.append(processKey, 0, "0123".getBytes()));
+        Future<Range> b = executor.submit(() -> buffer.append(processKey, 1, "45".getBytes()));
+
+        // wait for both chunks to reach the buffer
+        Gauge<?> pendingBytes = metricRegistry.getGauges().get("process-log-buffer-pending-bytes");
+        while (((Number) pendingBytes.getValue()).longValue() < 6) {
+            Thread.sleep(10);
+        }
+
+        buffer.stop();
+
+        assertNotNull(a.get(10, TimeUnit.SECONDS));
+        assertNotNull(b.get(10, TimeUnit.SECONDS));
+        assertEquals(6, logSizes.get(processKey));
+
+        // after stop, the chunks are written directly
+        Range r = buffer.append(processKey, 0, "6".getBytes());
+        assertEquals(6, r.lower());
+        verify(logsDao, times(1)).append(processKey, 0, "6".getBytes());
+    }
+
+    private Range append(ProcessKey processKey, byte[] data) {
+        int upper = logSizes.merge(processKey, data.length, Integer::sum);
+        return Range.builder()
+                .lowerMode(Range.Mode.INCLUSIVE)
+                .lower(upper - data.length)
+                .upper(upper)
+                .upperMode(Range.Mode.EXCLUSIVE)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<LogAppend>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
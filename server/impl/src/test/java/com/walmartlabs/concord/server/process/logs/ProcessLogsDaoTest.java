@@ -0,0 +1,137 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.LogAppend;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.Range;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Disabled("requires a local DB instance")
+public class ProcessLogsDaoTest extends AbstractDaoTest {
+
+    @Test
+    public void testBatchAppend() {
+        ProcessLogsDao dao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey a = ProcessKey.random();
+        ProcessKey b = ProcessKey.random();
+
+        Range r = dao.append(a, 0, "0123".getBytes());
+        assertRange(0, 4, r);
+
+        List<Range> ranges = dao.append(List.of(
+                new LogAppend(a, 0, "45".getBytes()),
+                new LogAppend(b, 0, "abc".getBytes()),
+                new LogAppend(a, 1, "678".getBytes()),
+                new LogAppend(a, 0, "9".getBytes())));
+
+        assertEquals(4, ranges.size());
+        assertRange(4, 6, ranges.get(0));
+        assertRange(0, 3, ranges.get(1));
+        assertRange(6, 9, ranges.get(2));
+        assertRange(9, 10, ranges.get(3));
+
+        // the ranges must be the same as the ones calculated by the DB functions
+        r = dao.append(a, 1, "x".getBytes());
+        assertRange(10, 11, r);
+
+        ProcessLog segment = dao.segmentData(a, 1, null, null);
+        assertEquals(4, segment.getSize());
+
+        ProcessLog data = dao.data(a, null, null);
+        assertEquals(11, data.getSize());
+    }
+
+    @Test
+    public void testCompactAndStream() throws Exception {
+        ProcessLogsDao dao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey pk = ProcessKey.random();
+        dao.append(pk, 0, "0123".getBytes());
+        dao.append(pk, 0, "45".getBytes());
+        dao.append(pk, 1, "ab".getBytes());
+        dao.append(pk, 0, "6789".getBytes());
+        dao.append(pk, 0, "XYZ".getBytes());
+
+        assertEquals("345a", stream(dao, pk, 3, 7));
+        assertEquals("45678", streamSegment(dao, pk, 0, 4, 9));
+
+        // "0123" + "45" are merged, "6789" + "XYZ" exceed the max chunk size
+        ProcessLogCompactor.CompactionResult r = new ProcessLogCompactor.CompactorDao(getConfiguration()).compact(pk, 6);
+        assertEquals(5, r.chunksBefore());
+        assertEquals(4, r.chunksAfter());
+        assertEquals(4, dao.data(pk, null, null).getChunks().size());
+
+        assertEquals("012345ab6789XYZ", stream(dao, pk, 0, 100));
+        assertEquals("345a", stream(dao, pk, 3, 7));
+        assertEquals("45678", streamSegment(dao, pk, 0, 4, 9));
+        assertEquals("b", streamSegment(dao, pk, 1, 1, 100));
+        assertEquals(13, dao.segmentSize(pk, 0));
+        assertEquals(15, dao.dataSize(pk));
+    }
+
+    @Test
+    public void testStreamPages() throws IOException {
+        ProcessLogsDao dao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey pk = ProcessKey.random();
+
+        // more rows than fit into a single page
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            String s = i + ";";
+            dao.append(pk, 0, s.getBytes());
+            expected.append(s);
+        }
+
+        assertEquals(expected.toString(), stream(dao, pk, 0, expected.length()));
+        assertEquals(expected.substring(5, 120), stream(dao, pk, 5, 120));
+        assertEquals(expected.substring(1), streamSegment(dao, pk, 0, 1, 1000));
+        assertEquals("", stream(dao, pk, 10, 10));
+    }
+
+    private static String stream(ProcessLogsDao dao, ProcessKey pk, int start, int end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dao.streamData(pk, start, end, out::write);
+        return out.toString();
+    }
+
+    private static String streamSegment(ProcessLogsDao dao, ProcessKey pk, long segmentId, int start, int end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dao.streamSegmentData(pk, segmentId, start, end, out::write);
+        return out.toString();
+    }
+
+    private static void assertRange(int lower, int upper, Range r) {
+        assertEquals(lower, r.lower());
+        assertEquals(upper, r.upper());
+    }
+}
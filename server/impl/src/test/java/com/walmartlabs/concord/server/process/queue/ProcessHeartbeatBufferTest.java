@@ -0,0 +1,175 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2023 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class ProcessHeartbeatBufferTest {
+
+    private ProcessConfiguration cfg;
+    private ProcessQueueDao queueDao;
+    private ProcessHeartbeatBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        cfg = mock(ProcessConfiguration.class);
+        when(cfg.isHeartbeatBatchingEnabled()).thenReturn(true);
+        // flushed manually
+        when(cfg.getHeartbeatBatchingFlushInterval()).thenReturn(Duration.ofHours(1));
+
+        queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.touch(any(UUID.class))).thenReturn(true);
+        when(queueDao.touch(anyCollection())).thenAnswer(i -> new HashSet<>(i.<Collection<UUID>>getArgument(0)));
+
+        buffer = new ProcessHeartbeatBuffer(cfg, queueDao, new MetricRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        buffer.stop();
+    }
+
+    @Test
+    public void testBatching() {
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        // the first heartbeats are written directly
+        assertTrue(buffer.touch(a));
+        assertTrue(buffer.touch(b));
+        verify(queueDao).touch(a);
+        verify(queueDao).touch(b);
+
+        // the subsequent ones are buffered
+        assertTrue(buffer.touch(a));
+        assertTrue(buffer.touch(b));
+        assertTrue(buffer.touch(a));
+        verify(queueDao, times(2)).touch(any(UUID.class));
+        verify(queueDao, never()).touch(anyCollection());
+
+        buffer.flush();
+        verify(queueDao).touch(argThatContainsExactly(a, b));
+
+        // nothing to flush
+        buffer.flush();
+        verify(queueDao, times(1)).touch(anyCollection());
+
+        assertEquals(Duration.ofHours(1), buffer.getMaxDelay());
+    }
+
+    @Test
+    public void testUnknownProcess() {
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        when(queueDao.touch(a)).thenReturn(false);
+
+        assertFalse(buffer.touch(a));
+        assertFalse(buffer.touch(a));
+
+        // not buffered, checked every time
+        verify(queueDao, times(2)).touch(a);
+    }
+
+    @Test
+    public void testRemovedProcess() {
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        buffer.touch(a);
+        buffer.touch(a);
+
+        // the process was removed after the first heartbeat
+        when(queueDao.touch(anyCollection())).thenReturn(Collections.emptySet());
+        buffer.flush();
+
+        // forgotten, the next heartbeat is written directly
+        when(queueDao.touch(a)).thenReturn(false);
+        assertFalse(buffer.touch(a));
+        verify(queueDao, times(2)).touch(a);
+    }
+
+    @Test
+    public void testFlushError() {
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        buffer.touch(a);
+        buffer.touch(a);
+
+        when(queueDao.touch(anyCollection())).thenThrow(new RuntimeException("boom"));
+        assertThrows(RuntimeException.class, () -> buffer.flush());
+
+        // the heartbeat is kept for the next attempt
+        doAnswer(i -> new HashSet<>(i.<Collection<UUID>>getArgument(0))).when(queueDao).touch(anyCollection());
+        buffer.flush();
+        verify(queueDao, times(2)).touch(argThatContainsExactly(a));
+    }
+
+    @Test
+    public void testStop() {
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        buffer.touch(a);
+        buffer.touch(a);
+
+        // pending heartbeats are written on stop
+        buffer.stop();
+        verify(queueDao).touch(argThatContainsExactly(a));
+
+        // written directly after stop
+        buffer.touch(a);
+        verify(queueDao, times(2)).touch(a);
+    }
+
+    @Test
+    public void testDisabled() {
+        when(cfg.isHeartbeatBatchingEnabled()).thenReturn(false);
+        buffer.start();
+
+        UUID a = UUID.randomUUID();
+        buffer.touch(a);
+        buffer.touch(a);
+
+        verify(queueDao, times(2)).touch(a);
+        assertEquals(Duration.ZERO, buffer.getMaxDelay());
+    }
+
+    private static Collection<UUID> argThatContainsExactly(UUID... ids) {
+        Set<UUID> expected = Set.of(ids);
+        return argThat(c -> c != null && c.size() == expected.size() && expected.containsAll(c));
+    }
+}
@@ -0,0 +1,150 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.Matcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the "one {@link Matcher#matches(Object, Object)} call per candidate per agent"
+ * approach with {@link SignatureMatcher}. Emulates a single dispatch round.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.walmartlabs.concord.server.process.queue.dispatcher.AgentMatchingBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentMatchingBenchmark {
+
+    private static final String[] FLAVORS = {"default", "k8s-small", "k8s-large", "k8s-gpu", "ansible", "windows"};
+    private static final String[] CLUSTERS = {"prod-east", "prod-west", "dev"};
+
+    @Param({"500"})
+    public int agentCount;
+
+    @Param({"100"})
+    public int candidateCount;
+
+    private List<Map<String, Object>> capabilities;
+    private List<Map<String, Object>> requirements;
+
+    private SignatureMatcher signatureMatcher;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(123);
+
+        capabilities = new ArrayList<>(agentCount);
+        for (int i = 0; i < agentCount; i++) {
+            capabilities.add(capabilities(FLAVORS[rnd.nextInt(FLAVORS.length)], CLUSTERS[rnd.nextInt(CLUSTERS.length)]));
+        }
+
+        requirements = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            switch (rnd.nextInt(5)) {
+                case 0:
+                    requirements.add(Collections.emptyMap());
+                    break;
+                case 1:
+                    requirements.add(Collections.singletonMap("flavor", FLAVORS[rnd.nextInt(FLAVORS.length)]));
+                    break;
+                case 2:
+                    requirements.add(Collections.singletonMap("flavor", "k8s-.*"));
+                    break;
+                case 3:
+                    // no free agents of this flavor
+                    requirements.add(Collections.singletonMap("flavor", "macos"));
+                    break;
+                default:
+                    Map<String, Object> m = new HashMap<>();
+                    m.put("flavor", "windows");
+                    m.put("k8s", Collections.singletonMap("cluster", "prod-.*"));
+                    requirements.add(m);
+            }
+        }
+
+        signatureMatcher = new SignatureMatcher(new MetricRegistry());
+    }
+
+    @Benchmark
+    public void interpreter(Blackhole bh) {
+        for (Map<String, Object> req : requirements) {
+            for (Map<String, Object> caps : capabilities) {
+                if (req.isEmpty() || Matcher.matches(caps, req)) {
+                    bh.consume(caps);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void signatures(Blackhole bh) {
+        // requests are grouped once per round
+        Map<Signature, List<Map<String, Object>>> groups = new LinkedHashMap<>();
+        for (Map<String, Object> caps : capabilities) {
+            groups.computeIfAbsent(Signature.of(caps), k -> new ArrayList<>()).add(caps);
+        }
+
+        for (Map<String, Object> req : requirements) {
+            Signature s = Signature.of(req);
+            for (Map.Entry<Signature, List<Map<String, Object>>> e : groups.entrySet()) {
+                if (signatureMatcher.matches(e.getKey(), s)) {
+                    bh.consume(e.getValue().get(0));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> capabilities(String flavor, String cluster) {
+        Map<String, Object> k8s = new HashMap<>();
+        k8s.put("cluster", cluster);
+        k8s.put("namespace", "concord");
+        k8s.put("nodePool", flavor + "-pool");
+
+        Map<String, Object> m = new HashMap<>();
+        m.put("flavor", flavor);
+        m.put("type", "concord-agent");
+        m.put("os", "linux");
+        m.put("k8s", k8s);
+        return m;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AgentMatchingBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
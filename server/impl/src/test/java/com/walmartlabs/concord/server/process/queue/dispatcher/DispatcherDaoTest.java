@@ -0,0 +1,110 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.secret.HashAlgorithm;
+import com.walmartlabs.concord.common.secret.SecretEncryptedByType;
+import com.walmartlabs.concord.common.secret.SecretUtils;
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.org.OrganizationManager;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import com.walmartlabs.concord.server.org.secret.SecretDao;
+import com.walmartlabs.concord.server.org.secret.SecretType;
+import com.walmartlabs.concord.server.org.secret.SecretVisibility;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.queue.dispatcher.Dispatcher.ClaimResult;
+import com.walmartlabs.concord.server.process.queue.dispatcher.Dispatcher.SecretReference;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.org.secret.SecretDao.InsertMode.INSERT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Disabled("requires a local DB instance")
+public class DispatcherDaoTest extends AbstractDaoTest {
+
+    @Test
+    public void testClaim() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        ProcessQueueDao queueDao = new ProcessQueueDao(getConfiguration(), objectMapper);
+        Dispatcher.DispatcherDao dao = new Dispatcher.DispatcherDao(getConfiguration(), objectMapper, new MetricRegistry());
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        tx(tx -> queueDao.insert(tx, processKey, ProcessStatus.ENQUEUED, ProcessKind.DEFAULT, null, null, null, null, null, null, null, null));
+
+        tx(tx -> {
+            assertEquals(ClaimResult.CLAIMED, dao.claim(tx, processKey));
+
+            // the record is locked by the outer transaction
+            DSL.using(getConfiguration()).transaction(cfg ->
+                    assertEquals(ClaimResult.LOCKED, dao.claim(DSL.using(cfg), processKey)));
+        });
+
+        tx(tx -> queueDao.updateStatus(tx, processKey, ProcessStatus.STARTING));
+        tx(tx -> assertEquals(ClaimResult.GONE, dao.claim(tx, processKey)));
+
+        tx(tx -> assertEquals(ClaimResult.GONE, dao.claim(tx, new ProcessKey(UUID.randomUUID(), processKey.getCreatedAt()))));
+    }
+
+    @Test
+    public void testResponseData() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        Dispatcher.DispatcherDao dao = new Dispatcher.DispatcherDao(getConfiguration(), objectMapper, new MetricRegistry());
+
+        UUID orgId = OrganizationManager.DEFAULT_ORG_ID;
+
+        String projectName = "project#" + System.currentTimeMillis();
+        ProjectDao projectDao = new ProjectDao(getConfiguration(), objectMapper);
+        UUID projectId = projectDao.insert(orgId, projectName, "test", null, null, null, null, new byte[0], null, null);
+
+        String secretName = "secret#" + System.currentTimeMillis();
+        SecretDao secretDao = new SecretDao(getConfiguration());
+        UUID secretId = secretDao.insert(orgId, secretName, null, SecretType.KEY_PAIR, SecretEncryptedByType.SERVER_KEY, "concord", SecretVisibility.PUBLIC, SecretUtils.generateSalt(16), HashAlgorithm.SHA256, INSERT);
+
+        RepositoryDao repositoryDao = new RepositoryDao(getConfiguration(), objectMapper);
+        UUID repoWithSecretId = repositoryDao.insert(projectId, "repo#1", "n/a", null, null, null, secretId, false, null, false);
+        UUID repoWithoutSecretId = repositoryDao.insert(projectId, "repo#2", "n/a", null, null, null, null, false, null, false);
+        UUID unknownId = UUID.randomUUID();
+
+        // ---
+
+        Map<UUID, SecretReference> secrets = dao.getSecretReferences(List.of(repoWithSecretId, repoWithoutSecretId, unknownId));
+        assertEquals(Map.of(repoWithSecretId, new SecretReference(OrganizationManager.DEFAULT_ORG_NAME, secretName),
+                repoWithoutSecretId, new SecretReference(null, null)), secrets);
+
+        Map<UUID, String> orgNames = dao.getOrgNames(List.of(projectId, unknownId));
+        assertEquals(Map.of(projectId, OrganizationManager.DEFAULT_ORG_NAME), orgNames);
+    }
+}
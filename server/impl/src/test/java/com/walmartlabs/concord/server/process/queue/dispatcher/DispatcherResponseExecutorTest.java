@@ -0,0 +1,80 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DispatcherResponseExecutorTest {
+
+    @Test
+    public void testFullQueue() throws Exception {
+        ThreadPoolExecutor executor = Dispatcher.createResponseExecutor(1, 1);
+        try {
+            Thread caller = Thread.currentThread();
+            CountDownLatch release = new CountDownLatch(1);
+            List<Thread> threads = new CopyOnWriteArrayList<>();
+
+            // the first task occupies the only worker, the second one fills the queue
+            // and the third one is rejected and must be run by the caller
+            List<Callable<String>> tasks = List.of(
+                    () -> {
+                        assertTrue(release.await(10, TimeUnit.SECONDS));
+                        threads.add(Thread.currentThread());
+                        return "a";
+                    },
+                    () -> {
+                        threads.add(Thread.currentThread());
+                        return "b";
+                    },
+                    () -> {
+                        threads.add(Thread.currentThread());
+                        release.countDown();
+                        return "c";
+                    });
+
+            List<Future<String>> results = executor.invokeAll(tasks);
+
+            assertEquals(List.of("a", "b", "c"), List.of(results.get(0).get(), results.get(1).get(), results.get(2).get()));
+            assertEquals(3, threads.size());
+            assertEquals(1, threads.stream().filter(t -> t == caller).count());
+            assertSame(caller, threads.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        ThreadPoolExecutor executor = Dispatcher.createResponseExecutor(1, 1);
+        executor.shutdownNow();
+
+        // rejected tasks are not discarded, otherwise invokeAll would never return
+        List<Future<String>> results = executor.invokeAll(List.of(() -> "a", () -> "b"));
+
+        assertEquals("a", results.get(0).get(0, TimeUnit.SECONDS));
+        assertEquals("b", results.get(1).get(0, TimeUnit.SECONDS));
+    }
+}
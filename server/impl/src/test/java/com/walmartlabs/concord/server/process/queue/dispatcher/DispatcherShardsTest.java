@@ -0,0 +1,64 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DispatcherShardsTest {
+
+    @Test
+    public void testSameOrgSameShard() {
+        UUID orgId = UUID.randomUUID();
+
+        int expected = DispatcherShards.shardOf(entry(orgId), 8);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(expected, DispatcherShards.shardOf(entry(orgId), 8));
+        }
+    }
+
+    @Test
+    public void testRange() {
+        for (int i = 0; i < 1000; i++) {
+            int shard = DispatcherShards.shardOf(entry(i % 2 == 0 ? UUID.randomUUID() : null), 5);
+            assertTrue(shard >= 0 && shard < 5);
+        }
+
+        // 0x80000000 in the first 32 bits must not produce a negative shard
+        UUID id = UUID.fromString("80000000-0000-0000-0000-000000000000");
+        assertEquals(0, DispatcherShards.shardOf(entry(id), 3));
+    }
+
+    private static ProcessQueueEntry entry(UUID orgId) {
+        return ProcessQueueEntry.builder()
+                .key(new ProcessKey(UUID.randomUUID(), OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS)))
+                .orgId(orgId)
+                .build();
+    }
+}
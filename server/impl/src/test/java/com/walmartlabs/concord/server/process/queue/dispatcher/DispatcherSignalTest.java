@@ -0,0 +1,115 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.TransactionHooks;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.jooq.Configuration;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultTransactionListenerProvider;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DispatcherSignalTest {
+
+    @Test
+    public void testTimeout() throws Exception {
+        DispatcherSignal signal = new DispatcherSignal();
+        assertTrue(await(signal, 200) >= 190);
+    }
+
+    @Test
+    public void testSignalBeforeAwait() throws Exception {
+        DispatcherSignal signal = new DispatcherSignal();
+
+        signal.signal();
+        assertTrue(await(signal, 10_000) < 1000);
+    }
+
+    @Test
+    public void testWakeUp() throws Exception {
+        DispatcherSignal signal = new DispatcherSignal();
+
+        Thread t = new Thread(() -> {
+            sleep(200);
+            signal.signal();
+        });
+        t.start();
+
+        assertTrue(await(signal, 10_000) < 5000);
+        t.join();
+    }
+
+    @Test
+    public void testStatusChange() throws Exception {
+        DispatcherSignal signal = new DispatcherSignal();
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS));
+
+        Configuration cfg = new DefaultConfiguration()
+                .set(new MockConnection(ctx -> new MockResult[0]))
+                .set(SQLDialect.POSTGRES)
+                .set(new DefaultTransactionListenerProvider(new TransactionHooks.Listener()));
+
+        DSL.using(cfg).transaction(c -> signal.onStatusChange(DSL.using(c), processKey, ProcessStatus.RUNNING));
+        assertTrue(await(signal, 200) >= 190);
+
+        DSL.using(cfg).transaction(c -> {
+            signal.onStatusChange(DSL.using(c), processKey, ProcessStatus.ENQUEUED);
+
+            // not committed yet
+            assertTrue(await(signal, 200) >= 190);
+        });
+
+        assertTrue(await(signal, 10_000) < 1000);
+
+        // rolled back
+        assertThrows(RuntimeException.class, () -> DSL.using(cfg).transaction(c -> {
+            signal.onStatusChange(DSL.using(c), processKey, ProcessStatus.ENQUEUED);
+            throw new RuntimeException("rollback");
+        }));
+        assertTrue(await(signal, 200) >= 190);
+    }
+
+    private static long await(DispatcherSignal signal, long timeout) throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+        signal.await(timeout);
+        return System.currentTimeMillis() - t1;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
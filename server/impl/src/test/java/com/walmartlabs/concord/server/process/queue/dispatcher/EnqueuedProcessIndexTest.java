@@ -0,0 +1,231 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.*;
+
+public class EnqueuedProcessIndexTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+
+    private ProcessQueueConfiguration cfg;
+    private Dispatcher.DispatcherDao dao;
+
+    @BeforeEach
+    public void setUp() {
+        cfg = mock(ProcessQueueConfiguration.class);
+        when(cfg.isDispatcherIndexEnabled()).thenReturn(true);
+        when(cfg.getDispatcherIndexResyncInterval()).thenReturn(Duration.ofHours(1));
+        when(cfg.getDispatcherShardCount()).thenReturn(1);
+
+        dao = mock(Dispatcher.DispatcherDao.class);
+        when(dao.listEnqueued(any(), any(), anyInt())).thenReturn(Collections.emptyList());
+        when(dao.getEnqueued(any())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void testResync() {
+        UUID orgId = UUID.randomUUID();
+        Map<String, Object> flavor = Map.of("flavor", "test");
+
+        EnqueuedProcessIndex.Candidate a = candidate(orgId, null, T0.plusSeconds(2));
+        EnqueuedProcessIndex.Candidate b = candidate(orgId, flavor, T0.plusSeconds(1));
+        EnqueuedProcessIndex.Candidate c = candidate(orgId, null, T0);
+        when(dao.listEnqueued(any(), any(), anyInt())).thenReturn(List.of(a, b, c));
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+
+        Map<Signature, List<EnqueuedProcessIndex.Candidate>> buckets = buckets(index, 0);
+        assertEquals(2, buckets.size());
+        // in the dispatch order
+        assertEquals(List.of(c, a), buckets.get(Signature.EMPTY));
+        assertEquals(List.of(b), buckets.get(Signature.of(flavor)));
+
+        // the next refresh doesn't hit the DB until the resync interval passes
+        index.refresh();
+        verify(dao, times(1)).listEnqueued(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testCatchUp() {
+        when(cfg.getDispatcherIndexResyncInterval()).thenReturn(Duration.ZERO);
+
+        EnqueuedProcessIndex.Candidate a = candidate(UUID.randomUUID(), null, T0);
+        when(dao.listEnqueued(isNull(), isNull(), anyInt())).thenReturn(List.of(a));
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+        assertEquals(List.of(a), buckets(index, 0).get(Signature.EMPTY));
+
+        // subsequent syncs fetch only the recently updated processes and keep the existing entries
+        EnqueuedProcessIndex.Candidate b = candidate(UUID.randomUUID(), null, T0.plusSeconds(1));
+        when(dao.listEnqueued(notNull(), eq(new UUID(0, 0)), anyInt())).thenReturn(List.of(b));
+
+        index.refresh();
+        assertEquals(List.of(a, b), buckets(index, 0).get(Signature.EMPTY));
+        verify(dao, times(1)).listEnqueued(isNull(), isNull(), anyInt());
+        verify(dao, times(1)).listEnqueued(notNull(), eq(new UUID(0, 0)), anyInt());
+    }
+
+    @Test
+    public void testStatusChanges() {
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+        assertTrue(buckets(index, 0).isEmpty());
+
+        EnqueuedProcessIndex.Candidate a = candidate(UUID.randomUUID(), null, T0);
+        when(dao.getEnqueued(List.of(a.entry().key()))).thenReturn(List.of(a));
+
+        index.onStatusChange(null, a.entry().key(), ProcessStatus.ENQUEUED);
+        index.refresh();
+        assertEquals(List.of(a), buckets(index, 0).get(Signature.EMPTY));
+
+        // the same process enqueued again (e.g. resumed) is not duplicated
+        index.onStatusChange(null, a.entry().key(), ProcessStatus.ENQUEUED);
+        index.refresh();
+        assertEquals(List.of(a), buckets(index, 0).get(Signature.EMPTY));
+
+        index.onStatusChange(null, a.entry().key(), ProcessStatus.STARTING);
+        index.refresh();
+        assertTrue(buckets(index, 0).isEmpty());
+    }
+
+    @Test
+    public void testNotYetVisible() {
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+
+        EnqueuedProcessIndex.Candidate a = candidate(UUID.randomUUID(), null, T0);
+
+        // the enqueue transaction is not committed yet
+        index.onStatusChange(null, a.entry().key(), ProcessStatus.ENQUEUED);
+        index.refresh();
+        assertTrue(buckets(index, 0).isEmpty());
+
+        // the notification is kept and retried on the next refresh
+        when(dao.getEnqueued(List.of(a.entry().key()))).thenReturn(List.of(a));
+        index.refresh();
+        assertEquals(List.of(a), buckets(index, 0).get(Signature.EMPTY));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        EnqueuedProcessIndex.Candidate a = candidate(UUID.randomUUID(), null, T0);
+        EnqueuedProcessIndex.Candidate b = candidate(UUID.randomUUID(), null, T0.plusSeconds(1));
+        when(dao.listEnqueued(any(), any(), anyInt())).thenReturn(List.of(a, b));
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+
+        index.removeAll(List.of(a.entry().key()));
+        assertEquals(List.of(b), buckets(index, 0).get(Signature.EMPTY));
+
+        index.removeAll(List.of(b.entry().key()));
+        assertTrue(buckets(index, 0).isEmpty());
+    }
+
+    @Test
+    public void testShards() {
+        when(cfg.getDispatcherShardCount()).thenReturn(4);
+
+        List<EnqueuedProcessIndex.Candidate> l = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            l.add(candidate(UUID.randomUUID(), null, T0.plusSeconds(i)));
+        }
+        when(dao.listEnqueued(any(), any(), anyInt())).thenReturn(l);
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        index.refresh();
+
+        int total = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            for (EnqueuedProcessIndex.Candidate c : buckets(index, shard).getOrDefault(Signature.EMPTY, List.of())) {
+                assertEquals(shard, DispatcherShards.shardOf(c.entry(), 4));
+                total++;
+            }
+        }
+        assertEquals(l.size(), total);
+    }
+
+    @Test
+    public void testDisabled() {
+        when(cfg.isDispatcherIndexEnabled()).thenReturn(false);
+
+        EnqueuedProcessIndex index = new EnqueuedProcessIndex(cfg, dao, new MetricRegistry());
+        assertFalse(index.isEnabled());
+
+        index.onStatusChange(null, new ProcessKey(UUID.randomUUID(), T0), ProcessStatus.ENQUEUED);
+        index.refresh();
+
+        verify(dao, never()).getEnqueued(any());
+    }
+
+    @Test
+    public void testIsReady() {
+        OffsetDateTime now = OffsetDateTime.now();
+
+        assertTrue(new EnqueuedProcessIndex.Candidate(entry(null, null), T0, null).isReady(now));
+        assertTrue(new EnqueuedProcessIndex.Candidate(entry(null, null), T0, now.minusSeconds(1)).isReady(now));
+        assertFalse(new EnqueuedProcessIndex.Candidate(entry(null, null), T0, now.plusSeconds(1)).isReady(now));
+    }
+
+    private static Map<Signature, List<EnqueuedProcessIndex.Candidate>> buckets(EnqueuedProcessIndex index, int shard) {
+        Map<Signature, List<EnqueuedProcessIndex.Candidate>> result = new HashMap<>();
+        for (EnqueuedProcessIndex.Bucket b : index.buckets(shard)) {
+            List<EnqueuedProcessIndex.Candidate> l = new ArrayList<>();
+            b.iterator().forEachRemaining(l::add);
+            result.put(b.requirements(), l);
+        }
+        return result;
+    }
+
+    private static EnqueuedProcessIndex.Candidate candidate(UUID orgId, Map<String, Object> agentRequirements, OffsetDateTime lastUpdatedAt) {
+        return new EnqueuedProcessIndex.Candidate(entry(orgId, agentRequirements), lastUpdatedAt, null);
+    }
+
+    private static ProcessQueueEntry entry(UUID orgId, Map<String, Object> agentRequirements) {
+        return ProcessQueueEntry.builder()
+                .key(new ProcessKey(UUID.randomUUID(), T0))
+                .orgId(orgId)
+                .requirements(agentRequirements != null ? Map.of("agent", agentRequirements) : null)
+                .build();
+    }
+}
@@ -0,0 +1,131 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2024 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.common.Matcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignatureMatcherTest {
+
+    private static final List<Map<String, Object>> CAPABILITIES = asList(
+            null,
+            emptyMap(),
+            map("flavor", "k8s-small"),
+            map("flavor", "K8S-SMALL"),
+            map("flavor", "k8s-large"),
+            map("flavor", "k8s-small", "os", "linux"),
+            map("flavor", 123),
+            map("flavor", null),
+            map("flavor", asList("k8s-small", "gpu")),
+            map("flavor", emptyList()),
+            map("k8s", map("cluster", "east", "size", "small")),
+            map("k8s", map("cluster", "west")),
+            map("k8s", map("cluster", "east", "nodes", asList("a", "b"))),
+            map("k8s", emptyMap()),
+            map("os", "linux"),
+            map("exclusive", true),
+            map("jvm", map("version", "17")));
+
+    private static final List<Map<String, Object>> REQUIREMENTS = asList(
+            null,
+            emptyMap(),
+            map("flavor", "k8s-small"),
+            map("flavor", "k8s-.*"),
+            map("flavor", "k8s-(small|large)"),
+            map("flavor", ""),
+            map("flavor", 123),
+            map("flavor", asList("k8s-small", "gpu")),
+            map("flavor", asList("k8s-small", "k8s-large")),
+            map("flavor", emptyList()),
+            map("k8s", map("cluster", "east")),
+            map("k8s", map("cluster", "e.*", "size", "small")),
+            map("k8s", map("nodes", asList("b"))),
+            map("k8s", emptyMap()),
+            map("os", "linux", "flavor", "k8s-small"),
+            map("missing", "value"),
+            map("missing", map("nested", "value")),
+            map("exclusive", true),
+            map("jvm", map("version", "1[17]")));
+
+    @Test
+    public void testSameAsMatcher() {
+        SignatureMatcher matcher = new SignatureMatcher(new MetricRegistry());
+
+        // the second pass uses the cached results
+        for (int i = 0; i < 2; i++) {
+            for (Map<String, Object> requirements : REQUIREMENTS) {
+                for (Map<String, Object> capabilities : CAPABILITIES) {
+                    boolean expected = requirements == null || requirements.isEmpty() || Matcher.matches(capabilities, requirements);
+                    boolean actual = matcher.matches(Signature.of(copy(capabilities)), Signature.of(copy(requirements)));
+                    assertEquals(expected, actual, "capabilities: " + capabilities + ", requirements: " + requirements);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSignatureEquality() {
+        for (Map<String, Object> a : CAPABILITIES) {
+            for (Map<String, Object> b : CAPABILITIES) {
+                Signature sa = Signature.of(a);
+                Signature sb = Signature.of(copy(b));
+                assertEquals(Objects.equals(a, b), sa.equals(sb), "a: " + a + ", b: " + b);
+                if (sa.equals(sb)) {
+                    assertEquals(sa.hashCode(), sb.hashCode());
+                }
+            }
+        }
+
+        assertNotEquals(Signature.of(null), Signature.EMPTY);
+        assertSame(Signature.EMPTY, Signature.of(new HashMap<>()));
+        assertTrue(Signature.of(null).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) {
+        if (value instanceof Map) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            ((Map<String, Object>) value).forEach((k, v) -> result.put(k, copy(v)));
+            return (T) result;
+        } else if (value instanceof List) {
+            List<Object> result = new ArrayList<>();
+            ((List<Object>) value).forEach(v -> result.add(copy(v)));
+            return (T) result;
+        }
+        return value;
+    }
+
+    private static Map<String, Object> map(Object... kvs) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i < kvs.length; i += 2) {
+            m.put((String) kvs[i], kvs[i + 1]);
+        }
+        return m;
+    }
+}
@@ -38,6 +38,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -45,9 +46,9 @@ import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_STATE_BLOBS;
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 
 @Disabled("requires a local DB instance")
@@ -87,6 +88,87 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testListDigest() throws Exception {
+        ProcessKey processKey = ProcessKey.random();
+
+        Path baseDir = Files.createTempDirectory("testList");
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+
+        ProcessKeyCache processKeyCache = new ProcessKeyCache(new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(new ObjectMapper())));
+        ProcessConfiguration stateCfg = new ProcessConfiguration(Duration.of(24, ChronoUnit.HOURS), Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+        stateManager.importPath(processKey, null, baseDir, (p, attrs) -> true);
+
+        List<ProcessStateManager.StateItem> items = stateManager.list(processKey);
+        assertEquals(1, items.size());
+        assertEquals("file-1", items.get(0).path());
+        assertEquals(3, items.get(0).size());
+
+        // same size, different content
+
+        stateManager.replace(processKey, "file-1", "456".getBytes());
+
+        List<ProcessStateManager.StateItem> updated = stateManager.list(processKey);
+        assertEquals(1, updated.size());
+        assertEquals(3, updated.get(0).size());
+        assertNotEquals(items.get(0).digest(), updated.get(0).digest());
+    }
+
+    @Test
+    public void testDedup() throws Exception {
+        ProcessKey processKeyA = ProcessKey.random();
+        ProcessKey processKeyB = ProcessKey.random();
+
+        byte[] large = new byte[3 * 1024 * 1024];
+        new Random().nextBytes(large);
+
+        Path baseDir = Files.createTempDirectory("testDedup");
+        writeTempFile(baseDir.resolve("large.bin"), large);
+        writeTempFile(baseDir.resolve("small.txt"), "123".getBytes());
+
+        ProcessKeyCache processKeyCache = new ProcessKeyCache(new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(new ObjectMapper())));
+        ProcessConfiguration stateCfg = new ProcessConfiguration(Duration.of(24, ChronoUnit.HOURS), Collections.singletonList(Constants.Files.CONFIGURATION_FILE_NAME));
+        set(stateCfg, "stateDedupEnabled", true);
+        set(stateCfg, "stateDedupMinSize", 1024L);
+
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+        stateManager.importPath(processKeyA, null, baseDir, (p, attrs) -> true);
+        stateManager.importPath(processKeyB, null, baseDir, (p, attrs) -> true);
+
+        String hash = ProcessStateBlobs.hash(large);
+        for (ProcessKey k : List.of(processKeyA, processKeyB)) {
+            Map<String, ProcessStateManager.StateItem> items = new HashMap<>();
+            stateManager.list(k).forEach(i -> items.put(i.path(), i));
+
+            assertEquals(hash, items.get("large.bin").hash());
+            assertEquals(large.length, items.get("large.bin").size());
+            assertNull(items.get("small.txt").hash());
+
+            Path tmpDir = Files.createTempDirectory("testDedupExport");
+            assertTrue(stateManager.export(k, copyTo(tmpDir)));
+            assertArrayEquals(large, Files.readAllBytes(tmpDir.resolve("large.bin")));
+            assertFileContent("123", tmpDir.resolve("small.txt"));
+        }
+
+        // stored once
+        assertEquals(1, countBlobs(hash));
+    }
+
+    @Test
+    public void testBlobContentMismatch() throws Exception {
+        byte[] ab = "some data".getBytes();
+
+        ProcessKeyCache processKeyCache = new ProcessKeyCache(new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(new ObjectMapper())));
+        ProcessConfiguration stateCfg = new ProcessConfiguration(Duration.of(24, ChronoUnit.HOURS), Collections.emptyList());
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg, mock(PolicyManager.class), mock(ProcessLogManager.class), processKeyCache);
+
+        String wrongHash = ProcessStateBlobs.hash("other data".getBytes());
+        assertThrows(IllegalStateException.class, () -> stateManager.tx(tx -> ProcessStateBlobs.store(tx, Map.of(wrongHash, ProcessStateBlobs.Blob.of(ab)))));
+
+        assertEquals(0, countBlobs(wrongHash));
+    }
+
     @Test
     public void testLargeImport() throws Exception {
         ProcessKey processKey = ProcessKey.random();
@@ -157,6 +239,18 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertEquals(expected, str);
     }
 
+    private int countBlobs(String hash) {
+        int[] result = new int[1];
+        tx(tx -> result[0] = tx.fetchCount(PROCESS_STATE_BLOBS, PROCESS_STATE_BLOBS.BLOB_HASH.eq(hash)));
+        return result[0];
+    }
+
+    private static void set(Object o, String name, Object value) throws Exception {
+        Field f = o.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
+
     private static void writeTempFile(Path p, byte[] ab) throws IOException {
         try (OutputStream out = Files.newOutputStream(p, StandardOpenOption.CREATE)) {
             out.write(ab);
@@ -0,0 +1,308 @@
+package com.walmartlabs.concord.server.security;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2020 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.audit.AuditLog;
+import com.walmartlabs.concord.server.cfg.AuthCacheConfiguration;
+import com.walmartlabs.concord.server.cfg.LdapGroupSyncConfiguration;
+import com.walmartlabs.concord.server.org.team.TeamDao;
+import com.walmartlabs.concord.server.sdk.ProcessKey;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.security.apikey.ApiKeyEntry;
+import com.walmartlabs.concord.server.security.ldap.LdapGroupDao;
+import com.walmartlabs.concord.server.security.ldap.LdapGroupManager;
+import com.walmartlabs.concord.server.user.UserDao;
+import com.walmartlabs.concord.server.user.UserEntry;
+import com.walmartlabs.concord.server.user.UserManager;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuthenticationCacheTest {
+
+    @Test
+    public void testApiKey() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        ApiKeyEntry key = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "test", null);
+        CountingLoader<ApiKeyEntry> loader = new CountingLoader<>(key);
+
+        assertSame(key, cache.getApiKey("abc", loader));
+        assertSame(key, cache.getApiKey("abc", loader));
+        assertEquals(1, loader.count.get());
+
+        // different key value
+        cache.getApiKey("xyz", loader);
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testExpiredApiKey() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        ApiKeyEntry key = new ApiKeyEntry(UUID.randomUUID(), UUID.randomUUID(), "test", OffsetDateTime.now().plusNanos(100_000_000));
+        assertSame(key, cache.getApiKey("abc", () -> key));
+
+        sleep(200);
+
+        // the cached key is expired
+        assertNull(cache.getApiKey("abc", () -> key));
+    }
+
+    @Test
+    public void testNullsAreNotCached() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        CountingLoader<UserPrincipal> loader = new CountingLoader<>(null);
+        UUID keyId = UUID.randomUUID();
+
+        assertNull(cache.getApiKeyPrincipal(keyId, loader));
+        assertNull(cache.getApiKeyPrincipal(keyId, loader));
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testInvalidateApiKey() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        UUID userId = UUID.randomUUID();
+        ApiKeyEntry key = new ApiKeyEntry(UUID.randomUUID(), userId, "test", null);
+        CountingLoader<ApiKeyEntry> keyLoader = new CountingLoader<>(key);
+        CountingLoader<UserPrincipal> principalLoader = new CountingLoader<>(principal(userId));
+
+        cache.getApiKey("abc", keyLoader);
+        cache.getApiKeyPrincipal(key.getId(), principalLoader);
+
+        cache.invalidateApiKey(key.getId());
+
+        cache.getApiKey("abc", keyLoader);
+        cache.getApiKeyPrincipal(key.getId(), principalLoader);
+        assertEquals(2, keyLoader.count.get());
+        assertEquals(2, principalLoader.count.get());
+    }
+
+    @Test
+    public void testInvalidateUser() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        UUID userId = UUID.randomUUID();
+        UUID instanceId = UUID.randomUUID();
+        ApiKeyEntry key = new ApiKeyEntry(UUID.randomUUID(), userId, "test", null);
+        CountingLoader<ApiKeyEntry> keyLoader = new CountingLoader<>(key);
+        CountingLoader<UserPrincipal> principalLoader = new CountingLoader<>(principal(userId));
+        CountingLoader<PrincipalCollection> sessionLoader = new CountingLoader<>(new SimplePrincipalCollection(principal(userId), "test"));
+
+        // another user's entries
+        UUID otherUserId = UUID.randomUUID();
+        UUID otherKeyId = UUID.randomUUID();
+        CountingLoader<UserPrincipal> otherLoader = new CountingLoader<>(principal(otherUserId));
+
+        cache.getApiKey("abc", keyLoader);
+        cache.getApiKeyPrincipal(key.getId(), principalLoader);
+        cache.getSessionKeyPrincipals(instanceId, sessionLoader);
+        cache.getApiKeyPrincipal(otherKeyId, otherLoader);
+
+        cache.invalidateUser(userId);
+
+        cache.getApiKey("abc", keyLoader);
+        cache.getApiKeyPrincipal(key.getId(), principalLoader);
+        cache.getSessionKeyPrincipals(instanceId, sessionLoader);
+        cache.getApiKeyPrincipal(otherKeyId, otherLoader);
+        assertEquals(2, keyLoader.count.get());
+        assertEquals(2, principalLoader.count.get());
+        assertEquals(2, sessionLoader.count.get());
+        assertEquals(1, otherLoader.count.get());
+    }
+
+    @Test
+    public void testGeneration() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        UUID userId = UUID.randomUUID();
+        UUID keyId = UUID.randomUUID();
+        AtomicInteger count = new AtomicInteger();
+
+        // the user is disabled while the principal is loaded
+        Supplier<UserPrincipal> loader = () -> {
+            if (count.incrementAndGet() == 1) {
+                cache.invalidateUser(userId);
+            }
+            return principal(userId);
+        };
+
+        assertNotNull(cache.getApiKeyPrincipal(keyId, loader));
+        assertNotNull(cache.getApiKeyPrincipal(keyId, loader));
+        assertNotNull(cache.getApiKeyPrincipal(keyId, loader));
+
+        // the first result is not cached
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testFinishedProcess() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        UUID instanceId = processKey.getInstanceId();
+        CountingLoader<PrincipalCollection> loader = new CountingLoader<>(new SimplePrincipalCollection(principal(UUID.randomUUID()), "test"));
+
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        assertEquals(1, loader.count.get());
+
+        // the entry is invalidated and not cached again while the process is finished
+        cache.onStatusChange(null, processKey, ProcessStatus.FINISHED);
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        assertEquals(3, loader.count.get());
+
+        // resumed
+        cache.onStatusChange(null, processKey, ProcessStatus.RUNNING);
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        cache.getSessionKeyPrincipals(instanceId, loader);
+        assertEquals(4, loader.count.get());
+    }
+
+    @Test
+    public void testTtl() {
+        AuthenticationCache cache = cache(true, Duration.ofMillis(100));
+
+        UUID keyId = UUID.randomUUID();
+        CountingLoader<UserPrincipal> loader = new CountingLoader<>(principal(UUID.randomUUID()));
+
+        cache.getApiKeyPrincipal(keyId, loader);
+        cache.getApiKeyPrincipal(keyId, loader);
+        assertEquals(1, loader.count.get());
+
+        sleep(200);
+
+        cache.getApiKeyPrincipal(keyId, loader);
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        UUID keyId = UUID.randomUUID();
+        UUID instanceId = UUID.randomUUID();
+        CountingLoader<UserPrincipal> principalLoader = new CountingLoader<>(principal(UUID.randomUUID()));
+        CountingLoader<PrincipalCollection> sessionLoader = new CountingLoader<>(new SimplePrincipalCollection(principal(UUID.randomUUID()), "test"));
+
+        cache.getApiKeyPrincipal(keyId, principalLoader);
+        cache.getSessionKeyPrincipals(instanceId, sessionLoader);
+
+        cache.invalidateAll();
+
+        cache.getApiKeyPrincipal(keyId, principalLoader);
+        cache.getSessionKeyPrincipals(instanceId, sessionLoader);
+        assertEquals(2, principalLoader.count.get());
+        assertEquals(2, sessionLoader.count.get());
+    }
+
+    @Test
+    public void testRoleChanges() {
+        AuthenticationCache cache = cache(true, Duration.ofMinutes(1));
+
+        UUID userId = UUID.randomUUID();
+        UUID keyId = UUID.randomUUID();
+        CountingLoader<UserPrincipal> loader = new CountingLoader<>(principal(userId));
+
+        // the user's roles are changed directly
+
+        UserManager userManager = new UserManager(mock(UserDao.class), mock(TeamDao.class), mock(AuditLog.class), Set.of(), cache);
+
+        cache.getApiKeyPrincipal(keyId, loader);
+        userManager.updateRoles(userId, Set.of());
+        cache.getApiKeyPrincipal(keyId, loader);
+        assertEquals(2, loader.count.get());
+
+        // ...or via the user's LDAP groups
+
+        LdapGroupManager ldapGroupManager = new LdapGroupManager(mock(LdapGroupSyncConfiguration.class), mock(LdapGroupDao.class), cache);
+
+        ldapGroupManager.update(userId, Set.of("group"));
+        cache.getApiKeyPrincipal(keyId, loader);
+        assertEquals(3, loader.count.get());
+    }
+
+    @Test
+    public void testDisabled() {
+        AuthenticationCache cache = cache(false, Duration.ofMinutes(1));
+
+        CountingLoader<UserPrincipal> loader = new CountingLoader<>(principal(UUID.randomUUID()));
+        UUID keyId = UUID.randomUUID();
+
+        cache.getApiKeyPrincipal(keyId, loader);
+        cache.getApiKeyPrincipal(keyId, loader);
+        assertEquals(2, loader.count.get());
+    }
+
+    private static AuthenticationCache cache(boolean enabled, Duration ttl) {
+        AuthCacheConfiguration cfg = mock(AuthCacheConfiguration.class);
+        when(cfg.isEnabled()).thenReturn(enabled);
+        when(cfg.getTtl()).thenReturn(ttl);
+        when(cfg.getMaxSize()).thenReturn(100);
+        return new AuthenticationCache(cfg, new MetricRegistry());
+    }
+
+    private static UserPrincipal principal(UUID userId) {
+        UserEntry u = new UserEntry(userId, "user", null, null, null, null, null, null, false, null, false);
+        return new UserPrincipal("test", u);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class CountingLoader<T> implements Supplier<T> {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final T value;
+
+        private CountingLoader(T value) {
+            this.value = value;
+        }
+
+        @Override
+        public T get() {
+            count.incrementAndGet();
+            return value;
+        }
+    }
+}
@@ -28,23 +28,39 @@ import java.util.Map;
 public class ProcessRequest extends Message {
 
     private final Map<String, Object> capabilities;
+    private final int slots;
 
+    public ProcessRequest(Map<String, Object> capabilities) {
+        this(capabilities, 1);
+    }
+
+    /**
+     * @param slots the number of processes the agent can accept. If greater
+     *              than 1, the server answers with a {@link ProcessBatchResponse}.
+     */
     @JsonCreator
     public ProcessRequest(
-            @JsonProperty("capabilities") Map<String, Object> capabilities) {
+            @JsonProperty("capabilities") Map<String, Object> capabilities,
+            @JsonProperty("slots") Integer slots) {
         super(MessageType.PROCESS_REQUEST);
         this.capabilities = capabilities;
+        this.slots = slots != null && slots > 0 ? slots : 1;
     }
 
     public Map<String, Object> getCapabilities() {
         return capabilities;
     }
 
+    public int getSlots() {
+        return slots;
+    }
+
     @Override
     public String toString() {
         return "ProcessRequest{" +
                 "correlationId='" + getCorrelationId() + "', " +
-                "capabilities='" + capabilities + "'" +
+                "capabilities='" + capabilities + "', " +
+                "slots=" + slots +
                 '}';
     }
 }
@@ -26,6 +26,7 @@ import com.walmartlabs.concord.imports.Imports;
 import com.walmartlabs.concord.server.queueclient.message.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -77,6 +78,38 @@ public class MessageSerializerTest {
         assertEquals(r.getMessageType(), MessageType.PROCESS_REQUEST);
         assertEquals(r.getCapabilities(), rDeserialized.getCapabilities());
         assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+        assertEquals(1, rDeserialized.getSlots());
+    }
+
+    @Test
+    public void testProcessRequestWithSlots() {
+        ProcessRequest r = new ProcessRequest(Collections.singletonMap("k", "v"), 5);
+
+        // ---
+        ProcessRequest rDeserialized = MessageSerializer.deserialize(MessageSerializer.serialize(r));
+        assertEquals(5, rDeserialized.getSlots());
+    }
+
+    @Test
+    public void testProcessBatchResponse() {
+        UUID processA = UUID.randomUUID();
+        UUID processB = UUID.randomUUID();
+
+        ProcessBatchResponse r = new ProcessBatchResponse(123, Arrays.asList(
+                new ProcessResponse(123, "token-a", processA, null, "repo-url", null, "commit-id", null, null, null),
+                new ProcessResponse(123, "token-b", processB, null, null, null, null, null, null, null)));
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessBatchResponse rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(MessageType.PROCESS_BATCH_RESPONSE, rDeserialized.getMessageType());
+        assertEquals(123, rDeserialized.getCorrelationId());
+        assertEquals(2, rDeserialized.getProcesses().size());
+        assertEquals(processA, rDeserialized.getProcesses().get(0).getProcessId());
+        assertEquals("repo-url", rDeserialized.getProcesses().get(0).getRepoUrl());
+        assertEquals("token-b", rDeserialized.getProcesses().get(1).getSessionToken());
     }
 
     @Test